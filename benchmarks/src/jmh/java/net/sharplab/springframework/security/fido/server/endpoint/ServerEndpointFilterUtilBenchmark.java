@@ -0,0 +1,69 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.fido.server.endpoint;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.UserVerificationRequirement;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for the challenge envelopes of {@link ServerEndpointFilterUtil}, which carry the username and the user
+ * verification requirement in a challenge.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ServerEndpointFilterUtilBenchmark {
+
+    private ServerEndpointFilterUtil target;
+    private Challenge challenge;
+    private Challenge usernameEncodedChallenge;
+    private Challenge userVerificationEncodedChallenge;
+
+    @Setup
+    public void setup() {
+        target = new ServerEndpointFilterUtil(new ObjectConverter());
+        challenge = new DefaultChallenge();
+        usernameEncodedChallenge = target.encodeUsername(challenge, "john");
+        userVerificationEncodedChallenge = target.encodeUserVerification(challenge, UserVerificationRequirement.REQUIRED);
+    }
+
+    @Benchmark
+    public Challenge encodeUsername() {
+        return target.encodeUsername(challenge, "john");
+    }
+
+    @Benchmark
+    public String decodeUsername() {
+        return target.decodeUsername(usernameEncodedChallenge);
+    }
+
+    @Benchmark
+    public Challenge encodeUserVerification() {
+        return target.encodeUserVerification(challenge, UserVerificationRequirement.REQUIRED);
+    }
+
+    @Benchmark
+    public UserVerificationRequirement decodeUserVerification() {
+        return target.decodeUserVerification(userVerificationEncodedChallenge);
+    }
+}
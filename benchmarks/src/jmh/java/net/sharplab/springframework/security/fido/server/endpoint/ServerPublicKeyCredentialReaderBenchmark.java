@@ -0,0 +1,93 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.fido.server.endpoint;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.webauthn4j.converter.util.JsonConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.util.Base64UrlUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for the JSON binding of the fido-server result endpoints. {@link ServerPublicKeyCredentialReader}, which
+ * decodes Base64url fields while parsing, is compared with the data binding to {@link ServerPublicKeyCredential}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServerPublicKeyCredentialReaderBenchmark {
+
+    private static final TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAttestationResponse>> attestationCredentialTypeRef
+            = new TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAttestationResponse>>() {
+    };
+    private static final TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse>> assertionCredentialTypeRef
+            = new TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse>>() {
+    };
+
+    private ServerPublicKeyCredentialReader target;
+    private JsonConverter jsonConverter;
+    private byte[] attestationCredential;
+    private byte[] assertionCredential;
+
+    @Setup
+    public void setup() {
+        target = new ServerPublicKeyCredentialReader();
+        jsonConverter = new ObjectConverter().getJsonConverter();
+
+        String credentialId = randomBase64Url(64);
+        // sizes of a packed attestation with a certificate chain, and of an ES256 assertion
+        attestationCredential = ("{\"id\":\"" + credentialId + "\",\"rawId\":\"" + credentialId + "\",\"type\":\"public-key\"," +
+                "\"response\":{\"clientDataJSON\":\"" + randomBase64Url(256) + "\",\"attestationObject\":\"" + randomBase64Url(1500) + "\"}," +
+                "\"clientExtensionResults\":\"{}\"}").getBytes(StandardCharsets.UTF_8);
+        assertionCredential = ("{\"id\":\"" + credentialId + "\",\"rawId\":\"" + credentialId + "\",\"type\":\"public-key\"," +
+                "\"response\":{\"clientDataJSON\":\"" + randomBase64Url(256) + "\",\"authenticatorData\":\"" + randomBase64Url(37) + "\"," +
+                "\"signature\":\"" + randomBase64Url(72) + "\",\"userHandle\":\"" + randomBase64Url(32) + "\"}," +
+                "\"clientExtensionResults\":\"{}\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public DecodedServerPublicKeyCredential<DecodedServerAuthenticatorAttestationResponse> readAttestationCredential() {
+        return target.readAttestationCredential(new ByteArrayInputStream(attestationCredential));
+    }
+
+    @Benchmark
+    public DecodedServerPublicKeyCredential<DecodedServerAuthenticatorAssertionResponse> readAssertionCredential() {
+        return target.readAssertionCredential(new ByteArrayInputStream(assertionCredential));
+    }
+
+    @Benchmark
+    public ServerPublicKeyCredential<ServerAuthenticatorAttestationResponse> bindAttestationCredential() {
+        return jsonConverter.readValue(new ByteArrayInputStream(attestationCredential), attestationCredentialTypeRef);
+    }
+
+    @Benchmark
+    public ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse> bindAssertionCredential() {
+        return jsonConverter.readValue(new ByteArrayInputStream(assertionCredential), assertionCredentialTypeRef);
+    }
+
+    private static String randomBase64Url(int length) {
+        byte[] bytes = new byte[length];
+        new SecureRandom().nextBytes(bytes);
+        return Base64UrlUtil.encodeToString(bytes);
+    }
+}
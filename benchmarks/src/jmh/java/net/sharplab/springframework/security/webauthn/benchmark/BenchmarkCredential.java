@@ -0,0 +1,209 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.benchmark;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.converter.AuthenticatorDataConverter;
+import com.webauthn4j.converter.CollectedClientDataConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.AuthenticatorData;
+import com.webauthn4j.data.attestation.authenticator.COSEKey;
+import com.webauthn4j.data.attestation.authenticator.EC2COSEKey;
+import com.webauthn4j.data.attestation.authenticator.RSACOSEKey;
+import com.webauthn4j.data.attestation.statement.NoneAttestationStatement;
+import com.webauthn4j.data.client.ClientDataType;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.server.ServerProperty;
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
+import net.sharplab.springframework.security.webauthn.request.WebAuthnAuthenticationRequest;
+import net.sharplab.springframework.security.webauthn.userdetails.InMemoryWebAuthnUserDetailsService;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsImpl;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A credential of the given COSE algorithm and the assertions signed by it, built with the JCA so that the assertion
+ * verification benchmarks do not depend on an authenticator emulator.
+ */
+public class BenchmarkCredential {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final String RP_ID = "example.com";
+    public static final Origin ORIGIN = new Origin("https://example.com");
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+    private static final ObjectConverter objectConverter = new ObjectConverter();
+
+    //~ Instance fields
+    // ================================================================================================
+    private final KeyPair keyPair;
+    private final String signatureAlgorithm;
+    private final WebAuthnAuthenticator authenticator;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    private BenchmarkCredential(KeyPair keyPair, String signatureAlgorithm, COSEKey coseKey) {
+        this.keyPair = keyPair;
+        this.signatureAlgorithm = signatureAlgorithm;
+        AttestedCredentialData attestedCredentialData = new AttestedCredentialData(AAGUID.ZERO, randomBytes(32), coseKey);
+        this.authenticator = new WebAuthnAuthenticator("authenticator", attestedCredentialData, new NoneAttestationStatement(), 0);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Creates a credential
+     *
+     * @param algorithm <code>ES256</code> or <code>RS256</code>
+     * @return the credential
+     */
+    public static BenchmarkCredential create(String algorithm) {
+        try {
+            switch (algorithm) {
+                case "ES256":
+                    KeyPairGenerator ecKeyPairGenerator = KeyPairGenerator.getInstance("EC");
+                    ecKeyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"), secureRandom);
+                    KeyPair ecKeyPair = ecKeyPairGenerator.generateKeyPair();
+                    ECPublicKey ecPublicKey = (ECPublicKey) ecKeyPair.getPublic();
+                    byte[] uncompressed = ByteBuffer.allocate(65)
+                            .put((byte) 0x04)
+                            .put(toUnsignedBytes(ecPublicKey.getW().getAffineX(), 32))
+                            .put(toUnsignedBytes(ecPublicKey.getW().getAffineY(), 32))
+                            .array();
+                    return new BenchmarkCredential(ecKeyPair, "SHA256withECDSA", EC2COSEKey.createFromUncompressedECCKey(uncompressed));
+                case "RS256":
+                    KeyPairGenerator rsaKeyPairGenerator = KeyPairGenerator.getInstance("RSA");
+                    rsaKeyPairGenerator.initialize(2048, secureRandom);
+                    KeyPair rsaKeyPair = rsaKeyPairGenerator.generateKeyPair();
+                    return new BenchmarkCredential(rsaKeyPair, "SHA256withRSA", RSACOSEKey.create((RSAPublicKey) rsaKeyPair.getPublic()));
+                default:
+                    throw new IllegalArgumentException("Unsupported algorithm: " + algorithm);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates a {@link InMemoryWebAuthnUserDetailsService} holding a single user with the given authenticators
+     *
+     * @param username       username
+     * @param authenticators authenticators
+     * @return the user details service
+     */
+    public static InMemoryWebAuthnUserDetailsService createUserDetailsService(String username, List<Authenticator> authenticators) {
+        InMemoryWebAuthnUserDetailsService userDetailsService = new InMemoryWebAuthnUserDetailsService();
+        userDetailsService.createUser(new WebAuthnUserDetailsImpl(
+                randomBytes(32), username, "", new ArrayList<>(authenticators),
+                AuthorityUtils.createAuthorityList("ROLE_USER")));
+        return userDetailsService;
+    }
+
+    /**
+     * Creates an authentication request carrying an assertion signed by this credential
+     *
+     * @param challenge the challenge to be signed
+     * @return the authentication request
+     */
+    public WebAuthnAuthenticationRequest createAuthenticationRequest(Challenge challenge) {
+        byte[] clientDataJSON = new CollectedClientDataConverter(objectConverter)
+                .convertToBytes(new CollectedClientData(ClientDataType.GET, challenge, ORIGIN, null));
+        byte flags = (byte) (AuthenticatorData.BIT_UP | AuthenticatorData.BIT_UV);
+        byte[] authenticatorData = new AuthenticatorDataConverter(objectConverter)
+                .convert(new AuthenticatorData<>(sha256(RP_ID.getBytes(StandardCharsets.UTF_8)), flags, 0));
+        byte[] signedData = ByteBuffer.allocate(authenticatorData.length + 32)
+                .put(authenticatorData)
+                .put(sha256(clientDataJSON))
+                .array();
+
+        return new WebAuthnAuthenticationRequest(
+                getCredentialId(),
+                clientDataJSON,
+                authenticatorData,
+                sign(signedData),
+                null,
+                new ServerProperty(ORIGIN, RP_ID, challenge, null),
+                true,
+                Collections.emptyList()
+        );
+    }
+
+    public WebAuthnAuthenticator getAuthenticator() {
+        return authenticator;
+    }
+
+    public byte[] getCredentialId() {
+        return authenticator.getAttestedCredentialData().getCredentialId();
+    }
+
+    static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        secureRandom.nextBytes(bytes);
+        return bytes;
+    }
+
+    private byte[] sign(byte[] data) {
+        try {
+            Signature signature = Signature.getInstance(signatureAlgorithm);
+            signature.initSign(keyPair.getPrivate());
+            signature.update(data);
+            return signature.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] toUnsignedBytes(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        byte[] result = new byte[length];
+        int copyLength = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copyLength, result, length - copyLength, copyLength);
+        return result;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.benchmark;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import net.sharplab.springframework.security.webauthn.challenge.HttpSessionChallengeRepository;
+import net.sharplab.springframework.security.webauthn.util.EntropyPool;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for {@link HttpSessionChallengeRepository}, with and without an {@link EntropyPool}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HttpSessionChallengeRepositoryBenchmark {
+
+    @Param({"false", "true"})
+    private boolean entropyPoolEnabled;
+
+    private HttpSessionChallengeRepository target;
+    private MockHttpServletRequest request;
+
+    @Setup
+    public void setup() {
+        target = new HttpSessionChallengeRepository();
+        if (entropyPoolEnabled) {
+            target.setEntropyPool(new EntropyPool());
+        }
+        request = new MockHttpServletRequest();
+        target.saveChallenge(target.generateChallenge(), request);
+    }
+
+    @Benchmark
+    public Challenge generateChallenge() {
+        return target.generateChallenge();
+    }
+
+    @Benchmark
+    public Challenge generateAndSaveChallenge() {
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+        return challenge;
+    }
+
+    @Benchmark
+    public Challenge loadChallenge() {
+        return target.loadChallenge(request);
+    }
+}
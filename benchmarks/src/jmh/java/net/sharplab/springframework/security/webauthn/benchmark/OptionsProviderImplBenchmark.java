@@ -0,0 +1,80 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.benchmark;
+
+import com.webauthn4j.authenticator.Authenticator;
+import net.sharplab.springframework.security.webauthn.challenge.HttpSessionChallengeRepository;
+import net.sharplab.springframework.security.webauthn.options.AssertionOptions;
+import net.sharplab.springframework.security.webauthn.options.AttestationOptions;
+import net.sharplab.springframework.security.webauthn.options.CombinedOptions;
+import net.sharplab.springframework.security.webauthn.options.OptionsProviderImpl;
+import net.sharplab.springframework.security.webauthn.userdetails.InMemoryWebAuthnUserDetailsService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for options generation by {@link OptionsProviderImpl}, including the challenge generation and its storage
+ * to the session.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OptionsProviderImplBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int authenticatorCount;
+
+    private OptionsProviderImpl target;
+    private MockHttpServletRequest request;
+
+    @Setup
+    public void setup() {
+        List<Authenticator> authenticators = new ArrayList<>();
+        for (int i = 0; i < authenticatorCount; i++) {
+            authenticators.add(BenchmarkCredential.create("ES256").getAuthenticator());
+        }
+        InMemoryWebAuthnUserDetailsService userDetailsService = BenchmarkCredential.createUserDetailsService("john", authenticators);
+
+        target = new OptionsProviderImpl(userDetailsService, new HttpSessionChallengeRepository());
+        target.setRpId(BenchmarkCredential.RP_ID);
+
+        request = new MockHttpServletRequest();
+        request.setScheme("https");
+        request.setServerName(BenchmarkCredential.RP_ID);
+        request.setServerPort(443);
+    }
+
+    @Benchmark
+    public AttestationOptions getAttestationOptions() {
+        return target.getAttestationOptions(request, "john", null);
+    }
+
+    @Benchmark
+    public AssertionOptions getAssertionOptions() {
+        return target.getAssertionOptions(request, "john", null);
+    }
+
+    @Benchmark
+    public CombinedOptions getCombinedOptions() {
+        return target.getCombinedOptions(request, "john", null);
+    }
+}
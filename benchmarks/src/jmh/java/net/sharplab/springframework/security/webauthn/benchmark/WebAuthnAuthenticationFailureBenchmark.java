@@ -0,0 +1,113 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.benchmark;
+
+import com.webauthn4j.WebAuthnManager;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.server.ServerProperty;
+import com.webauthn4j.util.exception.WebAuthnException;
+import net.sharplab.springframework.security.webauthn.WebAuthnAssertionAuthenticationToken;
+import net.sharplab.springframework.security.webauthn.WebAuthnAuthenticationProvider;
+import net.sharplab.springframework.security.webauthn.metrics.NoOpWebAuthnMetrics;
+import net.sharplab.springframework.security.webauthn.request.WebAuthnAuthenticationRequest;
+import net.sharplab.springframework.security.webauthn.userdetails.InMemoryWebAuthnUserDetailsService;
+import net.sharplab.springframework.security.webauthn.util.ExceptionUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.AuthenticationException;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for the failure paths of {@link WebAuthnAuthenticationProvider}, comparing exceptions with and without
+ * stack traces for requests with an unknown credentialId and requests with a bad challenge.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WebAuthnAuthenticationFailureBenchmark {
+
+    @Param({"false", "true"})
+    private boolean stacklessFailures;
+
+    private WebAuthnAuthenticationProvider target;
+    private WebAuthnAssertionAuthenticationToken unknownCredentialIdToken;
+    private WebAuthnAssertionAuthenticationToken badChallengeToken;
+    private WebAuthnException validationException;
+
+    @Setup
+    public void setup() {
+        BenchmarkCredential credential = BenchmarkCredential.create("ES256");
+        InMemoryWebAuthnUserDetailsService userDetailsService =
+                BenchmarkCredential.createUserDetailsService("john", Collections.singletonList(credential.getAuthenticator()));
+
+        target = new WebAuthnAuthenticationProvider(
+                userDetailsService,
+                (credentialId, counter) -> {
+                },
+                WebAuthnManager.createNonStrictWebAuthnManager());
+        target.setStacklessFailures(stacklessFailures);
+
+        WebAuthnAuthenticationRequest request = credential.createAuthenticationRequest(new DefaultChallenge());
+        unknownCredentialIdToken = new WebAuthnAssertionAuthenticationToken(new WebAuthnAuthenticationRequest(
+                BenchmarkCredential.create("ES256").getCredentialId(),
+                request.getClientDataJSON(),
+                request.getAuthenticatorData(),
+                request.getSignature(),
+                request.getClientExtensionsJSON(),
+                request.getServerProperty(),
+                request.isUserVerificationRequired(),
+                request.isUserPresenceRequired(),
+                request.getExpectedAuthenticationExtensionIds()));
+        // the server expects another challenge than the one signed by the authenticator
+        badChallengeToken = new WebAuthnAssertionAuthenticationToken(new WebAuthnAuthenticationRequest(
+                request.getCredentialId(),
+                request.getClientDataJSON(),
+                request.getAuthenticatorData(),
+                request.getSignature(),
+                request.getClientExtensionsJSON(),
+                new ServerProperty(BenchmarkCredential.ORIGIN, BenchmarkCredential.RP_ID, new DefaultChallenge(), null),
+                request.isUserVerificationRequired(),
+                request.isUserPresenceRequired(),
+                request.getExpectedAuthenticationExtensionIds()));
+        validationException = new com.webauthn4j.validator.exception.BadSignatureException("bad signature");
+    }
+
+    @Benchmark
+    public AuthenticationException authenticate_with_unknown_credentialId() {
+        return authenticateExpectingFailure(unknownCredentialIdToken);
+    }
+
+    @Benchmark
+    public AuthenticationException authenticate_with_bad_challenge() {
+        return authenticateExpectingFailure(badChallengeToken);
+    }
+
+    @Benchmark
+    public RuntimeException wrapWithAuthenticationException() {
+        return ExceptionUtil.wrapWithAuthenticationException(validationException, NoOpWebAuthnMetrics.INSTANCE, !stacklessFailures);
+    }
+
+    private AuthenticationException authenticateExpectingFailure(WebAuthnAssertionAuthenticationToken token) {
+        try {
+            target.authenticate(token);
+        } catch (AuthenticationException e) {
+            return e;
+        }
+        throw new IllegalStateException("authentication must fail");
+    }
+}
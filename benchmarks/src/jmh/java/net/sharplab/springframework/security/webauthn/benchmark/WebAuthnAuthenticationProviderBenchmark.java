@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.benchmark;
+
+import com.webauthn4j.WebAuthnManager;
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import net.sharplab.springframework.security.webauthn.WebAuthnAssertionAuthenticationToken;
+import net.sharplab.springframework.security.webauthn.WebAuthnAuthenticationProvider;
+import net.sharplab.springframework.security.webauthn.userdetails.InMemoryWebAuthnUserDetailsService;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserAuthenticatorResolverImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.Authentication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for {@link WebAuthnAuthenticationProvider#authenticate(Authentication)}, which resolves the user by the
+ * credentialId and verifies the assertion signature.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WebAuthnAuthenticationProviderBenchmark {
+
+    @Param({"ES256", "RS256"})
+    private String algorithm;
+
+    @Param({"1", "10", "100"})
+    private int authenticatorCount;
+
+    private WebAuthnAuthenticationProvider target;
+    private WebAuthnAssertionAuthenticationToken authenticationToken;
+
+    @Setup
+    public void setup() {
+        BenchmarkCredential credential = BenchmarkCredential.create(algorithm);
+        List<Authenticator> authenticators = new ArrayList<>();
+        for (int i = 1; i < authenticatorCount; i++) {
+            authenticators.add(BenchmarkCredential.create(algorithm).getAuthenticator());
+        }
+        // the used authenticator is the last one, so that the lookup walks the whole list
+        authenticators.add(credential.getAuthenticator());
+
+        InMemoryWebAuthnUserDetailsService userDetailsService = BenchmarkCredential.createUserDetailsService("john", authenticators);
+
+        target = new WebAuthnAuthenticationProvider(
+                userDetailsService,
+                (credentialId, counter) -> {
+                },
+                WebAuthnManager.createNonStrictWebAuthnManager());
+        // resolves through the user's authenticators rather than the credentialId index of the service
+        target.setUserAuthenticatorResolver(new WebAuthnUserAuthenticatorResolverImpl(userDetailsService));
+        authenticationToken = new WebAuthnAssertionAuthenticationToken(credential.createAuthenticationRequest(new DefaultChallenge()));
+    }
+
+    @Benchmark
+    public Authentication authenticate() {
+        return target.authenticate(authenticationToken);
+    }
+}
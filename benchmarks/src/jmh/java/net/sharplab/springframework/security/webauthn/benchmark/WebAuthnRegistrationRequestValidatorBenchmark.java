@@ -0,0 +1,123 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.benchmark;
+
+import com.webauthn4j.WebAuthnManager;
+import com.webauthn4j.data.*;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.server.ServerProperty;
+import com.webauthn4j.test.authenticator.u2f.FIDOU2FAuthenticatorAdaptor;
+import com.webauthn4j.test.authenticator.webauthn.PackedAuthenticator;
+import com.webauthn4j.test.authenticator.webauthn.TPMAuthenticator;
+import com.webauthn4j.test.authenticator.webauthn.WebAuthnAuthenticatorAdaptor;
+import com.webauthn4j.test.client.ClientPlatform;
+import com.webauthn4j.validator.attestation.statement.none.NoneAttestationStatementValidator;
+import com.webauthn4j.validator.attestation.statement.packed.PackedAttestationStatementValidator;
+import com.webauthn4j.validator.attestation.statement.tpm.TPMAttestationStatementValidator;
+import com.webauthn4j.validator.attestation.statement.u2f.FIDOU2FAttestationStatementValidator;
+import com.webauthn4j.validator.attestation.trustworthiness.certpath.NullCertPathTrustworthinessValidator;
+import com.webauthn4j.validator.attestation.trustworthiness.ecdaa.NullECDAATrustworthinessValidator;
+import com.webauthn4j.validator.attestation.trustworthiness.self.NullSelfAttestationTrustworthinessValidator;
+import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidationResponse;
+import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for {@link WebAuthnRegistrationRequestValidator}, with attestation statements produced by the
+ * webauthn4j-test authenticator emulators. The statements are verified by the format specific validators, while the
+ * attestation certificates are not chained to trust anchors, as the emulators are not issued by a trusted root.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WebAuthnRegistrationRequestValidatorBenchmark {
+
+    @Param({"none", "packed", "fido-u2f", "tpm"})
+    private String format;
+
+    private WebAuthnRegistrationRequestValidator target;
+    private MockHttpServletRequest request;
+    private byte[] clientDataJSON;
+    private byte[] attestationObject;
+    private Set<String> transports = Collections.emptySet();
+
+    @Setup
+    public void setup() {
+        Challenge challenge = new DefaultChallenge();
+        ServerProperty serverProperty = new ServerProperty(BenchmarkCredential.ORIGIN, BenchmarkCredential.RP_ID, challenge, null);
+        WebAuthnManager webAuthnManager = new WebAuthnManager(
+                Arrays.asList(
+                        new NoneAttestationStatementValidator(),
+                        new PackedAttestationStatementValidator(),
+                        new FIDOU2FAttestationStatementValidator(),
+                        new TPMAttestationStatementValidator()
+                ),
+                new NullCertPathTrustworthinessValidator(),
+                new NullECDAATrustworthinessValidator(),
+                new NullSelfAttestationTrustworthinessValidator()
+        );
+        target = new WebAuthnRegistrationRequestValidator(webAuthnManager, httpServletRequest -> serverProperty);
+
+        request = new MockHttpServletRequest();
+        request.setScheme("https");
+        request.setServerName(BenchmarkCredential.RP_ID);
+        request.setServerPort(443);
+
+        PublicKeyCredentialCreationOptions credentialCreationOptions = new PublicKeyCredentialCreationOptions(
+                new PublicKeyCredentialRpEntity(BenchmarkCredential.RP_ID, BenchmarkCredential.RP_ID),
+                new PublicKeyCredentialUserEntity(),
+                challenge,
+                Collections.singletonList(new PublicKeyCredentialParameters(PublicKeyCredentialType.PUBLIC_KEY, COSEAlgorithmIdentifier.ES256)),
+                null,
+                null,
+                new AuthenticatorSelectionCriteria(AuthenticatorAttachment.CROSS_PLATFORM, false, UserVerificationRequirement.PREFERRED),
+                "none".equals(format) ? AttestationConveyancePreference.NONE : AttestationConveyancePreference.DIRECT,
+                null
+        );
+        AuthenticatorAttestationResponse response = createClientPlatform().create(credentialCreationOptions).getAuthenticatorResponse();
+        clientDataJSON = response.getClientDataJSON();
+        attestationObject = response.getAttestationObject();
+    }
+
+    @Benchmark
+    public WebAuthnRegistrationRequestValidationResponse validate() {
+        return target.validate(request, clientDataJSON, attestationObject, transports, null);
+    }
+
+    private ClientPlatform createClientPlatform() {
+        switch (format) {
+            case "none":
+            case "packed":
+                return new ClientPlatform(BenchmarkCredential.ORIGIN, new WebAuthnAuthenticatorAdaptor(new PackedAuthenticator()));
+            case "fido-u2f":
+                return new ClientPlatform(BenchmarkCredential.ORIGIN, new FIDOU2FAuthenticatorAdaptor());
+            case "tpm":
+                return new ClientPlatform(BenchmarkCredential.ORIGIN, new WebAuthnAuthenticatorAdaptor(new TPMAuthenticator()));
+            default:
+                throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+    }
+}
@@ -21,13 +21,25 @@ import com.webauthn4j.authenticator.Authenticator;
 import com.webauthn4j.data.AuthenticationParameters;
 import com.webauthn4j.data.AuthenticationRequest;
 import com.webauthn4j.util.exception.WebAuthnException;
+import net.sharplab.springframework.security.webauthn.authenticator.AuthenticatorUsageUpdatePolicy;
+import net.sharplab.springframework.security.webauthn.authenticator.AuthenticatorUsageUpdatePolicyImpl;
 import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticatorService;
 import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import net.sharplab.springframework.security.webauthn.jfr.FlightRecorderUtil;
+import net.sharplab.springframework.security.webauthn.metrics.NoOpWebAuthnMetrics;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetrics;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetricsUtil;
+import net.sharplab.springframework.security.webauthn.userdetails.AuthenticatorCounterListener;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserAuthenticator;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserAuthenticatorResolver;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserAuthenticatorResolverImpl;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetails;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
 import net.sharplab.springframework.security.webauthn.util.ExceptionUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.support.MessageSourceAccessor;
 import org.springframework.security.authentication.*;
 import org.springframework.security.core.Authentication;
@@ -39,13 +51,16 @@ import org.springframework.security.core.userdetails.UserDetailsChecker;
 import org.springframework.util.Assert;
 
 import java.io.Serializable;
-import java.util.Arrays;
+import java.time.Instant;
 import java.util.Objects;
 
 /**
  * An {@link AuthenticationProvider} implementation for processing {@link WebAuthnAssertionAuthenticationToken}
+ * <p>
+ * Unless {@link #setMetrics(WebAuthnMetrics)} is called, the durations of the user lookup, the validation and the
+ * counter update are recorded to the {@link WebAuthnMetrics} resolved from the {@link ApplicationContext}.
  */
-public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
+public class WebAuthnAuthenticationProvider implements AuthenticationProvider, ApplicationContextAware {
 
     //~ Instance fields
     // ================================================================================================
@@ -54,6 +69,8 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
 
     protected MessageSourceAccessor messages = SpringSecurityWebAuthnMessageSource.getAccessor();
     private WebAuthnUserDetailsService userDetailsService;
+    private WebAuthnUserAuthenticatorResolver userAuthenticatorResolver;
+    private boolean userAuthenticatorResolverSet = false;
     private WebAuthnAuthenticatorService authenticatorService;
     private WebAuthnManager webAuthnManager;
     private boolean forcePrincipalAsString = false;
@@ -61,6 +78,10 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
     private UserDetailsChecker preAuthenticationChecks = new DefaultPreAuthenticationChecks();
     private UserDetailsChecker postAuthenticationChecks = new DefaultPostAuthenticationChecks();
     private GrantedAuthoritiesMapper authoritiesMapper = new NullAuthoritiesMapper();
+    private AuthenticatorUsageUpdatePolicy usageUpdatePolicy = new AuthenticatorUsageUpdatePolicyImpl();
+    private WebAuthnMetrics metrics = NoOpWebAuthnMetrics.INSTANCE;
+    private boolean metricsSet = false;
+    private boolean stacklessFailures = false;
 
     // ~ Constructor
     // ========================================================================================================
@@ -75,6 +96,7 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
         Assert.notNull(webAuthnManager, "webAuthnManager must not be null");
 
         this.userDetailsService = userDetailsService;
+        this.userAuthenticatorResolver = createDefaultUserAuthenticatorResolver(userDetailsService);
         this.authenticatorService = authenticatorService;
         this.webAuthnManager = webAuthnManager;
     }
@@ -98,25 +120,35 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
         if (credentials == null) {
             logger.debug("Authentication failed: no credentials provided");
 
-            throw new BadCredentialsException(messages.getMessage(
-                    "WebAuthnAuthenticationProvider.badCredentials",
-                    "Bad credentials"));
+            throw badCredentials();
         }
 
         byte[] credentialId = credentials.getCredentialId();
 
-        WebAuthnUserDetails user = retrieveWebAuthnUserDetails(credentialId);
-        Authenticator authenticator = user.getAuthenticators().stream()
-                .filter(item -> Arrays.equals(item.getAttestedCredentialData().getCredentialId(), credentialId))
-                .findFirst()
-                .orElse(null);
+        WebAuthnUserAuthenticator userAuthenticator = metrics.time(WebAuthnMetrics.AUTHENTICATION_TIMER,
+                () -> retrieveWebAuthnUserAuthenticator(credentialId), WebAuthnMetrics.STAGE_TAG, "user-lookup");
+        WebAuthnUserDetails user = userAuthenticator.getUserDetails();
+        Authenticator authenticator = userAuthenticator.getAuthenticator();
+        long previousCounter = authenticatorService.getLatestCounter(credentialId, authenticator.getCounter());
+        authenticator.setCounter(previousCounter);
 
         preAuthenticationChecks.check(user);
         doAuthenticate(authenticationToken, authenticator, user);
         postAuthenticationChecks.check(user);
 
-        //noinspection ConstantConditions
-        authenticatorService.updateCounter(credentialId, authenticator.getCounter());
+        Instant usedAt = Instant.now();
+        if (usageUpdatePolicy.isUpdateRequired(credentialId, previousCounter, authenticator.getCounter(), usedAt)) {
+            Instant lastUsedAt = usageUpdatePolicy.isLastUsedTimeTracked() ? usedAt : null;
+            metrics.time(WebAuthnMetrics.AUTHENTICATION_TIMER,
+                    () -> FlightRecorderUtil.recordStage(FlightRecorderUtil.AUTHENTICATION, "counter-persistence", credentialId, () -> {
+                        authenticatorService.updateCounter(credentialId, authenticator.getCounter(), lastUsedAt);
+                        return null;
+                    }),
+                    WebAuthnMetrics.STAGE_TAG, "counter-update");
+            if (userDetailsService instanceof AuthenticatorCounterListener) {
+                ((AuthenticatorCounterListener) userDetailsService).onCounterUpdated(user.getUsername(), credentialId, authenticator.getCounter());
+            }
+        }
 
         Serializable principalToReturn = user;
 
@@ -161,11 +193,15 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
                 credentials.getExpectedAuthenticationExtensionIds()
         );
 
-        try {
-            webAuthnManager.validate(authenticationRequest, authenticationParameters);
-        } catch (WebAuthnException e) {
-            throw ExceptionUtil.wrapWithAuthenticationException(e);
-        }
+        metrics.time(WebAuthnMetrics.AUTHENTICATION_TIMER,
+                () -> FlightRecorderUtil.recordStage(FlightRecorderUtil.AUTHENTICATION, "signature-validation", credentials.getCredentialId(), () -> {
+                    try {
+                        return webAuthnManager.validate(authenticationRequest, authenticationParameters);
+                    } catch (WebAuthnException e) {
+                        throw ExceptionUtil.wrapWithAuthenticationException(e, metrics, !stacklessFailures);
+                    }
+                }),
+                WebAuthnMetrics.STAGE_TAG, "validate");
 
     }
 
@@ -197,12 +233,64 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
         this.hideCredentialIdNotFoundExceptions = hideCredentialIdNotFoundExceptions;
     }
 
+    public boolean isStacklessFailures() {
+        return stacklessFailures;
+    }
+
+    /**
+     * Setting this property to <code>true</code> skips capturing stack traces of the exceptions thrown on
+     * authentication failures, which otherwise dominates the cost of rejecting requests with unknown credentials
+     * or bad signatures.
+     *
+     * @param stacklessFailures set to <code>true</code> to throw exceptions without stack traces
+     *                          (defaults to <code>false</code>)
+     */
+    public void setStacklessFailures(boolean stacklessFailures) {
+        this.stacklessFailures = stacklessFailures;
+    }
+
     protected WebAuthnUserDetailsService getUserDetailsService() {
         return userDetailsService;
     }
 
+    /**
+     * Sets the {@link WebAuthnUserDetailsService}. Unless a {@link WebAuthnUserAuthenticatorResolver} has been set
+     * with {@link #setUserAuthenticatorResolver(WebAuthnUserAuthenticatorResolver)}, the resolver is reset to the
+     * default one for the specified service.
+     *
+     * @param userDetailsService the {@link WebAuthnUserDetailsService}
+     */
     public void setUserDetailsService(WebAuthnUserDetailsService userDetailsService) {
+        Assert.notNull(userDetailsService, "userDetailsService must not be null");
         this.userDetailsService = userDetailsService;
+        if (!userAuthenticatorResolverSet) {
+            this.userAuthenticatorResolver = createDefaultUserAuthenticatorResolver(userDetailsService);
+        }
+    }
+
+    protected WebAuthnUserAuthenticatorResolver getUserAuthenticatorResolver() {
+        return userAuthenticatorResolver;
+    }
+
+    /**
+     * Sets the strategy to resolve the user and the authenticator from the credentialId.
+     * By default, the {@link WebAuthnUserDetailsService} itself is used if it implements
+     * {@link WebAuthnUserAuthenticatorResolver}, and a {@link WebAuthnUserAuthenticatorResolverImpl} delegating to it
+     * otherwise.
+     *
+     * @param userAuthenticatorResolver the {@link WebAuthnUserAuthenticatorResolver}
+     */
+    public void setUserAuthenticatorResolver(WebAuthnUserAuthenticatorResolver userAuthenticatorResolver) {
+        Assert.notNull(userAuthenticatorResolver, "userAuthenticatorResolver must not be null");
+        this.userAuthenticatorResolver = userAuthenticatorResolver;
+        this.userAuthenticatorResolverSet = true;
+    }
+
+    private static WebAuthnUserAuthenticatorResolver createDefaultUserAuthenticatorResolver(WebAuthnUserDetailsService userDetailsService) {
+        if (userDetailsService instanceof WebAuthnUserAuthenticatorResolver) {
+            return (WebAuthnUserAuthenticatorResolver) userDetailsService;
+        }
+        return new WebAuthnUserAuthenticatorResolverImpl(userDetailsService);
     }
 
     protected UserDetailsChecker getPreAuthenticationChecks() {
@@ -227,27 +315,66 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
         this.postAuthenticationChecks = postAuthenticationChecks;
     }
 
-    WebAuthnUserDetails retrieveWebAuthnUserDetails(byte[] credentialId) {
-        WebAuthnUserDetails user;
+    protected AuthenticatorUsageUpdatePolicy getUsageUpdatePolicy() {
+        return usageUpdatePolicy;
+    }
+
+    /**
+     * Sets the policy deciding whether the counter and the last used time of the authenticator are persisted
+     * after a successful authentication. By default, a {@link AuthenticatorUsageUpdatePolicyImpl} is used,
+     * which persists them only when the counter changed.
+     *
+     * @param usageUpdatePolicy the {@link AuthenticatorUsageUpdatePolicy}
+     */
+    public void setUsageUpdatePolicy(AuthenticatorUsageUpdatePolicy usageUpdatePolicy) {
+        Assert.notNull(usageUpdatePolicy, "usageUpdatePolicy must not be null");
+        this.usageUpdatePolicy = usageUpdatePolicy;
+    }
+
+    /**
+     * Resolves the {@link WebAuthnMetrics} from the {@link ApplicationContext} unless it is set explicitly.
+     *
+     * @param applicationContext the {@link ApplicationContext}
+     */
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) {
+        if (!metricsSet) {
+            this.metrics = WebAuthnMetricsUtil.getWebAuthnMetrics(applicationContext);
+        }
+    }
+
+    protected WebAuthnMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the {@link WebAuthnMetrics} to record the durations of the authentication stages.
+     *
+     * @param metrics the {@link WebAuthnMetrics}
+     */
+    public void setMetrics(WebAuthnMetrics metrics) {
+        Assert.notNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+        this.metricsSet = true;
+    }
+
+    WebAuthnUserAuthenticator retrieveWebAuthnUserAuthenticator(byte[] credentialId) {
         try {
-            user = userDetailsService.loadUserByCredentialId(credentialId);
+            return userAuthenticatorResolver.resolveByCredentialId(credentialId);
         } catch (CredentialIdNotFoundException notFound) {
             if (hideCredentialIdNotFoundExceptions) {
-                throw new BadCredentialsException(messages.getMessage(
-                        "WebAuthnAuthenticationProvider.badCredentials",
-                        "Bad credentials"));
+                throw badCredentials();
             } else {
                 throw notFound;
             }
         } catch (Exception repositoryProblem) {
             throw new InternalAuthenticationServiceException(repositoryProblem.getMessage(), repositoryProblem);
         }
+    }
 
-        if (user == null) {
-            throw new InternalAuthenticationServiceException(
-                    "UserDetailsService returned null, which is an interface contract violation");
-        }
-        return user;
+    BadCredentialsException badCredentials() {
+        String message = messages.getMessage("WebAuthnAuthenticationProvider.badCredentials", "Bad credentials");
+        return stacklessFailures ? new StacklessBadCredentialsException(message) : new BadCredentialsException(message);
     }
 
     boolean isUserVerificationRequired(WebAuthnUserDetails user, net.sharplab.springframework.security.webauthn.request.WebAuthnAuthenticationRequest credentials) {
@@ -291,6 +418,20 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
         }
     }
 
+    private static class StacklessBadCredentialsException extends BadCredentialsException {
+
+        private static final long serialVersionUID = 1L;
+
+        StacklessBadCredentialsException(String message) {
+            super(message);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
     private class DefaultPostAuthenticationChecks implements UserDetailsChecker {
         @Override
         public void check(UserDetails user) {
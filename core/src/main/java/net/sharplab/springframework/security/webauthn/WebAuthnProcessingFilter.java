@@ -17,6 +17,10 @@
 package net.sharplab.springframework.security.webauthn;
 
 import com.webauthn4j.server.ServerProperty;
+import net.sharplab.springframework.security.webauthn.jfr.FlightRecorderUtil;
+import net.sharplab.springframework.security.webauthn.metrics.NoOpWebAuthnMetrics;
+import net.sharplab.springframework.security.webauthn.metrics.ServerTimingRecorder;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetrics;
 import net.sharplab.springframework.security.webauthn.request.WebAuthnAuthenticationRequest;
 import net.sharplab.springframework.security.webauthn.server.ServerPropertyProvider;
 import org.springframework.http.HttpMethod;
@@ -82,6 +86,9 @@ public class WebAuthnProcessingFilter extends UsernamePasswordAuthenticationFilt
 
     private boolean postOnly = true;
 
+    private WebAuthnMetrics metrics = NoOpWebAuthnMetrics.INSTANCE;
+    private double serverTimingSamplingRate = 0;
+
     // ~ Constructors
     // ===================================================================================================
 
@@ -112,6 +119,14 @@ public class WebAuthnProcessingFilter extends UsernamePasswordAuthenticationFilt
 
     @Override
     public Authentication attemptAuthentication(HttpServletRequest request, HttpServletResponse response) {
+        ServerTimingRecorder serverTimingRecorder = ServerTimingRecorder.sample(serverTimingSamplingRate);
+        Authentication authentication = serverTimingRecorder.record(() -> doAttemptAuthentication(request));
+        // not reported on failure, as the stages reached would tell whether the credentialId exists
+        serverTimingRecorder.writeHeader(response);
+        return authentication;
+    }
+
+    private Authentication doAttemptAuthentication(HttpServletRequest request) {
         if (postOnly && !HttpMethod.POST.matches(request.getMethod())) {
             throw new AuthenticationServiceException(
                     "Authentication method not supported: " + request.getMethod());
@@ -130,12 +145,17 @@ public class WebAuthnProcessingFilter extends UsernamePasswordAuthenticationFilt
         if (StringUtils.isEmpty(credentialId)) {
             authRequest = new UsernamePasswordAuthenticationToken(username, password, authorities);
         } else {
-            byte[] rawId = Base64Utils.decodeFromUrlSafeString(credentialId);
-            byte[] rawClientData = Base64Utils.decodeFromUrlSafeString(clientDataJSON);
-            byte[] rawAuthenticatorData = Base64Utils.decodeFromUrlSafeString(authenticatorData);
-            byte[] signatureBytes = Base64Utils.decodeFromUrlSafeString(signature);
-
-            ServerProperty serverProperty = serverPropertyProvider.provide(request);
+            byte[][] decoded = metrics.time(WebAuthnMetrics.PROCESSING_FILTER_TIMER,
+                    () -> FlightRecorderUtil.recordStage(FlightRecorderUtil.AUTHENTICATION, "decode",
+                            () -> decode(credentialId, clientDataJSON, authenticatorData, signature)),
+                    WebAuthnMetrics.STAGE_TAG, "decode");
+            byte[] rawId = decoded[0];
+            byte[] rawClientData = decoded[1];
+            byte[] rawAuthenticatorData = decoded[2];
+            byte[] signatureBytes = decoded[3];
+
+            ServerProperty serverProperty = metrics.time(WebAuthnMetrics.PROCESSING_FILTER_TIMER,
+                    () -> serverPropertyProvider.provide(request), WebAuthnMetrics.STAGE_TAG, "server-property");
 
             WebAuthnAuthenticationRequest webAuthnAuthenticationRequest = new WebAuthnAuthenticationRequest(
                     rawId,
@@ -156,6 +176,14 @@ public class WebAuthnProcessingFilter extends UsernamePasswordAuthenticationFilt
         return this.getAuthenticationManager().authenticate(authRequest);
     }
 
+    private static byte[][] decode(String... base64urlValues) {
+        byte[][] decoded = new byte[base64urlValues.length][];
+        for (int i = 0; i < base64urlValues.length; i++) {
+            decoded[i] = Base64Utils.decodeFromUrlSafeString(base64urlValues[i]);
+        }
+        return decoded;
+    }
+
     /**
      * Defines whether only HTTP POST requests will be allowed by this filter. If set to
      * true, and an authentication request is received which is not a POST request, an
@@ -233,6 +261,36 @@ public class WebAuthnProcessingFilter extends UsernamePasswordAuthenticationFilt
         this.serverPropertyProvider = serverPropertyProvider;
     }
 
+    public WebAuthnMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the {@link WebAuthnMetrics} to record the durations of decoding the request and providing the server property.
+     *
+     * @param metrics the {@link WebAuthnMetrics}
+     */
+    public void setMetrics(WebAuthnMetrics metrics) {
+        Assert.notNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+    }
+
+    public double getServerTimingSamplingRate() {
+        return serverTimingSamplingRate;
+    }
+
+    /**
+     * Sets the fraction of authentication requests whose stage durations are reported in a <code>Server-Timing</code>
+     * response header. Defaults to <code>0.0</code>, which disables the header. The header is only added to successful
+     * authentications.
+     *
+     * @param serverTimingSamplingRate the fraction between 0.0 and 1.0
+     */
+    public void setServerTimingSamplingRate(double serverTimingSamplingRate) {
+        Assert.isTrue(serverTimingSamplingRate >= 0 && serverTimingSamplingRate <= 1, "serverTimingSamplingRate must be between 0.0 and 1.0");
+        this.serverTimingSamplingRate = serverTimingSamplingRate;
+    }
+
 
     private String obtainClientDataJSON(HttpServletRequest request) {
         return request.getParameter(clientDataJSONParameter);
@@ -23,8 +23,15 @@ import com.webauthn4j.data.RegistrationRequest;
 import com.webauthn4j.server.ServerProperty;
 import com.webauthn4j.util.Base64UrlUtil;
 import com.webauthn4j.util.exception.WebAuthnException;
+import net.sharplab.springframework.security.webauthn.jfr.FlightRecorderUtil;
+import net.sharplab.springframework.security.webauthn.metrics.NoOpWebAuthnMetrics;
+import net.sharplab.springframework.security.webauthn.metrics.ServerTimingRecorder;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetrics;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetricsUtil;
 import net.sharplab.springframework.security.webauthn.server.ServerPropertyProvider;
 import net.sharplab.springframework.security.webauthn.util.ExceptionUtil;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
 import org.springframework.util.Assert;
 
 import javax.servlet.http.HttpServletRequest;
@@ -32,7 +39,18 @@ import java.util.List;
 import java.util.Set;
 
 
-public class WebAuthnRegistrationRequestValidator {
+/**
+ * Validates WebAuthn registration requests
+ * <p>
+ * Unless {@link #setMetrics(WebAuthnMetrics)} is called, the durations of the validation are recorded per attestation
+ * format to the {@link WebAuthnMetrics} resolved from the {@link ApplicationContext}.
+ */
+public class WebAuthnRegistrationRequestValidator implements ApplicationContextAware {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final String UNKNOWN_FORMAT = "unknown";
 
     // ~ Instance fields
     // ================================================================================================
@@ -41,6 +59,9 @@ public class WebAuthnRegistrationRequestValidator {
 
     private List<String> expectedRegistrationExtensionIds;
 
+    private WebAuthnMetrics metrics = NoOpWebAuthnMetrics.INSTANCE;
+    private boolean metricsSet = false;
+
     // ~ Constructors
     // ===================================================================================================
 
@@ -68,45 +89,75 @@ public class WebAuthnRegistrationRequestValidator {
                                                                   Set<String> transports,
                                                                   String clientExtensionsJSON
     ) {
-        Assert.notNull(httpServletRequest, "httpServletRequest must not be null");
         Assert.hasText(clientDataBase64url, "clientDataBase64url must have text");
         Assert.hasText(attestationObjectBase64url, "attestationObjectBase64url must have text");
+
+        byte[][] decoded = FlightRecorderUtil.recordStage(FlightRecorderUtil.REGISTRATION, "decode",
+                () -> new byte[][]{Base64UrlUtil.decode(clientDataBase64url), Base64UrlUtil.decode(attestationObjectBase64url)});
+        return validate(
+                httpServletRequest,
+                decoded[0],
+                decoded[1],
+                transports,
+                clientExtensionsJSON);
+    }
+
+    /**
+     * Validates a registration request whose clientDataJSON and attestationObject are already Base64url-decoded.
+     * The returned response carries the parsed {@link com.webauthn4j.data.client.CollectedClientData} and
+     * {@link com.webauthn4j.data.attestation.AttestationObject}, so callers don't need to parse them again.
+     *
+     * @param httpServletRequest     request
+     * @param clientDataJSON         decoded clientDataJSON
+     * @param attestationObject      decoded attestationObject
+     * @param transports             transports
+     * @param clientExtensionsJSON   clientExtensionsJSON
+     * @return validation response
+     */
+    public WebAuthnRegistrationRequestValidationResponse validate(HttpServletRequest httpServletRequest,
+                                                                  byte[] clientDataJSON,
+                                                                  byte[] attestationObject,
+                                                                  Set<String> transports,
+                                                                  String clientExtensionsJSON
+    ) {
+        Assert.notNull(httpServletRequest, "httpServletRequest must not be null");
+        Assert.notNull(clientDataJSON, "clientDataJSON must not be null");
+        Assert.notNull(attestationObject, "attestationObject must not be null");
         if (transports != null) {
             transports.forEach(transport -> Assert.hasText(transport, "each transport must have text"));
         }
 
         RegistrationRequest webAuthnRegistrationRequest =
-                createRegistrationRequest(clientDataBase64url, attestationObjectBase64url, transports, clientExtensionsJSON);
+                new RegistrationRequest(attestationObject, clientDataJSON, clientExtensionsJSON, transports);
         RegistrationParameters webAuthnRegistrationParameters =
                 createRegistrationParameters(httpServletRequest);
 
+        long start = System.nanoTime();
+        String outcome = WebAuthnMetrics.OUTCOME_SUCCESS;
+        String format = UNKNOWN_FORMAT;
         try {
-            RegistrationData response = webAuthnManager.validate(webAuthnRegistrationRequest,webAuthnRegistrationParameters);
+            RegistrationData response = FlightRecorderUtil.recordStage(FlightRecorderUtil.REGISTRATION, "attestation-validation", null,
+                    () -> webAuthnManager.validate(webAuthnRegistrationRequest, webAuthnRegistrationParameters),
+                    registrationData -> registrationData.getAttestationObject().getFormat());
+            format = response.getAttestationObject().getFormat();
             return new WebAuthnRegistrationRequestValidationResponse(
                     response.getCollectedClientData(),
                     response.getAttestationObject(),
                     response.getClientExtensions());
         } catch (WebAuthnException e) {
-            throw ExceptionUtil.wrapWithAuthenticationException(e);
+            RuntimeException exception = ExceptionUtil.wrapWithAuthenticationException(e, metrics);
+            outcome = exception.getClass().getSimpleName();
+            throw exception;
+        } catch (RuntimeException e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            long durationNanos = System.nanoTime() - start;
+            metrics.recordTime(WebAuthnMetrics.REGISTRATION_TIMER, durationNanos, outcome, WebAuthnMetrics.FORMAT_TAG, format);
+            ServerTimingRecorder.recordTime(WebAuthnMetrics.REGISTRATION_TIMER, durationNanos, WebAuthnMetrics.FORMAT_TAG, format);
         }
     }
 
-    RegistrationRequest createRegistrationRequest(String clientDataBase64,
-                                                          String attestationObjectBase64,
-                                                          Set<String> transports,
-                                                          String clientExtensionsJSON) {
-
-        byte[] clientDataBytes = Base64UrlUtil.decode(clientDataBase64);
-        byte[] attestationObjectBytes = Base64UrlUtil.decode(attestationObjectBase64);
-
-        return new RegistrationRequest(
-                attestationObjectBytes,
-                clientDataBytes,
-                clientExtensionsJSON,
-                transports
-        );
-    }
-
     RegistrationParameters createRegistrationParameters(HttpServletRequest request){
         ServerProperty serverProperty = serverPropertyProvider.provide(request);
         return new RegistrationParameters(
@@ -125,4 +176,31 @@ public class WebAuthnRegistrationRequestValidator {
         Assert.notNull(expectedRegistrationExtensionIds, "expectedRegistrationExtensionIds must not be null");
         this.expectedRegistrationExtensionIds = expectedRegistrationExtensionIds;
     }
+
+    /**
+     * Resolves the {@link WebAuthnMetrics} from the {@link ApplicationContext} unless it is set explicitly.
+     *
+     * @param applicationContext the {@link ApplicationContext}
+     */
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) {
+        if (!metricsSet) {
+            this.metrics = WebAuthnMetricsUtil.getWebAuthnMetrics(applicationContext);
+        }
+    }
+
+    public WebAuthnMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the {@link WebAuthnMetrics} to record the durations of the validation.
+     *
+     * @param metrics the {@link WebAuthnMetrics}
+     */
+    public void setMetrics(WebAuthnMetrics metrics) {
+        Assert.notNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+        this.metricsSet = true;
+    }
 }
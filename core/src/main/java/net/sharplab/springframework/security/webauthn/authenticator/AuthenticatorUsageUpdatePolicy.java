@@ -0,0 +1,49 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sharplab.springframework.security.webauthn.authenticator;
+
+import java.time.Instant;
+
+/**
+ * Decides whether the usage of an authenticator, i.e. its counter and last used time, needs to be persisted
+ * after a successful authentication
+ *
+ * @see AuthenticatorUsageUpdatePolicyImpl
+ */
+public interface AuthenticatorUsageUpdatePolicy {
+
+    /**
+     * Returns whether {@link WebAuthnAuthenticatorService#updateCounter(byte[], long, Instant)} needs to be called
+     *
+     * @param credentialId    credentialId
+     * @param previousCounter counter of the authenticator before the authentication
+     * @param currentCounter  counter reported by the authenticator on the authentication
+     * @param usedAt          time of the authentication
+     * @return true if the usage needs to be persisted
+     */
+    boolean isUpdateRequired(byte[] credentialId, long previousCounter, long currentCounter, Instant usedAt);
+
+    /**
+     * Returns whether the last used time is persisted. If <code>false</code>, <code>null</code> is passed to
+     * {@link WebAuthnAuthenticatorService#updateCounter(byte[], long, Instant)} as the last used time.
+     *
+     * @return true if the last used time is persisted
+     */
+    default boolean isLastUsedTimeTracked() {
+        return true;
+    }
+
+}
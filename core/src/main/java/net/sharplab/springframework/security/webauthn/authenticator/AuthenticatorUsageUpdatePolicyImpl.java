@@ -0,0 +1,108 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sharplab.springframework.security.webauthn.authenticator;
+
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An {@link AuthenticatorUsageUpdatePolicy} implementation which elides writes not changing the counter.
+ * <p>
+ * Authenticators not implementing a signature counter always report zero, so persisting their counter on every
+ * authentication is a no-op write. This policy requires an update only if the counter changed. If
+ * <code>lastUsedGranularity</code> is set, an update is also required when the authentication falls into a
+ * different time slot of that length than the last persisted one, so that the last used time is kept with
+ * the configured precision while a frequently used authenticator does not cause a write on every authentication.
+ * <p>
+ * The time slot of the last persisted usage is tracked in memory per node. When more than
+ * <code>maximumTrackedAuthenticators</code> are tracked, the tracking is reset, which causes at most one
+ * additional write per authenticator.
+ */
+public class AuthenticatorUsageUpdatePolicyImpl implements AuthenticatorUsageUpdatePolicy {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final int DEFAULT_MAXIMUM_TRACKED_AUTHENTICATORS = 100000;
+
+    //~ Instance fields
+    // ================================================================================================
+    private long lastUsedGranularity = 0;
+    private int maximumTrackedAuthenticators = DEFAULT_MAXIMUM_TRACKED_AUTHENTICATORS;
+    private final Map<ByteBuffer, Long> lastUsedSlots = new ConcurrentHashMap<>();
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isUpdateRequired(byte[] credentialId, long previousCounter, long currentCounter, Instant usedAt) {
+        if (lastUsedGranularity == 0) {
+            return currentCounter != previousCounter;
+        }
+
+        long slot = usedAt.toEpochMilli() / lastUsedGranularity;
+        ByteBuffer key = ByteBuffer.wrap(credentialId.clone());
+        Long lastUsedSlot = lastUsedSlots.get(key);
+        if (currentCounter == previousCounter && lastUsedSlot != null && lastUsedSlot == slot) {
+            return false;
+        }
+        if (lastUsedSlots.size() >= maximumTrackedAuthenticators) {
+            lastUsedSlots.clear();
+        }
+        lastUsedSlots.put(key, slot);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isLastUsedTimeTracked() {
+        return lastUsedGranularity != 0;
+    }
+
+    public long getLastUsedGranularity() {
+        return lastUsedGranularity;
+    }
+
+    /**
+     * Sets the precision of the persisted last used time in milliseconds.
+     * <code>0</code> (default) disables last used time tracking: only counter changes are persisted, and the
+     * persisted last used time is left unchanged.
+     *
+     * @param lastUsedGranularity precision of the last used time in milliseconds
+     */
+    public void setLastUsedGranularity(long lastUsedGranularity) {
+        Assert.isTrue(lastUsedGranularity >= 0, "lastUsedGranularity must not be negative");
+        this.lastUsedGranularity = lastUsedGranularity;
+    }
+
+    public int getMaximumTrackedAuthenticators() {
+        return maximumTrackedAuthenticators;
+    }
+
+    public void setMaximumTrackedAuthenticators(int maximumTrackedAuthenticators) {
+        Assert.isTrue(maximumTrackedAuthenticators > 0, "maximumTrackedAuthenticators must be positive");
+        this.maximumTrackedAuthenticators = maximumTrackedAuthenticators;
+    }
+}
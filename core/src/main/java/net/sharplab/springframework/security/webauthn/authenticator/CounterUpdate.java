@@ -0,0 +1,106 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sharplab.springframework.security.webauthn.authenticator;
+
+import com.webauthn4j.util.ArrayUtil;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A counter value to be persisted for the authenticator identified by the credentialId
+ *
+ * @see WebAuthnAuthenticatorService#updateCounters(java.util.Collection)
+ */
+public class CounterUpdate implements Serializable {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final long serialVersionUID = 1L;
+
+    // ~ Instance fields
+    // ================================================================================================
+    private final byte[] credentialId;
+    private final long counter;
+    private final Instant lastUsedAt;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param credentialId credentialId
+     * @param counter      counter
+     */
+    public CounterUpdate(byte[] credentialId, long counter) {
+        this(credentialId, counter, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param credentialId credentialId
+     * @param counter      counter
+     * @param lastUsedAt   last used time, or <code>null</code> if it is not to be updated
+     */
+    public CounterUpdate(byte[] credentialId, long counter, Instant lastUsedAt) {
+        this.credentialId = ArrayUtil.clone(credentialId);
+        this.counter = counter;
+        this.lastUsedAt = lastUsedAt;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    public byte[] getCredentialId() {
+        return ArrayUtil.clone(credentialId);
+    }
+
+    public long getCounter() {
+        return counter;
+    }
+
+    public Instant getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CounterUpdate that = (CounterUpdate) o;
+        return counter == that.counter &&
+                Arrays.equals(credentialId, that.credentialId) &&
+                Objects.equals(lastUsedAt, that.lastUsedAt);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(counter, lastUsedAt);
+        result = 31 * result + Arrays.hashCode(credentialId);
+        return result;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.authenticator;
+
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.support.JdbcDaoSupport;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link WebAuthnAuthenticatorService} backed by JDBC, for the schema shipped with
+ * {@link net.sharplab.springframework.security.webauthn.userdetails.JdbcWebAuthnUserDetailsService}.
+ * <p>
+ * {@link #updateCounters(Collection)} sends all the updates in a single JDBC batch, which makes this service a suitable
+ * delegate of {@link WriteBehindWebAuthnAuthenticatorService}.
+ * <p>
+ * Counters only ever increase: an update carrying a counter lower than the stored one, such as a stale update
+ * flushed late by another node, leaves the row unchanged.
+ */
+public class JdbcWebAuthnAuthenticatorService extends JdbcDaoSupport implements WebAuthnAuthenticatorService {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final String DEF_UPDATE_COUNTER_SQL =
+            "update webauthn_authenticators set counter = ?, last_used_at = coalesce(?, last_used_at) where credential_id = ? and counter <= ?";
+    public static final String DEF_CREDENTIAL_ID_EXISTS_QUERY =
+            "select count(*) from webauthn_authenticators where credential_id = ?";
+
+    //~ Instance fields
+    // ================================================================================================
+    private String updateCounterSql = DEF_UPDATE_COUNTER_SQL;
+    private String credentialIdExistsQuery = DEF_CREDENTIAL_ID_EXISTS_QUERY;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public JdbcWebAuthnAuthenticatorService(DataSource dataSource) {
+        Assert.notNull(dataSource, "dataSource must not be null");
+        setDataSource(dataSource);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public void updateCounter(byte[] credentialId, long counter) {
+        updateCounter(credentialId, counter, null);
+    }
+
+    @Override
+    public void updateCounter(byte[] credentialId, long counter, Instant lastUsedAt) {
+        int updated = getJdbcTemplate().update(updateCounterSql, ps -> setCounterParameters(ps, credentialId, counter, lastUsedAt));
+        if (updated == 0 && !credentialIdExists(credentialId)) {
+            throw new CredentialIdNotFoundException("CredentialId not found");
+        }
+    }
+
+    /**
+     * Updates the counters in a single JDBC batch. If some of the authenticators are not found, the other counters
+     * are still updated before {@link CredentialIdNotFoundException} is thrown.
+     *
+     * @param counterUpdates counter values to be persisted
+     */
+    @Override
+    public void updateCounters(Collection<CounterUpdate> counterUpdates) {
+        if (counterUpdates.isEmpty()) {
+            return;
+        }
+        List<CounterUpdate> updates = new ArrayList<>(counterUpdates);
+        int[] updateCounts = getJdbcTemplate().batchUpdate(updateCounterSql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                CounterUpdate update = updates.get(i);
+                setCounterParameters(ps, update.getCredentialId(), update.getCounter(), update.getLastUsedAt());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return updates.size();
+            }
+        });
+        for (int i = 0; i < updateCounts.length; i++) {
+            // drivers may report Statement.SUCCESS_NO_INFO instead of the count
+            if (updateCounts[i] == 0 && !credentialIdExists(updates.get(i).getCredentialId())) {
+                throw new CredentialIdNotFoundException("CredentialId not found");
+            }
+        }
+    }
+
+    /**
+     * Allows the default SQL used to update a counter to be overridden.
+     *
+     * @param updateCounterSql SQL, with the counter, the last used time (possibly <code>null</code>), the
+     *                         credentialId and the counter again, to guard against decreasing it, as the parameters
+     */
+    public void setUpdateCounterSql(String updateCounterSql) {
+        Assert.hasText(updateCounterSql, "updateCounterSql must have text");
+        this.updateCounterSql = updateCounterSql;
+    }
+
+    /**
+     * Allows the default query string used to tell a missing authenticator from a stale counter update to be
+     * overridden.
+     *
+     * @param credentialIdExistsQuery query string, with the credentialId as the parameter, returning the number of
+     *                                matching authenticators
+     */
+    public void setCredentialIdExistsQuery(String credentialIdExistsQuery) {
+        Assert.hasText(credentialIdExistsQuery, "credentialIdExistsQuery must have text");
+        this.credentialIdExistsQuery = credentialIdExistsQuery;
+    }
+
+    private boolean credentialIdExists(byte[] credentialId) {
+        Integer count = getJdbcTemplate().queryForObject(credentialIdExistsQuery, Integer.class, (Object) credentialId);
+        return count != null && count > 0;
+    }
+
+    private void setCounterParameters(PreparedStatement ps, byte[] credentialId, long counter, Instant lastUsedAt) throws SQLException {
+        ps.setLong(1, counter);
+        if (lastUsedAt == null) {
+            ps.setNull(2, Types.TIMESTAMP);
+        } else {
+            ps.setTimestamp(2, Timestamp.from(lastUsedAt));
+        }
+        ps.setBytes(3, credentialId);
+        ps.setLong(4, counter);
+    }
+}
@@ -18,6 +18,9 @@ package net.sharplab.springframework.security.webauthn.authenticator;
 
 import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
 
+import java.time.Instant;
+import java.util.Collection;
+
 /**
  * Core interface for manipulating persisted authenticator
  */
@@ -33,4 +36,44 @@ public interface WebAuthnAuthenticatorService {
     @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
     void updateCounter(byte[] credentialId, long counter) throws CredentialIdNotFoundException;
 
+    /**
+     * Updates Authenticator counter and last used time.
+     * Implementations not tracking last used time can rely on the default, which only updates the counter.
+     *
+     * @param credentialId credentialId
+     * @param counter      counter
+     * @param lastUsedAt   last used time, or <code>null</code> if it is not to be updated
+     * @throws CredentialIdNotFoundException if the authenticator could not be found
+     */
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    default void updateCounter(byte[] credentialId, long counter, Instant lastUsedAt) throws CredentialIdNotFoundException {
+        updateCounter(credentialId, counter);
+    }
+
+    /**
+     * Updates counters of multiple authenticators.
+     * Implementations backed by a store supporting batch updates should override this method.
+     *
+     * @param counterUpdates counter values to be persisted
+     * @throws CredentialIdNotFoundException if one of the authenticators could not be found
+     */
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    default void updateCounters(Collection<CounterUpdate> counterUpdates) throws CredentialIdNotFoundException {
+        for (CounterUpdate counterUpdate : counterUpdates) {
+            updateCounter(counterUpdate.getCredentialId(), counterUpdate.getCounter(), counterUpdate.getLastUsedAt());
+        }
+    }
+
+    /**
+     * Returns the latest counter of the authenticator. Implementations deferring counter persistence return
+     * the counter not persisted yet if it is newer than the loaded one.
+     *
+     * @param credentialId  credentialId
+     * @param loadedCounter counter of the authenticator loaded from the user store
+     * @return the latest counter
+     */
+    default long getLatestCounter(byte[] credentialId, long loadedCounter) {
+        return loadedCounter;
+    }
+
 }
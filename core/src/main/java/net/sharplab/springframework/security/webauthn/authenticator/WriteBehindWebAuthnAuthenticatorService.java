@@ -0,0 +1,251 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sharplab.springframework.security.webauthn.authenticator;
+
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link WebAuthnAuthenticatorService} decorator which persists counters asynchronously.
+ * <p>
+ * {@code updateCounter} only records the counter and the last used time in memory. Repeated updates of the same
+ * authenticator are coalesced to the latest value, and recorded counters are flushed to the delegate through
+ * {@link WebAuthnAuthenticatorService#updateCounters(java.util.Collection)} periodically, or as soon as the number of
+ * pending authenticators reaches the batch size. A counter stays visible through
+ * {@link #getLatestCounter(byte[], long)} until its write completes, so that the signature counter check is performed
+ * against the latest value. At most one flush triggered by the batch size is queued at a time. Pending counters are
+ * flushed on {@link #destroy()}, and counters updated afterwards are written through to the delegate synchronously.
+ * <p>
+ * Counters not flushed yet are lost if the process terminates abnormally.
+ */
+public class WriteBehindWebAuthnAuthenticatorService implements WebAuthnAuthenticatorService, DisposableBean {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000L;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    //~ Instance fields
+    // ================================================================================================
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final WebAuthnAuthenticatorService delegate;
+    private final int batchSize;
+    private final Map<ByteBuffer, CounterUpdate> pendingCounters = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private volatile boolean destroyed = false;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor with the default flush interval and batch size
+     *
+     * @param delegate the {@link WebAuthnAuthenticatorService} counters are flushed to
+     */
+    public WriteBehindWebAuthnAuthenticatorService(WebAuthnAuthenticatorService delegate) {
+        this(delegate, DEFAULT_FLUSH_INTERVAL, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param delegate      the {@link WebAuthnAuthenticatorService} counters are flushed to
+     * @param flushInterval interval of the periodic flush in milliseconds
+     * @param batchSize     maximum number of counters passed to a single <code>updateCounters</code> call
+     */
+    public WriteBehindWebAuthnAuthenticatorService(WebAuthnAuthenticatorService delegate, long flushInterval, int batchSize) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.isTrue(flushInterval > 0, "flushInterval must be positive");
+        Assert.isTrue(batchSize > 0, "batchSize must be positive");
+
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("webauthn-counter-flush-");
+        threadFactory.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.scheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Records the counter to be persisted later
+     *
+     * @param credentialId credentialId
+     * @param counter      counter
+     */
+    @Override
+    public void updateCounter(byte[] credentialId, long counter) {
+        updateCounter(credentialId, counter, null);
+    }
+
+    /**
+     * Records the counter and the last used time to be persisted later
+     *
+     * @param credentialId credentialId
+     * @param counter      counter
+     * @param lastUsedAt   last used time, or <code>null</code> if it is not to be updated
+     */
+    @Override
+    public void updateCounter(byte[] credentialId, long counter, Instant lastUsedAt) {
+        pendingCounters.merge(toKey(credentialId), new CounterUpdate(credentialId, counter, lastUsedAt), this::coalesce);
+        // checked after the merge, so that a counter recorded concurrently with destroy() is flushed by either of them
+        if (destroyed) {
+            flush();
+        } else if (pendingCounters.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::requestedFlush);
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+                flush();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLatestCounter(byte[] credentialId, long loadedCounter) {
+        CounterUpdate pendingCounter = pendingCounters.get(toKey(credentialId));
+        long latestCounter = delegate.getLatestCounter(credentialId, loadedCounter);
+        return pendingCounter == null ? latestCounter : Math.max(pendingCounter.getCounter(), latestCounter);
+    }
+
+    /**
+     * Writes pending counters to the delegate.
+     * Counters updated while being written are kept pending for the next flush.
+     */
+    public synchronized void flush() {
+        List<CounterUpdate> batch = new ArrayList<>(batchSize);
+        for (CounterUpdate counterUpdate : pendingCounters.values()) {
+            batch.add(counterUpdate);
+            if (batch.size() == batchSize) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    /**
+     * Returns the number of authenticators whose counter is not persisted yet
+     *
+     * @return the number of pending counters
+     */
+    public int getPendingCount() {
+        return pendingCounters.size();
+    }
+
+    /**
+     * Stops the periodic flush and writes pending counters
+     */
+    @Override
+    public void destroy() {
+        destroyed = true;
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(DEFAULT_FLUSH_INTERVAL, TimeUnit.MILLISECONDS)) {
+                logger.warn("Counter flush task did not terminate in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    public WebAuthnAuthenticatorService getDelegate() {
+        return delegate;
+    }
+
+    private void write(List<CounterUpdate> batch) {
+        try {
+            delegate.updateCounters(new ArrayList<>(batch));
+        } catch (CredentialIdNotFoundException e) {
+            // fall back to individual updates to drop counters of removed authenticators
+            writeIndividually(batch);
+            return;
+        }
+        batch.forEach(this::removeIfUnchanged);
+    }
+
+    private void writeIndividually(List<CounterUpdate> batch) {
+        for (CounterUpdate counterUpdate : batch) {
+            try {
+                delegate.updateCounter(counterUpdate.getCredentialId(), counterUpdate.getCounter(), counterUpdate.getLastUsedAt());
+            } catch (CredentialIdNotFoundException e) {
+                logger.debug("Authenticator is removed before its counter is persisted", e);
+            }
+            removeIfUnchanged(counterUpdate);
+        }
+    }
+
+    private void removeIfUnchanged(CounterUpdate counterUpdate) {
+        pendingCounters.remove(toKey(counterUpdate.getCredentialId()), counterUpdate);
+    }
+
+    private CounterUpdate coalesce(CounterUpdate current, CounterUpdate update) {
+        Instant lastUsedAt;
+        if (current.getLastUsedAt() == null) {
+            lastUsedAt = update.getLastUsedAt();
+        } else if (update.getLastUsedAt() == null || current.getLastUsedAt().isAfter(update.getLastUsedAt())) {
+            lastUsedAt = current.getLastUsedAt();
+        } else {
+            lastUsedAt = update.getLastUsedAt();
+        }
+        return new CounterUpdate(update.getCredentialId(), Math.max(current.getCounter(), update.getCounter()), lastUsedAt);
+    }
+
+    private void requestedFlush() {
+        flushRequested.set(false);
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Failed to flush authenticator counters", e);
+        }
+    }
+
+    private ByteBuffer toKey(byte[] credentialId) {
+        return ByteBuffer.wrap(credentialId.clone());
+    }
+}
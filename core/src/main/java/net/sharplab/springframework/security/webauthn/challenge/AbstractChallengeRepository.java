@@ -0,0 +1,49 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import net.sharplab.springframework.security.webauthn.util.EntropyPool;
+
+/**
+ * Base class of {@link ChallengeRepository} implementations, which generates a {@link Challenge} from an
+ * {@link EntropyPool} if it is set, or directly from {@link java.security.SecureRandom} otherwise.
+ */
+public abstract class AbstractChallengeRepository implements ChallengeRepository {
+
+    //~ Instance fields
+    // ================================================================================================
+    private EntropyPool entropyPool = null;
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public Challenge generateChallenge() {
+        return entropyPool == null ? new DefaultChallenge() : new DefaultChallenge(entropyPool.nextBytes());
+    }
+
+    public EntropyPool getEntropyPool() {
+        return entropyPool;
+    }
+
+    public void setEntropyPool(EntropyPool entropyPool) {
+        this.entropyPool = entropyPool;
+    }
+}
@@ -71,5 +71,18 @@ public interface ChallengeRepository {
         return challenge;
     }
 
+    /**
+     * Loads the {@link Challenge} expected by the verification of the {@link HttpServletRequest}.
+     * Implementations supporting single-use challenges remove it atomically, so that it cannot be
+     * verified twice. For backward compatibility, the default implementation delegates to
+     * {@link #loadOrGenerateChallenge(HttpServletRequest)}.
+     *
+     * @param request the {@link HttpServletRequest} to use
+     * @return the {@link Challenge} or null if none exists
+     */
+    default Challenge consumeChallenge(HttpServletRequest request) {
+        return this.loadOrGenerateChallenge(request);
+    }
+
 }
 
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * A filter that exposes the {@link HttpServletResponse} to {@link ChallengeRepository} implementations
+ * which carry a token to the client, as {@link ChallengeRepository#saveChallenge} only receives the
+ * {@link HttpServletRequest}.
+ *
+ * @see SealedChallengeRepository
+ * @see StoredChallengeRepository
+ */
+public class ChallengeRepositoryResponseFilter extends OncePerRequestFilter {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    static final String RESPONSE_ATTR_NAME = ChallengeRepositoryResponseFilter.class.getName().concat(".RESPONSE");
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        request.setAttribute(RESPONSE_ATTR_NAME, response);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            request.removeAttribute(RESPONSE_ATTR_NAME);
+        }
+    }
+
+    static HttpServletResponse getResponse(HttpServletRequest request) {
+        HttpServletResponse response = (HttpServletResponse) request.getAttribute(RESPONSE_ATTR_NAME);
+        if (response == null) {
+            throw new IllegalStateException("HttpServletResponse is not available. ChallengeRepositoryResponseFilter must be registered.");
+        }
+        return response;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import org.springframework.util.Assert;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An AES key identified by a key id, used by {@link SealedChallengeRepository} to seal
+ * and unseal challenge tokens. The key id is embedded into every token so that a token
+ * sealed by a retired key can still be opened while the key remains registered.
+ */
+public class ChallengeSealingKey {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    static final int MAXIMUM_KEY_ID_LENGTH = 255;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final String keyId;
+    private final SecretKey secretKey;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public ChallengeSealingKey(String keyId, byte[] secret) {
+        Assert.hasLength(keyId, "keyId must not be null or empty");
+        Assert.isTrue(keyId.getBytes(StandardCharsets.UTF_8).length <= MAXIMUM_KEY_ID_LENGTH, "keyId must not be longer than 255 bytes");
+        Assert.notNull(secret, "secret must not be null");
+        Assert.isTrue(secret.length == 16 || secret.length == 24 || secret.length == 32, "secret must be 16, 24 or 32 bytes long");
+        this.keyId = keyId;
+        this.secretKey = new SecretKeySpec(secret, "AES");
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    public String getKeyId() {
+        return keyId;
+    }
+
+    SecretKey getSecretKey() {
+        return secretKey;
+    }
+}
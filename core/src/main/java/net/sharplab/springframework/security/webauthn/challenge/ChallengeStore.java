@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import java.util.Collection;
+
+/**
+ * A key/value store for challenges, typically backed by a cache shared by all nodes of a cluster.
+ * <p>
+ * Implementations are expected to expire entries by themselves after their time to live, using the native
+ * expiry of the backing store where available, so that {@link StoredChallengeRepository} needs one round-trip to
+ * issue a challenge ({@link #put}) and one to verify it ({@link #take}), plus one ({@link #removeAll}) to remove
+ * the challenge a new one replaces.
+ *
+ * @see StoredChallengeRepository
+ * @see InMemoryChallengeStore
+ */
+public interface ChallengeStore {
+
+    /**
+     * Stores the value under the key, replacing an existing one
+     *
+     * @param key        key
+     * @param value      value
+     * @param timeToLive time to live in milliseconds
+     */
+    void put(String key, byte[] value, long timeToLive);
+
+    /**
+     * Returns the value stored under the key
+     *
+     * @param key key
+     * @return the value, or null if none exists or it has expired
+     */
+    byte[] get(String key);
+
+    /**
+     * Returns and removes the value stored under the key atomically, so that only one caller can take it
+     *
+     * @param key key
+     * @return the value, or null if none exists or it has expired
+     */
+    byte[] take(String key);
+
+    /**
+     * Removes the value stored under the key
+     *
+     * @param key key
+     */
+    void remove(String key);
+
+    /**
+     * Removes the values stored under the keys. Implementations backed by a remote store should override
+     * this method to remove them in one pipelined round-trip.
+     *
+     * @param keys keys
+     */
+    default void removeAll(Collection<String> keys) {
+        for (String key : keys) {
+            remove(key);
+        }
+    }
+}
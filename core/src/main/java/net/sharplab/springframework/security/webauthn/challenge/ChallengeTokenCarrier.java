@@ -0,0 +1,110 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import org.springframework.util.Assert;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Reads and writes a challenge token with the configured {@link ChallengeTokenTransport}
+ */
+class ChallengeTokenCarrier {
+
+    //~ Instance fields
+    // ================================================================================================
+    private ChallengeTokenTransport tokenTransport = ChallengeTokenTransport.COOKIE;
+    private String cookieName;
+    private String headerName;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    ChallengeTokenCarrier(String cookieName, String headerName) {
+        this.cookieName = cookieName;
+        this.headerName = headerName;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    String readToken(HttpServletRequest request) {
+        if (tokenTransport == ChallengeTokenTransport.COOKIE) {
+            Cookie cookie = WebUtils.getCookie(request, cookieName);
+            return cookie == null || cookie.getValue().isEmpty() ? null : cookie.getValue();
+        } else {
+            return request.getHeader(headerName);
+        }
+    }
+
+    void writeToken(HttpServletRequest request, String token) {
+        HttpServletResponse response = ChallengeRepositoryResponseFilter.getResponse(request);
+        if (tokenTransport == ChallengeTokenTransport.COOKIE) {
+            response.addCookie(createCookie(request, token, -1));
+        } else {
+            response.setHeader(headerName, token);
+        }
+    }
+
+    void clearToken(HttpServletRequest request) {
+        HttpServletResponse response = ChallengeRepositoryResponseFilter.getResponse(request);
+        if (tokenTransport == ChallengeTokenTransport.COOKIE) {
+            response.addCookie(createCookie(request, "", 0));
+        }
+    }
+
+    private Cookie createCookie(HttpServletRequest request, String value, int maxAge) {
+        Cookie cookie = new Cookie(cookieName, value);
+        String contextPath = request.getContextPath();
+        cookie.setPath(contextPath.isEmpty() ? "/" : contextPath);
+        cookie.setSecure(request.isSecure());
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge(maxAge);
+        return cookie;
+    }
+
+    ChallengeTokenTransport getTokenTransport() {
+        return tokenTransport;
+    }
+
+    void setTokenTransport(ChallengeTokenTransport tokenTransport) {
+        Assert.notNull(tokenTransport, "tokenTransport must not be null");
+        this.tokenTransport = tokenTransport;
+    }
+
+    String getCookieName() {
+        return cookieName;
+    }
+
+    void setCookieName(String cookieName) {
+        Assert.hasLength(cookieName, "cookieName must not be null or empty");
+        this.cookieName = cookieName;
+    }
+
+    String getHeaderName() {
+        return headerName;
+    }
+
+    void setHeaderName(String headerName) {
+        Assert.hasLength(headerName, "headerName must not be null or empty");
+        this.headerName = headerName;
+    }
+}
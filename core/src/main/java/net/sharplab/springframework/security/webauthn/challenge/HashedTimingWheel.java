@@ -0,0 +1,135 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A hashed timing wheel that tracks key deadlines in fixed-width time slots, so that expired keys can be
+ * found by visiting only the slots passed since the last advance instead of scanning every key.
+ * <p>
+ * The wheel is advanced lazily by callers; no background thread is involved. A key whose deadline is further
+ * than one revolution away is kept in its slot until a later revolution reaches its deadline.
+ */
+class HashedTimingWheel<K> {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final long tickDuration;
+    private final List<Queue<Timeout<K>>> wheel;
+    private final int mask;
+    private final ReentrantLock advanceLock = new ReentrantLock();
+    private long lastTick;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param tickDuration the width of a slot in milliseconds
+     * @param wheelSize    the number of slots, rounded up to a power of two
+     * @param startTime    the current time in milliseconds
+     */
+    HashedTimingWheel(long tickDuration, int wheelSize, long startTime) {
+        Assert.isTrue(tickDuration > 0, "tickDuration must be positive");
+        Assert.isTrue(wheelSize > 0 && wheelSize <= (1 << 30), "wheelSize must be between 1 and 2^30");
+        int normalizedSize = 1;
+        while (normalizedSize < wheelSize) {
+            normalizedSize <<= 1;
+        }
+        this.tickDuration = tickDuration;
+        List<Queue<Timeout<K>>> slots = new ArrayList<>(normalizedSize);
+        for (int i = 0; i < normalizedSize; i++) {
+            slots.add(new ConcurrentLinkedQueue<>());
+        }
+        this.wheel = slots;
+        this.mask = normalizedSize - 1;
+        this.lastTick = startTime / tickDuration - 1;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Registers the deadline of the key
+     *
+     * @param key      key
+     * @param deadline deadline in milliseconds
+     */
+    void schedule(K key, long deadline) {
+        wheel.get((int) ((deadline / tickDuration) & mask)).add(new Timeout<>(key, deadline));
+    }
+
+    /**
+     * Visits the slots completed since the last advance, and hands the keys whose deadline has passed to the handler.
+     * If another thread is already advancing the wheel, this method returns immediately.
+     *
+     * @param now            the current time in milliseconds
+     * @param expiredHandler the handler of expired keys
+     */
+    void advance(long now, Consumer<K> expiredHandler) {
+        if (!advanceLock.tryLock()) {
+            return;
+        }
+        try {
+            // only slots whose time range has completely passed are visited
+            long completedTick = now / tickDuration - 1;
+            long ticks = Math.min(completedTick - lastTick, wheel.size());
+            for (long i = 0; i < ticks; i++) {
+                expireSlot(wheel.get((int) ((completedTick - i) & mask)), now, expiredHandler);
+            }
+            if (completedTick > lastTick) {
+                lastTick = completedTick;
+            }
+        } finally {
+            advanceLock.unlock();
+        }
+    }
+
+    private void expireSlot(Queue<Timeout<K>> slot, long now, Consumer<K> expiredHandler) {
+        List<Timeout<K>> pending = new ArrayList<>();
+        Timeout<K> timeout;
+        while ((timeout = slot.poll()) != null) {
+            if (timeout.deadline <= now) {
+                expiredHandler.accept(timeout.key);
+            } else {
+                pending.add(timeout);
+            }
+        }
+        slot.addAll(pending);
+    }
+
+    private static class Timeout<K> {
+
+        private final K key;
+        private final long deadline;
+
+        Timeout(K key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -17,7 +17,6 @@
 package net.sharplab.springframework.security.webauthn.challenge;
 
 import com.webauthn4j.data.client.challenge.Challenge;
-import com.webauthn4j.data.client.challenge.DefaultChallenge;
 import org.springframework.security.web.csrf.HttpSessionCsrfTokenRepository;
 import org.springframework.util.Assert;
 
@@ -29,7 +28,7 @@ import javax.servlet.http.HttpSession;
  * <p>
  * Class design is based on {@link HttpSessionCsrfTokenRepository}
  */
-public class HttpSessionChallengeRepository implements ChallengeRepository {
+public class HttpSessionChallengeRepository extends AbstractChallengeRepository {
 
     // ~ Static fields/initializers
     // =====================================================================================
@@ -44,11 +43,6 @@ public class HttpSessionChallengeRepository implements ChallengeRepository {
     // ~ Methods
     // ========================================================================================================
 
-    @Override
-    public Challenge generateChallenge() {
-        return new DefaultChallenge();
-    }
-
     @Override
     public void saveChallenge(Challenge challenge, HttpServletRequest request) {
         if (challenge == null) {
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.util.Base64UrlUtil;
+import org.springframework.util.Assert;
+
+import javax.servlet.http.HttpServletRequest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A {@link ChallengeRepository} implementation that keeps challenges in memory, keyed by a short opaque handle
+ * carried by a cookie or a header, as {@link StoredChallengeRepository} does. No session is created.
+ * <p>
+ * Unlike {@link HttpSessionChallengeRepository}, a challenge expires after its own time to live, and it is
+ * single-use: {@link #consumeChallenge(HttpServletRequest)} removes it atomically. The time to live should cover
+ * the larger of {@code registrationTimeout} and {@code authenticationTimeout} configured to
+ * {@link net.sharplab.springframework.security.webauthn.options.OptionsProviderImpl}, as one challenge is shared by
+ * both ceremonies. A new handle is issued every time a challenge is saved, and the challenge of the handle it
+ * replaces is removed. Expired challenges are evicted through a {@link HashedTimingWheel}, advanced by the requests
+ * themselves. As the repository writes to the {@link javax.servlet.http.HttpServletResponse},
+ * {@link ChallengeRepositoryResponseFilter} must be placed in front of the filters that save challenges.
+ * <p>
+ * As any anonymous client can have a challenge saved, at most <code>maximumChallenges</code> challenges are held.
+ * Beyond it, the oldest challenges are evicted, so that a flood of options requests cannot exhaust the heap; the
+ * ceremonies they belong to then fail as if their challenge had expired.
+ * <p>
+ * In strict mode, which is the default, {@link #consumeChallenge(HttpServletRequest)} never generates a
+ * challenge, so that the verification of a request does not create state.
+ */
+public class InMemoryChallengeRepository extends AbstractChallengeRepository {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final int DEFAULT_MAXIMUM_CHALLENGES = 100000;
+
+    private static final String HANDLE_ATTR_NAME = InMemoryChallengeRepository.class.getName().concat(".HANDLE");
+
+    private static final String DEFAULT_COOKIE_NAME = "WEBAUTHN-CHALLENGE-HANDLE";
+    private static final String DEFAULT_HEADER_NAME = "X-WEBAUTHN-CHALLENGE-HANDLE";
+    private static final long DEFAULT_TIME_TO_LIVE = 300000; // 5 minutes
+    private static final long TICK_DURATION = 1000;
+    private static final int WHEEL_SIZE = 512;
+    private static final int HANDLE_LENGTH = 16;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final Map<String, Entry> challenges = new ConcurrentHashMap<>();
+    // handles in the order they were issued, which is also the order they expire in
+    private final Queue<String> issueOrder = new ConcurrentLinkedQueue<>();
+    private final HashedTimingWheel<String> timingWheel;
+    private final ChallengeTokenCarrier tokenCarrier = new ChallengeTokenCarrier(DEFAULT_COOKIE_NAME, DEFAULT_HEADER_NAME);
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final long timeToLive;
+    private final Clock clock;
+    private boolean strict = true;
+    private int maximumChallenges = DEFAULT_MAXIMUM_CHALLENGES;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public InMemoryChallengeRepository() {
+        this(DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param timeToLive time to live of a challenge in milliseconds
+     */
+    public InMemoryChallengeRepository(long timeToLive) {
+        this(timeToLive, Clock.systemUTC());
+    }
+
+    InMemoryChallengeRepository(long timeToLive, Clock clock) {
+        Assert.isTrue(timeToLive > 0, "timeToLive must be positive");
+        Assert.notNull(clock, "clock must not be null");
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.timingWheel = new HashedTimingWheel<>(TICK_DURATION, WHEEL_SIZE, clock.millis());
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public void saveChallenge(Challenge challenge, HttpServletRequest request) {
+        long now = clock.millis();
+        expireChallenges(now);
+        removeReplacedChallenges(request);
+        if (challenge == null) {
+            tokenCarrier.clearToken(request);
+            request.removeAttribute(HANDLE_ATTR_NAME);
+        } else {
+            String handle = generateHandle();
+            long expiresAt = now + timeToLive;
+            challenges.put(handle, new Entry(challenge, expiresAt));
+            issueOrder.add(handle);
+            timingWheel.schedule(handle, expiresAt);
+            evictOldestChallenges();
+            tokenCarrier.writeToken(request, handle);
+            request.setAttribute(HANDLE_ATTR_NAME, handle);
+        }
+    }
+
+    @Override
+    public Challenge loadChallenge(HttpServletRequest request) {
+        long now = clock.millis();
+        expireChallenges(now);
+        String handle = getHandle(request);
+        Entry entry = handle == null ? null : challenges.get(handle);
+        return entry == null || entry.isExpired(now) ? null : entry.challenge;
+    }
+
+    @Override
+    public Challenge consumeChallenge(HttpServletRequest request) {
+        long now = clock.millis();
+        expireChallenges(now);
+        String handle = getHandle(request);
+        Entry entry = handle == null ? null : challenges.remove(handle);
+        if (entry != null && !entry.isExpired(now)) {
+            return entry.challenge;
+        }
+        if (strict) {
+            return null;
+        }
+        Challenge challenge = generateChallenge();
+        saveChallenge(challenge, request);
+        return challenge;
+    }
+
+    /**
+     * Returns the number of challenges held, including expired ones not evicted yet
+     *
+     * @return the number of challenges
+     */
+    public int size() {
+        return challenges.size();
+    }
+
+    private String getHandle(HttpServletRequest request) {
+        String issuedHandle = (String) request.getAttribute(HANDLE_ATTR_NAME);
+        return issuedHandle != null ? issuedHandle : tokenCarrier.readToken(request);
+    }
+
+    private void removeReplacedChallenges(HttpServletRequest request) {
+        String requestHandle = tokenCarrier.readToken(request);
+        if (requestHandle != null) {
+            challenges.remove(requestHandle);
+        }
+        String issuedHandle = (String) request.getAttribute(HANDLE_ATTR_NAME);
+        if (issuedHandle != null) {
+            challenges.remove(issuedHandle);
+        }
+    }
+
+    private void expireChallenges(long now) {
+        timingWheel.advance(now, key -> challenges.computeIfPresent(key, (k, entry) -> entry.isExpired(now) ? null : entry));
+        // drops the handles of challenges already expired, consumed or replaced from the head of the issue order
+        String handle;
+        while ((handle = issueOrder.peek()) != null && !challenges.containsKey(handle)) {
+            issueOrder.remove(handle);
+        }
+    }
+
+    private void evictOldestChallenges() {
+        while (challenges.size() > maximumChallenges) {
+            String handle = issueOrder.poll();
+            if (handle == null) {
+                return;
+            }
+            challenges.remove(handle);
+        }
+    }
+
+    private String generateHandle() {
+        byte[] handle = new byte[HANDLE_LENGTH];
+        secureRandom.nextBytes(handle);
+        return Base64UrlUtil.encodeToString(handle);
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public boolean isStrict() {
+        return strict;
+    }
+
+    /**
+     * Sets whether {@link #consumeChallenge(HttpServletRequest)} must not generate a challenge when none exists
+     *
+     * @param strict true not to generate a challenge on verification
+     */
+    public void setStrict(boolean strict) {
+        this.strict = strict;
+    }
+
+    public int getMaximumChallenges() {
+        return maximumChallenges;
+    }
+
+    /**
+     * Sets the maximum number of challenges held. Beyond it, the oldest challenges are evicted.
+     * Defaults to {@link #DEFAULT_MAXIMUM_CHALLENGES}.
+     *
+     * @param maximumChallenges the maximum number of challenges
+     */
+    public void setMaximumChallenges(int maximumChallenges) {
+        Assert.isTrue(maximumChallenges > 0, "maximumChallenges must be positive");
+        this.maximumChallenges = maximumChallenges;
+    }
+
+    public ChallengeTokenTransport getTokenTransport() {
+        return tokenCarrier.getTokenTransport();
+    }
+
+    public void setTokenTransport(ChallengeTokenTransport tokenTransport) {
+        tokenCarrier.setTokenTransport(tokenTransport);
+    }
+
+    public String getCookieName() {
+        return tokenCarrier.getCookieName();
+    }
+
+    public void setCookieName(String cookieName) {
+        tokenCarrier.setCookieName(cookieName);
+    }
+
+    public String getHeaderName() {
+        return tokenCarrier.getHeaderName();
+    }
+
+    public void setHeaderName(String headerName) {
+        tokenCarrier.setHeaderName(headerName);
+    }
+
+    private static class Entry {
+
+        private final Challenge challenge;
+        private final long expiresAt;
+
+        Entry(Challenge challenge, long expiresAt) {
+            this.challenge = challenge;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import org.springframework.util.Assert;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An embedded {@link ChallengeStore} implementation, which can be used for tests and single node deployments
+ * in place of an external cache.
+ * <p>
+ * Expired entries are collected in batches through a {@link HashedTimingWheel}, advanced by the store operations
+ * themselves.
+ */
+public class InMemoryChallengeStore implements ChallengeStore {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final long TICK_DURATION = 1000;
+    private static final int WHEEL_SIZE = 512;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final HashedTimingWheel<String> timingWheel;
+    private final Clock clock;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public InMemoryChallengeStore() {
+        this(Clock.systemUTC());
+    }
+
+    InMemoryChallengeStore(Clock clock) {
+        Assert.notNull(clock, "clock must not be null");
+        this.clock = clock;
+        this.timingWheel = new HashedTimingWheel<>(TICK_DURATION, WHEEL_SIZE, clock.millis());
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public void put(String key, byte[] value, long timeToLive) {
+        Assert.notNull(key, "key must not be null");
+        Assert.notNull(value, "value must not be null");
+        Assert.isTrue(timeToLive > 0, "timeToLive must be positive");
+        long now = clock.millis();
+        expireEntries(now);
+        long expiresAt = now + timeToLive;
+        entries.put(key, new Entry(value.clone(), expiresAt));
+        timingWheel.schedule(key, expiresAt);
+    }
+
+    @Override
+    public byte[] get(String key) {
+        long now = clock.millis();
+        expireEntries(now);
+        Entry entry = entries.get(key);
+        return entry == null || entry.isExpired(now) ? null : entry.value.clone();
+    }
+
+    @Override
+    public byte[] take(String key) {
+        long now = clock.millis();
+        expireEntries(now);
+        Entry entry = entries.remove(key);
+        return entry == null || entry.isExpired(now) ? null : entry.value;
+    }
+
+    @Override
+    public void remove(String key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        for (String key : keys) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Returns the number of entries held, including expired ones not evicted yet
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void expireEntries(long now) {
+        List<String> expiredKeys = new ArrayList<>();
+        timingWheel.advance(now, expiredKeys::add);
+        // a key re-used after it was scheduled must survive the expiry of its former entry
+        for (String key : expiredKeys) {
+            entries.computeIfPresent(key, (k, entry) -> entry.isExpired(now) ? null : entry);
+        }
+    }
+
+    private static class Entry {
+
+        private final byte[] value;
+        private final long expiresAt;
+
+        Entry(byte[] value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+    }
+}
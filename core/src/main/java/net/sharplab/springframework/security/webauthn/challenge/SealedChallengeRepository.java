@@ -0,0 +1,298 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.util.Base64UrlUtil;
+import net.sharplab.springframework.security.webauthn.util.ServletUtil;
+import org.springframework.util.Assert;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.servlet.http.HttpServletRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stateless {@link ChallengeRepository} implementation that seals the challenge, its issue time
+ * and the RP ID it is bound to into an AES-GCM encrypted token, which is carried by a cookie or
+ * a header instead of {@link javax.servlet.http.HttpSession}.
+ * <p>
+ * The first registered {@link ChallengeSealingKey} is used to seal new tokens, while every registered
+ * key can open a token, which allows keys to be rotated without invalidating challenges in flight.
+ * As the repository writes to the {@link javax.servlet.http.HttpServletResponse},
+ * {@link ChallengeRepositoryResponseFilter} must be placed in front of the filters that save challenges.
+ * <p>
+ * Note that a sealed challenge cannot be revoked on the server side: it stays acceptable until it
+ * expires, even after the browser discarded it. {@link #consumeChallenge(HttpServletRequest)} expires the cookie,
+ * but a captured assertion can be replayed within the time to live for authenticators whose signature counter
+ * stays 0.
+ *
+ * @see ChallengeRepositoryResponseFilter
+ */
+public class SealedChallengeRepository extends AbstractChallengeRepository {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final String CHALLENGE_ATTR_NAME = SealedChallengeRepository.class.getName().concat(".CHALLENGE");
+    private static final Object NO_CHALLENGE = new Object();
+
+    private static final String DEFAULT_COOKIE_NAME = "WEBAUTHN-CHALLENGE";
+    private static final String DEFAULT_HEADER_NAME = "X-WEBAUTHN-CHALLENGE";
+    private static final long DEFAULT_TIME_TO_LIVE = 300000; // 5 minutes
+
+    private static final byte TOKEN_VERSION = 1;
+    private static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final ChallengeSealingKey primaryKey;
+    private final Map<String, ChallengeSealingKey> keys;
+    private final Clock clock;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    private final ChallengeTokenCarrier tokenCarrier = new ChallengeTokenCarrier(DEFAULT_COOKIE_NAME, DEFAULT_HEADER_NAME);
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+    private String rpId = null;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param keys the keys accepted to open tokens. The first one is used to seal new tokens.
+     */
+    public SealedChallengeRepository(List<ChallengeSealingKey> keys) {
+        this(keys, Clock.systemUTC());
+    }
+
+    public SealedChallengeRepository(ChallengeSealingKey... keys) {
+        this(Arrays.asList(keys));
+    }
+
+    SealedChallengeRepository(List<ChallengeSealingKey> keys, Clock clock) {
+        Assert.notEmpty(keys, "keys must not be empty");
+        Assert.noNullElements(keys.toArray(), "keys must not contain null");
+        Assert.notNull(clock, "clock must not be null");
+        Map<String, ChallengeSealingKey> keyMap = new LinkedHashMap<>();
+        for (ChallengeSealingKey key : keys) {
+            Assert.isTrue(keyMap.put(key.getKeyId(), key) == null, "keys must not contain duplicated keyId");
+        }
+        this.primaryKey = keys.get(0);
+        this.keys = Collections.unmodifiableMap(keyMap);
+        this.clock = clock;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public void saveChallenge(Challenge challenge, HttpServletRequest request) {
+        if (challenge == null) {
+            tokenCarrier.clearToken(request);
+            request.setAttribute(CHALLENGE_ATTR_NAME, NO_CHALLENGE);
+        } else {
+            tokenCarrier.writeToken(request, seal(challenge, getEffectiveRpId(request)));
+            request.setAttribute(CHALLENGE_ATTR_NAME, challenge);
+        }
+    }
+
+    @Override
+    public Challenge loadChallenge(HttpServletRequest request) {
+        Object cached = request.getAttribute(CHALLENGE_ATTR_NAME);
+        if (cached != null) {
+            return cached == NO_CHALLENGE ? null : (Challenge) cached;
+        }
+        String token = tokenCarrier.readToken(request);
+        Challenge challenge = token == null ? null : unseal(token, getEffectiveRpId(request));
+        request.setAttribute(CHALLENGE_ATTR_NAME, challenge == null ? NO_CHALLENGE : challenge);
+        return challenge;
+    }
+
+    /**
+     * Loads the sealed {@link Challenge} without generating one, as generating a challenge on verification
+     * cannot help it succeed, and expires the cookie carrying it. A sealed challenge cannot be removed on the server
+     * side: a copy of the token stays acceptable until it expires.
+     *
+     * @param request the {@link HttpServletRequest} to use
+     * @return the {@link Challenge} or null if none exists
+     */
+    @Override
+    public Challenge consumeChallenge(HttpServletRequest request) {
+        Challenge challenge = loadChallenge(request);
+        if (challenge != null) {
+            tokenCarrier.clearToken(request);
+            request.setAttribute(CHALLENGE_ATTR_NAME, NO_CHALLENGE);
+        }
+        return challenge;
+    }
+
+    String seal(Challenge challenge, String effectiveRpId) {
+        byte[] rpIdBytes = effectiveRpId.getBytes(StandardCharsets.UTF_8);
+        byte[] challengeBytes = challenge.getValue();
+        byte[] plaintext = ByteBuffer.allocate(Long.BYTES + Short.BYTES + rpIdBytes.length + challengeBytes.length)
+                .putLong(clock.millis())
+                .putShort((short) rpIdBytes.length)
+                .put(rpIdBytes)
+                .put(challengeBytes)
+                .array();
+
+        byte[] header = createHeader(primaryKey);
+        byte[] iv = new byte[IV_LENGTH];
+        secureRandom.nextBytes(iv);
+        byte[] ciphertext;
+        try {
+            Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, primaryKey.getSecretKey(), new GCMParameterSpec(TAG_LENGTH, iv));
+            cipher.updateAAD(header);
+            ciphertext = cipher.doFinal(plaintext);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to seal challenge", e);
+        }
+        byte[] token = ByteBuffer.allocate(header.length + iv.length + ciphertext.length)
+                .put(header)
+                .put(iv)
+                .put(ciphertext)
+                .array();
+        return Base64UrlUtil.encodeToString(token);
+    }
+
+    Challenge unseal(String token, String effectiveRpId) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64UrlUtil.decode(token));
+            if (buffer.get() != TOKEN_VERSION) {
+                return null;
+            }
+            byte[] keyIdBytes = new byte[Byte.toUnsignedInt(buffer.get())];
+            buffer.get(keyIdBytes);
+            ChallengeSealingKey key = keys.get(new String(keyIdBytes, StandardCharsets.UTF_8));
+            if (key == null) {
+                return null;
+            }
+            byte[] iv = new byte[IV_LENGTH];
+            buffer.get(iv);
+            byte[] ciphertext = new byte[buffer.remaining()];
+            buffer.get(ciphertext);
+
+            Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key.getSecretKey(), new GCMParameterSpec(TAG_LENGTH, iv));
+            cipher.updateAAD(createHeader(key));
+            ByteBuffer plaintext = ByteBuffer.wrap(cipher.doFinal(ciphertext));
+
+            long issuedAt = plaintext.getLong();
+            long now = clock.millis();
+            if (issuedAt > now || now - issuedAt > timeToLive) {
+                return null;
+            }
+            byte[] rpIdBytes = new byte[Short.toUnsignedInt(plaintext.getShort())];
+            plaintext.get(rpIdBytes);
+            if (!new String(rpIdBytes, StandardCharsets.UTF_8).equals(effectiveRpId)) {
+                return null;
+            }
+            byte[] challengeBytes = new byte[plaintext.remaining()];
+            plaintext.get(challengeBytes);
+            return new DefaultChallenge(challengeBytes);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            // malformed, tampered or foreign tokens are treated as absent
+            return null;
+        }
+    }
+
+    private byte[] createHeader(ChallengeSealingKey key) {
+        byte[] keyIdBytes = key.getKeyId().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(2 + keyIdBytes.length)
+                .put(TOKEN_VERSION)
+                .put((byte) keyIdBytes.length)
+                .put(keyIdBytes)
+                .array();
+    }
+
+    private String getEffectiveRpId(HttpServletRequest request) {
+        return rpId != null ? rpId : ServletUtil.getOrigin(request).getHost();
+    }
+
+    public List<ChallengeSealingKey> getKeys() {
+        return new ArrayList<>(keys.values());
+    }
+
+    public ChallengeTokenTransport getTokenTransport() {
+        return tokenCarrier.getTokenTransport();
+    }
+
+    public void setTokenTransport(ChallengeTokenTransport tokenTransport) {
+        tokenCarrier.setTokenTransport(tokenTransport);
+    }
+
+    public String getCookieName() {
+        return tokenCarrier.getCookieName();
+    }
+
+    public void setCookieName(String cookieName) {
+        tokenCarrier.setCookieName(cookieName);
+    }
+
+    public String getHeaderName() {
+        return tokenCarrier.getHeaderName();
+    }
+
+    public void setHeaderName(String headerName) {
+        tokenCarrier.setHeaderName(headerName);
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Sets how long a sealed challenge is accepted after it was issued
+     *
+     * @param timeToLive time to live in milliseconds
+     */
+    public void setTimeToLive(long timeToLive) {
+        Assert.isTrue(timeToLive > 0, "timeToLive must be positive");
+        this.timeToLive = timeToLive;
+    }
+
+    public String getRpId() {
+        return rpId;
+    }
+
+    /**
+     * Sets the RP ID the sealed challenge is bound to. If not set, the host of the request origin is used,
+     * same as {@link net.sharplab.springframework.security.webauthn.options.OptionsProviderImpl}.
+     *
+     * @param rpId the RP ID
+     */
+    public void setRpId(String rpId) {
+        this.rpId = rpId;
+    }
+}
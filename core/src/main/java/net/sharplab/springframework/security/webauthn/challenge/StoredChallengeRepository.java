@@ -0,0 +1,192 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.util.Base64UrlUtil;
+import org.springframework.util.Assert;
+
+import javax.servlet.http.HttpServletRequest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link ChallengeRepository} implementation that stores challenges to a {@link ChallengeStore}, keyed by a
+ * short opaque handle carried by a cookie or a header. As no session is involved, any node sharing the store
+ * can verify a challenge issued by another one.
+ * <p>
+ * A new handle is issued every time a challenge is saved, and the challenge of the handle it replaces, carried by
+ * the request or issued earlier in the same request, is removed from the store in the same batch, so that repeated
+ * options calls do not leave orphan entries until they expire. {@link #consumeChallenge(HttpServletRequest)} takes
+ * the challenge from the store atomically, so that it is single-use. Verification never generates a challenge.
+ * As the repository writes to the {@link javax.servlet.http.HttpServletResponse},
+ * {@link ChallengeRepositoryResponseFilter} must be placed in front of the filters that save challenges.
+ *
+ * @see ChallengeStore
+ * @see ChallengeRepositoryResponseFilter
+ */
+public class StoredChallengeRepository extends AbstractChallengeRepository {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final String CHALLENGE_ATTR_NAME = StoredChallengeRepository.class.getName().concat(".CHALLENGE");
+    private static final String HANDLE_ATTR_NAME = StoredChallengeRepository.class.getName().concat(".HANDLE");
+    private static final Object NO_CHALLENGE = new Object();
+
+    private static final String DEFAULT_COOKIE_NAME = "WEBAUTHN-CHALLENGE-HANDLE";
+    private static final String DEFAULT_HEADER_NAME = "X-WEBAUTHN-CHALLENGE-HANDLE";
+    private static final String DEFAULT_KEY_PREFIX = "webauthn:challenge:";
+    private static final long DEFAULT_TIME_TO_LIVE = 300000; // 5 minutes
+    private static final int HANDLE_LENGTH = 16;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final ChallengeStore challengeStore;
+    private final ChallengeTokenCarrier tokenCarrier = new ChallengeTokenCarrier(DEFAULT_COOKIE_NAME, DEFAULT_HEADER_NAME);
+    private final SecureRandom secureRandom = new SecureRandom();
+    private String keyPrefix = DEFAULT_KEY_PREFIX;
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public StoredChallengeRepository(ChallengeStore challengeStore) {
+        Assert.notNull(challengeStore, "challengeStore must not be null");
+        this.challengeStore = challengeStore;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public void saveChallenge(Challenge challenge, HttpServletRequest request) {
+        removeReplacedChallenges(request);
+        if (challenge == null) {
+            tokenCarrier.clearToken(request);
+            request.removeAttribute(HANDLE_ATTR_NAME);
+            request.setAttribute(CHALLENGE_ATTR_NAME, NO_CHALLENGE);
+        } else {
+            String handle = generateHandle();
+            challengeStore.put(keyPrefix + handle, challenge.getValue(), timeToLive);
+            tokenCarrier.writeToken(request, handle);
+            request.setAttribute(HANDLE_ATTR_NAME, handle);
+            request.setAttribute(CHALLENGE_ATTR_NAME, challenge);
+        }
+    }
+
+    @Override
+    public Challenge loadChallenge(HttpServletRequest request) {
+        Object cached = request.getAttribute(CHALLENGE_ATTR_NAME);
+        if (cached != null) {
+            return cached == NO_CHALLENGE ? null : (Challenge) cached;
+        }
+        String handle = tokenCarrier.readToken(request);
+        byte[] value = handle == null ? null : challengeStore.get(keyPrefix + handle);
+        Challenge challenge = value == null ? null : new DefaultChallenge(value);
+        request.setAttribute(CHALLENGE_ATTR_NAME, challenge == null ? NO_CHALLENGE : challenge);
+        return challenge;
+    }
+
+    @Override
+    public Challenge consumeChallenge(HttpServletRequest request) {
+        String handle = tokenCarrier.readToken(request);
+        byte[] value = handle == null ? null : challengeStore.take(keyPrefix + handle);
+        request.setAttribute(CHALLENGE_ATTR_NAME, NO_CHALLENGE);
+        return value == null ? null : new DefaultChallenge(value);
+    }
+
+    private void removeReplacedChallenges(HttpServletRequest request) {
+        List<String> keys = new ArrayList<>(2);
+        String requestHandle = tokenCarrier.readToken(request);
+        if (requestHandle != null) {
+            keys.add(keyPrefix + requestHandle);
+        }
+        String issuedHandle = (String) request.getAttribute(HANDLE_ATTR_NAME);
+        if (issuedHandle != null) {
+            keys.add(keyPrefix + issuedHandle);
+        }
+        if (!keys.isEmpty()) {
+            challengeStore.removeAll(keys);
+        }
+    }
+
+    private String generateHandle() {
+        byte[] handle = new byte[HANDLE_LENGTH];
+        secureRandom.nextBytes(handle);
+        return Base64UrlUtil.encodeToString(handle);
+    }
+
+    public ChallengeStore getChallengeStore() {
+        return challengeStore;
+    }
+
+    public ChallengeTokenTransport getTokenTransport() {
+        return tokenCarrier.getTokenTransport();
+    }
+
+    public void setTokenTransport(ChallengeTokenTransport tokenTransport) {
+        tokenCarrier.setTokenTransport(tokenTransport);
+    }
+
+    public String getCookieName() {
+        return tokenCarrier.getCookieName();
+    }
+
+    public void setCookieName(String cookieName) {
+        tokenCarrier.setCookieName(cookieName);
+    }
+
+    public String getHeaderName() {
+        return tokenCarrier.getHeaderName();
+    }
+
+    public void setHeaderName(String headerName) {
+        tokenCarrier.setHeaderName(headerName);
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    /**
+     * Sets the prefix prepended to a handle to form the key in the {@link ChallengeStore}
+     *
+     * @param keyPrefix key prefix
+     */
+    public void setKeyPrefix(String keyPrefix) {
+        Assert.notNull(keyPrefix, "keyPrefix must not be null");
+        this.keyPrefix = keyPrefix;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Sets the time to live of a stored challenge
+     *
+     * @param timeToLive time to live in milliseconds
+     */
+    public void setTimeToLive(long timeToLive) {
+        Assert.isTrue(timeToLive > 0, "timeToLive must be positive");
+        this.timeToLive = timeToLive;
+    }
+}
@@ -22,14 +22,22 @@ import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.metadata.converter.jackson.WebAuthnMetadataJSONModule;
 import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidator;
 import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
+import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepositoryResponseFilter;
 import net.sharplab.springframework.security.webauthn.challenge.HttpSessionChallengeRepository;
+import net.sharplab.springframework.security.webauthn.challenge.InMemoryChallengeRepository;
+import net.sharplab.springframework.security.webauthn.challenge.SealedChallengeRepository;
+import net.sharplab.springframework.security.webauthn.challenge.StoredChallengeRepository;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetrics;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetricsUtil;
 import net.sharplab.springframework.security.webauthn.options.OptionsProvider;
 import net.sharplab.springframework.security.webauthn.options.OptionsProviderImpl;
 import net.sharplab.springframework.security.webauthn.server.ServerPropertyProvider;
 import net.sharplab.springframework.security.webauthn.server.ServerPropertyProviderImpl;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
+import net.sharplab.springframework.security.webauthn.util.EntropyPool;
 import org.springframework.context.ApplicationContext;
 import org.springframework.security.config.annotation.web.HttpSecurityBuilder;
+import org.springframework.security.web.context.SecurityContextPersistenceFilter;
 
 /**
  * Internal utility for WebAuthn Configurers
@@ -39,25 +47,112 @@ public class WebAuthnConfigurerUtil {
     private WebAuthnConfigurerUtil() {
     }
 
-    static <H extends HttpSecurityBuilder<H>> ChallengeRepository getChallengeRepository(H http) {
+    /**
+     * Returns the {@link ChallengeRepository} bean if defined, otherwise a {@link HttpSessionChallengeRepository} drawing
+     * challenges from the {@link EntropyPool} bean if defined
+     *
+     * @param http the {@link HttpSecurityBuilder}
+     * @param <H>  the type of {@link HttpSecurityBuilder}
+     * @return the {@link ChallengeRepository}
+     */
+    public static <H extends HttpSecurityBuilder<H>> ChallengeRepository getChallengeRepository(H http) {
         ApplicationContext applicationContext = http.getSharedObject(ApplicationContext.class);
         ChallengeRepository challengeRepository;
         String[] beanNames = applicationContext.getBeanNamesForType(ChallengeRepository.class);
         if (beanNames.length == 0) {
-            challengeRepository = new HttpSessionChallengeRepository();
+            HttpSessionChallengeRepository httpSessionChallengeRepository = new HttpSessionChallengeRepository();
+            httpSessionChallengeRepository.setEntropyPool(getEntropyPool(http));
+            challengeRepository = httpSessionChallengeRepository;
         } else {
             challengeRepository = applicationContext.getBean(ChallengeRepository.class);
         }
         return challengeRepository;
     }
 
+    /**
+     * Registers {@link ChallengeRepositoryResponseFilter} if the {@link ChallengeRepository} carries its token on the
+     * response, unless another configurer of the same {@link HttpSecurityBuilder} has already registered it
+     *
+     * @param http the {@link HttpSecurityBuilder}
+     * @param <H>  the type of {@link HttpSecurityBuilder}
+     */
+    public static <H extends HttpSecurityBuilder<H>> void configureChallengeRepositoryResponseFilter(H http) {
+        configureChallengeRepositoryResponseFilter(http, getChallengeRepository(http));
+    }
+
+    /**
+     * Registers {@link ChallengeRepositoryResponseFilter} if the given {@link ChallengeRepository} carries its token on
+     * the response, unless another configurer of the same {@link HttpSecurityBuilder} has already registered it
+     *
+     * @param http                the {@link HttpSecurityBuilder}
+     * @param challengeRepository the {@link ChallengeRepository} used by the configurer
+     * @param <H>                 the type of {@link HttpSecurityBuilder}
+     */
+    public static <H extends HttpSecurityBuilder<H>> void configureChallengeRepositoryResponseFilter(H http, ChallengeRepository challengeRepository) {
+        if (!(challengeRepository instanceof SealedChallengeRepository || challengeRepository instanceof StoredChallengeRepository
+                || challengeRepository instanceof InMemoryChallengeRepository)) {
+            return;
+        }
+        if (http.getSharedObject(ChallengeRepositoryResponseFilter.class) != null) {
+            return;
+        }
+        ChallengeRepositoryResponseFilter challengeRepositoryResponseFilter = new ChallengeRepositoryResponseFilter();
+        http.setSharedObject(ChallengeRepositoryResponseFilter.class, challengeRepositoryResponseFilter);
+        http.addFilterBefore(challengeRepositoryResponseFilter, SecurityContextPersistenceFilter.class);
+    }
+
+    /**
+     * Returns the {@link EntropyPool} bean if defined
+     *
+     * @param http the {@link HttpSecurityBuilder}
+     * @param <H>  the type of {@link HttpSecurityBuilder}
+     * @return the {@link EntropyPool}, or null if not defined
+     */
+    public static <H extends HttpSecurityBuilder<H>> EntropyPool getEntropyPool(H http) {
+        ApplicationContext applicationContext = http.getSharedObject(ApplicationContext.class);
+        String[] beanNames = applicationContext.getBeanNamesForType(EntropyPool.class);
+        if (beanNames.length == 0) {
+            return null;
+        }
+        return applicationContext.getBean(EntropyPool.class);
+    }
+
+    /**
+     * Registers the gauge of the available blocks and the counters of the served blocks and refills of the
+     * {@link EntropyPool}
+     *
+     * @param metrics     the {@link WebAuthnMetrics}
+     * @param entropyPool the {@link EntropyPool}
+     */
+    public static void registerEntropyPoolMeters(WebAuthnMetrics metrics, EntropyPool entropyPool) {
+        metrics.registerGauge(WebAuthnMetrics.ENTROPY_POOL_AVAILABLE_GAUGE, entropyPool, EntropyPool::getAvailableCount);
+        metrics.registerFunctionCounter(WebAuthnMetrics.ENTROPY_POOL_BLOCKS_COUNTER, entropyPool, EntropyPool::getServedCount,
+                WebAuthnMetrics.SOURCE_TAG, "pool");
+        metrics.registerFunctionCounter(WebAuthnMetrics.ENTROPY_POOL_BLOCKS_COUNTER, entropyPool, EntropyPool::getDepletionCount,
+                WebAuthnMetrics.SOURCE_TAG, "direct");
+        metrics.registerFunctionCounter(WebAuthnMetrics.ENTROPY_POOL_REFILLS_COUNTER, entropyPool, EntropyPool::getRefillCount);
+    }
+
     public static <H extends HttpSecurityBuilder<H>> OptionsProvider getOptionsProvider(H http) {
+        return getOptionsProvider(http, getChallengeRepository(http));
+    }
+
+    /**
+     * Returns the {@link OptionsProvider} bean if defined, otherwise an {@link OptionsProviderImpl} saving challenges
+     * to the given {@link ChallengeRepository}
+     *
+     * @param http                the {@link HttpSecurityBuilder}
+     * @param challengeRepository the {@link ChallengeRepository} used by the configurer
+     * @param <H>                 the type of {@link HttpSecurityBuilder}
+     * @return the {@link OptionsProvider}
+     */
+    public static <H extends HttpSecurityBuilder<H>> OptionsProvider getOptionsProvider(H http, ChallengeRepository challengeRepository) {
         ApplicationContext applicationContext = http.getSharedObject(ApplicationContext.class);
         OptionsProvider optionsProvider;
         String[] beanNames = applicationContext.getBeanNamesForType(OptionsProvider.class);
         if (beanNames.length == 0) {
             WebAuthnUserDetailsService userDetailsService = applicationContext.getBean(WebAuthnUserDetailsService.class);
-            optionsProvider = new OptionsProviderImpl(userDetailsService, getChallengeRepository(http));
+            optionsProvider = new OptionsProviderImpl(userDetailsService, challengeRepository);
         } else {
             optionsProvider = applicationContext.getBean(OptionsProvider.class);
         }
@@ -80,11 +175,24 @@ public class WebAuthnConfigurerUtil {
     }
 
     public static <H extends HttpSecurityBuilder<H>> ServerPropertyProvider getServerPropertyProvider(H http) {
+        return getServerPropertyProvider(http, getChallengeRepository(http));
+    }
+
+    /**
+     * Returns the {@link ServerPropertyProvider} bean if defined, otherwise a {@link ServerPropertyProviderImpl}
+     * loading challenges from the given {@link ChallengeRepository}
+     *
+     * @param http                the {@link HttpSecurityBuilder}
+     * @param challengeRepository the {@link ChallengeRepository} used by the configurer
+     * @param <H>                 the type of {@link HttpSecurityBuilder}
+     * @return the {@link ServerPropertyProvider}
+     */
+    public static <H extends HttpSecurityBuilder<H>> ServerPropertyProvider getServerPropertyProvider(H http, ChallengeRepository challengeRepository) {
         ApplicationContext applicationContext = http.getSharedObject(ApplicationContext.class);
         ServerPropertyProvider serverPropertyProvider;
         String[] beanNames = applicationContext.getBeanNamesForType(ServerPropertyProvider.class);
         if (beanNames.length == 0) {
-            serverPropertyProvider = new ServerPropertyProviderImpl(getOptionsProvider(http), getChallengeRepository(http));
+            serverPropertyProvider = new ServerPropertyProviderImpl(getOptionsProvider(http, challengeRepository), challengeRepository);
         } else {
             serverPropertyProvider = applicationContext.getBean(ServerPropertyProvider.class);
         }
@@ -100,4 +208,17 @@ public class WebAuthnConfigurerUtil {
         ApplicationContext applicationContext = http.getSharedObject(ApplicationContext.class);
         return applicationContext.getBean(WebAuthnRegistrationRequestValidator.class);
     }
+
+    /**
+     * Returns the {@link WebAuthnMetrics} to record to
+     *
+     * @param http the {@link HttpSecurityBuilder}
+     * @param <H>  the type of {@link HttpSecurityBuilder}
+     * @return the {@link WebAuthnMetrics} bean, a Micrometer backed one if a {@code MeterRegistry} bean is defined,
+     * or a no-op one otherwise
+     */
+    public static <H extends HttpSecurityBuilder<H>> WebAuthnMetrics getWebAuthnMetrics(H http) {
+        ApplicationContext applicationContext = http.getSharedObject(ApplicationContext.class);
+        return WebAuthnMetricsUtil.getWebAuthnMetrics(applicationContext);
+    }
 }
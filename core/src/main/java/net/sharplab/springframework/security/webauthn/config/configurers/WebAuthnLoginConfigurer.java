@@ -19,9 +19,17 @@ package net.sharplab.springframework.security.webauthn.config.configurers;
 import com.webauthn4j.converter.util.ObjectConverter;
 import net.sharplab.springframework.security.webauthn.WebAuthnProcessingFilter;
 import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
+import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepositoryResponseFilter;
+import net.sharplab.springframework.security.webauthn.challenge.InMemoryChallengeRepository;
+import net.sharplab.springframework.security.webauthn.challenge.InMemoryChallengeStore;
+import net.sharplab.springframework.security.webauthn.challenge.SealedChallengeRepository;
+import net.sharplab.springframework.security.webauthn.challenge.StoredChallengeRepository;
 import net.sharplab.springframework.security.webauthn.endpoint.OptionsEndpointFilter;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetrics;
 import net.sharplab.springframework.security.webauthn.options.OptionsProvider;
+import net.sharplab.springframework.security.webauthn.options.OptionsProviderImpl;
 import net.sharplab.springframework.security.webauthn.server.ServerPropertyProvider;
+import net.sharplab.springframework.security.webauthn.util.EntropyPool;
 import org.springframework.context.ApplicationContext;
 import org.springframework.security.authentication.MFATokenEvaluator;
 import org.springframework.security.config.annotation.web.HttpSecurityBuilder;
@@ -51,6 +59,8 @@ import java.util.List;
  * <ul>
  * <li>{@link WebAuthnProcessingFilter}</li>
  * <li>{@link OptionsEndpointFilter}</li>
+ * <li>{@link ChallengeRepositoryResponseFilter} (only if {@link SealedChallengeRepository},
+ * {@link StoredChallengeRepository} or {@link InMemoryChallengeRepository} is used)</li>
  * </ul>
  *
  * <h2>Shared Objects Created</h2>
@@ -85,6 +95,8 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
     private OptionsProvider optionsProvider = null;
     private ObjectConverter objectConverter = null;
     private ServerPropertyProvider serverPropertyProvider = null;
+    private WebAuthnMetrics metrics = null;
+    private Double serverTimingSamplingRate = null;
     private String usernameParameter = null;
     private String passwordParameter = null;
     private String credentialIdParameter = null;
@@ -124,7 +136,27 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
         }
         http.setSharedObject(ServerPropertyProvider.class, serverPropertyProvider);
 
+        if (metrics == null) {
+            metrics = WebAuthnConfigurerUtil.getWebAuthnMetrics(http);
+        }
+        http.setSharedObject(WebAuthnMetrics.class, metrics);
+
         this.getAuthenticationFilter().setServerPropertyProvider(serverPropertyProvider);
+        this.getAuthenticationFilter().setMetrics(metrics);
+        if (optionsProvider instanceof OptionsProviderImpl) {
+            ((OptionsProviderImpl) optionsProvider).setMetrics(metrics);
+        }
+        if (serverTimingSamplingRate != null) {
+            this.getAuthenticationFilter().setServerTimingSamplingRate(serverTimingSamplingRate);
+        }
+
+        WebAuthnConfigurerUtil.configureChallengeRepositoryResponseFilter(http);
+        ChallengeRepository challengeRepository = WebAuthnConfigurerUtil.getChallengeRepository(http);
+        registerChallengeStoreSizeGauge(challengeRepository);
+        EntropyPool entropyPool = WebAuthnConfigurerUtil.getEntropyPool(http);
+        if (entropyPool != null) {
+            WebAuthnConfigurerUtil.registerEntropyPoolMeters(metrics, entropyPool);
+        }
 
         this.optionsEndpointConfig.configure(http);
         if (expectedAuthenticationExtensionIdsConfig.expectedAuthenticationExtensionIds.isEmpty()) {
@@ -137,6 +169,19 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
 
     }
 
+    private void registerChallengeStoreSizeGauge(ChallengeRepository challengeRepository) {
+        String repository = challengeRepository.getClass().getSimpleName();
+        if (challengeRepository instanceof InMemoryChallengeRepository) {
+            metrics.registerGauge(WebAuthnMetrics.CHALLENGE_STORE_SIZE_GAUGE, (InMemoryChallengeRepository) challengeRepository,
+                    InMemoryChallengeRepository::size, WebAuthnMetrics.REPOSITORY_TAG, repository);
+        } else if (challengeRepository instanceof StoredChallengeRepository
+                && ((StoredChallengeRepository) challengeRepository).getChallengeStore() instanceof InMemoryChallengeStore) {
+            InMemoryChallengeStore challengeStore = (InMemoryChallengeStore) ((StoredChallengeRepository) challengeRepository).getChallengeStore();
+            metrics.registerGauge(WebAuthnMetrics.CHALLENGE_STORE_SIZE_GAUGE, challengeStore,
+                    InMemoryChallengeStore::size, WebAuthnMetrics.REPOSITORY_TAG, repository);
+        }
+    }
+
     private void configureParameters() {
         if (usernameParameter != null) {
             this.getAuthenticationFilter().setUsernameParameter(usernameParameter);
@@ -204,6 +249,31 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
         return this;
     }
 
+    /**
+     * Specifies the {@link WebAuthnMetrics} to be used.
+     *
+     * @param metrics the {@link WebAuthnMetrics}
+     * @return the {@link WebAuthnLoginConfigurer} for additional customization
+     */
+    public WebAuthnLoginConfigurer<H> metrics(WebAuthnMetrics metrics) {
+        Assert.notNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Reports the stage durations of the given fraction of authentication and options requests in a
+     * <code>Server-Timing</code> response header.
+     *
+     * @param serverTimingSamplingRate the fraction between 0.0 and 1.0
+     * @return the {@link WebAuthnLoginConfigurer} for additional customization
+     */
+    public WebAuthnLoginConfigurer<H> serverTimingSamplingRate(double serverTimingSamplingRate) {
+        Assert.isTrue(serverTimingSamplingRate >= 0 && serverTimingSamplingRate <= 1, "serverTimingSamplingRate must be between 0.0 and 1.0");
+        this.serverTimingSamplingRate = serverTimingSamplingRate;
+        return this;
+    }
+
 
     /**
      * Returns the {@link OptionsEndpointConfig} for configuring the {@link OptionsEndpointFilter}
@@ -388,6 +458,10 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
             if (beanNames.length == 0) {
                 optionsEndpointFilter = new OptionsEndpointFilter(optionsProvider, objectConverter);
                 optionsEndpointFilter.setFilterProcessesUrl(processingUrl);
+                optionsEndpointFilter.setMetrics(metrics);
+                if (serverTimingSamplingRate != null) {
+                    optionsEndpointFilter.setServerTimingSamplingRate(serverTimingSamplingRate);
+                }
             } else {
                 optionsEndpointFilter = applicationContext.getBean(OptionsEndpointFilter.class);
             }
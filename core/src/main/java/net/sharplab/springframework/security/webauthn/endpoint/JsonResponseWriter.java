@@ -0,0 +1,183 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.endpoint;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.webauthn4j.converter.util.JsonConverter;
+import com.webauthn4j.util.Base64UrlUtil;
+import org.springframework.util.Assert;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes JSON responses straight to the servlet {@link OutputStream}, instead of building them as a {@link String}
+ * and printing them through {@link HttpServletResponse#getWriter()}.
+ * <p>
+ * {@link OptionsResponse} is streamed through a {@link JsonGenerator}, whose buffers are recycled by the
+ * {@link JsonFactory}. Its static parts, such as the RP entity, <code>pubKeyCredParams</code>, extensions and
+ * {@link Parameters}, are serialized once by the {@link JsonConverter} and spliced in as pre-encoded fragments.
+ * Fixed bodies like error responses can be pre-serialized with {@link #preSerialize(Object)}.
+ */
+public class JsonResponseWriter {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final String CONTENT_TYPE = "application/json";
+    private static final int MAXIMUM_FRAGMENT_CACHE_SIZE = 256;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final JsonConverter jsonConverter;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Map<Object, SerializableString> fragmentCache = new ConcurrentHashMap<>();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public JsonResponseWriter(JsonConverter jsonConverter) {
+        Assert.notNull(jsonConverter, "jsonConverter must not be null");
+        this.jsonConverter = jsonConverter;
+        this.jsonFactory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Writes the response body serialized by the {@link JsonConverter}
+     *
+     * @param httpServletResponse the response to write to
+     * @param response            the response body
+     * @throws IOException if an I/O error occurs
+     */
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    public void write(HttpServletResponse httpServletResponse, Object response) throws IOException {
+        write(httpServletResponse, jsonConverter.writeValueAsBytes(response));
+    }
+
+    /**
+     * Writes the pre-serialized response body
+     *
+     * @param httpServletResponse the response to write to
+     * @param response            the response body serialized with {@link #preSerialize(Object)}
+     * @throws IOException if an I/O error occurs
+     */
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    public void write(HttpServletResponse httpServletResponse, byte[] response) throws IOException {
+        httpServletResponse.setContentType(CONTENT_TYPE);
+        httpServletResponse.setContentLength(response.length);
+        httpServletResponse.getOutputStream().write(response);
+    }
+
+    /**
+     * Streams the {@link OptionsResponse}
+     *
+     * @param httpServletResponse the response to write to
+     * @param response            the response body
+     * @throws IOException if an I/O error occurs
+     */
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    public void write(HttpServletResponse httpServletResponse, OptionsResponse response) throws IOException {
+        httpServletResponse.setContentType(CONTENT_TYPE);
+        write(httpServletResponse.getOutputStream(), response);
+    }
+
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    void write(OutputStream outputStream, OptionsResponse response) throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            writeFragmentField(generator, "relyingParty", response.getRelyingParty());
+            WebAuthnPublicKeyCredentialUserEntity user = response.getUser();
+            if (user != null) {
+                generator.writeObjectFieldStart("user");
+                writeStringField(generator, "userHandle", user.getUserHandle());
+                writeStringField(generator, "username", user.getUsername());
+                generator.writeEndObject();
+            }
+            if (response.getChallenge() != null) {
+                generator.writeStringField("challenge", Base64UrlUtil.encodeToString(response.getChallenge().getValue()));
+            }
+            writeFragmentField(generator, "pubKeyCredParams", response.getPubKeyCredParams());
+            if (response.getRegistrationTimeout() != null) {
+                generator.writeNumberField("registrationTimeout", response.getRegistrationTimeout());
+            }
+            if (response.getAuthenticationTimeout() != null) {
+                generator.writeNumberField("authenticationTimeout", response.getAuthenticationTimeout());
+            }
+            if (response.getCredentials() != null) {
+                generator.writeArrayFieldStart("credentials");
+                for (WebAuthnPublicKeyCredentialDescriptor credential : response.getCredentials()) {
+                    generator.writeStartObject();
+                    writeFragmentField(generator, "type", credential.getType());
+                    writeStringField(generator, "id", credential.getId());
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+            }
+            writeFragmentField(generator, "registrationExtensions", response.getRegistrationExtensions());
+            writeFragmentField(generator, "authenticationExtensions", response.getAuthenticationExtensions());
+            writeFragmentField(generator, "parameters", response.getParameters());
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Serializes a fixed response body once, so that it can be written by {@link #write(HttpServletResponse, byte[])}
+     *
+     * @param response the response body
+     * @return the serialized response body
+     */
+    public byte[] preSerialize(Object response) {
+        return jsonConverter.writeValueAsBytes(response);
+    }
+
+    private void writeStringField(JsonGenerator generator, String fieldName, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(fieldName, value);
+        }
+    }
+
+    private void writeFragmentField(JsonGenerator generator, String fieldName, Object value) throws IOException {
+        if (value != null) {
+            generator.writeFieldName(fieldName);
+            generator.writeRawValue(getFragment(value));
+        }
+    }
+
+    private SerializableString getFragment(Object value) {
+        SerializableString fragment = fragmentCache.get(value);
+        if (fragment == null) {
+            // static parts come from a handful of configured values; a bound only guards against misuse
+            if (fragmentCache.size() >= MAXIMUM_FRAGMENT_CACHE_SIZE) {
+                fragmentCache.clear();
+            }
+            fragment = new SerializedString(jsonConverter.writeValueAsString(value));
+            fragmentCache.put(value, fragment);
+        }
+        return fragment;
+    }
+}
@@ -20,8 +20,13 @@ import com.webauthn4j.converter.util.JsonConverter;
 import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.data.PublicKeyCredentialRpEntity;
 import com.webauthn4j.data.client.challenge.Challenge;
+import net.sharplab.springframework.security.webauthn.jfr.FlightRecorderUtil;
+import net.sharplab.springframework.security.webauthn.metrics.NoOpWebAuthnMetrics;
+import net.sharplab.springframework.security.webauthn.metrics.ServerTimingRecorder;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetrics;
 import net.sharplab.springframework.security.webauthn.options.AssertionOptions;
 import net.sharplab.springframework.security.webauthn.options.AttestationOptions;
+import net.sharplab.springframework.security.webauthn.options.CombinedOptions;
 import net.sharplab.springframework.security.webauthn.options.OptionsProvider;
 import org.springframework.context.support.MessageSourceAccessor;
 import org.springframework.security.authentication.*;
@@ -70,6 +75,12 @@ public class OptionsEndpointFilter extends GenericFilterBean {
     private MFATokenEvaluator mfaTokenEvaluator;
 
     private OptionsProvider optionsProvider;
+    private WebAuthnMetrics metrics = NoOpWebAuthnMetrics.INSTANCE;
+    private double serverTimingSamplingRate = 0;
+
+    private JsonResponseWriter jsonResponseWriter;
+    private byte[] anonymousAccessErrorResponse;
+    private byte[] internalErrorResponse;
 
     // ~ Constructors
     // ===================================================================================================
@@ -77,6 +88,9 @@ public class OptionsEndpointFilter extends GenericFilterBean {
     public OptionsEndpointFilter(OptionsProvider optionsProvider, ObjectConverter objectConverter) {
         this.optionsProvider = optionsProvider;
         this.jsonConverter = objectConverter.getJsonConverter();
+        this.jsonResponseWriter = new JsonResponseWriter(jsonConverter);
+        this.anonymousAccessErrorResponse = jsonResponseWriter.preSerialize(new ErrorResponse("Anonymous access is prohibited"));
+        this.internalErrorResponse = jsonResponseWriter.preSerialize(new ErrorResponse("The server encountered an internal error"));
         this.trustResolver = new AuthenticationTrustResolverImpl();
         this.mfaTokenEvaluator = new MFATokenEvaluatorImpl();
         checkConfig();
@@ -96,6 +110,7 @@ public class OptionsEndpointFilter extends GenericFilterBean {
         Assert.notNull(trustResolver, "trustResolver must not be null");
         Assert.notNull(mfaTokenEvaluator, "mfaTokenEvaluator must not be null");
         Assert.notNull(optionsProvider, "optionsProvider must not be null");
+        Assert.notNull(metrics, "metrics must not be null");
     }
 
     @Override
@@ -107,8 +122,12 @@ public class OptionsEndpointFilter extends GenericFilterBean {
             return;
         }
 
+        ServerTimingRecorder serverTimingRecorder = ServerTimingRecorder.sample(serverTimingSamplingRate);
         try {
-            OptionsResponse optionsResponse = processRequest(fi.getRequest());
+            OptionsResponse optionsResponse = serverTimingRecorder.record(() -> metrics.time(WebAuthnMetrics.ENDPOINT_TIMER,
+                    () -> FlightRecorderUtil.recordEndpoint(filterProcessesUrl, () -> processRequest(fi.getRequest())),
+                    WebAuthnMetrics.ENDPOINT_TAG, filterProcessesUrl));
+            serverTimingRecorder.writeHeader(fi.getResponse());
             writeResponse(fi.getResponse(), optionsResponse);
         } catch (RuntimeException e) {
             logger.debug(e);
@@ -119,8 +138,9 @@ public class OptionsEndpointFilter extends GenericFilterBean {
 
     OptionsResponse processRequest(HttpServletRequest request) {
         String loginUsername = getLoginUsername();
-        AttestationOptions attestationOptions = optionsProvider.getAttestationOptions(request, loginUsername, null);
-        AssertionOptions assertionOptions = optionsProvider.getAssertionOptions(request, loginUsername, null);
+        CombinedOptions combinedOptions = optionsProvider.getCombinedOptions(request, loginUsername, null);
+        AttestationOptions attestationOptions = combinedOptions.getAttestationOptions();
+        AssertionOptions assertionOptions = combinedOptions.getAssertionOptions();
         List<WebAuthnPublicKeyCredentialDescriptor> credentials =
                 attestationOptions.getCredentials().stream().map(WebAuthnPublicKeyCredentialDescriptor::new).collect(Collectors.toList());
         return new OptionsResponse(
@@ -153,6 +173,30 @@ public class OptionsEndpointFilter extends GenericFilterBean {
         this.mfaTokenEvaluator = mfaTokenEvaluator;
     }
 
+    public WebAuthnMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(WebAuthnMetrics metrics) {
+        Assert.notNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+    }
+
+    public double getServerTimingSamplingRate() {
+        return serverTimingSamplingRate;
+    }
+
+    /**
+     * Sets the fraction of requests whose stage durations are reported in a <code>Server-Timing</code> response header.
+     * Defaults to <code>0.0</code>, which disables the header. The header is only added to successful responses.
+     *
+     * @param serverTimingSamplingRate the fraction between 0.0 and 1.0
+     */
+    public void setServerTimingSamplingRate(double serverTimingSamplingRate) {
+        Assert.isTrue(serverTimingSamplingRate >= 0 && serverTimingSamplingRate <= 1, "serverTimingSamplingRate must be between 0.0 and 1.0");
+        this.serverTimingSamplingRate = serverTimingSamplingRate;
+    }
+
 
     /**
      * The filter will be used in case the URL of the request contains the FILTER_URL.
@@ -165,25 +209,25 @@ public class OptionsEndpointFilter extends GenericFilterBean {
     }
 
     void writeResponse(HttpServletResponse httpServletResponse, Response response) throws IOException {
-        String responseText = jsonConverter.writeValueAsString(response);
-        httpServletResponse.setContentType("application/json");
-        httpServletResponse.getWriter().print(responseText);
+        if (response instanceof OptionsResponse) {
+            jsonResponseWriter.write(httpServletResponse, (OptionsResponse) response);
+        } else {
+            jsonResponseWriter.write(httpServletResponse, (Object) response);
+        }
     }
 
     void writeErrorResponse(HttpServletResponse httpServletResponse, RuntimeException e) throws IOException {
-        Response errorResponse;
+        byte[] errorResponse;
         int statusCode;
         if (e instanceof InsufficientAuthenticationException) {
-            errorResponse = new ErrorResponse("Anonymous access is prohibited");
+            errorResponse = anonymousAccessErrorResponse;
             statusCode = HttpServletResponse.SC_FORBIDDEN;
         } else {
-            errorResponse = new ErrorResponse("The server encountered an internal error");
+            errorResponse = internalErrorResponse;
             statusCode = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
         }
-        String errorResponseText = jsonConverter.writeValueAsString(errorResponse);
-        httpServletResponse.setContentType("application/json");
-        httpServletResponse.getWriter().print(errorResponseText);
         httpServletResponse.setStatus(statusCode);
+        jsonResponseWriter.write(httpServletResponse, errorResponse);
     }
 
     String getLoginUsername() {
@@ -26,4 +26,12 @@ public class DataConversionException extends AuthenticationException {
     public DataConversionException(String message, Throwable cause) {
         super(message, cause);
     }
+
+    /**
+     * @see WebAuthnAuthenticationException#createWithoutStackTrace(java.util.function.Supplier)
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return WebAuthnAuthenticationException.isStackTraceDisabled() ? this : super.fillInStackTrace();
+    }
 }
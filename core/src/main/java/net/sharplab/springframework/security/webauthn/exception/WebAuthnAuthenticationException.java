@@ -18,8 +18,12 @@ package net.sharplab.springframework.security.webauthn.exception;
 
 import org.springframework.security.core.AuthenticationException;
 
+import java.util.function.Supplier;
+
 public class WebAuthnAuthenticationException extends AuthenticationException {
 
+    private static final ThreadLocal<Boolean> STACK_TRACE_DISABLED = new ThreadLocal<>();
+
     public WebAuthnAuthenticationException(String message, Throwable cause) {
         super(message, cause);
     }
@@ -28,4 +32,30 @@ public class WebAuthnAuthenticationException extends AuthenticationException {
         super(message);
     }
 
+    /**
+     * Creates an exception of this package without filling in its stack trace, which dominates the cost of failing
+     * requests under attack traffic. The cause, if any, keeps its own stack trace.
+     *
+     * @param factory the factory of the exception
+     * @param <T>     the type of the exception
+     * @return the exception without stack trace
+     */
+    public static <T extends RuntimeException> T createWithoutStackTrace(Supplier<T> factory) {
+        STACK_TRACE_DISABLED.set(Boolean.TRUE);
+        try {
+            return factory.get();
+        } finally {
+            STACK_TRACE_DISABLED.remove();
+        }
+    }
+
+    static boolean isStackTraceDisabled() {
+        return STACK_TRACE_DISABLED.get() != null;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return isStackTraceDisabled() ? this : super.fillInStackTrace();
+    }
+
 }
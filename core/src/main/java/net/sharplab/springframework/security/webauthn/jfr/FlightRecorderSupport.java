@@ -0,0 +1,35 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.jfr;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Emits the flight recorder events of {@link FlightRecorderUtil}. The implementation references the {@code jdk.jfr}
+ * API, which is not part of Java 8, and is therefore compiled for Java 11 and packaged in the
+ * {@code META-INF/versions/11} layer of the multi-release jar, from where {@link FlightRecorderUtil} loads it
+ * reflectively.
+ */
+interface FlightRecorderSupport {
+
+    <T> T recordStage(String ceremony, String stage, byte[] credentialId, String format,
+                      Function<? super T, String> formatResolver, Supplier<T> supplier);
+
+    <T> T recordEndpoint(String endpoint, Supplier<T> supplier);
+}
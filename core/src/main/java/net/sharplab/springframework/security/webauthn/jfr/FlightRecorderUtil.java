@@ -0,0 +1,134 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.jfr;
+
+import com.webauthn4j.util.Base64UrlUtil;
+import com.webauthn4j.util.MessageDigestUtil;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Internal utility to emit Java Flight Recorder events around the stages of WebAuthn ceremonies
+ * <p>
+ * The events are emitted only on Java 11 or later, from the {@link FlightRecorderSupport} of the multi-release jar
+ * layer; otherwise the stages are called directly. While no recording enables them,
+ * the cost is a single {@code isEnabled} check, and the credential ID hash is computed only for events committed.
+ */
+public class FlightRecorderUtil {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final String AUTHENTICATION = "authentication";
+    public static final String REGISTRATION = "registration";
+    public static final String OPTIONS = "options";
+
+    static final String SUCCESS = "success";
+
+    private static final int CREDENTIAL_ID_HASH_LENGTH = 8;
+
+    private static final String FLIGHT_RECORDER_SUPPORT_CLASS_NAME =
+            "net.sharplab.springframework.security.webauthn.jfr.JdkFlightRecorderSupport";
+
+    private static final FlightRecorderSupport FLIGHT_RECORDER_SUPPORT = loadFlightRecorderSupport();
+
+    private FlightRecorderUtil() {
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    public static <T> T recordStage(String ceremony, String stage, Supplier<T> supplier) {
+        return recordStage(ceremony, stage, null, supplier);
+    }
+
+    public static <T> T recordStage(String ceremony, String stage, byte[] credentialId, Supplier<T> supplier) {
+        if (FLIGHT_RECORDER_SUPPORT == null) {
+            return supplier.get();
+        }
+        return FLIGHT_RECORDER_SUPPORT.recordStage(ceremony, stage, credentialId, null, null, supplier);
+    }
+
+    /**
+     * Records a stage whose attestation format is known in advance
+     *
+     * @param ceremony     the ceremony
+     * @param stage        the stage
+     * @param credentialId the credential ID, or null if unknown
+     * @param format       the attestation format
+     * @param supplier     the stage
+     * @param <T>          the type of the stage result
+     * @return the stage result
+     */
+    public static <T> T recordStage(String ceremony, String stage, byte[] credentialId, String format, Supplier<T> supplier) {
+        if (FLIGHT_RECORDER_SUPPORT == null) {
+            return supplier.get();
+        }
+        return FLIGHT_RECORDER_SUPPORT.recordStage(ceremony, stage, credentialId, format, null, supplier);
+    }
+
+    /**
+     * Records a stage whose attestation format is resolved from its result
+     *
+     * @param ceremony       the ceremony
+     * @param stage          the stage
+     * @param credentialId   the credential ID, or null if unknown
+     * @param supplier       the stage
+     * @param formatResolver resolves the attestation format from the result of a successful stage
+     * @param <T>            the type of the stage result
+     * @return the stage result
+     */
+    public static <T> T recordStage(String ceremony, String stage, byte[] credentialId, Supplier<T> supplier, Function<? super T, String> formatResolver) {
+        if (FLIGHT_RECORDER_SUPPORT == null) {
+            return supplier.get();
+        }
+        return FLIGHT_RECORDER_SUPPORT.recordStage(ceremony, stage, credentialId, null, formatResolver, supplier);
+    }
+
+    public static <T> T recordEndpoint(String endpoint, Supplier<T> supplier) {
+        if (FLIGHT_RECORDER_SUPPORT == null) {
+            return supplier.get();
+        }
+        return FLIGHT_RECORDER_SUPPORT.recordEndpoint(endpoint, supplier);
+    }
+
+    static String hashCredentialId(byte[] credentialId) {
+        if (credentialId == null) {
+            return null;
+        }
+        byte[] hash = MessageDigestUtil.createSHA256().digest(credentialId);
+        return Base64UrlUtil.encodeToString(Arrays.copyOf(hash, CREDENTIAL_ID_HASH_LENGTH));
+    }
+
+    private static FlightRecorderSupport loadFlightRecorderSupport() {
+        ClassLoader classLoader = FlightRecorderUtil.class.getClassLoader();
+        if (!ClassUtils.isPresent("jdk.jfr.Event", classLoader)) {
+            return null;
+        }
+        try {
+            Class<?> supportClass = ClassUtils.forName(FLIGHT_RECORDER_SUPPORT_CLASS_NAME, classLoader);
+            return (FlightRecorderSupport) ReflectionUtils.accessibleConstructor(supportClass).newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // running from a Java 8 classpath without the META-INF/versions/11 layer
+            return null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.jfr;
+
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.statement.CertificateBaseAttestationStatement;
+import com.webauthn4j.validator.attestation.trustworthiness.certpath.CertPathTrustworthinessValidator;
+import org.springframework.util.Assert;
+
+/**
+ * {@link CertPathTrustworthinessValidator} decorator emitting a flight recorder event around the certificate path
+ * validation, which is otherwise hidden inside the attestation validation of WebAuthn4J
+ */
+public class FlightRecordingCertPathTrustworthinessValidator implements CertPathTrustworthinessValidator {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final CertPathTrustworthinessValidator delegate;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public FlightRecordingCertPathTrustworthinessValidator(CertPathTrustworthinessValidator delegate) {
+        Assert.notNull(delegate, "delegate must not be null");
+        this.delegate = delegate;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public void validate(AAGUID aaguid, CertificateBaseAttestationStatement attestationStatement) {
+        FlightRecorderUtil.recordStage(FlightRecorderUtil.REGISTRATION, "cert-path-validation", null, attestationStatement.getFormat(), () -> {
+            delegate.validate(aaguid, attestationStatement);
+            return null;
+        });
+    }
+
+    public CertPathTrustworthinessValidator getDelegate() {
+        return delegate;
+    }
+}
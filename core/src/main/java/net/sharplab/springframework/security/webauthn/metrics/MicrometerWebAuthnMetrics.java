@@ -0,0 +1,128 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * {@link WebAuthnMetrics} backed by a Micrometer {@link MeterRegistry}
+ * <p>
+ * Timers and counters are registered on first use and cached by name, outcome and tags, so that recording on the
+ * authentication path does not build a meter and look it up in the registry on every call.
+ */
+public class MicrometerWebAuthnMetrics implements WebAuthnMetrics {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final MeterRegistry meterRegistry;
+    private final Map<MeterKey, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<MeterKey, Counter> counters = new ConcurrentHashMap<>();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public MicrometerWebAuthnMetrics(MeterRegistry meterRegistry) {
+        Assert.notNull(meterRegistry, "meterRegistry must not be null");
+        this.meterRegistry = meterRegistry;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public void recordTime(String name, long durationNanos, String outcome, String... tags) {
+        MeterKey key = new MeterKey(name, outcome, tags);
+        Timer timer = timers.get(key);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(key, k -> Timer.builder(name)
+                    .tags(tags)
+                    .tag(OUTCOME_TAG, outcome)
+                    .register(meterRegistry));
+        }
+        timer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void incrementCounter(String name, String... tags) {
+        MeterKey key = new MeterKey(name, null, tags);
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, k -> Counter.builder(name)
+                    .tags(tags)
+                    .register(meterRegistry));
+        }
+        counter.increment();
+    }
+
+    @Override
+    public <T> void registerGauge(String name, T stateObject, ToDoubleFunction<T> valueFunction, String... tags) {
+        Gauge.builder(name, stateObject, valueFunction)
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public <T> void registerFunctionCounter(String name, T stateObject, ToDoubleFunction<T> countFunction, String... tags) {
+        FunctionCounter.builder(name, stateObject, countFunction)
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    private static class MeterKey {
+
+        private final String name;
+        private final String outcome;
+        private final String[] tags;
+
+        MeterKey(String name, String outcome, String[] tags) {
+            this.name = name;
+            this.outcome = outcome;
+            this.tags = tags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            MeterKey meterKey = (MeterKey) o;
+            return Objects.equals(name, meterKey.name) &&
+                    Objects.equals(outcome, meterKey.outcome) &&
+                    Arrays.equals(tags, meterKey.tags);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hash(name, outcome) + Arrays.hashCode(tags);
+        }
+    }
+}
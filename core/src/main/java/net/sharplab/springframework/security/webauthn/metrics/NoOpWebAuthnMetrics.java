@@ -0,0 +1,60 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metrics;
+
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * {@link WebAuthnMetrics} which records nothing, used when no metrics backend is configured
+ */
+public class NoOpWebAuthnMetrics implements WebAuthnMetrics {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final NoOpWebAuthnMetrics INSTANCE = new NoOpWebAuthnMetrics();
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public void recordTime(String name, long durationNanos, String outcome, String... tags) {
+        // nop
+    }
+
+    @Override
+    public void incrementCounter(String name, String... tags) {
+        // nop
+    }
+
+    @Override
+    public <T> void registerGauge(String name, T stateObject, ToDoubleFunction<T> valueFunction, String... tags) {
+        // nop
+    }
+
+    /**
+     * Runs the task without reading the clock, unless a {@link ServerTimingRecorder} is bound to the current thread
+     */
+    @Override
+    public <T> T time(String name, Supplier<T> task, String... tags) {
+        if (!ServerTimingRecorder.isRecording()) {
+            return task.get();
+        }
+        return WebAuthnMetrics.super.time(name, task, tags);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metrics;
+
+import org.springframework.util.Assert;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Request scoped recorder of the stage durations emitted as a <code>Server-Timing</code> response header
+ * <p>
+ * While a recorder is bound to the current thread by {@link #record(Supplier)}, the durations timed through
+ * {@link WebAuthnMetrics} are summed per stage into fixed size arrays, so that recording does not allocate.
+ * Stages exceeding the capacity are dropped.
+ */
+public class ServerTimingRecorder {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    private static final int CAPACITY = 8;
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    private static final ServerTimingRecorder DISABLED = new ServerTimingRecorder(false);
+
+    private static final ThreadLocal<ServerTimingRecorder> CURRENT = new ThreadLocal<>();
+
+    //~ Instance fields
+    // ================================================================================================
+    private final boolean enabled;
+    private final String[] names;
+    private final long[] durations;
+    private int size = 0;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public ServerTimingRecorder() {
+        this(true);
+    }
+
+    private ServerTimingRecorder(boolean enabled) {
+        this.enabled = enabled;
+        this.names = enabled ? new String[CAPACITY] : new String[0];
+        this.durations = enabled ? new long[CAPACITY] : new long[0];
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Returns a new recorder for the given fraction of requests, or a disabled one for the others
+     *
+     * @param samplingRate the fraction of requests to record, between 0.0 and 1.0
+     * @return the recorder
+     */
+    public static ServerTimingRecorder sample(double samplingRate) {
+        if (samplingRate <= 0 || (samplingRate < 1 && ThreadLocalRandom.current().nextDouble() >= samplingRate)) {
+            return DISABLED;
+        }
+        return new ServerTimingRecorder();
+    }
+
+    /**
+     * Returns whether a recorder is bound to the current thread
+     *
+     * @return true if a recorder is bound
+     */
+    public static boolean isRecording() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Adds the duration to the recorder bound to the current thread, if any
+     * <p>
+     * The stage is named after the value of the {@link WebAuthnMetrics#STAGE_TAG} tag, or the last segment of the
+     * timer name if it is not tagged with a stage.
+     *
+     * @param name          the name of the timer
+     * @param durationNanos the duration in nanoseconds
+     * @param tags          the tags as alternating keys and values
+     */
+    public static void recordTime(String name, long durationNanos, String... tags) {
+        ServerTimingRecorder recorder = CURRENT.get();
+        if (recorder != null) {
+            recorder.add(resolveStage(name, tags), durationNanos);
+        }
+    }
+
+    private static String resolveStage(String name, String... tags) {
+        for (int i = 0; i + 1 < tags.length; i += 2) {
+            if (WebAuthnMetrics.STAGE_TAG.equals(tags[i])) {
+                return tags[i + 1];
+            }
+        }
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Runs the task with this recorder bound to the current thread
+     *
+     * @param task the task
+     * @param <T>  the type of the result
+     * @return the result of the task
+     */
+    public <T> T record(Supplier<T> task) {
+        if (!enabled) {
+            return task.get();
+        }
+        ServerTimingRecorder previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    void add(String stage, long durationNanos) {
+        Assert.notNull(stage, "stage must not be null");
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(stage)) {
+                durations[i] += durationNanos;
+                return;
+            }
+        }
+        if (size < names.length) {
+            names[size] = stage;
+            durations[size] = durationNanos;
+            size++;
+        }
+    }
+
+    /**
+     * Adds the <code>Server-Timing</code> header to the response if any duration is recorded
+     *
+     * @param response the response
+     */
+    public void writeHeader(HttpServletResponse response) {
+        if (size == 0 || response.isCommitted()) {
+            return;
+        }
+        response.addHeader(SERVER_TIMING_HEADER, getHeaderValue());
+    }
+
+    /**
+     * Returns the recorded durations formatted as a <code>Server-Timing</code> header value
+     *
+     * @return the header value, which is empty if no duration is recorded
+     */
+    public String getHeaderValue() {
+        StringBuilder builder = new StringBuilder(size * 24);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(names[i]).append(";dur=").append(Math.round(durations[i] / NANOS_PER_MILLI * 1000) / 1000d);
+        }
+        return builder.toString();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metrics;
+
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Facade to the metrics backend used to instrument the WebAuthn authentication and registration pipeline,
+ * so that the components don't depend on a specific metrics library.
+ * <p>
+ * Timers are tagged with <code>outcome</code>, which is <code>success</code> or the simple name of the thrown exception.
+ * Tags are given as alternating keys and values.
+ *
+ * @see MicrometerWebAuthnMetrics
+ * @see NoOpWebAuthnMetrics
+ */
+public interface WebAuthnMetrics {
+
+    /**
+     * Timer of the stages of {@link net.sharplab.springframework.security.webauthn.WebAuthnProcessingFilter}
+     */
+    String PROCESSING_FILTER_TIMER = "webauthn.processing.filter";
+
+    /**
+     * Timer of the stages of {@link net.sharplab.springframework.security.webauthn.WebAuthnAuthenticationProvider}
+     */
+    String AUTHENTICATION_TIMER = "webauthn.authentication";
+
+    /**
+     * Timer of {@link net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidator}
+     */
+    String REGISTRATION_TIMER = "webauthn.registration";
+
+    /**
+     * Timer of the stages of {@link net.sharplab.springframework.security.webauthn.options.OptionsProviderImpl}
+     */
+    String OPTIONS_TIMER = "webauthn.options";
+
+    /**
+     * Timer of the options and the FIDO server endpoints
+     */
+    String ENDPOINT_TIMER = "webauthn.endpoint";
+
+    /**
+     * Counter of the exceptions produced by {@link net.sharplab.springframework.security.webauthn.util.ExceptionUtil}
+     */
+    String EXCEPTION_COUNTER = "webauthn.exceptions";
+
+    /**
+     * Gauge of the number of challenges held by a challenge store
+     */
+    String CHALLENGE_STORE_SIZE_GAUGE = "webauthn.challenge.store.size";
+
+    /**
+     * Gauge of the number of blocks ready to be handed out by an {@link net.sharplab.springframework.security.webauthn.util.EntropyPool}
+     */
+    String ENTROPY_POOL_AVAILABLE_GAUGE = "webauthn.entropy.pool.available";
+
+    /**
+     * Counter of the blocks handed out by an {@link net.sharplab.springframework.security.webauthn.util.EntropyPool},
+     * tagged with <code>source</code>, which is <code>pool</code> or <code>direct</code> when the pool had run dry
+     */
+    String ENTROPY_POOL_BLOCKS_COUNTER = "webauthn.entropy.pool.blocks";
+
+    /**
+     * Counter of the refills of an {@link net.sharplab.springframework.security.webauthn.util.EntropyPool}
+     */
+    String ENTROPY_POOL_REFILLS_COUNTER = "webauthn.entropy.pool.refills";
+
+    String STAGE_TAG = "stage";
+    String ENDPOINT_TAG = "endpoint";
+    String FORMAT_TAG = "format";
+    String EXCEPTION_TAG = "exception";
+    String OUTCOME_TAG = "outcome";
+    String REPOSITORY_TAG = "repository";
+    String SOURCE_TAG = "source";
+    String OUTCOME_SUCCESS = "success";
+
+    /**
+     * Records the duration of an operation
+     *
+     * @param name          the name of the timer
+     * @param durationNanos the duration in nanoseconds
+     * @param outcome       <code>success</code> or the simple name of the thrown exception
+     * @param tags          the tags as alternating keys and values
+     */
+    void recordTime(String name, long durationNanos, String outcome, String... tags);
+
+    /**
+     * Increments a counter
+     *
+     * @param name the name of the counter
+     * @param tags the tags as alternating keys and values
+     */
+    void incrementCounter(String name, String... tags);
+
+    /**
+     * Registers a gauge which samples the given object
+     *
+     * @param name          the name of the gauge
+     * @param stateObject   the object to sample
+     * @param valueFunction the function to extract the value from the object
+     * @param tags          the tags as alternating keys and values
+     * @param <T>           the type of the object
+     */
+    <T> void registerGauge(String name, T stateObject, ToDoubleFunction<T> valueFunction, String... tags);
+
+    /**
+     * Registers a counter which samples a monotonically increasing count of the given object.
+     * By default, it is registered as a gauge.
+     *
+     * @param name          the name of the counter
+     * @param stateObject   the object to sample
+     * @param countFunction the function to extract the count from the object
+     * @param tags          the tags as alternating keys and values
+     * @param <T>           the type of the object
+     */
+    default <T> void registerFunctionCounter(String name, T stateObject, ToDoubleFunction<T> countFunction, String... tags) {
+        registerGauge(name, stateObject, countFunction, tags);
+    }
+
+    /**
+     * Runs the task and records its duration with the outcome, also to the {@link ServerTimingRecorder} bound to the
+     * current thread if any
+     *
+     * @param name the name of the timer
+     * @param task the task
+     * @param tags the tags as alternating keys and values
+     * @param <T>  the type of the result
+     * @return the result of the task
+     */
+    default <T> T time(String name, Supplier<T> task, String... tags) {
+        long start = System.nanoTime();
+        String outcome = OUTCOME_SUCCESS;
+        try {
+            return task.get();
+        } catch (RuntimeException e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            long durationNanos = System.nanoTime() - start;
+            recordTime(name, durationNanos, outcome, tags);
+            ServerTimingRecorder.recordTime(name, durationNanos, tags);
+        }
+    }
+
+    /**
+     * Counts the exception under its simple name
+     *
+     * @param exception the exception
+     */
+    default void countException(RuntimeException exception) {
+        incrementCounter(EXCEPTION_COUNTER, EXCEPTION_TAG, exception.getClass().getSimpleName());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.ApplicationContext;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Internal utility to resolve {@link WebAuthnMetrics} from an {@link ApplicationContext}
+ */
+public class WebAuthnMetricsUtil {
+
+    private static final boolean MICROMETER_PRESENT =
+            ClassUtils.isPresent("io.micrometer.core.instrument.MeterRegistry", WebAuthnMetricsUtil.class.getClassLoader());
+
+    private WebAuthnMetricsUtil() {
+    }
+
+    /**
+     * Returns the {@link WebAuthnMetrics} bean if defined, otherwise a {@link MicrometerWebAuthnMetrics} if a unique
+     * {@link MeterRegistry} bean is defined, otherwise {@link NoOpWebAuthnMetrics}
+     *
+     * @param applicationContext the {@link ApplicationContext}
+     * @return the {@link WebAuthnMetrics}
+     */
+    public static WebAuthnMetrics getWebAuthnMetrics(ApplicationContext applicationContext) {
+        if (applicationContext == null) {
+            return NoOpWebAuthnMetrics.INSTANCE;
+        }
+        String[] beanNames = applicationContext.getBeanNamesForType(WebAuthnMetrics.class);
+        if (beanNames.length != 0) {
+            return applicationContext.getBean(WebAuthnMetrics.class);
+        }
+        if (MICROMETER_PRESENT) {
+            return MicrometerSupport.getWebAuthnMetrics(applicationContext);
+        }
+        return NoOpWebAuthnMetrics.INSTANCE;
+    }
+
+    /**
+     * Isolates the references to Micrometer types, so that they are resolved only if Micrometer is on the classpath
+     */
+    private static class MicrometerSupport {
+
+        private static WebAuthnMetrics getWebAuthnMetrics(ApplicationContext applicationContext) {
+            MeterRegistry meterRegistry = applicationContext.getBeanProvider(MeterRegistry.class).getIfUnique();
+            return meterRegistry == null ? NoOpWebAuthnMetrics.INSTANCE : new MicrometerWebAuthnMetrics(meterRegistry);
+        }
+    }
+}
@@ -52,6 +52,22 @@ public interface OptionsProvider {
      */
     AssertionOptions getAssertionOptions(HttpServletRequest request, String username, Challenge challenge);
 
+    /**
+     * provides {@link AttestationOptions} and {@link AssertionOptions} together. If <code>username</code> is <code>null</code>,
+     * <code>user</code>, <code>credentials</code> are not populated.
+     * Implementations should look up the user, resolve the challenge and encode the credentials only once.
+     *
+     * @param request   request
+     * @param username  username
+     * @param challenge if null, new challenge is generated. Otherwise, specified challenge is used.
+     * @return {@link CombinedOptions} instance
+     */
+    default CombinedOptions getCombinedOptions(HttpServletRequest request, String username, Challenge challenge) {
+        AttestationOptions attestationOptions = getAttestationOptions(request, username, challenge);
+        AssertionOptions assertionOptions = getAssertionOptions(request, username, challenge);
+        return new CombinedOptions(attestationOptions, assertionOptions);
+    }
+
     /**
      * returns effective rpId based on request origin and configured <code>rpId</code>.
      *
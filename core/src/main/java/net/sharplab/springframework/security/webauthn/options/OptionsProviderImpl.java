@@ -28,6 +28,9 @@ import com.webauthn4j.util.Base64UrlUtil;
 import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
 import net.sharplab.springframework.security.webauthn.endpoint.Parameters;
 import net.sharplab.springframework.security.webauthn.endpoint.WebAuthnPublicKeyCredentialUserEntity;
+import net.sharplab.springframework.security.webauthn.jfr.FlightRecorderUtil;
+import net.sharplab.springframework.security.webauthn.metrics.NoOpWebAuthnMetrics;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetrics;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetails;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
 import net.sharplab.springframework.security.webauthn.util.ServletUtil;
@@ -68,6 +71,7 @@ public class OptionsProviderImpl implements OptionsProvider {
 
     private WebAuthnUserDetailsService userDetailsService;
     private ChallengeRepository challengeRepository;
+    private WebAuthnMetrics metrics = NoOpWebAuthnMetrics.INSTANCE;
 
     // ~ Constructors
     // ===================================================================================================
@@ -90,63 +94,89 @@ public class OptionsProviderImpl implements OptionsProvider {
      */
     public AttestationOptions getAttestationOptions(HttpServletRequest request, String username, Challenge challenge) {
 
-        WebAuthnPublicKeyCredentialUserEntity user;
-        Collection<? extends Authenticator> authenticators;
+        WebAuthnUserDetails userDetails = loadUserDetails(username);
+        List<String> credentials = encodeCredentials(userDetails);
+        return createAttestationOptions(request, username, userDetails, resolveChallenge(request, challenge), credentials);
+    }
 
-        try {
-            WebAuthnUserDetails userDetails = userDetailsService.loadUserByUsername(username);
-            authenticators = userDetails.getAuthenticators();
-            String userHandle = Base64UrlUtil.encodeToString(userDetails.getUserHandle());
-            user = new WebAuthnPublicKeyCredentialUserEntity(userHandle, username);
-        } catch (UsernameNotFoundException e) {
-            authenticators = Collections.emptyList();
-            user = null;
-        }
+    public AssertionOptions getAssertionOptions(HttpServletRequest request, String username, Challenge challenge) {
 
-        List<String> credentials = new ArrayList<>();
-        for (Authenticator authenticator : authenticators) {
-            String credentialId = Base64UrlUtil.encodeToString(authenticator.getAttestedCredentialData().getCredentialId());
-            credentials.add(credentialId);
-        }
+        WebAuthnUserDetails userDetails = loadUserDetails(username);
+        List<String> credentials = encodeCredentials(userDetails);
+        return createAssertionOptions(request, resolveChallenge(request, challenge), credentials);
+    }
 
-        PublicKeyCredentialRpEntity relyingParty = new PublicKeyCredentialRpEntity(getEffectiveRpId(request), rpName, rpIcon);
-        if (challenge == null) {
-            challenge = challengeRepository.loadOrGenerateChallenge(request);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CombinedOptions getCombinedOptions(HttpServletRequest request, String username, Challenge challenge) {
+
+        WebAuthnUserDetails userDetails = loadUserDetails(username);
+        List<String> credentials = encodeCredentials(userDetails);
+        Challenge resolvedChallenge = resolveChallenge(request, challenge);
+        return new CombinedOptions(
+                createAttestationOptions(request, username, userDetails, resolvedChallenge, credentials),
+                createAssertionOptions(request, resolvedChallenge, credentials));
+    }
+
+    private AttestationOptions createAttestationOptions(HttpServletRequest request, String username, WebAuthnUserDetails userDetails,
+                                                        Challenge challenge, List<String> credentials) {
+        WebAuthnPublicKeyCredentialUserEntity user;
+        if (userDetails == null) {
+            user = null;
         } else {
-            challengeRepository.saveChallenge(challenge, request);
+            String userHandle = Base64UrlUtil.encodeToString(userDetails.getUserHandle());
+            user = new WebAuthnPublicKeyCredentialUserEntity(userHandle, username);
         }
+        PublicKeyCredentialRpEntity relyingParty = new PublicKeyCredentialRpEntity(getEffectiveRpId(request), rpName, rpIcon);
 
         return new AttestationOptions(relyingParty, user, challenge, pubKeyCredParams, registrationTimeout,
                 credentials, registrationExtensions);
     }
 
-    public AssertionOptions getAssertionOptions(HttpServletRequest request, String username, Challenge challenge) {
+    private AssertionOptions createAssertionOptions(HttpServletRequest request, Challenge challenge, List<String> credentials) {
+        String effectiveRpId = getEffectiveRpId(request);
+        Parameters parameters
+                = new Parameters(usernameParameter, passwordParameter,
+                credentialIdParameter, clientDataJSONParameter, authenticatorDataParameter, signatureParameter, clientExtensionsJSONParameter);
 
-        Collection<? extends Authenticator> authenticators;
-        try {
-            WebAuthnUserDetails userDetails = userDetailsService.loadUserByUsername(username);
-            authenticators = userDetails.getAuthenticators();
-        } catch (UsernameNotFoundException e) {
-            authenticators = Collections.emptyList();
-        }
+        return new AssertionOptions(challenge, authenticationTimeout, effectiveRpId, credentials, authenticationExtensions, parameters);
+    }
 
-        String effectiveRpId = getEffectiveRpId(request);
+    private WebAuthnUserDetails loadUserDetails(String username) {
+        return metrics.time(WebAuthnMetrics.OPTIONS_TIMER,
+                () -> FlightRecorderUtil.recordStage(FlightRecorderUtil.OPTIONS, "user-load", () -> {
+                    try {
+                        return userDetailsService.loadUserByUsername(username);
+                    } catch (UsernameNotFoundException e) {
+                        return null;
+                    }
+                }),
+                WebAuthnMetrics.STAGE_TAG, "user-lookup");
+    }
 
-        List<String> credentials = new ArrayList<>();
+    private List<String> encodeCredentials(WebAuthnUserDetails userDetails) {
+        Collection<? extends Authenticator> authenticators = userDetails == null ? Collections.emptyList() : userDetails.getAuthenticators();
+        List<String> credentials = new ArrayList<>(authenticators.size());
         for (Authenticator authenticator : authenticators) {
             String credentialId = Base64UrlUtil.encodeToString(authenticator.getAttestedCredentialData().getCredentialId());
             credentials.add(credentialId);
         }
-        if (challenge == null) {
-            challenge = challengeRepository.loadOrGenerateChallenge(request);
-        } else {
-            challengeRepository.saveChallenge(challenge, request);
-        }
-        Parameters parameters
-                = new Parameters(usernameParameter, passwordParameter,
-                credentialIdParameter, clientDataJSONParameter, authenticatorDataParameter, signatureParameter, clientExtensionsJSONParameter);
+        return credentials;
+    }
 
-        return new AssertionOptions(challenge, authenticationTimeout, effectiveRpId, credentials, authenticationExtensions, parameters);
+    private Challenge resolveChallenge(HttpServletRequest request, Challenge challenge) {
+        return metrics.time(WebAuthnMetrics.OPTIONS_TIMER,
+                () -> FlightRecorderUtil.recordStage(FlightRecorderUtil.OPTIONS, "challenge", () -> {
+                    if (challenge == null) {
+                        return challengeRepository.loadOrGenerateChallenge(request);
+                    } else {
+                        challengeRepository.saveChallenge(challenge, request);
+                        return challenge;
+                    }
+                }),
+                WebAuthnMetrics.STAGE_TAG, "challenge");
     }
 
     public String getEffectiveRpId(HttpServletRequest request) {
@@ -295,4 +325,13 @@ public class OptionsProviderImpl implements OptionsProvider {
         this.clientExtensionsJSONParameter = clientExtensionsJSONParameter;
     }
 
+    public WebAuthnMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(WebAuthnMetrics metrics) {
+        Assert.notNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+    }
+
 }
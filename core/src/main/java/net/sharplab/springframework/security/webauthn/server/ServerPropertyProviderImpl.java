@@ -52,7 +52,7 @@ public class ServerPropertyProviderImpl implements ServerPropertyProvider {
 
         Origin origin = ServletUtil.getOrigin(request);
         String effectiveRpId = optionsProvider.getEffectiveRpId(request);
-        Challenge challenge = challengeRepository.loadOrGenerateChallenge(request);
+        Challenge challenge = challengeRepository.consumeChallenge(request);
 
         return new ServerProperty(origin, effectiveRpId, challenge, null); // tokenBinding is not supported by Servlet API as of 4.0
     }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+/**
+ * Notified by {@link net.sharplab.springframework.security.webauthn.WebAuthnAuthenticationProvider} after the counter
+ * of an authenticator is persisted, so that a {@link WebAuthnUserDetailsService} holding loaded users can keep the
+ * counter of their authenticators up to date
+ *
+ * @see CachingWebAuthnUserDetailsService
+ */
+public interface AuthenticatorCounterListener {
+
+    /**
+     * Called after the counter of the authenticator is persisted
+     *
+     * @param username     the username of the owner of the authenticator
+     * @param credentialId the credentialId of the authenticator
+     * @param counter      the persisted counter
+     */
+    void onCounterUpdated(String username, byte[] credentialId, long counter);
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Internal utility to serialize the fields of the binary records of users and credentials
+ * <p>
+ * Byte arrays are stored with a signed 16 bits length, -1 standing for <code>null</code>.
+ */
+class BinaryRecordUtil {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    static final int FLAG_ENABLED = 1;
+    static final int FLAG_ACCOUNT_NON_EXPIRED = 1 << 1;
+    static final int FLAG_CREDENTIALS_NON_EXPIRED = 1 << 2;
+    static final int FLAG_ACCOUNT_NON_LOCKED = 1 << 3;
+    static final int FLAG_SINGLE_FACTOR_AUTHENTICATION_ALLOWED = 1 << 4;
+
+    static final int AAGUID_LENGTH = 16;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    private BinaryRecordUtil() {
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    static int flagsOf(WebAuthnUserDetails user) {
+        int flags = 0;
+        flags |= user.isEnabled() ? FLAG_ENABLED : 0;
+        flags |= user.isAccountNonExpired() ? FLAG_ACCOUNT_NON_EXPIRED : 0;
+        flags |= user.isCredentialsNonExpired() ? FLAG_CREDENTIALS_NON_EXPIRED : 0;
+        flags |= user.isAccountNonLocked() ? FLAG_ACCOUNT_NON_LOCKED : 0;
+        flags |= user.isSingleFactorAuthenticationAllowed() ? FLAG_SINGLE_FACTOR_AUTHENTICATION_ALLOWED : 0;
+        return flags;
+    }
+
+    static int sizeOf(byte[] value) {
+        if (value != null) {
+            Assert.isTrue(value.length <= Short.MAX_VALUE, "value must not be longer than 32767 bytes");
+        }
+        return 2 + (value == null ? 0 : value.length);
+    }
+
+    static void putBytes(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+        } else {
+            buffer.putShort((short) value.length);
+            buffer.put(value);
+        }
+    }
+
+    static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return value;
+    }
+
+    static void skipBytes(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        buffer.position(buffer.position() + Math.max(length, 0));
+    }
+
+    static byte[] encode(String value) {
+        Assert.notNull(value, "value must not be null");
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] encodeNullable(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String decode(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+}
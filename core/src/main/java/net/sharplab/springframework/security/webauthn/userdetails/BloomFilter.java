@@ -0,0 +1,111 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import org.springframework.util.Assert;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Internal thread-safe Bloom filter of byte array keys, sized from the expected number of keys and the target false
+ * positive rate.
+ * <p>
+ * Bit positions are derived from two hashes of the key (Kirsch-Mitzenmacher). The hash is seeded per instance, so that
+ * false positives cannot be crafted in advance. Keys cannot be removed.
+ */
+class BloomFilter {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final long MAX_BIT_COUNT = (long) Integer.MAX_VALUE * Long.SIZE;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final long seed = new SecureRandom().nextLong();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    BloomFilter(long expectedKeys, double falsePositiveRate) {
+        Assert.isTrue(expectedKeys > 0, "expectedKeys must be positive");
+        Assert.isTrue(falsePositiveRate > 0 && falsePositiveRate < 1, "falsePositiveRate must be between 0 and 1");
+        long optimalBitCount = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = Math.min(Math.max(optimalBitCount, Long.SIZE), MAX_BIT_COUNT);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedKeys * Math.log(2)));
+        this.words = new AtomicLongArray((int) ((bitCount + Long.SIZE - 1) / Long.SIZE));
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    void put(byte[] key) {
+        long hash1 = hash(key);
+        long hash2 = mix(hash1 ^ seed) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word;
+            do {
+                word = words.get(index);
+            } while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask));
+        }
+    }
+
+    boolean mightContain(byte[] key) {
+        long hash1 = hash(key);
+        long hash2 = mix(hash1 ^ seed) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long getBitCount() {
+        return bitCount;
+    }
+
+    int getHashCount() {
+        return hashCount;
+    }
+
+    private long hash(byte[] key) {
+        long hash = seed ^ key.length;
+        for (byte b : key) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    // final avalanche of MurmurHash3
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
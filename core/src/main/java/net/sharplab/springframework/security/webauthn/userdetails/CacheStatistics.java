@@ -0,0 +1,120 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Snapshot of the statistics of a cache held by {@link CachingWebAuthnUserDetailsService}
+ */
+public class CacheStatistics implements Serializable {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final long serialVersionUID = 1L;
+
+    // ~ Instance fields
+    // ================================================================================================
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long size;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param hitCount      number of lookups served from the cache
+     * @param missCount     number of lookups delegated to the backing service
+     * @param evictionCount number of entries evicted because of the size limit or the time-to-live
+     * @param size          number of entries currently held
+     */
+    public CacheStatistics(long hitCount, long missCount, long evictionCount, long size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Returns the ratio of lookups served from the cache
+     *
+     * @return hit rate, or <code>1.0</code> if no lookup was made yet
+     */
+    public double getHitRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CacheStatistics that = (CacheStatistics) o;
+        return hitCount == that.hitCount &&
+                missCount == that.missCount &&
+                evictionCount == that.evictionCount &&
+                size == that.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(hitCount, missCount, evictionCount, size);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                ", size=" + size +
+                '}';
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * A {@link WebAuthnUserDetailsService} decorator which caches users loaded from the delegate.
+ * <p>
+ * Users are cached by username and by credentialId in two size bounded caches, evicting in approximate LRU order,
+ * whose entries expire after the configured time-to-live. Lookups failing with {@link UsernameNotFoundException} or
+ * {@link CredentialIdNotFoundException} are not cached. {@link #addAuthenticator(String, Authenticator)} and
+ * {@code removeAuthenticator} invalidate every entry of the user in question, and a load completing after an
+ * invalidation is not cached, so that a removed authenticator is not served from a stale entry. If user records are
+ * modified outside of this service, call {@link #evictUser(String)} or {@link #evictAll()}.
+ * <p>
+ * Counters are persisted through {@link net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticatorService},
+ * not through this service, so {@link net.sharplab.springframework.security.webauthn.WebAuthnAuthenticationProvider}
+ * reports them through {@link #onCounterUpdated(String, byte[], long)}, which raises the counter of the cached
+ * copies. Otherwise a cached user would keep the counter it was loaded with for the whole time-to-live, and a cloned
+ * authenticator replaying a counter already used would pass the signature counter check. Counters updated by other
+ * nodes are not reported, so in a cluster, pair this cache with a
+ * {@link net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticatorService} whose
+ * {@code getLatestCounter} reads the shared store, or keep the time-to-live short.
+ * <p>
+ * The cache holds a copy of each loaded user, and every lookup returns a new copy, so that the erasure of the
+ * password or the update of a counter by one caller does not affect the others. Users are copied into
+ * {@link WebAuthnUserDetailsImpl} by default; set a copier with {@link #setUserDetailsCopier(UnaryOperator)} to keep
+ * a custom {@link WebAuthnUserDetails} type.
+ */
+public class CachingWebAuthnUserDetailsService implements WebAuthnUserDetailsService, AuthenticatorCounterListener {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    public static final long DEFAULT_TIME_TO_LIVE = 60 * 1000L;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final WebAuthnUserDetailsService delegate;
+    private final ExpiringLruCache<String, WebAuthnUserDetails> usernameCache;
+    private final ExpiringLruCache<ByteBuffer, WebAuthnUserDetails> credentialIdCache;
+    private final ConcurrentMap<String, Set<ByteBuffer>> credentialIdKeysByUsername = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private UnaryOperator<WebAuthnUserDetails> userDetailsCopier = WebAuthnUserDetailsUtil::copyOf;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor with the default maximum size and time-to-live
+     *
+     * @param delegate the {@link WebAuthnUserDetailsService} to be cached
+     */
+    public CachingWebAuthnUserDetailsService(WebAuthnUserDetailsService delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param delegate    the {@link WebAuthnUserDetailsService} to be cached
+     * @param maximumSize maximum number of entries held by each of the username and credentialId caches
+     * @param timeToLive  time-to-live of a cache entry in milliseconds
+     */
+    public CachingWebAuthnUserDetailsService(WebAuthnUserDetailsService delegate, int maximumSize, long timeToLive) {
+        this(delegate, maximumSize, timeToLive, Clock.systemUTC());
+    }
+
+    CachingWebAuthnUserDetailsService(WebAuthnUserDetailsService delegate, int maximumSize, long timeToLive, Clock clock) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.isTrue(maximumSize >= 0, "maximumSize must not be negative");
+        Assert.isTrue(timeToLive > 0, "timeToLive must be positive");
+        Assert.notNull(clock, "clock must not be null");
+
+        this.delegate = delegate;
+        this.usernameCache = new ExpiringLruCache<>(maximumSize, timeToLive, clock);
+        this.credentialIdCache = new ExpiringLruCache<>(maximumSize, timeToLive, clock, this::unindex);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WebAuthnUserDetails loadUserByUsername(String username) {
+        WebAuthnUserDetails cached = usernameCache.get(username);
+        if (cached != null) {
+            return userDetailsCopier.apply(cached);
+        }
+        long loadGeneration = generation.get();
+        WebAuthnUserDetails user = delegate.loadUserByUsername(username);
+        if (user != null) {
+            Object token = usernameCache.put(username, userDetailsCopier.apply(user));
+            if (generation.get() != loadGeneration) {
+                // invalidated while loading, the loaded user may be stale
+                usernameCache.remove(username, token);
+            }
+        }
+        return user;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WebAuthnUserDetails loadUserByCredentialId(byte[] credentialId) {
+        ByteBuffer key = toKey(credentialId);
+        WebAuthnUserDetails cached = credentialIdCache.get(key);
+        if (cached != null) {
+            return userDetailsCopier.apply(cached);
+        }
+        long loadGeneration = generation.get();
+        WebAuthnUserDetails user = delegate.loadUserByCredentialId(credentialId);
+        if (user != null) {
+            WebAuthnUserDetails copy = userDetailsCopier.apply(user);
+            Object token = credentialIdCache.put(key, copy);
+            credentialIdKeysByUsername.computeIfAbsent(copy.getUsername(), username -> ConcurrentHashMap.newKeySet()).add(key);
+            if (generation.get() != loadGeneration) {
+                // invalidated while loading, the loaded user may be stale
+                credentialIdCache.remove(key, token);
+            }
+        }
+        return user;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addAuthenticator(String username, Authenticator authenticator) {
+        delegate.addAuthenticator(username, authenticator);
+        evictUser(username);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeAuthenticator(String username, Authenticator authenticator) {
+        delegate.removeAuthenticator(username, authenticator);
+        evictUser(username);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeAuthenticator(String username, byte[] credentialId) {
+        delegate.removeAuthenticator(username, credentialId);
+        credentialIdCache.remove(toKey(credentialId));
+        evictUser(username);
+    }
+
+    /**
+     * Raises the counter of the authenticator in the cached copies of its owner
+     *
+     * @param username     the username of the owner of the authenticator
+     * @param credentialId the credentialId of the authenticator
+     * @param counter      the persisted counter
+     */
+    @Override
+    public void onCounterUpdated(String username, byte[] credentialId, long counter) {
+        UnaryOperator<WebAuthnUserDetails> counterUpdater = cached -> {
+            WebAuthnUserDetails copy = userDetailsCopier.apply(cached);
+            for (Authenticator authenticator : copy.getAuthenticators()) {
+                if (Arrays.equals(authenticator.getAttestedCredentialData().getCredentialId(), credentialId)
+                        && authenticator.getCounter() < counter) {
+                    authenticator.setCounter(counter);
+                }
+            }
+            return copy;
+        };
+        credentialIdCache.replace(toKey(credentialId), counterUpdater);
+        usernameCache.replace(username, counterUpdater);
+    }
+
+    /**
+     * Evicts every cache entry of the user
+     *
+     * @param username the username identifying the user
+     */
+    public void evictUser(String username) {
+        // advanced first, so that loads in flight do not cache the user again
+        generation.incrementAndGet();
+        usernameCache.remove(username);
+        Set<ByteBuffer> keys = credentialIdKeysByUsername.remove(username);
+        if (keys != null) {
+            keys.forEach(credentialIdCache::remove);
+        }
+    }
+
+    /**
+     * Evicts every cache entry
+     */
+    public void evictAll() {
+        generation.incrementAndGet();
+        usernameCache.clear();
+        credentialIdCache.clear();
+        credentialIdKeysByUsername.clear();
+    }
+
+    /**
+     * Returns the statistics of the cache indexed by username
+     *
+     * @return {@link CacheStatistics}
+     */
+    public CacheStatistics getUsernameCacheStatistics() {
+        return usernameCache.getStatistics();
+    }
+
+    /**
+     * Returns the statistics of the cache indexed by credentialId
+     *
+     * @return {@link CacheStatistics}
+     */
+    public CacheStatistics getCredentialIdCacheStatistics() {
+        return credentialIdCache.getStatistics();
+    }
+
+    public WebAuthnUserDetailsService getDelegate() {
+        return delegate;
+    }
+
+    public UnaryOperator<WebAuthnUserDetails> getUserDetailsCopier() {
+        return userDetailsCopier;
+    }
+
+    /**
+     * Sets the function copying users into the cache and out of it. Defaults to
+     * {@link WebAuthnUserDetailsUtil#copyOf(WebAuthnUserDetails)}.
+     *
+     * @param userDetailsCopier the function returning an independent copy of a user
+     */
+    public void setUserDetailsCopier(UnaryOperator<WebAuthnUserDetails> userDetailsCopier) {
+        Assert.notNull(userDetailsCopier, "userDetailsCopier must not be null");
+        this.userDetailsCopier = userDetailsCopier;
+    }
+
+    private void unindex(ByteBuffer key, WebAuthnUserDetails user) {
+        credentialIdKeysByUsername.computeIfPresent(user.getUsername(), (username, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private ByteBuffer toKey(byte[] credentialId) {
+        return ByteBuffer.wrap(credentialId.clone());
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * A {@link WebAuthnUserDetailsService} decorator which coalesces concurrent loads of the same user.
+ * <p>
+ * While a user is being loaded from the delegate by username or by credentialId, other requests for the same key wait
+ * for that load and share its result, or its exception, instead of loading the user again. Nothing is kept once the
+ * load completes. Modifications invalidate the loads in flight, so that requests made after a modification load the
+ * user again. Placed behind a {@link CachingWebAuthnUserDetailsService}, concurrent cache misses cause a single load.
+ * <p>
+ * A request waits for the load in flight at most for the configured wait timeout, after which it loads the user from
+ * the delegate itself, so that a stuck load does not hold every request for the same user. Each waiting request
+ * receives its own copy of the loaded user, made by {@link WebAuthnUserDetailsUtil#copyOf(WebAuthnUserDetails)}
+ * unless another copier is set with {@link #setUserDetailsCopier(UnaryOperator)}.
+ */
+public class CoalescingWebAuthnUserDetailsService implements WebAuthnUserDetailsService, AuthenticatorCounterListener {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final long DEFAULT_WAIT_TIMEOUT = 5 * 1000L;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final WebAuthnUserDetailsService delegate;
+    private final long waitTimeout;
+    private final ConcurrentMap<String, CompletableFuture<WebAuthnUserDetails>> usernameLoads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ByteBuffer, CompletableFuture<WebAuthnUserDetails>> credentialIdLoads = new ConcurrentHashMap<>();
+    private final LongAdder coalescedCount = new LongAdder();
+    private final LongAdder timedOutCount = new LongAdder();
+    private UnaryOperator<WebAuthnUserDetails> userDetailsCopier = WebAuthnUserDetailsUtil::copyOf;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor with the default wait timeout
+     *
+     * @param delegate the {@link WebAuthnUserDetailsService} to be coalesced
+     */
+    public CoalescingWebAuthnUserDetailsService(WebAuthnUserDetailsService delegate) {
+        this(delegate, DEFAULT_WAIT_TIMEOUT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param delegate    the {@link WebAuthnUserDetailsService} to be coalesced
+     * @param waitTimeout maximum time in milliseconds a request waits for the load in flight
+     */
+    public CoalescingWebAuthnUserDetailsService(WebAuthnUserDetailsService delegate, long waitTimeout) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.isTrue(waitTimeout > 0, "waitTimeout must be positive");
+        this.delegate = delegate;
+        this.waitTimeout = waitTimeout;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WebAuthnUserDetails loadUserByUsername(String username) {
+        return load(usernameLoads, username, () -> delegate.loadUserByUsername(username));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WebAuthnUserDetails loadUserByCredentialId(byte[] credentialId) {
+        return load(credentialIdLoads, ByteBuffer.wrap(credentialId.clone()), () -> delegate.loadUserByCredentialId(credentialId));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addAuthenticator(String username, Authenticator authenticator) {
+        delegate.addAuthenticator(username, authenticator);
+        invalidateLoads();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeAuthenticator(String username, Authenticator authenticator) {
+        delegate.removeAuthenticator(username, authenticator);
+        invalidateLoads();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeAuthenticator(String username, byte[] credentialId) {
+        delegate.removeAuthenticator(username, credentialId);
+        invalidateLoads();
+    }
+
+    /**
+     * Forwards the counter update to the delegate if it is an {@link AuthenticatorCounterListener}
+     */
+    @Override
+    public void onCounterUpdated(String username, byte[] credentialId, long counter) {
+        if (delegate instanceof AuthenticatorCounterListener) {
+            ((AuthenticatorCounterListener) delegate).onCounterUpdated(username, credentialId, counter);
+        }
+    }
+
+    /**
+     * Makes subsequent requests start new loads instead of waiting for the loads in flight.
+     * Call it if user records are modified outside of this service.
+     */
+    public void invalidateLoads() {
+        usernameLoads.clear();
+        credentialIdLoads.clear();
+    }
+
+    /**
+     * Returns the number of requests which waited for a load started by another request
+     *
+     * @return the number of coalesced requests
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * Returns the number of requests which stopped waiting for a load after the wait timeout
+     *
+     * @return the number of timed out requests
+     */
+    public long getTimedOutCount() {
+        return timedOutCount.sum();
+    }
+
+    public WebAuthnUserDetailsService getDelegate() {
+        return delegate;
+    }
+
+    public UnaryOperator<WebAuthnUserDetails> getUserDetailsCopier() {
+        return userDetailsCopier;
+    }
+
+    /**
+     * Sets the function copying the loaded user for each waiting request. Defaults to
+     * {@link WebAuthnUserDetailsUtil#copyOf(WebAuthnUserDetails)}.
+     *
+     * @param userDetailsCopier the function returning an independent copy of a user
+     */
+    public void setUserDetailsCopier(UnaryOperator<WebAuthnUserDetails> userDetailsCopier) {
+        Assert.notNull(userDetailsCopier, "userDetailsCopier must not be null");
+        this.userDetailsCopier = userDetailsCopier;
+    }
+
+    private <K> WebAuthnUserDetails load(ConcurrentMap<K, CompletableFuture<WebAuthnUserDetails>> loads, K key, Supplier<WebAuthnUserDetails> loader) {
+        CompletableFuture<WebAuthnUserDetails> load = new CompletableFuture<>();
+        CompletableFuture<WebAuthnUserDetails> inFlight = loads.putIfAbsent(key, load);
+        if (inFlight != null) {
+            coalescedCount.increment();
+            return await(inFlight, loader);
+        }
+        try {
+            WebAuthnUserDetails user = loader.get();
+            load.complete(user);
+            return user;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, load);
+        }
+    }
+
+    private WebAuthnUserDetails await(CompletableFuture<WebAuthnUserDetails> load, Supplier<WebAuthnUserDetails> loader) {
+        WebAuthnUserDetails user;
+        try {
+            user = load.get(waitTimeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (TimeoutException e) {
+            timedOutCount.increment();
+            return loader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return loader.get();
+        }
+        return user == null ? null : userDetailsCopier.apply(user);
+    }
+}
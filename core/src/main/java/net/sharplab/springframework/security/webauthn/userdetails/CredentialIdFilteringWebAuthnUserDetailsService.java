@@ -0,0 +1,266 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import net.sharplab.springframework.security.webauthn.exception.WebAuthnAuthenticationException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link WebAuthnUserDetailsService} decorator which rejects unknown credentialIds without querying the delegate.
+ * <p>
+ * A Bloom filter of the credentialIds of every registered authenticator is built from a {@link CredentialIdSource},
+ * and updated by {@link #addAuthenticator(String, Authenticator)} and by the registrations the source notifies through
+ * {@link CredentialIdSource#addCredentialIdListener(java.util.function.Consumer)}, such as users created directly on
+ * {@link InMemoryWebAuthnUserDetailsService}. {@link #loadUserByCredentialId(byte[])} throws
+ * {@link CredentialIdNotFoundException}, without a stack trace, for credentialIds the filter guarantees to be unknown,
+ * so that random credentialIds sent by scanners do not reach the user store. Known credentialIds, and a small share
+ * of unknown ones given by the false positive rate, are loaded from the delegate.
+ * <p>
+ * Removed credentialIds stay in the filter, and the filter is resized to the number of credentials, on the periodic
+ * rebuilds. Lookups are passed through until the first rebuild, which starts in the background on construction,
+ * completes. Authenticators registered in a way the source does not observe, for example by another node, must be
+ * reported with {@link #putCredentialId(byte[])}, or they are rejected until the next rebuild.
+ */
+public class CredentialIdFilteringWebAuthnUserDetailsService implements WebAuthnUserDetailsService, AuthenticatorCounterListener, DisposableBean {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final long DEFAULT_EXPECTED_CREDENTIAL_COUNT = 100000;
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+    public static final long DEFAULT_REBUILD_INTERVAL = 60 * 60 * 1000L;
+
+    private static final double GROWTH_FACTOR = 1.25;
+
+    //~ Instance fields
+    // ================================================================================================
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final WebAuthnUserDetailsService delegate;
+    private final CredentialIdSource credentialIdSource;
+    private final long expectedCredentialCount;
+    private final double falsePositiveRate;
+    private final ScheduledExecutorService scheduler;
+    private final Object filterLock = new Object();
+    private final LongAdder rejectedCount = new LongAdder();
+    private volatile BloomFilter filter;
+    private BloomFilter rebuildingFilter;
+    private long credentialCount;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor with the default expected credential count, false positive rate and rebuild interval
+     *
+     * @param delegate           the {@link WebAuthnUserDetailsService} to be filtered
+     * @param credentialIdSource source of the credentialIds of every registered authenticator
+     */
+    public CredentialIdFilteringWebAuthnUserDetailsService(WebAuthnUserDetailsService delegate, CredentialIdSource credentialIdSource) {
+        this(delegate, credentialIdSource, DEFAULT_EXPECTED_CREDENTIAL_COUNT, DEFAULT_FALSE_POSITIVE_RATE, DEFAULT_REBUILD_INTERVAL);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param delegate                the {@link WebAuthnUserDetailsService} to be filtered
+     * @param credentialIdSource      source of the credentialIds of every registered authenticator
+     * @param expectedCredentialCount minimum number of credentials the filter is sized for
+     * @param falsePositiveRate       rate of unknown credentialIds passed to the delegate, between 0 and 1
+     * @param rebuildInterval         interval of the background rebuild in milliseconds, or <code>0</code> to build
+     *                                the filter only through {@link #rebuild()}
+     */
+    public CredentialIdFilteringWebAuthnUserDetailsService(WebAuthnUserDetailsService delegate, CredentialIdSource credentialIdSource,
+                                                           long expectedCredentialCount, double falsePositiveRate, long rebuildInterval) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.notNull(credentialIdSource, "credentialIdSource must not be null");
+        Assert.isTrue(expectedCredentialCount > 0, "expectedCredentialCount must be positive");
+        Assert.isTrue(falsePositiveRate > 0 && falsePositiveRate < 1, "falsePositiveRate must be between 0 and 1");
+        Assert.isTrue(rebuildInterval >= 0, "rebuildInterval must not be negative");
+
+        this.delegate = delegate;
+        this.credentialIdSource = credentialIdSource;
+        this.expectedCredentialCount = expectedCredentialCount;
+        this.falsePositiveRate = falsePositiveRate;
+        credentialIdSource.addCredentialIdListener(this::putCredentialId);
+
+        if (rebuildInterval > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("webauthn-credential-filter-");
+            threadFactory.setDaemon(true);
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            this.scheduler.scheduleWithFixedDelay(this::rebuildQuietly, 0, rebuildInterval, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WebAuthnUserDetails loadUserByUsername(String username) {
+        return delegate.loadUserByUsername(username);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WebAuthnUserDetails loadUserByCredentialId(byte[] credentialId) {
+        BloomFilter current = filter;
+        if (current != null && !current.mightContain(credentialId)) {
+            rejectedCount.increment();
+            throw WebAuthnAuthenticationException.createWithoutStackTrace(() -> new CredentialIdNotFoundException("CredentialId not found"));
+        }
+        return delegate.loadUserByCredentialId(credentialId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addAuthenticator(String username, Authenticator authenticator) {
+        delegate.addAuthenticator(username, authenticator);
+        putCredentialId(authenticator.getAttestedCredentialData().getCredentialId());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeAuthenticator(String username, Authenticator authenticator) {
+        delegate.removeAuthenticator(username, authenticator);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeAuthenticator(String username, byte[] credentialId) {
+        delegate.removeAuthenticator(username, credentialId);
+    }
+
+    /**
+     * Forwards the counter update to the delegate if it is an {@link AuthenticatorCounterListener}
+     */
+    @Override
+    public void onCounterUpdated(String username, byte[] credentialId, long counter) {
+        if (delegate instanceof AuthenticatorCounterListener) {
+            ((AuthenticatorCounterListener) delegate).onCounterUpdated(username, credentialId, counter);
+        }
+    }
+
+    /**
+     * Adds a credentialId registered without going through this service to the filter
+     *
+     * @param credentialId credentialId
+     */
+    public void putCredentialId(byte[] credentialId) {
+        synchronized (filterLock) {
+            if (filter != null) {
+                filter.put(credentialId);
+            }
+            if (rebuildingFilter != null) {
+                rebuildingFilter.put(credentialId);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the filter from the {@link CredentialIdSource}, sized for the number of credentials found on the
+     * previous rebuild. Lookups keep using the current filter until the new one is complete.
+     */
+    public synchronized void rebuild() {
+        long expectedCount = Math.max(expectedCredentialCount, (long) (credentialCount * GROWTH_FACTOR));
+        BloomFilter rebuilt = new BloomFilter(expectedCount, falsePositiveRate);
+        LongAdder count = new LongAdder();
+        synchronized (filterLock) {
+            rebuildingFilter = rebuilt;
+        }
+        boolean completed = false;
+        try {
+            credentialIdSource.forEachCredentialId(credentialId -> {
+                rebuilt.put(credentialId);
+                count.increment();
+            });
+            completed = true;
+        } finally {
+            // swapped under the lock so that no credentialId put concurrently is missed
+            synchronized (filterLock) {
+                if (completed) {
+                    filter = rebuilt;
+                }
+                rebuildingFilter = null;
+            }
+        }
+        credentialCount = count.sum();
+    }
+
+    /**
+     * Returns the number of lookups rejected by the filter
+     *
+     * @return the number of rejected lookups
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * Returns the number of credentials found on the last rebuild
+     *
+     * @return the number of credentials
+     */
+    public synchronized long getCredentialCount() {
+        return credentialCount;
+    }
+
+    public WebAuthnUserDetailsService getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Stops the periodic rebuild
+     */
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            logger.error("Failed to rebuild the credentialId filter", e);
+        }
+    }
+}
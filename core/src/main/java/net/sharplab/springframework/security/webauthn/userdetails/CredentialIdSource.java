@@ -0,0 +1,45 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import java.util.function.Consumer;
+
+/**
+ * Enumerates the credentialIds of every registered authenticator, and optionally notifies of authenticators
+ * registered afterwards
+ */
+public interface CredentialIdSource {
+
+    /**
+     * Performs the action for the credentialId of each registered authenticator
+     *
+     * @param action the action
+     */
+    void forEachCredentialId(Consumer<byte[]> action);
+
+    /**
+     * Registers a listener called with the credentialId of each authenticator registered through this source from now
+     * on, before the authenticator becomes visible to lookups. Sources which cannot observe registrations, the default,
+     * ignore the listener.
+     *
+     * @param listener the listener
+     */
+    default void addCredentialIdListener(Consumer<byte[]> listener) {
+        // not observable by default
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import java.time.Clock;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * A size bounded cache whose entries expire after a fixed time-to-live
+ * <p>
+ * Lookups do not lock. When the maximum size is exceeded, entries are evicted in approximate least recently used
+ * order with the CLOCK algorithm: entries are queued in insertion order, and an entry read since it was last
+ * inspected is given a second chance instead of being evicted.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+class ExpiringLruCache<K, V> {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final int maximumSize;
+    private final long timeToLive;
+    private final Clock clock;
+    private final ConcurrentMap<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry<K, V>> evictionQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger evictionQueueSize = new AtomicInteger();
+    private final Object evictionLock = new Object();
+    private final BiConsumer<K, V> evictionListener;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    ExpiringLruCache(int maximumSize, long timeToLive, Clock clock) {
+        this(maximumSize, timeToLive, clock, (key, value) -> {
+        });
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maximumSize      maximum number of entries
+     * @param timeToLive       time-to-live of an entry in milliseconds
+     * @param clock            clock
+     * @param evictionListener called for entries evicted because of the size limit or the time-to-live
+     */
+    ExpiringLruCache(int maximumSize, long timeToLive, Clock clock, BiConsumer<K, V> evictionListener) {
+        this.maximumSize = maximumSize;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.evictionListener = evictionListener;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    V get(K key) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry == null) {
+            missCount.increment();
+            return null;
+        }
+        if (entry.expiresAt <= clock.millis()) {
+            if (entries.remove(key, entry)) {
+                evictionCount.increment();
+                evictionListener.accept(key, entry.value);
+            }
+            missCount.increment();
+            return null;
+        }
+        entry.referenced = true;
+        hitCount.increment();
+        return entry.value;
+    }
+
+    /**
+     * Puts the value, and returns a token identifying the entry for {@link #remove(Object, Object)}
+     *
+     * @param key   key
+     * @param value value
+     * @return the token of the entry, or <code>null</code> if the value is not cached
+     */
+    Object put(K key, V value) {
+        if (maximumSize == 0) {
+            return null;
+        }
+        Entry<K, V> entry = new Entry<>(key, value, clock.millis() + timeToLive);
+        entries.put(key, entry);
+        evictionQueue.offer(entry);
+        evictionQueueSize.incrementAndGet();
+        evictIfNecessary();
+        return entry;
+    }
+
+    /**
+     * Replaces the value of the entry, if present, with the result of the function, keeping its expiration time
+     *
+     * @param key      key
+     * @param function function returning the new value from the current one
+     */
+    void replace(K key, UnaryOperator<V> function) {
+        Entry<K, V> replaced = entries.computeIfPresent(key, (k, entry) -> new Entry<>(k, function.apply(entry.value), entry.expiresAt));
+        if (replaced != null) {
+            // the entry it replaces is dropped from the queue when polled
+            evictionQueue.offer(replaced);
+            evictionQueueSize.incrementAndGet();
+            evictIfNecessary();
+        }
+    }
+
+    void remove(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes the entry only if it is still the one identified by the token
+     *
+     * @param key   key
+     * @param token token returned by {@link #put(Object, Object)}
+     */
+    void remove(K key, Object token) {
+        if (token != null) {
+            entries.remove(key, token);
+        }
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    CacheStatistics getStatistics() {
+        return new CacheStatistics(hitCount.sum(), missCount.sum(), evictionCount.sum(), entries.size());
+    }
+
+    private void evictIfNecessary() {
+        // the queue also holds entries already removed or replaced, which are dropped as they are polled
+        if (entries.size() <= maximumSize && evictionQueueSize.get() <= 2 * maximumSize) {
+            return;
+        }
+        synchronized (evictionLock) {
+            while (entries.size() > maximumSize || evictionQueueSize.get() > 2 * maximumSize) {
+                Entry<K, V> entry = evictionQueue.poll();
+                if (entry == null) {
+                    return;
+                }
+                evictionQueueSize.decrementAndGet();
+                if (entries.get(entry.key) != entry) {
+                    continue;
+                }
+                if (entry.referenced || entries.size() <= maximumSize) {
+                    entry.referenced = false;
+                    evictionQueue.offer(entry);
+                    evictionQueueSize.incrementAndGet();
+                } else if (entries.remove(entry.key, entry)) {
+                    evictionCount.increment();
+                    evictionListener.accept(entry.key, entry.value);
+                }
+            }
+        }
+    }
+
+    private static class Entry<K, V> {
+        private final K key;
+        private final V value;
+        private final long expiresAt;
+        private volatile boolean referenced;
+
+        private Entry(K key, V value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
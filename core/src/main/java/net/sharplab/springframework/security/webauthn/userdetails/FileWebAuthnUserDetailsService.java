@@ -0,0 +1,310 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.converter.util.ObjectConverter;
+import net.sharplab.springframework.security.webauthn.authenticator.CounterUpdate;
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticatorService;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.util.Assert;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A {@link WebAuthnUserDetailsService} and {@link WebAuthnAuthenticatorService} persisting users and their
+ * credentials to a log-structured store in a local directory, for standalone deployments without a database.
+ * <p>
+ * Every modification is appended to a segmented log, and applied to an {@link InMemoryWebAuthnUserDetailsService}
+ * serving lookups from indexes outside of the Java heap. Creations and deletions of users and authenticators are
+ * forced to the storage device before returning. Counter updates are written without forcing: they survive a crash
+ * of the process, but the latest ones may be lost on a crash of the operating system. Attestation statements are
+ * persisted with the credentials.
+ * <p>
+ * On startup, the latest snapshot and the segments following it are replayed, and a torn record left at the tail of
+ * the log by a crash is truncated. Sealed segments are periodically compacted in the background into a new snapshot
+ * holding one record per user. The latest <code>snapshot-*.snapshot</code> file, copied to an empty directory, is
+ * enough to bootstrap another node.
+ */
+public class FileWebAuthnUserDetailsService implements WebAuthnUserDetailsService, WebAuthnUserAuthenticatorResolver,
+        WebAuthnAuthenticatorService, CredentialIdSource, DisposableBean {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    public static final long DEFAULT_COMPACTION_INTERVAL = 10 * 60 * 1000L;
+
+    //~ Instance fields
+    // ================================================================================================
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final ObjectConverter objectConverter;
+    private final int capacity;
+    private final LogRecordCodec codec;
+    private final SegmentedLog log;
+    private final InMemoryWebAuthnUserDetailsService store;
+    private final Object writeLock = new Object();
+    private final Object compactionLock = new Object();
+    private final ScheduledExecutorService scheduler;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor with the default segment size and compaction interval
+     *
+     * @param directory directory holding the log
+     */
+    public FileWebAuthnUserDetailsService(Path directory) {
+        this(directory, new ObjectConverter(), InMemoryWebAuthnUserDetailsService.DEFAULT_CAPACITY, DEFAULT_SEGMENT_SIZE, DEFAULT_COMPACTION_INTERVAL);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param directory          directory holding the log
+     * @param objectConverter    converter to serialize COSE keys
+     * @param capacity           number of users, and of credentials, the indexes can hold before growing
+     * @param segmentSize        size in bytes from which a new log segment is started
+     * @param compactionInterval interval of the background compaction in milliseconds, or <code>0</code> to compact
+     *                           only through {@link #compact()}
+     */
+    public FileWebAuthnUserDetailsService(Path directory, ObjectConverter objectConverter, int capacity, long segmentSize, long compactionInterval) {
+        Assert.notNull(objectConverter, "objectConverter must not be null");
+        Assert.isTrue(compactionInterval >= 0, "compactionInterval must not be negative");
+
+        this.objectConverter = objectConverter;
+        this.capacity = capacity;
+        this.codec = new LogRecordCodec(objectConverter);
+        this.log = new SegmentedLog(directory, segmentSize);
+        this.store = new InMemoryWebAuthnUserDetailsService(objectConverter, capacity);
+        log.open((type, payload) -> codec.apply(type, payload, store));
+
+        if (compactionInterval > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("webauthn-log-compaction-");
+            threadFactory.setDaemon(true);
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            this.scheduler.scheduleWithFixedDelay(this::compactQuietly, compactionInterval, compactionInterval, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Creates a user with its authenticators.
+     *
+     * @param user the user to be created
+     */
+    public void createUser(WebAuthnUserDetails user) {
+        Assert.notNull(user, "user must not be null");
+        synchronized (writeLock) {
+            Assert.isTrue(!store.userExists(user.getUsername()), "user should not exist");
+            for (Authenticator authenticator : user.getAuthenticators()) {
+                Assert.isTrue(!store.credentialExists(authenticator.getAttestedCredentialData().getCredentialId()), "credential should not exist");
+            }
+            log.append(LogRecordCodec.CREATE_USER, codec.encodeCreateUser(user), true);
+            store.createUser(user);
+        }
+    }
+
+    /**
+     * Deletes a user with its authenticators.
+     *
+     * @param username the username identifying the user
+     */
+    public void deleteUser(String username) {
+        synchronized (writeLock) {
+            if (!store.userExists(username)) {
+                return;
+            }
+            log.append(LogRecordCodec.DELETE_USER, codec.encodeDeleteUser(username), true);
+            store.deleteUser(username);
+        }
+    }
+
+    public boolean userExists(String username) {
+        return store.userExists(username);
+    }
+
+    @Override
+    public void forEachCredentialId(Consumer<byte[]> action) {
+        store.forEachCredentialId(action);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addCredentialIdListener(Consumer<byte[]> listener) {
+        store.addCredentialIdListener(listener);
+    }
+
+    @Override
+    public WebAuthnUserDetails loadUserByUsername(String username) {
+        return store.loadUserByUsername(username);
+    }
+
+    @Override
+    public WebAuthnUserDetails loadUserByCredentialId(byte[] credentialId) {
+        return store.loadUserByCredentialId(credentialId);
+    }
+
+    @Override
+    public WebAuthnUserAuthenticator resolveByCredentialId(byte[] credentialId) {
+        return store.resolveByCredentialId(credentialId);
+    }
+
+    @Override
+    public void addAuthenticator(String username, Authenticator authenticator) {
+        synchronized (writeLock) {
+            if (!store.userExists(username)) {
+                throw new UsernameNotFoundException("User not found");
+            }
+            Assert.isTrue(!store.credentialExists(authenticator.getAttestedCredentialData().getCredentialId()), "credential should not exist");
+            log.append(LogRecordCodec.ADD_AUTHENTICATOR, codec.encodeAddAuthenticator(username, authenticator), true);
+            store.addAuthenticator(username, authenticator);
+        }
+    }
+
+    @Override
+    public void removeAuthenticator(String username, Authenticator authenticator) {
+        removeAuthenticator(username, authenticator.getAttestedCredentialData().getCredentialId());
+    }
+
+    @Override
+    public void removeAuthenticator(String username, byte[] credentialId) {
+        synchronized (writeLock) {
+            boolean found = false;
+            for (Authenticator authenticator : store.loadUserByUsername(username).getAuthenticators()) {
+                found |= Arrays.equals(authenticator.getAttestedCredentialData().getCredentialId(), credentialId);
+            }
+            if (!found) {
+                throw new CredentialIdNotFoundException("CredentialId not found");
+            }
+            log.append(LogRecordCodec.REMOVE_AUTHENTICATOR, codec.encodeRemoveAuthenticator(username, credentialId), true);
+            store.removeAuthenticator(username, credentialId);
+        }
+    }
+
+    /**
+     * Updates the counter, unless the stored counter is already greater, and appends it to the log without forcing
+     * it to the storage device.
+     *
+     * @param credentialId credentialId
+     * @param counter      counter
+     */
+    @Override
+    public void updateCounter(byte[] credentialId, long counter) {
+        updateCounters(Collections.singletonList(new CounterUpdate(credentialId, counter)));
+    }
+
+    /**
+     * Updates the counters, and appends them to the log as a single record without forcing it to the storage device.
+     *
+     * @param counterUpdates counter values to be persisted
+     */
+    @Override
+    public void updateCounters(Collection<CounterUpdate> counterUpdates) {
+        List<CounterUpdate> applied = new ArrayList<>(counterUpdates.size());
+        try {
+            for (CounterUpdate counterUpdate : counterUpdates) {
+                store.updateCounter(counterUpdate.getCredentialId(), counterUpdate.getCounter());
+                applied.add(counterUpdate);
+            }
+        } finally {
+            if (!applied.isEmpty()) {
+                log.append(LogRecordCodec.UPDATE_COUNTERS, codec.encodeUpdateCounters(applied), false);
+            }
+        }
+    }
+
+    /**
+     * Replaces the sealed segments of the log with a snapshot. The current segment is sealed first unless it is
+     * empty. Lookups and modifications are not blocked while the snapshot is built from the previous snapshot and the
+     * sealed segments.
+     */
+    public void compact() {
+        synchronized (compactionLock) {
+            long lastSegmentId = log.roll();
+            if (lastSegmentId <= log.getSnapshotId()) {
+                return;
+            }
+            InMemoryWebAuthnUserDetailsService snapshot = new InMemoryWebAuthnUserDetailsService(objectConverter, capacity);
+            log.replaySealed(lastSegmentId, (type, payload) -> codec.apply(type, payload, snapshot));
+            log.writeSnapshot(lastSegmentId, sink -> snapshot.forEachUser(
+                    user -> sink.append(LogRecordCodec.CREATE_USER, codec.encodeCreateUser(user))));
+        }
+    }
+
+    /**
+     * @return the number of users
+     */
+    public int getUserCount() {
+        return store.getUserCount();
+    }
+
+    /**
+     * @return the number of credentials
+     */
+    public int getCredentialCount() {
+        return store.getCredentialCount();
+    }
+
+    /**
+     * Stops the background compaction and closes the log
+     */
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                if (!scheduler.awaitTermination(DEFAULT_COMPACTION_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    logger.warn("Log compaction task did not terminate in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.close();
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            logger.error("Failed to compact the log", e);
+        }
+    }
+}
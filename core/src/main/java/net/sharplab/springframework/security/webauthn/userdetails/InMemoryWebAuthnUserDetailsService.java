@@ -0,0 +1,649 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.converter.util.CborConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.COSEKey;
+import com.webauthn4j.data.attestation.statement.AttestationStatement;
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticatorService;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import static net.sharplab.springframework.security.webauthn.userdetails.BinaryRecordUtil.*;
+
+/**
+ * A {@link WebAuthnUserDetailsService} and {@link WebAuthnAuthenticatorService} keeping users and their credentials
+ * in memory outside of the Java heap, for edge or cache tiers holding tens of millions of credentials.
+ * <p>
+ * Users and credentials are serialized into direct buffers, and indexed by username and by credentialId with
+ * open-addressing hash indexes, so that the number of long-lived heap objects does not grow with the population.
+ * For each credential, the credentialId, the AAGUID, the COSE public key, the attestation statement, the counter and
+ * the name are kept. Credentials whose serialized COSE key or attestation statement exceeds 32767 bytes are rejected.
+ * <p>
+ * Lookups do not lock. Counter updates lock one of a fixed set of stripes, and only ever increase the counter.
+ * Modifications of users and credentials are serialized, and append new records. Once the replaced or removed
+ * records outweigh the live ones, the live records are copied into new buffers and the old buffers are released
+ * when the lookups still reading them complete; {@link #compact()} does the same on demand.
+ */
+public class InMemoryWebAuthnUserDetailsService implements WebAuthnUserDetailsService, WebAuthnUserAuthenticatorResolver,
+        WebAuthnAuthenticatorService, CredentialIdSource {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 24;
+
+    private static final int LOCK_STRIPES = 64;
+    private static final long MAX_COUNTER = 0xFFFFFFFFL;
+
+    // credential record: counter, credentialId, AAGUID, name, username, COSE key, attestation statement
+    private static final int CREDENTIAL_ID_OFFSET = 4;
+    // user record: flags, username, userHandle, password, authorities, credential references
+    private static final int USERNAME_OFFSET = 1;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final CborConverter cborConverter;
+    private final int capacity;
+    private final int chunkSize;
+    private volatile Storage storage;
+    private final Object writeLock = new Object();
+    private final Object[] counterLocks = new Object[LOCK_STRIPES];
+    // held shared by counter updates, and exclusively while the records are copied by a compaction
+    private final ReadWriteLock compactionLock = new ReentrantReadWriteLock();
+    private final List<Consumer<byte[]>> credentialIdListeners = new CopyOnWriteArrayList<>();
+    private long compactionCount;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public InMemoryWebAuthnUserDetailsService() {
+        this(new ObjectConverter(), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param objectConverter converter to serialize COSE keys and attestation statements
+     * @param capacity        number of users, and of credentials, the indexes can hold before growing
+     */
+    public InMemoryWebAuthnUserDetailsService(ObjectConverter objectConverter, int capacity) {
+        this(objectConverter, capacity, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param objectConverter converter to serialize COSE keys and attestation statements
+     * @param capacity        number of users, and of credentials, the indexes can hold before growing
+     * @param chunkSize       size in bytes of the direct buffers allocated to store records
+     */
+    public InMemoryWebAuthnUserDetailsService(ObjectConverter objectConverter, int capacity, int chunkSize) {
+        Assert.notNull(objectConverter, "objectConverter must not be null");
+        this.cborConverter = objectConverter.getCborConverter();
+        this.capacity = capacity;
+        this.chunkSize = chunkSize;
+        this.storage = new Storage(chunkSize, capacity, capacity);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            counterLocks[i] = new Object();
+        }
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Creates a user with its authenticators.
+     *
+     * @param user the user to be created
+     */
+    public void createUser(WebAuthnUserDetails user) {
+        Assert.notNull(user, "user must not be null");
+        byte[] username = encode(user.getUsername());
+        synchronized (writeLock) {
+            Storage current = storage;
+            Assert.isTrue(current.usersByUsername.get(username) == OpenAddressingIndex.NOT_FOUND, "user should not exist");
+            List<byte[]> credentialIds = new ArrayList<>();
+            for (Authenticator authenticator : user.getAuthenticators()) {
+                byte[] credentialId = authenticator.getAttestedCredentialData().getCredentialId();
+                Assert.isTrue(current.credentialsByCredentialId.get(credentialId) == OpenAddressingIndex.NOT_FOUND, "credential should not exist");
+                credentialIds.add(credentialId);
+            }
+            long[] credentialRefs = new long[credentialIds.size()];
+            int i = 0;
+            for (Authenticator authenticator : user.getAuthenticators()) {
+                credentialRefs[i++] = writeCredential(current, username, authenticator);
+            }
+            long userRef = writeUser(current, user, username, credentialRefs);
+            credentialIds.forEach(this::fireCredentialIdAdded);
+            current.usersByUsername.put(username, userRef);
+            for (i = 0; i < credentialRefs.length; i++) {
+                current.credentialsByCredentialId.put(credentialIds.get(i), credentialRefs[i]);
+            }
+            compactIfNeeded(current);
+        }
+    }
+
+    /**
+     * Deletes a user with its authenticators.
+     *
+     * @param username the username identifying the user
+     */
+    public void deleteUser(String username) {
+        byte[] usernameBytes = encode(username);
+        synchronized (writeLock) {
+            Storage current = storage;
+            long userRef = current.usersByUsername.get(usernameBytes);
+            if (userRef == OpenAddressingIndex.NOT_FOUND) {
+                return;
+            }
+            for (long credentialRef : readUserRecord(current, userRef).credentialRefs) {
+                current.credentialsByCredentialId.remove(readCredentialId(current.recordStore, credentialRef));
+                current.liveBytes -= credentialRecordSize(current.recordStore, credentialRef);
+            }
+            current.liveBytes -= userRecordSize(current.recordStore, userRef);
+            current.usersByUsername.remove(usernameBytes);
+            compactIfNeeded(current);
+        }
+    }
+
+    public boolean userExists(String username) {
+        return storage.usersByUsername.get(encode(username)) != OpenAddressingIndex.NOT_FOUND;
+    }
+
+    public boolean credentialExists(byte[] credentialId) {
+        return storage.credentialsByCredentialId.get(credentialId) != OpenAddressingIndex.NOT_FOUND;
+    }
+
+    /**
+     * Performs the action for each user without locking. Users created or deleted concurrently may or may not be
+     * visited.
+     *
+     * @param action the action
+     */
+    public void forEachUser(Consumer<WebAuthnUserDetails> action) {
+        Storage current = storage;
+        current.usersByUsername.forEach(userRef -> action.accept(readUser(current, userRef)));
+    }
+
+    /**
+     * Performs the action for each credentialId without locking. Credentials added or removed concurrently may or may
+     * not be visited.
+     *
+     * @param action the action
+     */
+    @Override
+    public void forEachCredentialId(Consumer<byte[]> action) {
+        Storage current = storage;
+        current.credentialsByCredentialId.forEach(credentialRef -> action.accept(readCredentialId(current.recordStore, credentialRef)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addCredentialIdListener(Consumer<byte[]> listener) {
+        Assert.notNull(listener, "listener must not be null");
+        credentialIdListeners.add(listener);
+    }
+
+    @Override
+    public WebAuthnUserDetails loadUserByUsername(String username) {
+        Storage current = storage;
+        long userRef = current.usersByUsername.get(encode(username));
+        if (userRef == OpenAddressingIndex.NOT_FOUND) {
+            throw new UsernameNotFoundException("User not found");
+        }
+        return readUser(current, userRef);
+    }
+
+    @Override
+    public WebAuthnUserDetails loadUserByCredentialId(byte[] credentialId) {
+        return resolveByCredentialId(credentialId).getUserDetails();
+    }
+
+    /**
+     * Resolves the user and the authenticator from the record the credentialId index points to, without comparing
+     * the credentialIds of the other authenticators of the user.
+     *
+     * @param credentialId credentialId
+     * @return the user and the authenticator
+     */
+    @Override
+    public WebAuthnUserAuthenticator resolveByCredentialId(byte[] credentialId) {
+        Storage current = storage;
+        long credentialRef = current.credentialsByCredentialId.get(credentialId);
+        long userRef = credentialRef == OpenAddressingIndex.NOT_FOUND ?
+                OpenAddressingIndex.NOT_FOUND : current.usersByUsername.get(readUsername(current.recordStore, credentialRef));
+        if (userRef == OpenAddressingIndex.NOT_FOUND) {
+            throw new CredentialIdNotFoundException("CredentialId not found");
+        }
+        UserRecord user = readUserRecord(current, userRef);
+        for (int i = 0; i < user.credentialRefs.length; i++) {
+            if (user.credentialRefs[i] == credentialRef) {
+                return new WebAuthnUserAuthenticator(user.userDetails, user.authenticators.get(i));
+            }
+        }
+        // the authenticator was removed concurrently
+        throw new CredentialIdNotFoundException("CredentialId not found");
+    }
+
+    @Override
+    public void addAuthenticator(String username, Authenticator authenticator) {
+        byte[] usernameBytes = encode(username);
+        byte[] credentialId = authenticator.getAttestedCredentialData().getCredentialId();
+        synchronized (writeLock) {
+            Storage current = storage;
+            long userRef = current.usersByUsername.get(usernameBytes);
+            if (userRef == OpenAddressingIndex.NOT_FOUND) {
+                throw new UsernameNotFoundException("User not found");
+            }
+            Assert.isTrue(current.credentialsByCredentialId.get(credentialId) == OpenAddressingIndex.NOT_FOUND, "credential should not exist");
+            UserRecord user = readUserRecord(current, userRef);
+            long[] credentialRefs = Arrays.copyOf(user.credentialRefs, user.credentialRefs.length + 1);
+            credentialRefs[user.credentialRefs.length] = writeCredential(current, usernameBytes, authenticator);
+            fireCredentialIdAdded(credentialId);
+            current.liveBytes -= userRecordSize(current.recordStore, userRef);
+            current.usersByUsername.put(usernameBytes, writeUser(current, user.userDetails, usernameBytes, credentialRefs));
+            current.credentialsByCredentialId.put(credentialId, credentialRefs[user.credentialRefs.length]);
+            compactIfNeeded(current);
+        }
+    }
+
+    @Override
+    public void removeAuthenticator(String username, Authenticator authenticator) {
+        removeAuthenticator(username, authenticator.getAttestedCredentialData().getCredentialId());
+    }
+
+    @Override
+    public void removeAuthenticator(String username, byte[] credentialId) {
+        byte[] usernameBytes = encode(username);
+        synchronized (writeLock) {
+            Storage current = storage;
+            long userRef = current.usersByUsername.get(usernameBytes);
+            if (userRef == OpenAddressingIndex.NOT_FOUND) {
+                throw new UsernameNotFoundException("User not found");
+            }
+            UserRecord user = readUserRecord(current, userRef);
+            long[] credentialRefs = new long[user.credentialRefs.length];
+            long removedRef = OpenAddressingIndex.NOT_FOUND;
+            int count = 0;
+            for (long credentialRef : user.credentialRefs) {
+                if (keyEquals(current.recordStore, credentialRef + CREDENTIAL_ID_OFFSET, credentialId)) {
+                    removedRef = credentialRef;
+                } else {
+                    credentialRefs[count++] = credentialRef;
+                }
+            }
+            if (removedRef == OpenAddressingIndex.NOT_FOUND) {
+                throw new CredentialIdNotFoundException("CredentialId not found");
+            }
+            current.liveBytes -= userRecordSize(current.recordStore, userRef) + credentialRecordSize(current.recordStore, removedRef);
+            current.usersByUsername.put(usernameBytes, writeUser(current, user.userDetails, usernameBytes, Arrays.copyOf(credentialRefs, count)));
+            current.credentialsByCredentialId.remove(credentialId);
+            compactIfNeeded(current);
+        }
+    }
+
+    /**
+     * Updates the counter in place, unless the stored counter is already greater.
+     *
+     * @param credentialId credentialId
+     * @param counter      counter
+     */
+    @Override
+    public void updateCounter(byte[] credentialId, long counter) {
+        Assert.isTrue(counter >= 0 && counter <= MAX_COUNTER, "counter must be an unsigned 32 bits integer");
+        compactionLock.readLock().lock();
+        try {
+            Storage current = storage;
+            long credentialRef = current.credentialsByCredentialId.get(credentialId);
+            if (credentialRef == OpenAddressingIndex.NOT_FOUND) {
+                throw new CredentialIdNotFoundException("CredentialId not found");
+            }
+            // records are 8 bytes aligned
+            synchronized (counterLocks[(int) (credentialRef >>> 3) & (LOCK_STRIPES - 1)]) {
+                if (Integer.toUnsignedLong(current.recordStore.getInt(credentialRef)) < counter) {
+                    current.recordStore.putInt(credentialRef, (int) counter);
+                }
+            }
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the live records into new buffers, so that the space of the replaced and removed records is released
+     * once the lookups still reading the old buffers complete. Modifications and counter updates wait for the
+     * compaction, while lookups do not.
+     */
+    public void compact() {
+        synchronized (writeLock) {
+            compactionLock.writeLock().lock();
+            try {
+                Storage current = storage;
+                Storage compacted = new Storage(chunkSize,
+                        Math.max(capacity, current.usersByUsername.size()),
+                        Math.max(capacity, current.credentialsByCredentialId.size()));
+                current.usersByUsername.forEach(userRef -> copyUser(current, compacted, userRef));
+                storage = compacted;
+                compactionCount++;
+            } finally {
+                compactionLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the number of users
+     */
+    public int getUserCount() {
+        return storage.usersByUsername.size();
+    }
+
+    /**
+     * @return the number of credentials
+     */
+    public int getCredentialCount() {
+        return storage.credentialsByCredentialId.size();
+    }
+
+    /**
+     * @return the number of bytes reserved outside of the Java heap for the records
+     */
+    public long getReservedBytes() {
+        return storage.recordStore.getReservedBytes();
+    }
+
+    /**
+     * @return the number of compactions, including the ones triggered by modifications
+     */
+    public long getCompactionCount() {
+        synchronized (writeLock) {
+            return compactionCount;
+        }
+    }
+
+    private void compactIfNeeded(Storage current) {
+        // compacts once the garbage outweighs the live records, so that the copy is amortized over the modifications
+        if (current.recordStore.getReservedBytes() > 2 * current.liveBytes + chunkSize) {
+            compact();
+        }
+    }
+
+    private void copyUser(Storage from, Storage to, long userRef) {
+        ByteBuffer buffer = from.recordStore.buffer(userRef);
+        int start = buffer.position();
+        skipToCredentialRefs(buffer);
+        int credentialRefsOffset = buffer.position() - start + 4;
+        long[] credentialRefs = new long[buffer.getInt()];
+        for (int i = 0; i < credentialRefs.length; i++) {
+            long credentialRef = buffer.getLong();
+            credentialRefs[i] = copyRecord(from, to, credentialRef, credentialRecordSize(from.recordStore, credentialRef));
+            to.credentialsByCredentialId.put(readCredentialId(to.recordStore, credentialRefs[i]), credentialRefs[i]);
+        }
+        long copiedRef = copyRecord(from, to, userRef, credentialRefsOffset + 8 * credentialRefs.length);
+        ByteBuffer copied = to.recordStore.buffer(copiedRef + credentialRefsOffset);
+        for (long credentialRef : credentialRefs) {
+            copied.putLong(credentialRef);
+        }
+        to.usersByUsername.put(getBytes(to.recordStore.buffer(copiedRef + USERNAME_OFFSET)), copiedRef);
+    }
+
+    private static long copyRecord(Storage from, Storage to, long ref, int size) {
+        ByteBuffer source = from.recordStore.buffer(ref);
+        source.limit(source.position() + size);
+        long copiedRef = to.recordStore.allocate(size);
+        to.recordStore.buffer(copiedRef).put(source);
+        to.liveBytes += size;
+        return copiedRef;
+    }
+
+    private long writeCredential(Storage current, byte[] username, Authenticator authenticator) {
+        AttestedCredentialData attestedCredentialData = authenticator.getAttestedCredentialData();
+        Assert.isTrue(authenticator.getCounter() <= MAX_COUNTER, "counter must be an unsigned 32 bits integer");
+        byte[] credentialId = attestedCredentialData.getCredentialId();
+        byte[] name = authenticator instanceof WebAuthnAuthenticator ? encodeNullable(((WebAuthnAuthenticator) authenticator).getName()) : null;
+        byte[] coseKey = cborConverter.writeValueAsBytes(attestedCredentialData.getCOSEKey());
+        byte[] attestationStatement = authenticator.getAttestationStatement() == null ? null :
+                cborConverter.writeValueAsBytes(new AttestationStatementSerializationContainer(authenticator.getAttestationStatement()));
+        int size = CREDENTIAL_ID_OFFSET + sizeOf(credentialId) + AAGUID_LENGTH + sizeOf(name) + sizeOf(username) + sizeOf(coseKey)
+                + sizeOf(attestationStatement);
+        long ref = current.recordStore.allocate(size);
+        ByteBuffer buffer = current.recordStore.buffer(ref);
+        buffer.putInt((int) authenticator.getCounter());
+        putBytes(buffer, credentialId);
+        buffer.put(attestedCredentialData.getAaguid().getBytes());
+        putBytes(buffer, name);
+        putBytes(buffer, username);
+        putBytes(buffer, coseKey);
+        putBytes(buffer, attestationStatement);
+        current.liveBytes += size;
+        return ref;
+    }
+
+    private long writeUser(Storage current, WebAuthnUserDetails user, byte[] username, long[] credentialRefs) {
+        byte[] userHandle = user.getUserHandle();
+        byte[] password = encodeNullable(user.getPassword());
+        List<byte[]> authorities = new ArrayList<>();
+        int size = 1 + sizeOf(username) + sizeOf(userHandle) + sizeOf(password) + 2 + 4 + 8 * credentialRefs.length;
+        for (GrantedAuthority authority : user.getAuthorities()) {
+            byte[] encoded = encode(authority.getAuthority());
+            authorities.add(encoded);
+            size += sizeOf(encoded);
+        }
+        long ref = current.recordStore.allocate(size);
+        ByteBuffer buffer = current.recordStore.buffer(ref);
+        buffer.put((byte) flagsOf(user));
+        putBytes(buffer, username);
+        putBytes(buffer, userHandle);
+        putBytes(buffer, password);
+        buffer.putShort((short) authorities.size());
+        for (byte[] authority : authorities) {
+            putBytes(buffer, authority);
+        }
+        buffer.putInt(credentialRefs.length);
+        for (long credentialRef : credentialRefs) {
+            buffer.putLong(credentialRef);
+        }
+        current.liveBytes += size;
+        return ref;
+    }
+
+    private WebAuthnUserDetails readUser(Storage current, long userRef) {
+        return readUserRecord(current, userRef).userDetails;
+    }
+
+    private UserRecord readUserRecord(Storage current, long userRef) {
+        ByteBuffer buffer = current.recordStore.buffer(userRef);
+        int flags = buffer.get();
+        String username = decode(getBytes(buffer));
+        byte[] userHandle = getBytes(buffer);
+        String password = decode(getBytes(buffer));
+        int authorityCount = buffer.getShort() & 0xFFFF;
+        List<GrantedAuthority> authorities = new ArrayList<>(authorityCount);
+        for (int i = 0; i < authorityCount; i++) {
+            authorities.add(new SimpleGrantedAuthority(decode(getBytes(buffer))));
+        }
+        long[] credentialRefs = new long[buffer.getInt()];
+        List<Authenticator> authenticators = new ArrayList<>(credentialRefs.length);
+        for (int i = 0; i < credentialRefs.length; i++) {
+            credentialRefs[i] = buffer.getLong();
+            authenticators.add(readAuthenticator(current, credentialRefs[i]));
+        }
+        WebAuthnUserDetails userDetails = new WebAuthnUserDetailsImpl(userHandle, username, password, authenticators,
+                (flags & FLAG_SINGLE_FACTOR_AUTHENTICATION_ALLOWED) != 0,
+                (flags & FLAG_ENABLED) != 0,
+                (flags & FLAG_ACCOUNT_NON_EXPIRED) != 0,
+                (flags & FLAG_CREDENTIALS_NON_EXPIRED) != 0,
+                (flags & FLAG_ACCOUNT_NON_LOCKED) != 0,
+                authorities);
+        return new UserRecord(userDetails, authenticators, credentialRefs);
+    }
+
+    private WebAuthnAuthenticator readAuthenticator(Storage current, long credentialRef) {
+        ByteBuffer buffer = current.recordStore.buffer(credentialRef);
+        long counter = Integer.toUnsignedLong(buffer.getInt());
+        byte[] credentialId = getBytes(buffer);
+        byte[] aaguid = new byte[AAGUID_LENGTH];
+        buffer.get(aaguid);
+        String name = decode(getBytes(buffer));
+        skipBytes(buffer);
+        COSEKey coseKey = cborConverter.readValue(getBytes(buffer), COSEKey.class);
+        byte[] attestationStatementBytes = getBytes(buffer);
+        AttestationStatement attestationStatement = null;
+        if (attestationStatementBytes != null) {
+            AttestationStatementSerializationContainer container =
+                    cborConverter.readValue(attestationStatementBytes, AttestationStatementSerializationContainer.class);
+            attestationStatement = container.getAttestationStatement();
+        }
+        AttestedCredentialData attestedCredentialData = new AttestedCredentialData(new AAGUID(aaguid), credentialId, coseKey);
+        return new WebAuthnAuthenticator(name, attestedCredentialData, attestationStatement, counter);
+    }
+
+    private void fireCredentialIdAdded(byte[] credentialId) {
+        for (Consumer<byte[]> listener : credentialIdListeners) {
+            listener.accept(credentialId);
+        }
+    }
+
+    private static byte[] readCredentialId(OffHeapRecordStore recordStore, long credentialRef) {
+        return getBytes(recordStore.buffer(credentialRef + CREDENTIAL_ID_OFFSET));
+    }
+
+    private static byte[] readUsername(OffHeapRecordStore recordStore, long credentialRef) {
+        ByteBuffer buffer = recordStore.buffer(credentialRef + CREDENTIAL_ID_OFFSET);
+        skipBytes(buffer);
+        buffer.position(buffer.position() + AAGUID_LENGTH);
+        skipBytes(buffer);
+        return getBytes(buffer);
+    }
+
+    private static int credentialRecordSize(OffHeapRecordStore recordStore, long credentialRef) {
+        ByteBuffer buffer = recordStore.buffer(credentialRef + CREDENTIAL_ID_OFFSET);
+        int start = buffer.position() - CREDENTIAL_ID_OFFSET;
+        skipBytes(buffer);
+        buffer.position(buffer.position() + AAGUID_LENGTH);
+        for (int i = 0; i < 4; i++) {
+            skipBytes(buffer);
+        }
+        return buffer.position() - start;
+    }
+
+    private static int userRecordSize(OffHeapRecordStore recordStore, long userRef) {
+        ByteBuffer buffer = recordStore.buffer(userRef);
+        int start = buffer.position();
+        skipToCredentialRefs(buffer);
+        int credentialCount = buffer.getInt();
+        return buffer.position() - start + 8 * credentialCount;
+    }
+
+    private static void skipToCredentialRefs(ByteBuffer buffer) {
+        buffer.get();
+        for (int i = 0; i < 3; i++) {
+            skipBytes(buffer);
+        }
+        int authorityCount = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < authorityCount; i++) {
+            skipBytes(buffer);
+        }
+    }
+
+    private static boolean keyEquals(OffHeapRecordStore recordStore, long fieldRef, byte[] key) {
+        ByteBuffer buffer = recordStore.buffer(fieldRef);
+        int length = buffer.getShort();
+        if (length != key.length) {
+            return false;
+        }
+        for (byte b : key) {
+            if (buffer.get() != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records and their indexes, replaced as a whole by a compaction
+     */
+    private static class Storage {
+
+        private final OffHeapRecordStore recordStore;
+        private final OpenAddressingIndex usersByUsername;
+        private final OpenAddressingIndex credentialsByCredentialId;
+        // bytes of the records still referenced, guarded by the write lock
+        private long liveBytes;
+
+        Storage(int chunkSize, int userCapacity, int credentialCapacity) {
+            this.recordStore = new OffHeapRecordStore(chunkSize);
+            this.usersByUsername = new OpenAddressingIndex(userCapacity, new FieldKeyAccessor(recordStore, USERNAME_OFFSET));
+            this.credentialsByCredentialId = new OpenAddressingIndex(credentialCapacity, new FieldKeyAccessor(recordStore, CREDENTIAL_ID_OFFSET));
+        }
+    }
+
+    private static class FieldKeyAccessor implements OpenAddressingIndex.KeyAccessor {
+
+        private final OffHeapRecordStore recordStore;
+        private final int offset;
+
+        FieldKeyAccessor(OffHeapRecordStore recordStore, int offset) {
+            this.recordStore = recordStore;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean matches(long ref, byte[] key) {
+            return keyEquals(recordStore, ref + offset, key);
+        }
+
+        @Override
+        public byte[] getKey(long ref) {
+            return getBytes(recordStore.buffer(ref + offset));
+        }
+    }
+
+    private static class UserRecord {
+
+        private final WebAuthnUserDetails userDetails;
+        private final List<Authenticator> authenticators;
+        private final long[] credentialRefs;
+
+        UserRecord(WebAuthnUserDetails userDetails, List<Authenticator> authenticators, long[] credentialRefs) {
+            this.userDetails = userDetails;
+            this.authenticators = authenticators;
+            this.credentialRefs = credentialRefs;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.converter.AttestedCredentialDataConverter;
+import com.webauthn4j.converter.util.CborConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.statement.AttestationStatement;
+import net.sharplab.springframework.security.webauthn.SpringSecurityWebAuthnMessageSource;
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.springframework.context.support.MessageSourceAccessor;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.support.JdbcDaoSupport;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A {@link WebAuthnUserDetailsService} backed by JDBC, modeled on Spring Security's
+ * {@link org.springframework.security.provisioning.JdbcUserDetailsManager}.
+ * <p>
+ * The default queries expect the schema shipped as
+ * {@code net/sharplab/springframework/security/webauthn/userdetails/webauthn-schema.ddl}. Lookups by username and by
+ * credentialId load the user with its authenticators in a first query, and its authorities in a second one, as
+ * {@link org.springframework.security.core.userdetails.jdbc.JdbcDaoImpl} does, so that the rows do not multiply the
+ * authorities by the authenticators. The queries can be customized as long as they return the same columns.
+ * <p>
+ * Authenticators are stored as the binary attested credential data defined by the WebAuthn specification, and the
+ * attestation statement serialized in CBOR.
+ */
+public class JdbcWebAuthnUserDetailsService extends JdbcDaoSupport
+        implements WebAuthnUserDetailsService, WebAuthnUserAuthenticatorResolver, CredentialIdSource {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final String DEF_USER_COLUMNS =
+            "select u.username, u.password, u.enabled, u.user_handle, u.single_factor_authentication_allowed, "
+                    + "c.credential_id, c.name, c.counter, c.attested_credential_data, c.attestation_statement "
+                    + "from webauthn_users u "
+                    + "left join webauthn_authenticators c on c.username = u.username ";
+
+    public static final String DEF_USER_BY_USERNAME_QUERY = DEF_USER_COLUMNS
+            + "where u.username = ?";
+    public static final String DEF_USER_BY_CREDENTIAL_ID_QUERY = DEF_USER_COLUMNS
+            + "where u.username = (select username from webauthn_authenticators where credential_id = ?)";
+    public static final String DEF_AUTHORITIES_BY_USERNAME_QUERY =
+            "select username, authority from webauthn_authorities where username = ?";
+    public static final String DEF_INSERT_AUTHENTICATOR_SQL =
+            "insert into webauthn_authenticators (credential_id, username, name, counter, attested_credential_data, attestation_statement) "
+                    + "select ?, username, ?, ?, ?, ? from webauthn_users where username = ?";
+    public static final String DEF_DELETE_AUTHENTICATOR_SQL =
+            "delete from webauthn_authenticators where username = ? and credential_id = ?";
+    public static final String DEF_CREDENTIAL_IDS_QUERY =
+            "select credential_id from webauthn_authenticators";
+
+    //~ Instance fields
+    // ================================================================================================
+    protected MessageSourceAccessor messages = SpringSecurityWebAuthnMessageSource.getAccessor();
+
+    private final AttestedCredentialDataConverter attestedCredentialDataConverter;
+    private final CborConverter cborConverter;
+    private final List<Consumer<byte[]>> credentialIdListeners = new CopyOnWriteArrayList<>();
+
+    private String userByUsernameQuery = DEF_USER_BY_USERNAME_QUERY;
+    private String userByCredentialIdQuery = DEF_USER_BY_CREDENTIAL_ID_QUERY;
+    private String authoritiesByUsernameQuery = DEF_AUTHORITIES_BY_USERNAME_QUERY;
+    private String insertAuthenticatorSql = DEF_INSERT_AUTHENTICATOR_SQL;
+    private String deleteAuthenticatorSql = DEF_DELETE_AUTHENTICATOR_SQL;
+    private String credentialIdsQuery = DEF_CREDENTIAL_IDS_QUERY;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public JdbcWebAuthnUserDetailsService(DataSource dataSource) {
+        this(dataSource, new ObjectConverter());
+    }
+
+    public JdbcWebAuthnUserDetailsService(DataSource dataSource, ObjectConverter objectConverter) {
+        Assert.notNull(dataSource, "dataSource must not be null");
+        Assert.notNull(objectConverter, "objectConverter must not be null");
+        setDataSource(dataSource);
+        this.attestedCredentialDataConverter = new AttestedCredentialDataConverter(objectConverter);
+        this.cborConverter = objectConverter.getCborConverter();
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public WebAuthnUserDetails loadUserByUsername(String username) {
+        WebAuthnUserAuthenticator user = getJdbcTemplate().query(userByUsernameQuery, new Object[]{username}, userDetailsExtractor(null));
+        if (user == null) {
+            throw new UsernameNotFoundException(messages.getMessage(
+                    "JdbcWebAuthnUserDetailsService.notFound", new Object[]{username}, "Username {0} not found"));
+        }
+        return createUserDetails(user.getUserDetails());
+    }
+
+    @Override
+    public WebAuthnUserDetails loadUserByCredentialId(byte[] credentialId) {
+        return resolveByCredentialId(credentialId).getUserDetails();
+    }
+
+    /**
+     * Resolves the user and the authenticator with the user query, picking the authenticator of the credentialId
+     * while the rows are read.
+     *
+     * @param credentialId credentialId
+     * @return the user and the authenticator
+     */
+    @Override
+    public WebAuthnUserAuthenticator resolveByCredentialId(byte[] credentialId) {
+        WebAuthnUserAuthenticator user = getJdbcTemplate().query(userByCredentialIdQuery, new Object[]{credentialId}, userDetailsExtractor(credentialId));
+        if (user == null || user.getAuthenticator() == null) {
+            throw new CredentialIdNotFoundException("CredentialId not found");
+        }
+        return new WebAuthnUserAuthenticator(createUserDetails(user.getUserDetails()), user.getAuthenticator());
+    }
+
+    @Override
+    public void addAuthenticator(String username, Authenticator authenticator) {
+        AttestedCredentialData attestedCredentialData = authenticator.getAttestedCredentialData();
+        String name = authenticator instanceof WebAuthnAuthenticator ? ((WebAuthnAuthenticator) authenticator).getName() : null;
+        for (Consumer<byte[]> listener : credentialIdListeners) {
+            listener.accept(attestedCredentialData.getCredentialId());
+        }
+        int inserted = getJdbcTemplate().update(insertAuthenticatorSql,
+                attestedCredentialData.getCredentialId(),
+                name,
+                authenticator.getCounter(),
+                attestedCredentialDataConverter.convert(attestedCredentialData),
+                cborConverter.writeValueAsBytes(new AttestationStatementSerializationContainer(authenticator.getAttestationStatement())),
+                username);
+        if (inserted == 0) {
+            throw new UsernameNotFoundException(messages.getMessage(
+                    "JdbcWebAuthnUserDetailsService.notFound", new Object[]{username}, "Username {0} not found"));
+        }
+    }
+
+    @Override
+    public void removeAuthenticator(String username, Authenticator authenticator) {
+        removeAuthenticator(username, authenticator.getAttestedCredentialData().getCredentialId());
+    }
+
+    @Override
+    public void removeAuthenticator(String username, byte[] credentialId) {
+        int deleted = getJdbcTemplate().update(deleteAuthenticatorSql, username, credentialId);
+        if (deleted == 0) {
+            throw new CredentialIdNotFoundException("CredentialId not found");
+        }
+    }
+
+    /**
+     * Streams the credentialIds of every authenticator from the database
+     *
+     * @param action the action
+     */
+    @Override
+    public void forEachCredentialId(Consumer<byte[]> action) {
+        getJdbcTemplate().query(credentialIdsQuery, (RowCallbackHandler) rs -> action.accept(rs.getBytes(1)));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only authenticators added through {@link #addAuthenticator(String, Authenticator)} of this instance are
+     * notified; rows inserted by other means are not observed.
+     */
+    @Override
+    public void addCredentialIdListener(Consumer<byte[]> listener) {
+        Assert.notNull(listener, "listener must not be null");
+        credentialIdListeners.add(listener);
+    }
+
+    /**
+     * Allows the default query string used to load a user by the username to be overridden.
+     *
+     * @param userByUsernameQuery query string, with the username as the parameter
+     */
+    public void setUserByUsernameQuery(String userByUsernameQuery) {
+        Assert.hasText(userByUsernameQuery, "userByUsernameQuery must have text");
+        this.userByUsernameQuery = userByUsernameQuery;
+    }
+
+    /**
+     * Allows the default query string used to load a user by the credentialId to be overridden.
+     *
+     * @param userByCredentialIdQuery query string, with the credentialId as the parameter
+     */
+    public void setUserByCredentialIdQuery(String userByCredentialIdQuery) {
+        Assert.hasText(userByCredentialIdQuery, "userByCredentialIdQuery must have text");
+        this.userByCredentialIdQuery = userByCredentialIdQuery;
+    }
+
+    /**
+     * Allows the default query string used to load the authorities of a user to be overridden.
+     *
+     * @param authoritiesByUsernameQuery query string, with the username as the parameter, returning the authority as
+     *                                   the second column
+     */
+    public void setAuthoritiesByUsernameQuery(String authoritiesByUsernameQuery) {
+        Assert.hasText(authoritiesByUsernameQuery, "authoritiesByUsernameQuery must have text");
+        this.authoritiesByUsernameQuery = authoritiesByUsernameQuery;
+    }
+
+    /**
+     * Allows the default SQL used to add an authenticator to be overridden.
+     *
+     * @param insertAuthenticatorSql SQL, with the credentialId, the name, the counter, the attested credential data,
+     *                               the attestation statement and the username as the parameters
+     */
+    public void setInsertAuthenticatorSql(String insertAuthenticatorSql) {
+        Assert.hasText(insertAuthenticatorSql, "insertAuthenticatorSql must have text");
+        this.insertAuthenticatorSql = insertAuthenticatorSql;
+    }
+
+    /**
+     * Allows the default SQL used to remove an authenticator to be overridden.
+     *
+     * @param deleteAuthenticatorSql SQL, with the username and the credentialId as the parameters
+     */
+    public void setDeleteAuthenticatorSql(String deleteAuthenticatorSql) {
+        Assert.hasText(deleteAuthenticatorSql, "deleteAuthenticatorSql must have text");
+        this.deleteAuthenticatorSql = deleteAuthenticatorSql;
+    }
+
+    /**
+     * Allows the default query string used to enumerate the credentialIds to be overridden.
+     *
+     * @param credentialIdsQuery query string, returning the credentialIds as the first column
+     */
+    public void setCredentialIdsQuery(String credentialIdsQuery) {
+        Assert.hasText(credentialIdsQuery, "credentialIdsQuery must have text");
+        this.credentialIdsQuery = credentialIdsQuery;
+    }
+
+    /**
+     * Collects the rows of the user query, one per authenticator, into a user without authorities, paired with the
+     * authenticator of the credentialId if given.
+     */
+    private ResultSetExtractor<WebAuthnUserAuthenticator> userDetailsExtractor(byte[] credentialId) {
+        return rs -> {
+            if (!rs.next()) {
+                return null;
+            }
+            String username = rs.getString("username");
+            String password = rs.getString("password");
+            boolean enabled = rs.getBoolean("enabled");
+            byte[] userHandle = rs.getBytes("user_handle");
+            boolean singleFactorAuthenticationAllowed = rs.getBoolean("single_factor_authentication_allowed");
+            List<Authenticator> authenticators = new ArrayList<>();
+            Authenticator matched = null;
+            do {
+                byte[] rowCredentialId = rs.getBytes("credential_id");
+                if (rowCredentialId != null) {
+                    AttestedCredentialData attestedCredentialData = attestedCredentialDataConverter.convert(rs.getBytes("attested_credential_data"));
+                    AttestationStatementSerializationContainer container =
+                            cborConverter.readValue(rs.getBytes("attestation_statement"), AttestationStatementSerializationContainer.class);
+                    AttestationStatement attestationStatement = container.getAttestationStatement();
+                    Authenticator authenticator = new WebAuthnAuthenticator(rs.getString("name"), attestedCredentialData, attestationStatement, rs.getLong("counter"));
+                    authenticators.add(authenticator);
+                    if (credentialId != null && Arrays.equals(rowCredentialId, credentialId)) {
+                        matched = authenticator;
+                    }
+                }
+            } while (rs.next());
+            return new WebAuthnUserAuthenticator(new WebAuthnUserDetailsImpl(userHandle, username, password, authenticators,
+                    singleFactorAuthenticationAllowed, enabled, true, true, true, Collections.emptyList()), matched);
+        };
+    }
+
+    /**
+     * Loads the authorities of the user once the user query is closed, so that a single connection is used at a time.
+     */
+    private WebAuthnUserDetails createUserDetails(WebAuthnUserDetails user) {
+        return new WebAuthnUserDetailsImpl(user.getUserHandle(), user.getUsername(), user.getPassword(),
+                new ArrayList<>(user.getAuthenticators()), user.isSingleFactorAuthenticationAllowed(), user.isEnabled(),
+                true, true, true, loadUserAuthorities(user.getUsername()));
+    }
+
+    private List<GrantedAuthority> loadUserAuthorities(String username) {
+        return getJdbcTemplate().query(authoritiesByUsernameQuery, new Object[]{username},
+                (rs, rowNum) -> new SimpleGrantedAuthority(rs.getString(2)));
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.converter.util.CborConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.COSEKey;
+import com.webauthn4j.data.attestation.statement.AttestationStatement;
+import net.sharplab.springframework.security.webauthn.authenticator.CounterUpdate;
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static net.sharplab.springframework.security.webauthn.userdetails.BinaryRecordUtil.*;
+
+/**
+ * Internal codec of the records of the {@link FileWebAuthnUserDetailsService} log
+ * <p>
+ * Each record describes one modification, and is applied to an {@link InMemoryWebAuthnUserDetailsService} to replay
+ * it. Counter updates only ever increase counters, so that they can be replayed in any order.
+ */
+class LogRecordCodec {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    static final byte CREATE_USER = 1;
+    static final byte DELETE_USER = 2;
+    static final byte ADD_AUTHENTICATOR = 3;
+    static final byte REMOVE_AUTHENTICATOR = 4;
+    static final byte UPDATE_COUNTERS = 5;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final CborConverter cborConverter;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    LogRecordCodec(ObjectConverter objectConverter) {
+        Assert.notNull(objectConverter, "objectConverter must not be null");
+        this.cborConverter = objectConverter.getCborConverter();
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    byte[] encodeCreateUser(WebAuthnUserDetails user) {
+        byte[] username = encode(user.getUsername());
+        byte[] userHandle = user.getUserHandle();
+        byte[] password = encodeNullable(user.getPassword());
+        List<byte[]> authorities = new ArrayList<>();
+        int size = 1 + sizeOf(username) + sizeOf(userHandle) + sizeOf(password) + 2 + 4;
+        for (GrantedAuthority authority : user.getAuthorities()) {
+            byte[] encoded = encode(authority.getAuthority());
+            authorities.add(encoded);
+            size += sizeOf(encoded);
+        }
+        List<EncodedAuthenticator> authenticators = new ArrayList<>();
+        for (Authenticator authenticator : user.getAuthenticators()) {
+            EncodedAuthenticator encoded = new EncodedAuthenticator(authenticator);
+            authenticators.add(encoded);
+            size += encoded.size();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put((byte) flagsOf(user));
+        putBytes(buffer, username);
+        putBytes(buffer, userHandle);
+        putBytes(buffer, password);
+        buffer.putShort((short) authorities.size());
+        for (byte[] authority : authorities) {
+            putBytes(buffer, authority);
+        }
+        buffer.putInt(authenticators.size());
+        for (EncodedAuthenticator authenticator : authenticators) {
+            authenticator.writeTo(buffer);
+        }
+        return buffer.array();
+    }
+
+    byte[] encodeDeleteUser(String username) {
+        byte[] usernameBytes = encode(username);
+        ByteBuffer buffer = ByteBuffer.allocate(sizeOf(usernameBytes));
+        putBytes(buffer, usernameBytes);
+        return buffer.array();
+    }
+
+    byte[] encodeAddAuthenticator(String username, Authenticator authenticator) {
+        byte[] usernameBytes = encode(username);
+        EncodedAuthenticator encoded = new EncodedAuthenticator(authenticator);
+        ByteBuffer buffer = ByteBuffer.allocate(sizeOf(usernameBytes) + encoded.size());
+        putBytes(buffer, usernameBytes);
+        encoded.writeTo(buffer);
+        return buffer.array();
+    }
+
+    byte[] encodeRemoveAuthenticator(String username, byte[] credentialId) {
+        byte[] usernameBytes = encode(username);
+        ByteBuffer buffer = ByteBuffer.allocate(sizeOf(usernameBytes) + sizeOf(credentialId));
+        putBytes(buffer, usernameBytes);
+        putBytes(buffer, credentialId);
+        return buffer.array();
+    }
+
+    byte[] encodeUpdateCounters(Collection<CounterUpdate> counterUpdates) {
+        int size = 4;
+        for (CounterUpdate counterUpdate : counterUpdates) {
+            size += sizeOf(counterUpdate.getCredentialId()) + 8;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(counterUpdates.size());
+        for (CounterUpdate counterUpdate : counterUpdates) {
+            putBytes(buffer, counterUpdate.getCredentialId());
+            buffer.putLong(counterUpdate.getCounter());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Applies a record to the store
+     *
+     * @param type    type of the record
+     * @param payload payload of the record
+     * @param store   the store the record is applied to
+     */
+    void apply(byte type, ByteBuffer payload, InMemoryWebAuthnUserDetailsService store) {
+        switch (type) {
+            case CREATE_USER:
+                store.createUser(decodeUser(payload));
+                break;
+            case DELETE_USER:
+                store.deleteUser(decode(getBytes(payload)));
+                break;
+            case ADD_AUTHENTICATOR:
+                store.addAuthenticator(decode(getBytes(payload)), decodeAuthenticator(payload));
+                break;
+            case REMOVE_AUTHENTICATOR:
+                store.removeAuthenticator(decode(getBytes(payload)), getBytes(payload));
+                break;
+            case UPDATE_COUNTERS:
+                int count = payload.getInt();
+                for (int i = 0; i < count; i++) {
+                    byte[] credentialId = getBytes(payload);
+                    long counter = payload.getLong();
+                    try {
+                        store.updateCounter(credentialId, counter);
+                    } catch (CredentialIdNotFoundException e) {
+                        // the authenticator was removed while its counter was being logged
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown log record type: " + type);
+        }
+    }
+
+    private WebAuthnUserDetails decodeUser(ByteBuffer buffer) {
+        int flags = buffer.get();
+        String username = decode(getBytes(buffer));
+        byte[] userHandle = getBytes(buffer);
+        String password = decode(getBytes(buffer));
+        int authorityCount = buffer.getShort() & 0xFFFF;
+        List<GrantedAuthority> authorities = new ArrayList<>(authorityCount);
+        for (int i = 0; i < authorityCount; i++) {
+            authorities.add(new SimpleGrantedAuthority(decode(getBytes(buffer))));
+        }
+        int authenticatorCount = buffer.getInt();
+        List<Authenticator> authenticators = new ArrayList<>(authenticatorCount);
+        for (int i = 0; i < authenticatorCount; i++) {
+            authenticators.add(decodeAuthenticator(buffer));
+        }
+        return new WebAuthnUserDetailsImpl(userHandle, username, password, authenticators,
+                (flags & FLAG_SINGLE_FACTOR_AUTHENTICATION_ALLOWED) != 0,
+                (flags & FLAG_ENABLED) != 0,
+                (flags & FLAG_ACCOUNT_NON_EXPIRED) != 0,
+                (flags & FLAG_CREDENTIALS_NON_EXPIRED) != 0,
+                (flags & FLAG_ACCOUNT_NON_LOCKED) != 0,
+                authorities);
+    }
+
+    private WebAuthnAuthenticator decodeAuthenticator(ByteBuffer buffer) {
+        byte[] credentialId = getBytes(buffer);
+        byte[] aaguid = new byte[AAGUID_LENGTH];
+        buffer.get(aaguid);
+        String name = decode(getBytes(buffer));
+        COSEKey coseKey = cborConverter.readValue(getBytes(buffer), COSEKey.class);
+        byte[] attestationStatementBytes = getBytes(buffer);
+        AttestationStatement attestationStatement = null;
+        if (attestationStatementBytes != null) {
+            AttestationStatementSerializationContainer container =
+                    cborConverter.readValue(attestationStatementBytes, AttestationStatementSerializationContainer.class);
+            attestationStatement = container.getAttestationStatement();
+        }
+        long counter = buffer.getLong();
+        AttestedCredentialData attestedCredentialData = new AttestedCredentialData(new AAGUID(aaguid), credentialId, coseKey);
+        return new WebAuthnAuthenticator(name, attestedCredentialData, attestationStatement, counter);
+    }
+
+    private class EncodedAuthenticator {
+
+        private final byte[] credentialId;
+        private final byte[] aaguid;
+        private final byte[] name;
+        private final byte[] coseKey;
+        private final byte[] attestationStatement;
+        private final long counter;
+
+        EncodedAuthenticator(Authenticator authenticator) {
+            AttestedCredentialData attestedCredentialData = authenticator.getAttestedCredentialData();
+            this.credentialId = attestedCredentialData.getCredentialId();
+            this.aaguid = attestedCredentialData.getAaguid().getBytes();
+            this.name = authenticator instanceof WebAuthnAuthenticator ? encodeNullable(((WebAuthnAuthenticator) authenticator).getName()) : null;
+            this.coseKey = cborConverter.writeValueAsBytes(attestedCredentialData.getCOSEKey());
+            this.attestationStatement = authenticator.getAttestationStatement() == null ? null :
+                    cborConverter.writeValueAsBytes(new AttestationStatementSerializationContainer(authenticator.getAttestationStatement()));
+            this.counter = authenticator.getCounter();
+        }
+
+        int size() {
+            return sizeOf(credentialId) + AAGUID_LENGTH + sizeOf(name) + sizeOf(coseKey) + sizeOf(attestationStatement) + 8;
+        }
+
+        void writeTo(ByteBuffer buffer) {
+            putBytes(buffer, credentialId);
+            buffer.put(aaguid);
+            putBytes(buffer, name);
+            putBytes(buffer, coseKey);
+            putBytes(buffer, attestationStatement);
+            buffer.putLong(counter);
+        }
+    }
+}
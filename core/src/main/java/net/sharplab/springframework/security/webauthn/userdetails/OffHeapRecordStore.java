@@ -0,0 +1,116 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Append-only store of variable length records in direct {@link ByteBuffer} chunks, outside of the Java heap.
+ * <p>
+ * A record is addressed by a reference packing the chunk index and the offset within the chunk. Records are 8 bytes
+ * aligned, so that an <code>int</code> at the beginning of a record can be read and written atomically. Allocation
+ * must be serialized by the caller, while records can be read concurrently once their reference is published through
+ * a volatile write.
+ */
+class OffHeapRecordStore {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    static final int MAX_CHUNK_COUNT = 1 << 15;
+    private static final int ALIGNMENT = 8;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final int chunkSize;
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private int position;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    OffHeapRecordStore(int chunkSize) {
+        Assert.isTrue(chunkSize > 0 && chunkSize % ALIGNMENT == 0, "chunkSize must be a positive multiple of 8");
+        this.chunkSize = chunkSize;
+        this.position = chunkSize;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Allocates a record. Must not be called concurrently.
+     *
+     * @param size size of the record in bytes
+     * @return the reference of the record
+     */
+    long allocate(int size) {
+        Assert.isTrue(size > 0 && size <= chunkSize, "size must be positive and not greater than the chunk size");
+        int alignedSize = (size + ALIGNMENT - 1) & -ALIGNMENT;
+        if (position + alignedSize > chunkSize) {
+            ByteBuffer[] current = chunks;
+            if (current.length == MAX_CHUNK_COUNT) {
+                throw new IllegalStateException("Off-heap record store is full");
+            }
+            ByteBuffer[] extended = Arrays.copyOf(current, current.length + 1);
+            extended[current.length] = ByteBuffer.allocateDirect(chunkSize);
+            chunks = extended;
+            position = 0;
+        }
+        long ref = ((long) (chunks.length - 1) << 32) | position;
+        position += alignedSize;
+        return ref;
+    }
+
+    /**
+     * Returns a buffer positioned at the beginning of the record, to read or write it with relative operations.
+     *
+     * @param ref the reference of the record
+     * @return buffer positioned at the record
+     */
+    ByteBuffer buffer(long ref) {
+        ByteBuffer buffer = chunks[chunkIndex(ref)].duplicate();
+        buffer.position(offset(ref));
+        return buffer;
+    }
+
+    int getInt(long ref) {
+        return chunks[chunkIndex(ref)].getInt(offset(ref));
+    }
+
+    void putInt(long ref, int value) {
+        chunks[chunkIndex(ref)].putInt(offset(ref), value);
+    }
+
+    /**
+     * @return the number of bytes reserved off-heap
+     */
+    long getReservedBytes() {
+        return (long) chunks.length * chunkSize;
+    }
+
+    private static int chunkIndex(long ref) {
+        return (int) (ref >>> 32);
+    }
+
+    private static int offset(long ref) {
+        return (int) ref;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import org.springframework.util.Assert;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+/**
+ * Open-addressing hash index from byte array keys to {@link OffHeapRecordStore} references, with linear probing.
+ * <p>
+ * Keys are not stored in the index. Each slot packs a record reference with a 16 bits fingerprint of the key hash,
+ * so that the record is compared with the key only when the fingerprint matches. The slots live in a single
+ * primitive array, which the garbage collector does not trace, and are read and written with volatile semantics:
+ * lookups are lock-free, while modifications must be serialized by the caller.
+ * <p>
+ * When removed keys and insertions fill the table, it is rebuilt into a new array, twice as large if more than half
+ * of it holds live keys. Lookups in progress keep probing the previous array, which stays consistent.
+ * <p>
+ * The hash is seeded per instance, so that colliding keys cannot be crafted in advance.
+ */
+class OpenAddressingIndex {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    static final long NOT_FOUND = -1L;
+
+    private static final long EMPTY = 0L;
+    private static final long TOMBSTONE = -1L;
+    private static final int FINGERPRINT_SHIFT = 47;
+    private static final long REF_MASK = (1L << FINGERPRINT_SHIFT) - 1;
+    private static final int MAX_TABLE_SIZE = 1 << 30;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final long seed = new SecureRandom().nextLong();
+    private final KeyAccessor keyAccessor;
+    private volatile AtomicLongArray slots;
+    private int occupied;
+    private volatile int size;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param initialCapacity number of keys the index can hold before growing
+     * @param keyAccessor     accessor to the keys of the records
+     */
+    OpenAddressingIndex(int initialCapacity, KeyAccessor keyAccessor) {
+        Assert.isTrue(initialCapacity > 0 && initialCapacity <= MAX_TABLE_SIZE / 2, "initialCapacity must be between 1 and 2^29");
+        Assert.notNull(keyAccessor, "keyAccessor must not be null");
+        this.slots = new AtomicLongArray(Integer.highestOneBit(initialCapacity + initialCapacity / 3) << 1);
+        this.keyAccessor = keyAccessor;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Looks up the reference of the record of the key without locking.
+     *
+     * @param key the key
+     * @return the reference, or {@link #NOT_FOUND}
+     */
+    long get(byte[] key) {
+        AtomicLongArray table = slots;
+        int slot = indexOf(table, key, hash(key));
+        if (slot < 0) {
+            return NOT_FOUND;
+        }
+        long value = table.get(slot);
+        return value == TOMBSTONE ? NOT_FOUND : value & REF_MASK;
+    }
+
+    /**
+     * Associates the reference with the key, replacing the previous reference if any. Must not be called concurrently
+     * with other modifications.
+     *
+     * @param key the key
+     * @param ref the reference of the record holding the key
+     */
+    void put(byte[] key, long ref) {
+        Assert.isTrue(ref >= 0 && ref <= REF_MASK, "ref is out of range");
+        long hash = hash(key);
+        long value = (fingerprint(hash) << FINGERPRINT_SHIFT) | ref;
+        AtomicLongArray table = slots;
+        int existing = indexOf(table, key, hash);
+        if (existing >= 0) {
+            table.set(existing, value);
+            return;
+        }
+        if (occupied >= maxOccupied(table)) {
+            table = rebuild(size + 1 > table.length() / 2 ? table.length() * 2 : table.length());
+        }
+        insert(table, hash, value);
+        size++;
+    }
+
+    /**
+     * Removes the key. Must not be called concurrently with other modifications.
+     *
+     * @param key the key
+     * @return true if the key was found
+     */
+    boolean remove(byte[] key) {
+        AtomicLongArray table = slots;
+        int slot = indexOf(table, key, hash(key));
+        if (slot < 0) {
+            return false;
+        }
+        table.set(slot, TOMBSTONE);
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Performs the action for the reference of each key without locking. Keys put or removed concurrently may or may
+     * not be visited.
+     *
+     * @param action the action
+     */
+    void forEach(LongConsumer action) {
+        AtomicLongArray table = slots;
+        for (int i = 0; i < table.length(); i++) {
+            long value = table.get(i);
+            if (value != EMPTY && value != TOMBSTONE) {
+                action.accept(value & REF_MASK);
+            }
+        }
+    }
+
+    private int indexOf(AtomicLongArray table, byte[] key, long hash) {
+        int mask = table.length() - 1;
+        long fingerprint = fingerprint(hash);
+        for (int slot = (int) hash & mask, probes = 0; probes <= mask; slot = (slot + 1) & mask, probes++) {
+            long value = table.get(slot);
+            if (value == EMPTY) {
+                return -1;
+            }
+            if (value != TOMBSTONE && (value >>> FINGERPRINT_SHIFT) == fingerprint && keyAccessor.matches(value & REF_MASK, key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(AtomicLongArray table, long hash, long value) {
+        int mask = table.length() - 1;
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long current = table.get(slot);
+            if (current == EMPTY || current == TOMBSTONE) {
+                if (current == EMPTY) {
+                    occupied++;
+                }
+                table.set(slot, value);
+                return;
+            }
+        }
+    }
+
+    private AtomicLongArray rebuild(int tableSize) {
+        if (tableSize > MAX_TABLE_SIZE) {
+            throw new IllegalStateException("Index capacity is exceeded");
+        }
+        AtomicLongArray current = slots;
+        AtomicLongArray rebuilt = new AtomicLongArray(tableSize);
+        occupied = 0;
+        for (int i = 0; i < current.length(); i++) {
+            long value = current.get(i);
+            if (value != EMPTY && value != TOMBSTONE) {
+                insert(rebuilt, hash(keyAccessor.getKey(value & REF_MASK)), value);
+            }
+        }
+        slots = rebuilt;
+        return rebuilt;
+    }
+
+    private long hash(byte[] key) {
+        long hash = seed ^ key.length;
+        for (byte b : key) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        // final avalanche of MurmurHash3
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long fingerprint(long hash) {
+        // never 0, so that a slot in use is never EMPTY
+        return ((hash >>> 48) & 0xFFFF) | 1;
+    }
+
+    private static int maxOccupied(AtomicLongArray table) {
+        return table.length() - table.length() / 4;
+    }
+
+    /**
+     * Accesses the key of a record
+     */
+    interface KeyAccessor {
+
+        boolean matches(long ref, byte[] key);
+
+        byte[] getKey(long ref);
+    }
+}
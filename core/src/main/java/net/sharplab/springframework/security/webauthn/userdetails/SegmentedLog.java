@@ -0,0 +1,415 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Internal append-only log split into segment files, with snapshots summarizing the segments they replace
+ * <p>
+ * A record is framed by its payload length and a CRC32 of its type and payload. Segments and snapshots are replayed
+ * through read-only memory mappings. A torn or corrupted tail of the last segment, left by a crash during an append,
+ * is truncated on {@link #open(RecordHandler)}; corruption anywhere else is reported as an {@link IllegalStateException}.
+ * <p>
+ * The snapshot with id <code>N</code> holds the state resulting from the segments up to id <code>N</code>, which are
+ * deleted once it is written. A directory holding only a snapshot is therefore a valid log.
+ */
+class SegmentedLog {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    static final String SEGMENT_SUFFIX = ".log";
+    static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final String LOCK_FILE = "lock";
+    private static final int HEADER_SIZE = 9;
+    private static final long MAX_MAPPING_SIZE = 1L << 30;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final Path directory;
+    private final long segmentSize;
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private FileChannel segment;
+    private long segmentId;
+    private volatile long snapshotId;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    SegmentedLog(Path directory, long segmentSize) {
+        Assert.notNull(directory, "directory must not be null");
+        Assert.isTrue(segmentSize > 0, "segmentSize must be positive");
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Locks the directory, replays the latest snapshot and the segments following it, and starts a new segment
+     *
+     * @param handler the handler records are replayed to
+     */
+    synchronized void open(RecordHandler handler) {
+        Assert.state(segment == null, "log is already open");
+        try {
+            Files.createDirectories(directory);
+            acquireLock();
+            snapshotId = latestId(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            if (snapshotId > 0) {
+                replayFully(snapshotPath(snapshotId), handler);
+            }
+            List<Long> segmentIds = segmentIdsAfter(snapshotId);
+            long lastSegmentId = snapshotId;
+            for (long id : segmentIds) {
+                Path path = segmentPath(id);
+                boolean last = id == segmentIds.get(segmentIds.size() - 1);
+                if (last) {
+                    long validLength = replay(path, handler);
+                    if (validLength < Files.size(path)) {
+                        logger.warn("Truncating torn tail of log segment " + path + " at " + validLength);
+                        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                            channel.truncate(validLength);
+                            channel.force(true);
+                        }
+                    }
+                } else {
+                    replayFully(path, handler);
+                }
+                lastSegmentId = id;
+            }
+            deleteObsoleteFiles(snapshotId);
+            openSegment(lastSegmentId + 1);
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a record to the current segment, and starts a new segment once the current one reaches the segment
+     * size.
+     *
+     * @param type    type of the record
+     * @param payload payload of the record
+     * @param force   <code>true</code> to force the record to the storage device before returning
+     */
+    synchronized void append(byte type, byte[] payload, boolean force) {
+        Assert.state(segment != null, "log is not open");
+        try {
+            writeRecord(segment, type, payload);
+            if (force) {
+                segment.force(false);
+            }
+            if (segment.size() >= segmentSize) {
+                roll();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Seals the current segment unless it is empty, so that the sealed segments can be compacted.
+     *
+     * @return the id of the last sealed segment
+     */
+    synchronized long roll() {
+        Assert.state(segment != null, "log is not open");
+        try {
+            if (segment.size() == 0) {
+                return segmentId - 1;
+            }
+            segment.force(true);
+            segment.close();
+            openSegment(segmentId + 1);
+            return segmentId - 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replays the latest snapshot and the sealed segments up to the given id
+     *
+     * @param lastSegmentId id of the last segment to be replayed, which must be sealed
+     * @param handler       the handler records are replayed to
+     */
+    void replaySealed(long lastSegmentId, RecordHandler handler) {
+        Assert.isTrue(lastSegmentId < currentSegmentId(), "lastSegmentId must be a sealed segment");
+        try {
+            long baseSnapshotId = snapshotId;
+            if (baseSnapshotId > 0) {
+                replayFully(snapshotPath(baseSnapshotId), handler);
+            }
+            for (long id : segmentIdsAfter(baseSnapshotId)) {
+                if (id > lastSegmentId) {
+                    break;
+                }
+                replayFully(segmentPath(id), handler);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the snapshot replacing the segments up to the given id, then deletes them with older snapshots.
+     *
+     * @param lastSegmentId id of the last segment the snapshot replaces
+     * @param records       writer of the records of the snapshot
+     */
+    void writeSnapshot(long lastSegmentId, SnapshotWriter records) {
+        Assert.isTrue(lastSegmentId > snapshotId, "lastSegmentId must be newer than the latest snapshot");
+        Path temporary = directory.resolve(SNAPSHOT_PREFIX + formatId(lastSegmentId) + TEMPORARY_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                records.writeTo((type, payload) -> {
+                    try {
+                        writeRecord(channel, type, payload);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                channel.force(true);
+            }
+            Files.move(temporary, snapshotPath(lastSegmentId), StandardCopyOption.ATOMIC_MOVE);
+            snapshotId = lastSegmentId;
+            deleteObsoleteFiles(lastSegmentId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    long getSnapshotId() {
+        return snapshotId;
+    }
+
+    synchronized long currentSegmentId() {
+        return segmentId;
+    }
+
+    synchronized void close() {
+        try {
+            if (segment != null) {
+                segment.force(true);
+                segment.close();
+                segment = null;
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+                lockChannel = null;
+                lock = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void acquireLock() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            throw new IllegalStateException("Log directory " + directory + " is already in use");
+        }
+    }
+
+    private void openSegment(long id) throws IOException {
+        segmentId = id;
+        segment = FileChannel.open(segmentPath(id), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void writeRecord(FileChannel channel, byte type, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(type);
+        buffer.put(payload);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void replayFully(Path path, RecordHandler handler) throws IOException {
+        if (replay(path, handler) < Files.size(path)) {
+            throw new IllegalStateException("Log file " + path + " is corrupted");
+        }
+    }
+
+    /**
+     * Replays the records of a file up to the first incomplete or corrupted one
+     *
+     * @return the length of the valid prefix of the file
+     */
+    private long replay(Path path, RecordHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                // each mapping starts at a record boundary, and records are shorter than a mapping
+                MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, MAX_MAPPING_SIZE));
+                int consumed = replay(mapping, handler);
+                if (consumed == 0) {
+                    break;
+                }
+                position += consumed;
+            }
+            return position;
+        }
+    }
+
+    private int replay(ByteBuffer mapping, RecordHandler handler) {
+        CRC32 crc = new CRC32();
+        int position = 0;
+        while (mapping.remaining() - position >= HEADER_SIZE) {
+            int length = mapping.getInt(position);
+            if (length < 0 || length > mapping.remaining() - position - HEADER_SIZE) {
+                break;
+            }
+            int checksum = mapping.getInt(position + 4);
+            ByteBuffer record = mapping.duplicate();
+            record.position(position + 8).limit(position + HEADER_SIZE + length);
+            crc.reset();
+            crc.update(record);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            byte type = mapping.get(position + 8);
+            record.position(position + HEADER_SIZE);
+            handler.handle(type, record.slice());
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private List<Long> segmentIdsAfter(long id) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        for (long segmentId : listIds(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (segmentId > id) {
+                ids.add(segmentId);
+            }
+        }
+        return ids;
+    }
+
+    private long latestId(String prefix, String suffix) throws IOException {
+        List<Long> ids = listIds(prefix, suffix);
+        return ids.isEmpty() ? 0 : ids.get(ids.size() - 1);
+    }
+
+    private List<Long> listIds(String prefix, String suffix) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path path : paths) {
+                String fileName = path.getFileName().toString();
+                ids.add(Long.parseLong(fileName.substring(prefix.length(), fileName.length() - suffix.length())));
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private void deleteObsoleteFiles(long snapshotId) throws IOException {
+        for (long id : listIds(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (id <= snapshotId) {
+                Files.deleteIfExists(segmentPath(id));
+            }
+        }
+        for (long id : listIds(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (id < snapshotId) {
+                Files.deleteIfExists(snapshotPath(id));
+            }
+        }
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + TEMPORARY_SUFFIX)) {
+            for (Path path : paths) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(SEGMENT_PREFIX + formatId(id) + SEGMENT_SUFFIX);
+    }
+
+    private Path snapshotPath(long id) {
+        return directory.resolve(SNAPSHOT_PREFIX + formatId(id) + SNAPSHOT_SUFFIX);
+    }
+
+    private static String formatId(long id) {
+        return String.format("%016d", id);
+    }
+
+    /**
+     * Receives the records being replayed. The payload is only valid during the call.
+     */
+    interface RecordHandler {
+        void handle(byte type, ByteBuffer payload);
+    }
+
+    /**
+     * Writes the records of a snapshot
+     */
+    interface SnapshotWriter {
+        void writeTo(RecordSink sink);
+    }
+
+    /**
+     * Receives the records being written
+     */
+    interface RecordSink {
+        void append(byte type, byte[] payload);
+    }
+}
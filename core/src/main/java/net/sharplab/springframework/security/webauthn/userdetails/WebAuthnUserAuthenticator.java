@@ -0,0 +1,84 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A pair of {@link WebAuthnUserDetails} and the {@link Authenticator} matched by a credentialId
+ *
+ * @see WebAuthnUserAuthenticatorResolver
+ */
+public class WebAuthnUserAuthenticator implements Serializable {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final long serialVersionUID = 1L;
+
+    // ~ Instance fields
+    // ================================================================================================
+    private final WebAuthnUserDetails userDetails;
+    private final Authenticator authenticator;
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param userDetails   user owning the authenticator
+     * @param authenticator authenticator matched by the credentialId
+     */
+    public WebAuthnUserAuthenticator(WebAuthnUserDetails userDetails, Authenticator authenticator) {
+        this.userDetails = userDetails;
+        this.authenticator = authenticator;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    public WebAuthnUserDetails getUserDetails() {
+        return userDetails;
+    }
+
+    public Authenticator getAuthenticator() {
+        return authenticator;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        WebAuthnUserAuthenticator that = (WebAuthnUserAuthenticator) o;
+        return Objects.equals(userDetails, that.userDetails) &&
+                Objects.equals(authenticator, that.authenticator);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(userDetails, authenticator);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+
+/**
+ * Resolves the user and the {@link com.webauthn4j.authenticator.Authenticator} identified by a credentialId
+ * in a single lookup. Implementations backed by a store indexed by credentialId can return the matched
+ * authenticator directly, without searching the other authenticators of the user. A
+ * {@link WebAuthnUserDetailsService} implementing this interface, such as {@link JdbcWebAuthnUserDetailsService},
+ * {@link InMemoryWebAuthnUserDetailsService} or {@link FileWebAuthnUserDetailsService}, is used as the resolver by
+ * {@link net.sharplab.springframework.security.webauthn.WebAuthnAuthenticationProvider} by default.
+ *
+ * @see WebAuthnUserAuthenticatorResolverImpl
+ */
+public interface WebAuthnUserAuthenticatorResolver {
+
+    /**
+     * Locates a user and the authenticator based on the credentialId.
+     *
+     * @param credentialId credentialId
+     * @return {@link WebAuthnUserAuthenticator} instance (never <code>null</code>),
+     * whose authenticator has the specified credentialId
+     * @throws CredentialIdNotFoundException if the authenticator could not be found
+     */
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    WebAuthnUserAuthenticator resolveByCredentialId(byte[] credentialId) throws CredentialIdNotFoundException;
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import net.sharplab.springframework.security.webauthn.jfr.FlightRecorderUtil;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+
+/**
+ * A {@link WebAuthnUserAuthenticatorResolver} implementation which delegates to {@link WebAuthnUserDetailsService}
+ */
+public class WebAuthnUserAuthenticatorResolverImpl implements WebAuthnUserAuthenticatorResolver {
+
+    //~ Instance fields
+    // ================================================================================================
+    private WebAuthnUserDetailsService userDetailsService;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public WebAuthnUserAuthenticatorResolverImpl(WebAuthnUserDetailsService userDetailsService) {
+        Assert.notNull(userDetailsService, "userDetailsService must not be null");
+        this.userDetailsService = userDetailsService;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WebAuthnUserAuthenticator resolveByCredentialId(byte[] credentialId) {
+        WebAuthnUserDetails user = FlightRecorderUtil.recordStage(FlightRecorderUtil.AUTHENTICATION, "user-load", credentialId,
+                () -> userDetailsService.loadUserByCredentialId(credentialId));
+        if (user == null) {
+            throw new CredentialIdNotFoundException("CredentialId not found");
+        }
+        return FlightRecorderUtil.recordStage(FlightRecorderUtil.AUTHENTICATION, "authenticator-match", credentialId,
+                () -> new WebAuthnUserAuthenticator(user, findAuthenticator(user, credentialId)));
+    }
+
+    private Authenticator findAuthenticator(WebAuthnUserDetails user, byte[] credentialId) {
+        for (Authenticator authenticator : user.getAuthenticators()) {
+            if (Arrays.equals(authenticator.getAttestedCredentialData().getCredentialId(), credentialId)) {
+                return authenticator;
+            }
+        }
+        throw new CredentialIdNotFoundException("CredentialId not found");
+    }
+
+    public WebAuthnUserDetailsService getUserDetailsService() {
+        return userDetailsService;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.authenticator.AuthenticatorImpl;
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Utility to copy {@link WebAuthnUserDetails}, so that callers sharing a user loaded once do not see each other's
+ * modifications, such as the erasure of the password or the update of an authenticator counter
+ */
+public class WebAuthnUserDetailsUtil {
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    private WebAuthnUserDetailsUtil() {
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Copies the user, with copies of its authenticators, into a {@link WebAuthnUserDetailsImpl}
+     *
+     * @param user the user to be copied
+     * @return the copy
+     */
+    public static WebAuthnUserDetails copyOf(WebAuthnUserDetails user) {
+        Assert.notNull(user, "user must not be null");
+        List<Authenticator> authenticators = new ArrayList<>(user.getAuthenticators().size());
+        for (Authenticator authenticator : user.getAuthenticators()) {
+            authenticators.add(copyOf(authenticator));
+        }
+        return new WebAuthnUserDetailsImpl(user.getUserHandle(), user.getUsername(), user.getPassword(), authenticators,
+                user.isSingleFactorAuthenticationAllowed(), user.isEnabled(), user.isAccountNonExpired(),
+                user.isCredentialsNonExpired(), user.isAccountNonLocked(), user.getAuthorities());
+    }
+
+    /**
+     * Copies the authenticator, keeping the {@link WebAuthnAuthenticator} type and its name
+     *
+     * @param authenticator the authenticator to be copied
+     * @return the copy
+     */
+    public static Authenticator copyOf(Authenticator authenticator) {
+        Assert.notNull(authenticator, "authenticator must not be null");
+        AuthenticatorImpl copy;
+        if (authenticator instanceof WebAuthnAuthenticator) {
+            copy = new WebAuthnAuthenticator(((WebAuthnAuthenticator) authenticator).getName(),
+                    authenticator.getAttestedCredentialData(), authenticator.getAttestationStatement(), authenticator.getCounter());
+        } else {
+            copy = new AuthenticatorImpl(authenticator.getAttestedCredentialData(), authenticator.getAttestationStatement(), authenticator.getCounter());
+        }
+        copy.setTransports(authenticator.getTransports());
+        copy.setClientExtensions(authenticator.getClientExtensions());
+        copy.setAuthenticatorExtensions(authenticator.getAuthenticatorExtensions());
+        return copy;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.util;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of pre-generated random blocks, used to draw challenges and user handles without calling
+ * {@link SecureRandom} on the request thread.
+ * <p>
+ * Blocks are kept in a lock-free ring buffer, refilled by a background thread when it falls below half of
+ * its capacity. When the buffer runs dry, a block is generated directly on the calling thread, and the
+ * depletion is counted so that the capacity can be tuned. Every block is handed out at most once.
+ */
+public class EntropyPool implements DisposableBean {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final int DEFAULT_BLOCK_SIZE = 16;
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final int blockSize;
+    private final AtomicReferenceArray<byte[]> ring;
+    private final int mask;
+    private final int refillThreshold;
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail = 0; // written only by the refill thread
+    private final AtomicBoolean refillRequested = new AtomicBoolean();
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ExecutorService refillExecutor;
+
+    private final LongAdder servedCount = new LongAdder();
+    private final LongAdder depletionCount = new LongAdder();
+    private final AtomicLong refillCount = new AtomicLong();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public EntropyPool() {
+        this(DEFAULT_BLOCK_SIZE, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param blockSize size of a random block in bytes
+     * @param capacity  number of blocks held, rounded up to a power of two
+     */
+    public EntropyPool(int blockSize, int capacity) {
+        Assert.isTrue(blockSize > 0, "blockSize must be positive");
+        Assert.isTrue(capacity > 0 && capacity <= (1 << 30), "capacity must be between 1 and 2^30");
+        int normalizedCapacity = 1;
+        while (normalizedCapacity < capacity) {
+            normalizedCapacity <<= 1;
+        }
+        this.blockSize = blockSize;
+        this.ring = new AtomicReferenceArray<>(normalizedCapacity);
+        this.mask = normalizedCapacity - 1;
+        this.refillThreshold = normalizedCapacity / 2;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("webauthn-entropy-pool-");
+        threadFactory.setDaemon(true);
+        this.refillExecutor = Executors.newSingleThreadExecutor(threadFactory);
+        requestRefill();
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Returns a random block of {@link #getBlockSize()} bytes, which is not handed out to anyone else
+     *
+     * @return random block
+     */
+    public byte[] nextBytes() {
+        while (true) {
+            long current = head.get();
+            if (current >= tail) {
+                return generateDirectly();
+            }
+            if (head.compareAndSet(current, current + 1)) {
+                byte[] block = ring.getAndSet((int) (current & mask), null);
+                if (tail - current - 1 < refillThreshold) {
+                    requestRefill();
+                }
+                if (block == null) {
+                    return generateDirectly();
+                }
+                servedCount.increment();
+                return block;
+            }
+        }
+    }
+
+    private byte[] generateDirectly() {
+        depletionCount.increment();
+        requestRefill();
+        byte[] block = new byte[blockSize];
+        secureRandom.nextBytes(block);
+        return block;
+    }
+
+    private void requestRefill() {
+        if (refillRequested.compareAndSet(false, true)) {
+            try {
+                refillExecutor.execute(this::refill);
+            } catch (RejectedExecutionException e) {
+                // the pool is being destroyed
+                refillRequested.set(false);
+            }
+        }
+    }
+
+    private void refill() {
+        try {
+            long position = tail;
+            while (position - head.get() <= mask && !Thread.currentThread().isInterrupted()) {
+                byte[] block = new byte[blockSize];
+                secureRandom.nextBytes(block);
+                // a consumer which claimed this slot a lap ago may not have taken its block yet
+                if (!ring.compareAndSet((int) (position & mask), null, block)) {
+                    break;
+                }
+                position++;
+                tail = position;
+            }
+            refillCount.incrementAndGet();
+        } finally {
+            refillRequested.set(false);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        refillExecutor.shutdownNow();
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the number of blocks ready to be handed out
+     *
+     * @return the number of blocks
+     */
+    public long getAvailableCount() {
+        return Math.max(0, tail - head.get());
+    }
+
+    /**
+     * Returns the number of blocks served from the pool
+     *
+     * @return the number of blocks
+     */
+    public long getServedCount() {
+        return servedCount.sum();
+    }
+
+    /**
+     * Returns the number of blocks generated on the calling thread because the pool had run dry
+     *
+     * @return the number of depletions
+     */
+    public long getDepletionCount() {
+        return depletionCount.sum();
+    }
+
+    /**
+     * Returns the number of refills performed by the background thread
+     *
+     * @return the number of refills
+     */
+    public long getRefillCount() {
+        return refillCount.get();
+    }
+}
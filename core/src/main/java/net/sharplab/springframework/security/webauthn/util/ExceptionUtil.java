@@ -18,78 +18,114 @@ package net.sharplab.springframework.security.webauthn.util;
 
 import com.webauthn4j.util.exception.WebAuthnException;
 import net.sharplab.springframework.security.webauthn.exception.*;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetrics;
 import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.core.AuthenticationException;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
 /**
  * Internal utility to handle exceptions
  */
 public class ExceptionUtil {
 
+    // ~ Static fields/initializers
+    // ================================================================================================
+
+    private static final Map<Class<?>, Function<WebAuthnException, RuntimeException>> WRAPPERS = new LinkedHashMap<>();
+
+    static {
+        // ValidationExceptions
+        WRAPPERS.put(com.webauthn4j.validator.exception.BadAaguidException.class, e -> new BadAaguidException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.BadAlgorithmException.class, e -> new BadAlgorithmException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.BadAttestationStatementException.class, e -> new BadAttestationStatementException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.KeyDescriptionValidationException.class, e -> new KeyDescriptionValidationException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.BadChallengeException.class, e -> new BadChallengeException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.BadOriginException.class, e -> new BadOriginException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.BadRpIdException.class, e -> new BadRpIdException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.BadSignatureException.class, e -> new BadSignatureException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.metadata.exception.BadStatusException.class, e -> new BadStatusException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.CertificateException.class, e -> new CertificateException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.ConstraintViolationException.class, e -> new ConstraintViolationException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.MaliciousCounterValueException.class, e -> new MaliciousCounterValueException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.InconsistentClientDataTypeException.class, e -> new InconsistentClientDataTypeException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.MissingChallengeException.class, e -> new MissingChallengeException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.PublicKeyMismatchException.class, e -> new PublicKeyMismatchException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.SelfAttestationProhibitedException.class, e -> new SelfAttestationProhibitedException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.TokenBindingException.class, e -> new TokenBindingException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.TrustAnchorNotFoundException.class, e -> new TrustAnchorNotFoundException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.UnexpectedExtensionException.class, e -> new UnexpectedExtensionException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.UserNotPresentException.class, e -> new UserNotPresentException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.UserNotVerifiedException.class, e -> new UserNotVerifiedException(e.getMessage(), e));
+        WRAPPERS.put(com.webauthn4j.validator.exception.ValidationException.class, e -> new ValidationException("WebAuthn validation error", e));
+        // DataConversionException
+        WRAPPERS.put(com.webauthn4j.converter.exception.DataConversionException.class, e -> new DataConversionException("WebAuthn data conversion error", e));
+    }
+
+    private static final Function<WebAuthnException, RuntimeException> FALLBACK_WRAPPER = e -> new AuthenticationServiceException(null, e);
+
+    /**
+     * Resolves the wrapper of the nearest registered superclass once per exception class,
+     * so that wrapping costs a single lookup instead of a chain of instanceof checks.
+     */
+    private static final ClassValue<Function<WebAuthnException, RuntimeException>> WRAPPER_CACHE = new ClassValue<Function<WebAuthnException, RuntimeException>>() {
+        @Override
+        protected Function<WebAuthnException, RuntimeException> computeValue(Class<?> type) {
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                Function<WebAuthnException, RuntimeException> wrapper = WRAPPERS.get(current);
+                if (wrapper != null) {
+                    return wrapper;
+                }
+            }
+            return FALLBACK_WRAPPER;
+        }
+    };
+
+    // ~ Constructors
+    // ========================================================================================================
+
     private ExceptionUtil() {
     }
 
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Wraps WebAuthnAuthentication to proper {@link RuntimeException}, and counts the wrapping exception by its type
+     *
+     * @param e                 exception to be wrapped
+     * @param metrics           metrics to count the wrapping exception
+     * @param stackTraceEnabled false to skip filling in the stack trace of the wrapping exception
+     * @return wrapping exception
+     */
+    public static RuntimeException wrapWithAuthenticationException(WebAuthnException e, WebAuthnMetrics metrics, boolean stackTraceEnabled) {
+        RuntimeException wrapped = stackTraceEnabled ?
+                wrapWithAuthenticationException(e) :
+                WebAuthnAuthenticationException.createWithoutStackTrace(() -> wrapWithAuthenticationException(e));
+        metrics.countException(wrapped);
+        return wrapped;
+    }
+
+    /**
+     * Wraps WebAuthnAuthentication to proper {@link RuntimeException}, and counts the wrapping exception by its type
+     *
+     * @param e       exception to be wrapped
+     * @param metrics metrics to count the wrapping exception
+     * @return wrapping exception
+     */
+    public static RuntimeException wrapWithAuthenticationException(WebAuthnException e, WebAuthnMetrics metrics) {
+        return wrapWithAuthenticationException(e, metrics, true);
+    }
+
     /**
      * Wraps WebAuthnAuthentication to proper {@link RuntimeException} (mainly {@link AuthenticationException} subclass.
      *
      * @param e exception to be wrapped
      * @return wrapping exception
      */
-    @SuppressWarnings("squid:S3776")
     public static RuntimeException wrapWithAuthenticationException(WebAuthnException e) {
-        // ValidationExceptions
-        if (e instanceof com.webauthn4j.validator.exception.BadAaguidException) {
-            return new BadAaguidException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.BadAlgorithmException) {
-            return new BadAlgorithmException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.BadAttestationStatementException) {
-            if (e instanceof com.webauthn4j.validator.exception.KeyDescriptionValidationException) {
-                return new KeyDescriptionValidationException(e.getMessage(), e);
-            } else {
-                return new BadAttestationStatementException(e.getMessage(), e);
-            }
-        } else if (e instanceof com.webauthn4j.validator.exception.BadChallengeException) {
-            return new BadChallengeException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.BadOriginException) {
-            return new BadOriginException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.BadRpIdException) {
-            return new BadRpIdException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.BadSignatureException) {
-            return new BadSignatureException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.metadata.exception.BadStatusException) {
-            return new BadStatusException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.CertificateException) {
-            return new CertificateException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.ConstraintViolationException) {
-            return new ConstraintViolationException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.MaliciousCounterValueException) {
-            return new MaliciousCounterValueException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.InconsistentClientDataTypeException) {
-            return new InconsistentClientDataTypeException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.MissingChallengeException) {
-            return new MissingChallengeException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.PublicKeyMismatchException) {
-            return new PublicKeyMismatchException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.SelfAttestationProhibitedException) {
-            return new SelfAttestationProhibitedException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.TokenBindingException) {
-            return new TokenBindingException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.TrustAnchorNotFoundException) {
-            return new TrustAnchorNotFoundException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.UnexpectedExtensionException) {
-            return new UnexpectedExtensionException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.UserNotPresentException) {
-            return new UserNotPresentException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.UserNotVerifiedException) {
-            return new UserNotVerifiedException(e.getMessage(), e);
-        } else if (e instanceof com.webauthn4j.validator.exception.ValidationException) {
-            return new ValidationException("WebAuthn validation error", e);
-        }
-        // DataConversionException
-        else if (e instanceof com.webauthn4j.converter.exception.DataConversionException) {
-            return new DataConversionException("WebAuthn data conversion error", e);
-        } else {
-            return new AuthenticationServiceException(null, e);
-        }
+        return WRAPPER_CACHE.get(e.getClass()).apply(e);
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.jfr;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * {@link FlightRecorderSupport} emitting {@link WebAuthnStageEvent} and {@link WebAuthnEndpointEvent}
+ */
+class JdkFlightRecorderSupport implements FlightRecorderSupport {
+
+    @Override
+    public <T> T recordStage(String ceremony, String stage, byte[] credentialId, String format,
+                             Function<? super T, String> formatResolver, Supplier<T> supplier) {
+        WebAuthnStageEvent event = new WebAuthnStageEvent();
+        if (!event.isEnabled()) {
+            return supplier.get();
+        }
+        event.begin();
+        T value = null;
+        String result = FlightRecorderUtil.SUCCESS;
+        try {
+            value = supplier.get();
+            return value;
+        } catch (RuntimeException e) {
+            result = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.ceremony = ceremony;
+                event.stage = stage;
+                event.credentialIdHash = FlightRecorderUtil.hashCredentialId(credentialId);
+                event.format = formatResolver != null && FlightRecorderUtil.SUCCESS.equals(result) ? formatResolver.apply(value) : format;
+                event.result = result;
+                event.commit();
+            }
+        }
+    }
+
+    @Override
+    public <T> T recordEndpoint(String endpoint, Supplier<T> supplier) {
+        WebAuthnEndpointEvent event = new WebAuthnEndpointEvent();
+        if (!event.isEnabled()) {
+            return supplier.get();
+        }
+        event.begin();
+        String result = FlightRecorderUtil.SUCCESS;
+        try {
+            return supplier.get();
+        } catch (RuntimeException e) {
+            result = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.endpoint = endpoint;
+                event.result = result;
+                event.commit();
+            }
+        }
+    }
+}
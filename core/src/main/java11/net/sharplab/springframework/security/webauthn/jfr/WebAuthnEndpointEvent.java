@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event emitted around the processing of a WebAuthn endpoint request
+ */
+@Name("net.sharplab.springframework.security.webauthn.Endpoint")
+@Label("WebAuthn Endpoint")
+@Description("Processing of a request to a WebAuthn options or FIDO server endpoint")
+@Category({"Spring Security WebAuthn"})
+@StackTrace(false)
+class WebAuthnEndpointEvent extends jdk.jfr.Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Result")
+    @Description("success, or the simple name of the exception thrown")
+    String result;
+}
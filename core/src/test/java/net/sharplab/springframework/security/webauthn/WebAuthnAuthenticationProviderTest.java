@@ -21,14 +21,23 @@ import com.webauthn4j.authenticator.Authenticator;
 import com.webauthn4j.authenticator.AuthenticatorImpl;
 import com.webauthn4j.data.AuthenticationParameters;
 import com.webauthn4j.data.AuthenticationRequest;
+import net.sharplab.springframework.security.webauthn.authenticator.AuthenticatorUsageUpdatePolicy;
+import net.sharplab.springframework.security.webauthn.authenticator.AuthenticatorUsageUpdatePolicyImpl;
 import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
 import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticatorService;
 import net.sharplab.springframework.security.webauthn.exception.BadChallengeException;
 import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import net.sharplab.springframework.security.webauthn.metrics.MicrometerWebAuthnMetrics;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetrics;
 import net.sharplab.springframework.security.webauthn.request.WebAuthnAuthenticationRequest;
+import net.sharplab.springframework.security.webauthn.userdetails.AuthenticatorCounterListener;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserAuthenticator;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserAuthenticatorResolver;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserAuthenticatorResolverImpl;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetails;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsImpl;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -40,10 +49,14 @@ import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetailsChecker;
 
+import java.time.Instant;
 import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -83,6 +96,17 @@ public class WebAuthnAuthenticationProviderTest {
         authenticationProvider.authenticate(token);
     }
 
+    @Test
+    public void authenticate_with_stacklessFailures_test() {
+        authenticationProvider.setStacklessFailures(true);
+        Authentication token = new WebAuthnAssertionAuthenticationToken(null);
+
+        Throwable first = catchThrowable(() -> authenticationProvider.authenticate(token));
+        Throwable second = catchThrowable(() -> authenticationProvider.authenticate(token));
+
+        assertThat(first).isInstanceOf(BadCredentialsException.class).isNotSameAs(second);
+        assertThat(first.getStackTrace()).isEmpty();
+    }
 
     /**
      * Verifies that authentication process passes successfully if input is correct.
@@ -179,34 +203,258 @@ public class WebAuthnAuthenticationProviderTest {
 
 
     @Test
-    public void retrieveWebAuthnUserDetails_test() {
+    public void authenticate_records_stage_timers_test() {
+        //Given
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        authenticationProvider.setMetrics(new MicrometerWebAuthnMetrics(meterRegistry));
+        byte[] credentialId = new byte[32];
+        WebAuthnAuthenticator authenticator = mock(WebAuthnAuthenticator.class, RETURNS_DEEP_STUBS);
+        WebAuthnUserDetailsImpl user = new WebAuthnUserDetailsImpl(
+                new byte[0],
+                "dummy",
+                "dummy",
+                Collections.singletonList(authenticator),
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN")));
+        when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(credentialId);
+
+        //When
+        WebAuthnAuthenticationRequest credential = mock(WebAuthnAuthenticationRequest.class);
+        when(credential.getCredentialId()).thenReturn(credentialId);
+        when(userDetailsService.loadUserByCredentialId(credentialId)).thenReturn(user);
+        authenticationProvider.authenticate(new WebAuthnAssertionAuthenticationToken(credential));
+
+        //Then
+        for (String stage : new String[]{"user-lookup", "validate"}) {
+            assertThat(meterRegistry.get(WebAuthnMetrics.AUTHENTICATION_TIMER)
+                    .tag(WebAuthnMetrics.STAGE_TAG, stage)
+                    .tag(WebAuthnMetrics.OUTCOME_TAG, WebAuthnMetrics.OUTCOME_SUCCESS)
+                    .timer().count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void authenticate_counts_wrapped_exception_test() {
+        //Given
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        authenticationProvider.setMetrics(new MicrometerWebAuthnMetrics(meterRegistry));
+        byte[] credentialId = new byte[32];
+        WebAuthnAuthenticator authenticator = mock(WebAuthnAuthenticator.class, RETURNS_DEEP_STUBS);
+        WebAuthnUserDetailsImpl user = new WebAuthnUserDetailsImpl(
+                new byte[0],
+                "dummy",
+                "dummy",
+                Collections.singletonList(authenticator),
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN")));
+        when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(credentialId);
+        doThrow(com.webauthn4j.validator.exception.BadChallengeException.class).when(webAuthnManager).validate((AuthenticationRequest) any(), any());
+
+        //When
+        WebAuthnAuthenticationRequest credential = mock(WebAuthnAuthenticationRequest.class);
+        when(credential.getCredentialId()).thenReturn(credentialId);
+        when(userDetailsService.loadUserByCredentialId(credentialId)).thenReturn(user);
+        Throwable thrown = catchThrowable(() -> authenticationProvider.authenticate(new WebAuthnAssertionAuthenticationToken(credential)));
+
+        //Then
+        assertThat(thrown).isInstanceOf(BadChallengeException.class);
+        assertThat(meterRegistry.get(WebAuthnMetrics.EXCEPTION_COUNTER)
+                .tag(WebAuthnMetrics.EXCEPTION_TAG, "BadChallengeException")
+                .counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(WebAuthnMetrics.AUTHENTICATION_TIMER)
+                .tag(WebAuthnMetrics.STAGE_TAG, "validate")
+                .tag(WebAuthnMetrics.OUTCOME_TAG, "BadChallengeException")
+                .timer().count()).isEqualTo(1);
+    }
+
+    /**
+     * Verifies that the counter not persisted yet is used for validation.
+     */
+    @Test
+    public void authenticate_with_latest_counter_test() {
+        //Given
+        byte[] credentialId = new byte[32];
+        WebAuthnAuthenticator authenticator = mock(WebAuthnAuthenticator.class, RETURNS_DEEP_STUBS);
+        WebAuthnUserDetailsImpl user = new WebAuthnUserDetailsImpl(
+                new byte[0],
+                "dummy",
+                "dummy",
+                Collections.singletonList(authenticator),
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN")));
+        when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(credentialId);
+        when(authenticator.getCounter()).thenReturn(1L);
+        when(authenticatorService.getLatestCounter(credentialId, 1L)).thenReturn(5L);
+
+        //When
+        WebAuthnAuthenticationRequest credential = mock(WebAuthnAuthenticationRequest.class);
+        when(credential.getCredentialId()).thenReturn(credentialId);
+        when(userDetailsService.loadUserByCredentialId(credentialId)).thenReturn(user);
+        authenticationProvider.authenticate(new WebAuthnAssertionAuthenticationToken(credential));
+
+        //Then
+        verify(authenticator).setCounter(5L);
+    }
+
+    /**
+     * Verifies that the counter is persisted only if the usageUpdatePolicy requires it.
+     */
+    @Test
+    public void authenticate_with_usageUpdatePolicy_test() {
+        //Given
+        byte[] credentialId = new byte[32];
+        WebAuthnAuthenticator authenticator = mock(WebAuthnAuthenticator.class, RETURNS_DEEP_STUBS);
+        WebAuthnUserDetailsImpl user = new WebAuthnUserDetailsImpl(
+                new byte[0],
+                "dummy",
+                "dummy",
+                Collections.singletonList(authenticator),
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN")));
+        when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(credentialId);
+        when(authenticator.getCounter()).thenReturn(3L);
+        when(authenticatorService.getLatestCounter(credentialId, 3L)).thenReturn(3L);
+        AuthenticatorUsageUpdatePolicy usageUpdatePolicy = mock(AuthenticatorUsageUpdatePolicy.class);
+        when(usageUpdatePolicy.isUpdateRequired(eq(credentialId), eq(3L), eq(3L), any())).thenReturn(false, true);
+        when(usageUpdatePolicy.isLastUsedTimeTracked()).thenReturn(true);
+        authenticationProvider.setUsageUpdatePolicy(usageUpdatePolicy);
+
+        WebAuthnAuthenticationRequest credential = mock(WebAuthnAuthenticationRequest.class);
+        when(credential.getCredentialId()).thenReturn(credentialId);
+        when(userDetailsService.loadUserByCredentialId(credentialId)).thenReturn(user);
+
+        //When
+        authenticationProvider.authenticate(new WebAuthnAssertionAuthenticationToken(credential));
+        //Then
+        verify(authenticatorService, never()).updateCounter(any(), anyLong(), any());
+
+        //When
+        authenticationProvider.authenticate(new WebAuthnAssertionAuthenticationToken(credential));
+        //Then
+        verify(authenticatorService).updateCounter(eq(credentialId), eq(3L), any(Instant.class));
+    }
+
+    /**
+     * Verifies that a userDetailsService caching users is notified of the persisted counter.
+     */
+    @Test
+    public void authenticate_notifies_counter_listener_test() {
+        //Given
+        byte[] credentialId = new byte[32];
+        WebAuthnAuthenticator authenticator = mock(WebAuthnAuthenticator.class, RETURNS_DEEP_STUBS);
+        WebAuthnUserDetailsImpl user = new WebAuthnUserDetailsImpl(
+                new byte[0],
+                "dummy",
+                "dummy",
+                Collections.singletonList(authenticator),
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN")));
+        when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(credentialId);
+        when(authenticator.getCounter()).thenReturn(3L);
+        when(authenticatorService.getLatestCounter(credentialId, 3L)).thenReturn(2L);
+        WebAuthnUserDetailsService listeningUserDetailsService =
+                mock(WebAuthnUserDetailsService.class, withSettings().extraInterfaces(AuthenticatorCounterListener.class));
+        when(listeningUserDetailsService.loadUserByCredentialId(credentialId)).thenReturn(user);
+        authenticationProvider.setUserDetailsService(listeningUserDetailsService);
+
+        WebAuthnAuthenticationRequest credential = mock(WebAuthnAuthenticationRequest.class);
+        when(credential.getCredentialId()).thenReturn(credentialId);
+
+        //When
+        authenticationProvider.authenticate(new WebAuthnAssertionAuthenticationToken(credential));
+
+        //Then
+        verify(authenticatorService).updateCounter(eq(credentialId), eq(3L), any());
+        verify((AuthenticatorCounterListener) listeningUserDetailsService).onCounterUpdated("dummy", credentialId, 3L);
+    }
+
+    /**
+     * Verifies that the last used time is not persisted if the usageUpdatePolicy does not track it.
+     */
+    @Test
+    public void authenticate_without_lastUsedTime_tracking_test() {
+        //Given
+        byte[] credentialId = new byte[32];
+        WebAuthnAuthenticator authenticator = mock(WebAuthnAuthenticator.class, RETURNS_DEEP_STUBS);
+        WebAuthnUserDetailsImpl user = new WebAuthnUserDetailsImpl(
+                new byte[0],
+                "dummy",
+                "dummy",
+                Collections.singletonList(authenticator),
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN")));
+        when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(credentialId);
+        when(authenticator.getCounter()).thenReturn(3L);
+        when(authenticatorService.getLatestCounter(credentialId, 3L)).thenReturn(2L);
+        authenticationProvider.setUsageUpdatePolicy(new AuthenticatorUsageUpdatePolicyImpl());
+
+        WebAuthnAuthenticationRequest credential = mock(WebAuthnAuthenticationRequest.class);
+        when(credential.getCredentialId()).thenReturn(credentialId);
+        when(userDetailsService.loadUserByCredentialId(credentialId)).thenReturn(user);
+
+        //When
+        authenticationProvider.authenticate(new WebAuthnAssertionAuthenticationToken(credential));
+        //Then
+        verify(authenticatorService).updateCounter(eq(credentialId), eq(3L), isNull());
+    }
+
+    @Test
+    public void retrieveWebAuthnUserAuthenticator_test() {
         byte[] credentialId = new byte[0];
+        WebAuthnAuthenticator authenticator = mock(WebAuthnAuthenticator.class, RETURNS_DEEP_STUBS);
+        when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(credentialId);
         WebAuthnUserDetails expectedUser = mock(WebAuthnUserDetails.class);
+        doReturn(Collections.singletonList(authenticator)).when(expectedUser).getAuthenticators();
 
         //Given
         when(userDetailsService.loadUserByCredentialId(credentialId)).thenReturn(expectedUser);
 
         //When
-        WebAuthnUserDetails userDetails = authenticationProvider.retrieveWebAuthnUserDetails(credentialId);
+        WebAuthnUserAuthenticator userAuthenticator = authenticationProvider.retrieveWebAuthnUserAuthenticator(credentialId);
 
         //Then
-        assertThat(userDetails).isEqualTo(expectedUser);
+        assertThat(userAuthenticator.getUserDetails()).isEqualTo(expectedUser);
+        assertThat(userAuthenticator.getAuthenticator()).isEqualTo(authenticator);
 
     }
 
+    @Test
+    public void retrieveWebAuthnUserAuthenticator_test_with_userAuthenticatorResolver() {
+        byte[] credentialId = new byte[0];
+        WebAuthnUserAuthenticator expected = new WebAuthnUserAuthenticator(mock(WebAuthnUserDetails.class), mock(Authenticator.class));
+        WebAuthnUserAuthenticatorResolver userAuthenticatorResolver = mock(WebAuthnUserAuthenticatorResolver.class);
+
+        //Given
+        when(userAuthenticatorResolver.resolveByCredentialId(credentialId)).thenReturn(expected);
+
+        //When
+        authenticationProvider.setUserAuthenticatorResolver(userAuthenticatorResolver);
+        WebAuthnUserAuthenticator userAuthenticator = authenticationProvider.retrieveWebAuthnUserAuthenticator(credentialId);
+
+        //Then
+        assertThat(userAuthenticator).isEqualTo(expected);
+        verify(userDetailsService, never()).loadUserByCredentialId(any());
+    }
+
     @Test(expected = BadCredentialsException.class)
-    public void retrieveWebAuthnUserDetails_test_with_CredentialIdNotFoundException() {
+    public void retrieveWebAuthnUserAuthenticator_test_with_user_without_requested_authenticator() {
+        byte[] credentialId = new byte[0];
+        WebAuthnUserDetails user = mock(WebAuthnUserDetails.class);
+
+        //Given
+        when(userDetailsService.loadUserByCredentialId(credentialId)).thenReturn(user);
+
+        //When
+        authenticationProvider.retrieveWebAuthnUserAuthenticator(credentialId);
+    }
+
+    @Test(expected = BadCredentialsException.class)
+    public void retrieveWebAuthnUserAuthenticator_test_with_CredentialIdNotFoundException() {
         byte[] credentialId = new byte[0];
 
         //Given
         when(userDetailsService.loadUserByCredentialId(credentialId)).thenThrow(CredentialIdNotFoundException.class);
 
         //When
-        authenticationProvider.retrieveWebAuthnUserDetails(credentialId);
+        authenticationProvider.retrieveWebAuthnUserAuthenticator(credentialId);
     }
 
     @Test(expected = CredentialIdNotFoundException.class)
-    public void retrieveWebAuthnUserDetails_test_with_CredentialIdNotFoundException_and_hideCredentialIdNotFoundExceptions_option_false() {
+    public void retrieveWebAuthnUserAuthenticator_test_with_CredentialIdNotFoundException_and_hideCredentialIdNotFoundExceptions_option_false() {
         byte[] credentialId = new byte[0];
 
         //Given
@@ -214,11 +462,11 @@ public class WebAuthnAuthenticationProviderTest {
 
         //When
         authenticationProvider.setHideCredentialIdNotFoundExceptions(false);
-        authenticationProvider.retrieveWebAuthnUserDetails(credentialId);
+        authenticationProvider.retrieveWebAuthnUserAuthenticator(credentialId);
     }
 
     @Test(expected = InternalAuthenticationServiceException.class)
-    public void retrieveWebAuthnUserDetails_test_with_RuntimeException_from_webAuthnAuthenticatorService() {
+    public void retrieveWebAuthnUserAuthenticator_test_with_RuntimeException_from_webAuthnAuthenticatorService() {
         byte[] credentialId = new byte[0];
 
         //Given
@@ -226,11 +474,11 @@ public class WebAuthnAuthenticationProviderTest {
 
         //When
         authenticationProvider.setHideCredentialIdNotFoundExceptions(false);
-        authenticationProvider.retrieveWebAuthnUserDetails(credentialId);
+        authenticationProvider.retrieveWebAuthnUserAuthenticator(credentialId);
     }
 
-    @Test(expected = InternalAuthenticationServiceException.class)
-    public void retrieveWebAuthnUserDetails_test_with_null_from_webAuthnAuthenticatorService() {
+    @Test(expected = CredentialIdNotFoundException.class)
+    public void retrieveWebAuthnUserAuthenticator_test_with_null_from_webAuthnAuthenticatorService() {
         byte[] credentialId = new byte[0];
 
         //Given
@@ -238,12 +486,23 @@ public class WebAuthnAuthenticationProviderTest {
 
         //When
         authenticationProvider.setHideCredentialIdNotFoundExceptions(false);
-        authenticationProvider.retrieveWebAuthnUserDetails(credentialId);
+        authenticationProvider.retrieveWebAuthnUserAuthenticator(credentialId);
+    }
+
+    @Test
+    public void userDetailsService_implementing_resolver_is_used_as_resolver_test() {
+        WebAuthnUserDetailsService userDetailsService = mock(WebAuthnUserDetailsService.class,
+                withSettings().extraInterfaces(WebAuthnUserAuthenticatorResolver.class));
+
+        WebAuthnAuthenticationProvider provider = new WebAuthnAuthenticationProvider(userDetailsService, authenticatorService, webAuthnManager);
+
+        assertThat(provider.getUserAuthenticatorResolver()).isSameAs(userDetailsService);
     }
 
     @Test
     public void getter_setter_test() {
         WebAuthnUserDetailsService userDetailsService = mock(WebAuthnUserDetailsService.class);
+        WebAuthnUserAuthenticatorResolver userAuthenticatorResolver = mock(WebAuthnUserAuthenticatorResolver.class);
         UserDetailsChecker preAuthenticationChecker = mock(UserDetailsChecker.class);
         UserDetailsChecker postAuthenticationChecker = mock(UserDetailsChecker.class);
 
@@ -254,6 +513,11 @@ public class WebAuthnAuthenticationProviderTest {
 
         authenticationProvider.setUserDetailsService(userDetailsService);
         assertThat(authenticationProvider.getUserDetailsService()).isEqualTo(userDetailsService);
+        assertThat(authenticationProvider.getUserAuthenticatorResolver()).isInstanceOf(WebAuthnUserAuthenticatorResolverImpl.class);
+        authenticationProvider.setUserAuthenticatorResolver(userAuthenticatorResolver);
+        assertThat(authenticationProvider.getUserAuthenticatorResolver()).isEqualTo(userAuthenticatorResolver);
+        authenticationProvider.setUserDetailsService(mock(WebAuthnUserDetailsService.class));
+        assertThat(authenticationProvider.getUserAuthenticatorResolver()).isEqualTo(userAuthenticatorResolver);
 
         authenticationProvider.setPreAuthenticationChecks(preAuthenticationChecker);
         assertThat(authenticationProvider.getPreAuthenticationChecks()).isEqualTo(preAuthenticationChecker);
@@ -19,6 +19,7 @@ package net.sharplab.springframework.security.webauthn;
 import com.webauthn4j.data.extension.client.FIDOAppIDExtensionClientInput;
 import com.webauthn4j.server.ServerProperty;
 import com.webauthn4j.util.Base64UrlUtil;
+import net.sharplab.springframework.security.webauthn.metrics.ServerTimingRecorder;
 import net.sharplab.springframework.security.webauthn.request.WebAuthnAuthenticationRequest;
 import net.sharplab.springframework.security.webauthn.server.ServerPropertyProvider;
 import org.junit.Before;
@@ -32,12 +33,14 @@ import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.AuthorityUtils;
 
 import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
 /**
@@ -126,6 +129,40 @@ public class WebAuthnProcessingFilterTest {
 
     }
 
+    @Test
+    public void attemptAuthentication_with_serverTiming_test() {
+        setupCredentialParameters();
+        when(authenticationManager.authenticate(any())).thenReturn(mock(Authentication.class));
+        when(serverPropertyProvider.provide(any())).thenReturn(mock(ServerProperty.class));
+        target.setServerTimingSamplingRate(1.0);
+
+        target.attemptAuthentication(mockHttpServletRequest, mockHttpServletResponse);
+
+        assertThat(mockHttpServletResponse.getHeader(ServerTimingRecorder.SERVER_TIMING_HEADER)).startsWith("decode;dur=");
+    }
+
+    @Test
+    public void attemptAuthentication_with_serverTiming_and_failure_test() {
+        setupCredentialParameters();
+        when(authenticationManager.authenticate(any())).thenThrow(new BadCredentialsException("bad credentials"));
+        when(serverPropertyProvider.provide(any())).thenReturn(mock(ServerProperty.class));
+        target.setServerTimingSamplingRate(1.0);
+
+        assertThatThrownBy(() -> target.attemptAuthentication(mockHttpServletRequest, mockHttpServletResponse))
+                .isInstanceOf(BadCredentialsException.class);
+        assertThat(mockHttpServletResponse.getHeader(ServerTimingRecorder.SERVER_TIMING_HEADER)).isNull();
+    }
+
+    private void setupCredentialParameters() {
+        mockHttpServletRequest.setMethod("POST");
+        mockHttpServletRequest.setServerName("example.com");
+        mockHttpServletRequest.setParameter("credentialId", "AAhdofeLeQWG6Y6gwwytZKNCDFB1WaIgqDsOwVYR5UavKQhAti4ic9_Dz-_CQEPpN0To6hiDRSCvmFHXaG6HK5yvvhm4DJRVJXzSvZiq5NefbXSYIr2uUaKbsoBe1lulhNdL9dRt6Dkkp38uq02YIR5CDaoxD-HQgMsS667aWlhHVKE884Sq0d1VVgGTDb1ds-Py_H7CDqk9SDErb8-XtQ9L");
+        mockHttpServletRequest.setParameter("clientDataJSON", "eyJjaGFsbGVuZ2UiOiJGT3JHWklmSFJfeURaSklydTVPdXBBIiwiaGFzaEFsZyI6IlMyNTYiLCJvcmlnaW4iOiJsb2NhbGhvc3QifQ");
+        mockHttpServletRequest.setParameter("authenticatorData", "SZYN5YgOjGh0NBcPZHZgW4_krrmihjLHmVzzuoMdl2MBAAABaQ");
+        mockHttpServletRequest.setParameter("signature", "MEUCIGBYMUVg2KkMG7V7UEsGxUeKVaO8x587JyVoZkk6FmsgAiEA5XRKxlYe2Vpwn-JYEJhcEVJ3-0nYFG-JfheOk4rA3dc");
+        mockHttpServletRequest.setParameter("clientExtensionsJSON", "");
+    }
+
     @Test
     public void attemptAuthentication_test_with_get_method() {
 
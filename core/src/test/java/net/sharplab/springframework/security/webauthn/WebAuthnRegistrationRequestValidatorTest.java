@@ -135,6 +135,40 @@ public class WebAuthnRegistrationRequestValidatorTest {
     }
 
 
+    @Test
+    public void validate_with_decoded_bytes_test() {
+        WebAuthnRegistrationRequestValidator target = new WebAuthnRegistrationRequestValidator(
+                webAuthnManager, serverPropertyProvider
+        );
+
+        ServerProperty serverProperty = mock(ServerProperty.class);
+        when(serverPropertyProvider.provide(any())).thenReturn(serverProperty);
+
+        CollectedClientData collectedClientData = mock(CollectedClientData.class);
+        AttestationObject attestationObject = mock(AttestationObject.class);
+        AuthenticationExtensionsClientOutputs clientExtensionOutputs = new AuthenticationExtensionsClientOutputs();
+        when(webAuthnManager.validate(any(RegistrationRequest.class), any(RegistrationParameters.class))).thenReturn(
+                new RegistrationData(attestationObject, null, collectedClientData, null, clientExtensionOutputs, null));
+
+        MockHttpServletRequest mockHttpServletRequest = new MockHttpServletRequest();
+        byte[] clientDataJSON = new byte[]{0x01, 0x02};
+        byte[] attestationObjectBytes = new byte[]{0x03, 0x04};
+        String clientExtensionsJSON = "clientExtensionsJSON";
+
+        WebAuthnRegistrationRequestValidationResponse response =
+                target.validate(mockHttpServletRequest, clientDataJSON, attestationObjectBytes, null, clientExtensionsJSON);
+
+        ArgumentCaptor<RegistrationRequest> registrationRequestArgumentCaptor = ArgumentCaptor.forClass(RegistrationRequest.class);
+        verify(webAuthnManager).validate(registrationRequestArgumentCaptor.capture(), any(RegistrationParameters.class));
+        RegistrationRequest registrationRequest = registrationRequestArgumentCaptor.getValue();
+
+        assertThat(registrationRequest.getClientDataJSON()).isEqualTo(clientDataJSON);
+        assertThat(registrationRequest.getAttestationObject()).isEqualTo(attestationObjectBytes);
+        assertThat(response.getCollectedClientData()).isEqualTo(collectedClientData);
+        assertThat(response.getAttestationObject()).isEqualTo(attestationObject);
+    }
+
+
     @Test
     public void getter_setter_test() {
         WebAuthnRegistrationRequestValidator target = new WebAuthnRegistrationRequestValidator(
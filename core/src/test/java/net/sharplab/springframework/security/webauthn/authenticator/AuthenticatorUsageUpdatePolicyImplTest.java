@@ -0,0 +1,70 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sharplab.springframework.security.webauthn.authenticator;
+
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AuthenticatorUsageUpdatePolicyImplTest {
+
+    private AuthenticatorUsageUpdatePolicyImpl target = new AuthenticatorUsageUpdatePolicyImpl();
+
+    @Test
+    public void isUpdateRequired_test() {
+        assertThat(target.isUpdateRequired(new byte[]{0x01}, 0, 0, Instant.ofEpochSecond(0))).isFalse();
+        assertThat(target.isUpdateRequired(new byte[]{0x01}, 5, 5, Instant.ofEpochSecond(0))).isFalse();
+        assertThat(target.isUpdateRequired(new byte[]{0x01}, 5, 6, Instant.ofEpochSecond(0))).isTrue();
+    }
+
+    @Test
+    public void isUpdateRequired_with_lastUsedGranularity_test() {
+        target.setLastUsedGranularity(60 * 1000L);
+
+        assertThat(target.isUpdateRequired(new byte[]{0x01}, 0, 0, Instant.ofEpochSecond(0))).isTrue();
+        assertThat(target.isUpdateRequired(new byte[]{0x01}, 0, 0, Instant.ofEpochSecond(59))).isFalse();
+        assertThat(target.isUpdateRequired(new byte[]{0x02}, 0, 0, Instant.ofEpochSecond(59))).isTrue();
+        assertThat(target.isUpdateRequired(new byte[]{0x01}, 0, 1, Instant.ofEpochSecond(59))).isTrue();
+        assertThat(target.isUpdateRequired(new byte[]{0x01}, 0, 0, Instant.ofEpochSecond(60))).isTrue();
+    }
+
+    @Test
+    public void isUpdateRequired_resets_tracking_when_maximumTrackedAuthenticators_is_exceeded_test() {
+        target.setLastUsedGranularity(60 * 1000L);
+        target.setMaximumTrackedAuthenticators(1);
+
+        assertThat(target.isUpdateRequired(new byte[]{0x01}, 0, 0, Instant.ofEpochSecond(0))).isTrue();
+        assertThat(target.isUpdateRequired(new byte[]{0x02}, 0, 0, Instant.ofEpochSecond(0))).isTrue();
+        assertThat(target.isUpdateRequired(new byte[]{0x01}, 0, 0, Instant.ofEpochSecond(0))).isTrue();
+    }
+
+    @Test
+    public void isLastUsedTimeTracked_test() {
+        assertThat(target.isLastUsedTimeTracked()).isFalse();
+        target.setLastUsedGranularity(60 * 1000L);
+        assertThat(target.isLastUsedTimeTracked()).isTrue();
+    }
+
+    @Test
+    public void getter_setter_test() {
+        target.setLastUsedGranularity(1000L);
+        target.setMaximumTrackedAuthenticators(10);
+        assertThat(target.getLastUsedGranularity()).isEqualTo(1000L);
+        assertThat(target.getMaximumTrackedAuthenticators()).isEqualTo(10);
+    }
+}
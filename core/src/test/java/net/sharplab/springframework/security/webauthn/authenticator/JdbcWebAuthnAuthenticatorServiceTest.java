@@ -0,0 +1,148 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.authenticator;
+
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JdbcWebAuthnAuthenticatorServiceTest {
+
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private JdbcWebAuthnAuthenticatorService target;
+
+    @Before
+    public void setup() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("classpath:net/sharplab/springframework/security/webauthn/userdetails/webauthn-schema.ddl")
+                .build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("insert into webauthn_users values ('john', 'password', true, ?, false)", (Object) new byte[]{0x01});
+        for (byte credentialId = 1; credentialId <= 3; credentialId++) {
+            jdbcTemplate.update("insert into webauthn_authenticators (credential_id, username, counter, attested_credential_data, attestation_statement) values (?, 'john', 0, ?, ?)",
+                    new byte[]{credentialId}, new byte[0], new byte[0]);
+        }
+        target = new JdbcWebAuthnAuthenticatorService(dataSource);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    public void updateCounter_test() {
+        target.updateCounter(new byte[]{0x01}, 5);
+
+        assertThat(getCounter(new byte[]{0x01})).isEqualTo(5);
+        assertThat(getCounter(new byte[]{0x02})).isZero();
+        assertThat(getLastUsedAt(new byte[]{0x01})).isNull();
+    }
+
+    @Test
+    public void updateCounter_with_lastUsedAt_test() {
+        Instant lastUsedAt = Instant.ofEpochSecond(1000);
+        target.updateCounter(new byte[]{0x01}, 5, lastUsedAt);
+        target.updateCounter(new byte[]{0x01}, 6);
+
+        assertThat(getCounter(new byte[]{0x01})).isEqualTo(6);
+        assertThat(getLastUsedAt(new byte[]{0x01})).isEqualTo(lastUsedAt);
+    }
+
+    @Test
+    public void updateCounter_does_not_decrease_counter_test() {
+        target.updateCounter(new byte[]{0x01}, 5);
+        target.updateCounter(new byte[]{0x01}, 4, Instant.ofEpochSecond(1000));
+
+        assertThat(getCounter(new byte[]{0x01})).isEqualTo(5);
+        assertThat(getLastUsedAt(new byte[]{0x01})).isNull();
+
+        target.updateCounter(new byte[]{0x01}, 5, Instant.ofEpochSecond(2000));
+
+        assertThat(getLastUsedAt(new byte[]{0x01})).isEqualTo(Instant.ofEpochSecond(2000));
+    }
+
+    @Test
+    public void updateCounters_skips_stale_updates_test() {
+        target.updateCounter(new byte[]{0x02}, 5);
+
+        target.updateCounters(Arrays.asList(
+                new CounterUpdate(new byte[]{0x01}, 1),
+                new CounterUpdate(new byte[]{0x02}, 3)));
+
+        assertThat(getCounter(new byte[]{0x01})).isEqualTo(1);
+        assertThat(getCounter(new byte[]{0x02})).isEqualTo(5);
+    }
+
+    @Test
+    public void updateCounter_with_unknown_credentialId_test() {
+        assertThatThrownBy(() -> target.updateCounter(new byte[]{0x09}, 5)).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
+    @Test
+    public void updateCounters_test() {
+        target.updateCounters(Arrays.asList(
+                new CounterUpdate(new byte[]{0x01}, 1),
+                new CounterUpdate(new byte[]{0x02}, 2, Instant.ofEpochSecond(1000))));
+
+        assertThat(getCounter(new byte[]{0x01})).isEqualTo(1);
+        assertThat(getCounter(new byte[]{0x02})).isEqualTo(2);
+        assertThat(getCounter(new byte[]{0x03})).isZero();
+        assertThat(getLastUsedAt(new byte[]{0x02})).isEqualTo(Instant.ofEpochSecond(1000));
+    }
+
+    @Test
+    public void updateCounters_with_unknown_credentialId_test() {
+        assertThatThrownBy(() -> target.updateCounters(Arrays.asList(
+                new CounterUpdate(new byte[]{0x01}, 1),
+                new CounterUpdate(new byte[]{0x09}, 2))))
+                .isInstanceOf(CredentialIdNotFoundException.class);
+        assertThat(getCounter(new byte[]{0x01})).isEqualTo(1);
+    }
+
+    @Test
+    public void updateCounters_with_empty_collection_test() {
+        target.updateCounters(Collections.emptyList());
+
+        assertThat(getCounter(new byte[]{0x01})).isZero();
+    }
+
+    private long getCounter(byte[] credentialId) {
+        return jdbcTemplate.queryForObject("select counter from webauthn_authenticators where credential_id = ?", Long.class, (Object) credentialId);
+    }
+
+    private Instant getLastUsedAt(byte[] credentialId) {
+        Timestamp lastUsedAt = jdbcTemplate.queryForObject("select last_used_at from webauthn_authenticators where credential_id = ?", Timestamp.class, (Object) credentialId);
+        return lastUsedAt == null ? null : lastUsedAt.toInstant();
+    }
+}
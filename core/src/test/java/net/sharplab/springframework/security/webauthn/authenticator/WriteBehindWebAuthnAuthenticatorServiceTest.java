@@ -0,0 +1,189 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sharplab.springframework.security.webauthn.authenticator;
+
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+public class WriteBehindWebAuthnAuthenticatorServiceTest {
+
+    private WebAuthnAuthenticatorService delegate = mock(WebAuthnAuthenticatorService.class);
+    private WriteBehindWebAuthnAuthenticatorService target = new WriteBehindWebAuthnAuthenticatorService(delegate, 60 * 60 * 1000L, 100);
+
+    @After
+    public void tearDown() {
+        target.destroy();
+    }
+
+    @Test
+    public void updateCounter_is_deferred_and_coalesced_test() {
+        when(delegate.getLatestCounter(any(), anyLong())).thenAnswer(invocation -> invocation.getArgument(1));
+
+        target.updateCounter(new byte[]{0x01}, 1);
+        target.updateCounter(new byte[]{0x01}, 3);
+        target.updateCounter(new byte[]{0x01}, 2);
+
+        verify(delegate, never()).updateCounter(any(), anyLong());
+        verify(delegate, never()).updateCounters(anyCollection());
+        assertThat(target.getPendingCount()).isEqualTo(1);
+        assertThat(target.getLatestCounter(new byte[]{0x01}, 0)).isEqualTo(3);
+        assertThat(target.getLatestCounter(new byte[]{0x02}, 5)).isEqualTo(5);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void updateCounter_coalesces_lastUsedAt_test() {
+        target.updateCounter(new byte[]{0x01}, 1, Instant.ofEpochSecond(20));
+        target.updateCounter(new byte[]{0x01}, 2, Instant.ofEpochSecond(10));
+        target.updateCounter(new byte[]{0x01}, 2);
+
+        target.flush();
+
+        ArgumentCaptor<Collection<CounterUpdate>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(delegate).updateCounters(captor.capture());
+        assertThat(captor.getValue()).containsExactly(new CounterUpdate(new byte[]{0x01}, 2, Instant.ofEpochSecond(20)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void flush_test() {
+        target.updateCounter(new byte[]{0x01}, 1);
+        target.updateCounter(new byte[]{0x02}, 2);
+
+        target.flush();
+
+        ArgumentCaptor<Collection<CounterUpdate>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(delegate).updateCounters(captor.capture());
+        assertThat(captor.getValue()).containsExactlyInAnyOrder(
+                new CounterUpdate(new byte[]{0x01}, 1),
+                new CounterUpdate(new byte[]{0x02}, 2));
+        assertThat(target.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void flush_keeps_counters_pending_when_delegate_fails_test() {
+        doThrow(new IllegalStateException("connection lost")).when(delegate).updateCounters(anyCollection());
+        when(delegate.getLatestCounter(any(), anyLong())).thenAnswer(invocation -> invocation.getArgument(1));
+        target.updateCounter(new byte[]{0x01}, 1);
+
+        assertThatThrownBy(() -> target.flush()).isInstanceOf(IllegalStateException.class);
+
+        assertThat(target.getPendingCount()).isEqualTo(1);
+        assertThat(target.getLatestCounter(new byte[]{0x01}, 0)).isEqualTo(1);
+    }
+
+    @Test
+    public void flush_drops_counters_of_removed_authenticators_test() {
+        doThrow(CredentialIdNotFoundException.class).when(delegate).updateCounters(anyCollection());
+        doThrow(CredentialIdNotFoundException.class).when(delegate).updateCounter(new byte[]{0x01}, 1, null);
+        target.updateCounter(new byte[]{0x01}, 1);
+        target.updateCounter(new byte[]{0x02}, 2);
+
+        target.flush();
+
+        verify(delegate).updateCounter(new byte[]{0x02}, 2, null);
+        assertThat(target.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void destroy_flushes_pending_counters_test() {
+        target.updateCounter(new byte[]{0x01}, 1);
+
+        target.destroy();
+
+        verify(delegate).updateCounters(anyCollection());
+        assertThat(target.getPendingCount()).isZero();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void updateCounter_after_destroy_is_written_through_test() {
+        target.destroy();
+
+        target.updateCounter(new byte[]{0x01}, 1);
+
+        ArgumentCaptor<Collection<CounterUpdate>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(delegate).updateCounters(captor.capture());
+        assertThat(captor.getValue()).containsExactly(new CounterUpdate(new byte[]{0x01}, 1, null));
+        assertThat(target.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void updateCounter_queues_a_single_flush_while_one_is_pending_test() throws Exception {
+        AtomicInteger flushCount = new AtomicInteger();
+        WriteBehindWebAuthnAuthenticatorService batchTarget = new WriteBehindWebAuthnAuthenticatorService(delegate, 60 * 60 * 1000L, 1) {
+            @Override
+            public synchronized void flush() {
+                flushCount.incrementAndGet();
+                super.flush();
+            }
+        };
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            flushing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(delegate).updateCounters(anyCollection());
+        try {
+            batchTarget.updateCounter(new byte[]{0x01}, 1);
+            assertThat(flushing.await(5, TimeUnit.SECONDS)).isTrue();
+            for (int i = 2; i < 100; i++) {
+                batchTarget.updateCounter(new byte[]{(byte) i}, i);
+            }
+        } finally {
+            release.countDown();
+        }
+        batchTarget.destroy();
+
+        // the running flush, the single flush queued while it was running, and the final flush
+        assertThat(flushCount.get()).isEqualTo(3);
+        assertThat(batchTarget.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void updateCounters_default_method_test() {
+        List<CounterUpdate> updated = new ArrayList<>();
+        WebAuthnAuthenticatorService authenticatorService = (credentialId, counter) -> updated.add(new CounterUpdate(credentialId, counter));
+
+        authenticatorService.updateCounters(Arrays.asList(
+                new CounterUpdate(new byte[]{0x01}, 1),
+                new CounterUpdate(new byte[]{0x02}, 2)));
+
+        assertThat(updated).containsExactly(
+                new CounterUpdate(new byte[]{0x01}, 1),
+                new CounterUpdate(new byte[]{0x02}, 2));
+        assertThat(authenticatorService.getLatestCounter(new byte[]{0x01}, 3)).isEqualTo(3);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for HashedTimingWheel
+ */
+public class HashedTimingWheelTest {
+
+    @Test
+    public void advance_test() {
+        HashedTimingWheel<String> target = new HashedTimingWheel<>(100, 8, 0);
+        target.schedule("a", 150);
+        target.schedule("b", 450);
+        List<String> expired = new ArrayList<>();
+
+        target.advance(199, expired::add);
+        assertThat(expired).isEmpty();
+        target.advance(200, expired::add);
+        assertThat(expired).containsExactly("a");
+        target.advance(500, expired::add);
+        assertThat(expired).containsExactly("a", "b");
+    }
+
+    @Test
+    public void deadline_beyond_one_revolution_test() {
+        HashedTimingWheel<String> target = new HashedTimingWheel<>(100, 4, 0);
+        target.schedule("a", 950);
+        List<String> expired = new ArrayList<>();
+
+        for (long now = 0; now < 1000; now += 50) {
+            target.advance(now, expired::add);
+        }
+        assertThat(expired).isEmpty();
+        target.advance(1000, expired::add);
+        assertThat(expired).containsExactly("a");
+    }
+
+    @Test
+    public void advance_over_multiple_revolutions_test() {
+        HashedTimingWheel<String> target = new HashedTimingWheel<>(100, 4, 0);
+        target.schedule("a", 150);
+        target.schedule("b", 250);
+        List<String> expired = new ArrayList<>();
+
+        target.advance(10000, expired::add);
+        assertThat(expired).containsExactlyInAnyOrder("a", "b");
+    }
+}
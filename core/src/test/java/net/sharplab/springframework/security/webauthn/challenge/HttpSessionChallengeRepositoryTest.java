@@ -17,6 +17,7 @@
 package net.sharplab.springframework.security.webauthn.challenge;
 
 import com.webauthn4j.data.client.challenge.Challenge;
+import net.sharplab.springframework.security.webauthn.util.EntropyPool;
 import org.junit.Test;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpSession;
@@ -24,6 +25,8 @@ import org.springframework.mock.web.MockHttpSession;
 import javax.servlet.http.HttpSession;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  * Test for HttpSessionChallengeRepository
@@ -39,6 +42,17 @@ public class HttpSessionChallengeRepositoryTest {
         assertThat(challenge.getValue()).hasSize(16);
     }
 
+    @Test
+    public void generateChallenge_with_entropyPool_test() {
+        EntropyPool entropyPool = mock(EntropyPool.class);
+        byte[] block = new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0A, 0x0B, 0x0C, 0x0D, 0x0E, 0x0F, 0x10};
+        when(entropyPool.nextBytes()).thenReturn(block);
+        target.setEntropyPool(entropyPool);
+
+        Challenge challenge = target.generateChallenge();
+        assertThat(challenge.getValue()).isEqualTo(block);
+    }
+
     @Test
     public void saveChallenge_test() {
         MockHttpServletRequest request = new MockHttpServletRequest();
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.Cookie;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for InMemoryChallengeRepository
+ */
+public class InMemoryChallengeRepositoryTest {
+
+    private MutableClock clock = new MutableClock(Instant.parse("2019-01-01T00:00:00Z"));
+    private InMemoryChallengeRepository target = new InMemoryChallengeRepository(60000, clock);
+
+    @Test
+    public void save_and_load_test() {
+        MockHttpServletRequest request = createRequest();
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+        assertThat(target.loadChallenge(createRequest(getCookie(request)))).isEqualTo(challenge);
+        assertThat(target.loadChallenge(createRequest())).isNull();
+        assertThat(request.getSession(false)).isNull();
+    }
+
+    @Test
+    public void save_and_load_with_header_test() {
+        target.setTokenTransport(ChallengeTokenTransport.HEADER);
+        MockHttpServletRequest request = createRequest();
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+        String handle = getResponse(request).getHeader("X-WEBAUTHN-CHALLENGE-HANDLE");
+
+        MockHttpServletRequest nextRequest = createRequest();
+        nextRequest.addHeader("X-WEBAUTHN-CHALLENGE-HANDLE", handle);
+        assertThat(target.loadChallenge(nextRequest)).isEqualTo(challenge);
+    }
+
+    @Test
+    public void consumeChallenge_is_single_use_test() {
+        MockHttpServletRequest request = createRequest();
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+        Cookie cookie = getCookie(request);
+
+        assertThat(target.consumeChallenge(createRequest(cookie))).isEqualTo(challenge);
+        assertThat(target.consumeChallenge(createRequest(cookie))).isNull();
+        assertThat(target.loadChallenge(createRequest(cookie))).isNull();
+    }
+
+    @Test
+    public void consumeChallenge_in_strict_mode_does_not_create_state_test() {
+        MockHttpServletRequest request = createRequest();
+
+        assertThat(target.consumeChallenge(request)).isNull();
+        assertThat(request.getSession(false)).isNull();
+        assertThat(getResponse(request).getCookies()).isEmpty();
+        assertThat(target.size()).isZero();
+    }
+
+    @Test
+    public void consumeChallenge_in_non_strict_mode_test() {
+        target.setStrict(false);
+        MockHttpServletRequest request = createRequest();
+
+        Challenge challenge = target.consumeChallenge(request);
+        assertThat(challenge).isNotNull();
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+    }
+
+    @Test
+    public void challenge_expires_test() {
+        MockHttpServletRequest request = createRequest();
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+        Cookie cookie = getCookie(request);
+
+        clock.advance(59999);
+        assertThat(target.loadChallenge(createRequest(cookie))).isEqualTo(challenge);
+        clock.advance(1);
+        assertThat(target.loadChallenge(createRequest(cookie))).isNull();
+        assertThat(target.consumeChallenge(createRequest(cookie))).isNull();
+    }
+
+    @Test
+    public void expired_challenges_are_evicted_test() {
+        for (int i = 0; i < 100; i++) {
+            target.saveChallenge(target.generateChallenge(), createRequest());
+        }
+        assertThat(target.size()).isEqualTo(100);
+
+        clock.advance(62000);
+        target.loadChallenge(createRequest());
+        assertThat(target.size()).isZero();
+    }
+
+    @Test
+    public void oldest_challenges_are_evicted_beyond_maximumChallenges_test() {
+        target.setMaximumChallenges(10);
+        MockHttpServletRequest oldestRequest = createRequest();
+        target.saveChallenge(target.generateChallenge(), oldestRequest);
+        for (int i = 0; i < 99; i++) {
+            target.saveChallenge(target.generateChallenge(), createRequest());
+        }
+        MockHttpServletRequest latestRequest = createRequest();
+        Challenge latest = target.generateChallenge();
+        target.saveChallenge(latest, latestRequest);
+
+        assertThat(target.size()).isEqualTo(10);
+        assertThat(target.loadChallenge(createRequest(getCookie(oldestRequest)))).isNull();
+        assertThat(target.loadChallenge(createRequest(getCookie(latestRequest)))).isEqualTo(latest);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMaximumChallenges_with_zero_test() {
+        target.setMaximumChallenges(0);
+    }
+
+    @Test
+    public void saveChallenge_with_null_test() {
+        MockHttpServletRequest request = createRequest();
+        target.saveChallenge(target.generateChallenge(), request);
+        target.saveChallenge(null, request);
+
+        assertThat(target.loadChallenge(request)).isNull();
+        assertThat(target.size()).isZero();
+    }
+
+    @Test
+    public void saveChallenge_removes_replaced_challenge_test() {
+        MockHttpServletRequest request = createRequest();
+        target.saveChallenge(target.generateChallenge(), request);
+        Cookie cookie = getCookie(request);
+
+        MockHttpServletRequest nextRequest = createRequest(cookie);
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, nextRequest);
+
+        assertThat(target.size()).isEqualTo(1);
+        assertThat(target.loadChallenge(createRequest(cookie))).isNull();
+        assertThat(target.loadChallenge(createRequest(getCookie(nextRequest)))).isEqualTo(challenge);
+    }
+
+    private MockHttpServletRequest createRequest(Cookie... cookies) {
+        MockHttpServletRequest mockHttpServletRequest = new MockHttpServletRequest();
+        mockHttpServletRequest.setAttribute(ChallengeRepositoryResponseFilter.RESPONSE_ATTR_NAME, new MockHttpServletResponse());
+        if (cookies.length > 0) {
+            mockHttpServletRequest.setCookies(cookies);
+        }
+        return mockHttpServletRequest;
+    }
+
+    private MockHttpServletResponse getResponse(MockHttpServletRequest request) {
+        return (MockHttpServletResponse) request.getAttribute(ChallengeRepositoryResponseFilter.RESPONSE_ATTR_NAME);
+    }
+
+    private Cookie getCookie(MockHttpServletRequest request) {
+        Cookie[] cookies = getResponse(request).getCookies();
+        return cookies[cookies.length - 1];
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(long millis) {
+            instant = instant.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for InMemoryChallengeStore
+ */
+public class InMemoryChallengeStoreTest {
+
+    private MutableClock clock = new MutableClock(Instant.parse("2019-01-01T00:00:00Z"));
+    private InMemoryChallengeStore target = new InMemoryChallengeStore(clock);
+
+    @Test
+    public void put_get_take_test() {
+        target.put("key", new byte[]{0x01, 0x02}, 60000);
+
+        assertThat(target.get("key")).containsExactly(0x01, 0x02);
+        assertThat(target.take("key")).containsExactly(0x01, 0x02);
+        assertThat(target.take("key")).isNull();
+        assertThat(target.get("key")).isNull();
+    }
+
+    @Test
+    public void expiry_test() {
+        target.put("key", new byte[]{0x01}, 60000);
+
+        clock.advance(59999);
+        assertThat(target.get("key")).isNotNull();
+        clock.advance(1);
+        assertThat(target.get("key")).isNull();
+        assertThat(target.take("key")).isNull();
+    }
+
+    @Test
+    public void expired_entries_are_evicted_in_batch_test() {
+        for (int i = 0; i < 100; i++) {
+            target.put("key" + i, new byte[]{0x01}, 60000);
+        }
+        target.put("long-lived", new byte[]{0x01}, 600000);
+        assertThat(target.size()).isEqualTo(101);
+
+        clock.advance(62000);
+        target.get("other");
+        assertThat(target.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void replaced_entry_survives_expiry_of_former_entry_test() {
+        target.put("key", new byte[]{0x01}, 1000);
+        target.put("key", new byte[]{0x02}, 600000);
+
+        clock.advance(3000);
+        assertThat(target.get("key")).containsExactly(0x02);
+    }
+
+    @Test
+    public void remove_and_removeAll_test() {
+        target.put("key1", new byte[]{0x01}, 60000);
+        target.put("key2", new byte[]{0x01}, 60000);
+        target.put("key3", new byte[]{0x01}, 60000);
+
+        target.remove("key1");
+        target.removeAll(Arrays.asList("key2", "key3"));
+        assertThat(target.size()).isZero();
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(long millis) {
+            instant = instant.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.Cookie;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test for SealedChallengeRepository
+ */
+public class SealedChallengeRepositoryTest {
+
+    private ChallengeSealingKey key1 = new ChallengeSealingKey("key1", new byte[16]);
+    private ChallengeSealingKey key2 = new ChallengeSealingKey("key2", new byte[32]);
+    private MutableClock clock = new MutableClock(Instant.parse("2019-01-01T00:00:00Z"));
+    private SealedChallengeRepository target = new SealedChallengeRepository(Arrays.asList(key1, key2), clock);
+
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Before
+    public void setup() {
+        request = new MockHttpServletRequest();
+        response = new MockHttpServletResponse();
+        request.setAttribute(ChallengeRepositoryResponseFilter.RESPONSE_ATTR_NAME, response);
+    }
+
+    @Test
+    public void generateChallenge_test() {
+        Challenge challenge = target.generateChallenge();
+        assertThat(challenge.getValue()).hasSize(16);
+    }
+
+    @Test
+    public void save_and_load_with_cookie_test() {
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+
+        Cookie cookie = response.getCookie("WEBAUTHN-CHALLENGE");
+        assertThat(cookie).isNotNull();
+        assertThat(cookie.isHttpOnly()).isTrue();
+        assertThat(cookie.getPath()).isEqualTo("/");
+
+        MockHttpServletRequest nextRequest = new MockHttpServletRequest();
+        nextRequest.setCookies(cookie);
+        assertThat(target.loadChallenge(nextRequest)).isEqualTo(challenge);
+        assertThat(nextRequest.getSession(false)).isNull();
+    }
+
+    @Test
+    public void save_and_load_with_header_test() {
+        target.setTokenTransport(ChallengeTokenTransport.HEADER);
+        target.setHeaderName("X-Challenge");
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+
+        MockHttpServletRequest nextRequest = new MockHttpServletRequest();
+        nextRequest.addHeader("X-Challenge", response.getHeader("X-Challenge"));
+        assertThat(target.loadChallenge(nextRequest)).isEqualTo(challenge);
+    }
+
+    @Test
+    public void loadChallenge_returns_saved_challenge_in_same_request_test() {
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+
+        target.saveChallenge(null, request);
+        assertThat(target.loadChallenge(request)).isNull();
+        assertThat(response.getCookies()[1].getMaxAge()).isEqualTo(0);
+    }
+
+    @Test
+    public void consumeChallenge_expires_cookie_test() {
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+
+        MockHttpServletRequest nextRequest = new MockHttpServletRequest();
+        MockHttpServletResponse nextResponse = new MockHttpServletResponse();
+        nextRequest.setAttribute(ChallengeRepositoryResponseFilter.RESPONSE_ATTR_NAME, nextResponse);
+        nextRequest.setCookies(response.getCookie("WEBAUTHN-CHALLENGE"));
+
+        assertThat(target.consumeChallenge(nextRequest)).isEqualTo(challenge);
+        assertThat(nextResponse.getCookie("WEBAUTHN-CHALLENGE").getMaxAge()).isEqualTo(0);
+        assertThat(target.loadChallenge(nextRequest)).isNull();
+    }
+
+    @Test
+    public void consumeChallenge_without_token_test() {
+        assertThat(target.consumeChallenge(request)).isNull();
+        assertThat(response.getCookies()).isEmpty();
+    }
+
+    @Test
+    public void loadChallenge_without_token_test() {
+        assertThat(target.loadChallenge(new MockHttpServletRequest())).isNull();
+    }
+
+    @Test
+    public void unseal_with_rotated_key_test() {
+        Challenge challenge = target.generateChallenge();
+        String token = new SealedChallengeRepository(Collections.singletonList(key2), clock).seal(challenge, "localhost");
+
+        assertThat(target.unseal(token, "localhost")).isEqualTo(challenge);
+        assertThat(new SealedChallengeRepository(Collections.singletonList(key1), clock).unseal(token, "localhost")).isNull();
+    }
+
+    @Test
+    public void unseal_expired_token_test() {
+        Challenge challenge = target.generateChallenge();
+        String token = target.seal(challenge, "localhost");
+
+        clock.advance(300000);
+        assertThat(target.unseal(token, "localhost")).isEqualTo(challenge);
+        clock.advance(1);
+        assertThat(target.unseal(token, "localhost")).isNull();
+    }
+
+    @Test
+    public void unseal_with_other_rpId_test() {
+        String token = target.seal(target.generateChallenge(), "example.com");
+        assertThat(target.unseal(token, "example.net")).isNull();
+    }
+
+    @Test
+    public void unseal_tampered_token_test() {
+        String token = target.seal(target.generateChallenge(), "localhost");
+        char last = token.charAt(token.length() - 1);
+        String tampered = token.substring(0, token.length() - 1) + (last == 'A' ? 'B' : 'A');
+        assertThat(target.unseal(tampered, "localhost")).isNull();
+        assertThat(target.unseal("invalid", "localhost")).isNull();
+    }
+
+    @Test
+    public void saveChallenge_without_response_test() {
+        assertThatThrownBy(() -> target.saveChallenge(target.generateChallenge(), new MockHttpServletRequest()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void filter_exposes_response_test() throws Exception {
+        MockHttpServletRequest filteredRequest = new MockHttpServletRequest();
+        MockHttpServletResponse filteredResponse = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain() {
+            @Override
+            public void doFilter(javax.servlet.ServletRequest request, javax.servlet.ServletResponse response) {
+                target.saveChallenge(target.generateChallenge(), (MockHttpServletRequest) request);
+            }
+        };
+        new ChallengeRepositoryResponseFilter().doFilter(filteredRequest, filteredResponse, filterChain);
+
+        assertThat(filteredResponse.getCookie("WEBAUTHN-CHALLENGE")).isNotNull();
+        assertThat(filteredRequest.getAttribute(ChallengeRepositoryResponseFilter.RESPONSE_ATTR_NAME)).isNull();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_with_duplicated_keyId_test() {
+        new SealedChallengeRepository(key1, new ChallengeSealingKey("key1", new byte[16]));
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(long millis) {
+            instant = instant.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.Cookie;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test for StoredChallengeRepository
+ */
+public class StoredChallengeRepositoryTest {
+
+    private InMemoryChallengeStore challengeStore = spy(new InMemoryChallengeStore());
+    private StoredChallengeRepository target = new StoredChallengeRepository(challengeStore);
+
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Before
+    public void setup() {
+        request = createRequest();
+        response = (MockHttpServletResponse) request.getAttribute(ChallengeRepositoryResponseFilter.RESPONSE_ATTR_NAME);
+    }
+
+    @Test
+    public void save_and_consume_with_cookie_test() {
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+
+        Cookie cookie = response.getCookie("WEBAUTHN-CHALLENGE-HANDLE");
+        assertThat(cookie).isNotNull();
+        assertThat(cookie.isHttpOnly()).isTrue();
+        assertThat(challengeStore.get("webauthn:challenge:" + cookie.getValue())).isEqualTo(challenge.getValue());
+
+        MockHttpServletRequest verificationRequest = createRequest();
+        verificationRequest.setCookies(cookie);
+        assertThat(target.consumeChallenge(verificationRequest)).isEqualTo(challenge);
+        assertThat(verificationRequest.getSession(false)).isNull();
+
+        MockHttpServletRequest replayRequest = createRequest();
+        replayRequest.setCookies(cookie);
+        assertThat(target.consumeChallenge(replayRequest)).isNull();
+    }
+
+    @Test
+    public void save_and_load_with_header_test() {
+        target.setTokenTransport(ChallengeTokenTransport.HEADER);
+        target.setKeyPrefix("prefix:");
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+        String handle = response.getHeader("X-WEBAUTHN-CHALLENGE-HANDLE");
+
+        MockHttpServletRequest nextRequest = createRequest();
+        nextRequest.addHeader("X-WEBAUTHN-CHALLENGE-HANDLE", handle);
+        assertThat(target.loadChallenge(nextRequest)).isEqualTo(challenge);
+        assertThat(challengeStore.get("prefix:" + handle)).isNotNull();
+    }
+
+    @Test
+    public void loadChallenge_is_cached_within_request_test() {
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+        Cookie cookie = response.getCookie("WEBAUTHN-CHALLENGE-HANDLE");
+
+        MockHttpServletRequest nextRequest = createRequest();
+        nextRequest.setCookies(cookie);
+        target.loadChallenge(nextRequest);
+        target.loadChallenge(nextRequest);
+        verify(challengeStore, times(1)).get(anyString());
+    }
+
+    @Test
+    public void consumeChallenge_without_handle_test() {
+        assertThat(target.consumeChallenge(createRequest())).isNull();
+        assertThat(challengeStore.size()).isZero();
+    }
+
+    @Test
+    public void saveChallenge_with_null_test() {
+        target.saveChallenge(target.generateChallenge(), request);
+        Cookie cookie = response.getCookie("WEBAUTHN-CHALLENGE-HANDLE");
+
+        MockHttpServletRequest nextRequest = createRequest();
+        nextRequest.setCookies(cookie);
+        target.saveChallenge(null, nextRequest);
+
+        assertThat(target.loadChallenge(nextRequest)).isNull();
+        assertThat(challengeStore.size()).isZero();
+    }
+
+    @Test
+    public void saveChallenge_removes_replaced_challenge_test() {
+        target.saveChallenge(target.generateChallenge(), request);
+        Cookie cookie = response.getCookie("WEBAUTHN-CHALLENGE-HANDLE");
+
+        MockHttpServletRequest nextRequest = createRequest();
+        nextRequest.setCookies(cookie);
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, nextRequest);
+        target.saveChallenge(challenge, nextRequest);
+
+        assertThat(challengeStore.size()).isEqualTo(1);
+        assertThat(challengeStore.get("webauthn:challenge:" + cookie.getValue())).isNull();
+        verify(challengeStore, times(2)).removeAll(anyCollection());
+    }
+
+    private MockHttpServletRequest createRequest() {
+        MockHttpServletRequest mockHttpServletRequest = new MockHttpServletRequest();
+        mockHttpServletRequest.setAttribute(ChallengeRepositoryResponseFilter.RESPONSE_ATTR_NAME, new MockHttpServletResponse());
+        return mockHttpServletRequest;
+    }
+}
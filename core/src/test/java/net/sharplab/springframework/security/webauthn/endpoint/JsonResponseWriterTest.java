@@ -0,0 +1,99 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.endpoint;
+
+import com.webauthn4j.converter.util.JsonConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.PublicKeyCredentialParameters;
+import com.webauthn4j.data.PublicKeyCredentialRpEntity;
+import com.webauthn4j.data.PublicKeyCredentialType;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.data.extension.client.AuthenticationExtensionsClientInputs;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for JsonResponseWriter
+ */
+public class JsonResponseWriterTest {
+
+    private JsonConverter jsonConverter = new ObjectConverter().getJsonConverter();
+    private JsonResponseWriter target = new JsonResponseWriter(jsonConverter);
+
+    @Test
+    public void write_OptionsResponse_test() throws Exception {
+        OptionsResponse optionsResponse = new OptionsResponse(
+                new PublicKeyCredentialRpEntity("example.com", "example", null),
+                new WebAuthnPublicKeyCredentialUserEntity("aGFuZGxl", "john\"doe"),
+                new DefaultChallenge(new byte[]{0x01, 0x02, 0x03}),
+                Collections.singletonList(new PublicKeyCredentialParameters(PublicKeyCredentialType.PUBLIC_KEY, COSEAlgorithmIdentifier.ES256)),
+                60000L,
+                30000L,
+                Arrays.asList(new WebAuthnPublicKeyCredentialDescriptor("AQID"), new WebAuthnPublicKeyCredentialDescriptor("BAUG")),
+                new AuthenticationExtensionsClientInputs<>(),
+                new AuthenticationExtensionsClientInputs<>(),
+                new Parameters("username", "password", "credentialId", "clientDataJSON", "authenticatorData", "signature", "clientExtensionsJSON"));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        target.write(response, optionsResponse);
+        // second write uses cached fragments
+        MockHttpServletResponse secondResponse = new MockHttpServletResponse();
+        target.write(secondResponse, optionsResponse);
+
+        String expected = jsonConverter.writeValueAsString(optionsResponse);
+        assertThat(response.getContentType()).isEqualTo("application/json");
+        assertThat(response.getContentAsString()).isEqualTo(expected);
+        assertThat(secondResponse.getContentAsString()).isEqualTo(expected);
+    }
+
+    @Test
+    public void write_OptionsResponse_with_null_fields_test() throws Exception {
+        OptionsResponse optionsResponse = new OptionsResponse(null, null, null, null, null, null, null, null, null, null);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        target.write(response, optionsResponse);
+
+        assertThat(response.getContentAsString()).isEqualTo(jsonConverter.writeValueAsString(optionsResponse));
+    }
+
+    @Test
+    public void write_pre_serialized_response_test() throws Exception {
+        byte[] errorResponse = target.preSerialize(new ErrorResponse("error"));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        target.write(response, errorResponse);
+
+        assertThat(new String(response.getContentAsByteArray(), StandardCharsets.UTF_8)).isEqualTo("{\"errorMessage\":\"error\"}");
+        assertThat(response.getContentLength()).isEqualTo(errorResponse.length);
+    }
+
+    @Test
+    public void write_object_test() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        target.write(response, (Object) new ErrorResponse("error"));
+
+        assertThat(response.getContentAsString()).isEqualTo("{\"errorMessage\":\"error\"}");
+    }
+}
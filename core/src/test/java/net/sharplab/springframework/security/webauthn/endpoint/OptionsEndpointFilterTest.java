@@ -17,8 +17,10 @@
 package net.sharplab.springframework.security.webauthn.endpoint;
 
 import com.webauthn4j.converter.util.ObjectConverter;
+import net.sharplab.springframework.security.webauthn.metrics.ServerTimingRecorder;
 import net.sharplab.springframework.security.webauthn.options.AssertionOptions;
 import net.sharplab.springframework.security.webauthn.options.AttestationOptions;
+import net.sharplab.springframework.security.webauthn.options.CombinedOptions;
 import net.sharplab.springframework.security.webauthn.options.OptionsProvider;
 import org.junit.Test;
 import org.springframework.http.HttpStatus;
@@ -62,9 +64,8 @@ public class OptionsEndpointFilterTest {
     public void doFilter_test() throws IOException, ServletException {
         OptionsProvider optionsProvider = mock(OptionsProvider.class);
         AttestationOptions attestationOptions = new AttestationOptions(null, null, null, null, null, Collections.emptyList(), null);
-        when(optionsProvider.getAttestationOptions(any(), any(), any())).thenReturn(attestationOptions);
         AssertionOptions assertionOptions = new AssertionOptions(null, null, null, null, null, null);
-        when(optionsProvider.getAssertionOptions(any(), any(), any())).thenReturn(assertionOptions);
+        when(optionsProvider.getCombinedOptions(any(), any(), any())).thenReturn(new CombinedOptions(attestationOptions, assertionOptions));
         OptionsEndpointFilter optionsEndpointFilter = new OptionsEndpointFilter(optionsProvider, objectConverter);
         MFATokenEvaluator mfaTokenEvaluator = new MFATokenEvaluatorImpl();
         AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
@@ -80,10 +81,45 @@ public class OptionsEndpointFilterTest {
         assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
     }
 
+    @Test
+    public void doFilter_with_serverTiming_test() throws IOException, ServletException {
+        OptionsProvider optionsProvider = mock(OptionsProvider.class);
+        AttestationOptions attestationOptions = new AttestationOptions(null, null, null, null, null, Collections.emptyList(), null);
+        AssertionOptions assertionOptions = new AssertionOptions(null, null, null, null, null, null);
+        when(optionsProvider.getCombinedOptions(any(), any(), any())).thenReturn(new CombinedOptions(attestationOptions, assertionOptions));
+        OptionsEndpointFilter optionsEndpointFilter = new OptionsEndpointFilter(optionsProvider, objectConverter);
+        optionsEndpointFilter.setServerTimingSamplingRate(1.0);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRequestURI(FILTER_URL);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+
+        optionsEndpointFilter.doFilter(request, response, filterChain);
+        assertThat(response.getHeader(ServerTimingRecorder.SERVER_TIMING_HEADER)).startsWith("endpoint;dur=");
+    }
+
+    @Test
+    public void doFilter_without_serverTiming_test() throws IOException, ServletException {
+        OptionsProvider optionsProvider = mock(OptionsProvider.class);
+        AttestationOptions attestationOptions = new AttestationOptions(null, null, null, null, null, Collections.emptyList(), null);
+        AssertionOptions assertionOptions = new AssertionOptions(null, null, null, null, null, null);
+        when(optionsProvider.getCombinedOptions(any(), any(), any())).thenReturn(new CombinedOptions(attestationOptions, assertionOptions));
+        OptionsEndpointFilter optionsEndpointFilter = new OptionsEndpointFilter(optionsProvider, objectConverter);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRequestURI(FILTER_URL);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+
+        optionsEndpointFilter.doFilter(request, response, filterChain);
+        assertThat(response.getHeader(ServerTimingRecorder.SERVER_TIMING_HEADER)).isNull();
+    }
+
     @Test
     public void doFilter_with_error_test() throws IOException, ServletException {
         OptionsProvider optionsProvider = mock(OptionsProvider.class);
-        doThrow(new RuntimeException()).when(optionsProvider).getAttestationOptions(any(), any(), any());
+        doThrow(new RuntimeException()).when(optionsProvider).getCombinedOptions(any(), any(), any());
         OptionsEndpointFilter optionsEndpointFilter = new OptionsEndpointFilter(optionsProvider, objectConverter);
         MFATokenEvaluator mfaTokenEvaluator = new MFATokenEvaluatorImpl();
         AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
@@ -99,6 +135,23 @@ public class OptionsEndpointFilterTest {
         assertThat(response.getStatus()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR.value());
     }
 
+    @Test
+    public void doFilter_with_serverTiming_and_error_test() throws IOException, ServletException {
+        OptionsProvider optionsProvider = mock(OptionsProvider.class);
+        doThrow(new RuntimeException()).when(optionsProvider).getCombinedOptions(any(), any(), any());
+        OptionsEndpointFilter optionsEndpointFilter = new OptionsEndpointFilter(optionsProvider, objectConverter);
+        optionsEndpointFilter.setServerTimingSamplingRate(1.0);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRequestURI(FILTER_URL);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+
+        optionsEndpointFilter.doFilter(request, response, filterChain);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR.value());
+        assertThat(response.getHeader(ServerTimingRecorder.SERVER_TIMING_HEADER)).isNull();
+    }
+
     @Test
     public void writeErrorResponse_with_RuntimeException_test() throws IOException {
         OptionsProvider optionsProvider = mock(OptionsProvider.class);
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sharplab.springframework.security.webauthn.config.configurers.WebAuthnConfigurerUtil;
+import net.sharplab.springframework.security.webauthn.util.EntropyPool;
+import org.junit.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MicrometerWebAuthnMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MicrometerWebAuthnMetrics target = new MicrometerWebAuthnMetrics(meterRegistry);
+
+    @Test
+    public void time_test() {
+        String result = target.time(WebAuthnMetrics.ENDPOINT_TIMER, () -> "result", WebAuthnMetrics.ENDPOINT_TAG, "/webauthn/options");
+
+        assertThat(result).isEqualTo("result");
+        assertThat(meterRegistry.get(WebAuthnMetrics.ENDPOINT_TIMER)
+                .tag(WebAuthnMetrics.ENDPOINT_TAG, "/webauthn/options")
+                .tag(WebAuthnMetrics.OUTCOME_TAG, WebAuthnMetrics.OUTCOME_SUCCESS)
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void time_with_exception_test() {
+        assertThatThrownBy(() -> target.time(WebAuthnMetrics.ENDPOINT_TIMER, () -> {
+            throw new BadCredentialsException("dummy");
+        }, WebAuthnMetrics.ENDPOINT_TAG, "/webauthn/options")).isInstanceOf(BadCredentialsException.class);
+
+        assertThat(meterRegistry.get(WebAuthnMetrics.ENDPOINT_TIMER)
+                .tag(WebAuthnMetrics.OUTCOME_TAG, "BadCredentialsException")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void countException_test() {
+        target.countException(new BadCredentialsException("dummy"));
+        target.countException(new BadCredentialsException("dummy"));
+
+        assertThat(meterRegistry.get(WebAuthnMetrics.EXCEPTION_COUNTER)
+                .tag(WebAuthnMetrics.EXCEPTION_TAG, "BadCredentialsException")
+                .counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void recordTime_caches_meters_per_name_outcome_and_tags_test() {
+        target.recordTime(WebAuthnMetrics.AUTHENTICATION_TIMER, 10, WebAuthnMetrics.OUTCOME_SUCCESS, WebAuthnMetrics.STAGE_TAG, "user-load");
+        target.recordTime(WebAuthnMetrics.AUTHENTICATION_TIMER, 20, WebAuthnMetrics.OUTCOME_SUCCESS, WebAuthnMetrics.STAGE_TAG, "user-load");
+        target.recordTime(WebAuthnMetrics.AUTHENTICATION_TIMER, 30, "BadCredentialsException", WebAuthnMetrics.STAGE_TAG, "user-load");
+        target.recordTime(WebAuthnMetrics.AUTHENTICATION_TIMER, 40, WebAuthnMetrics.OUTCOME_SUCCESS, WebAuthnMetrics.STAGE_TAG, "authenticator-match");
+
+        assertThat(meterRegistry.get(WebAuthnMetrics.AUTHENTICATION_TIMER).timers()).hasSize(3);
+        assertThat(meterRegistry.get(WebAuthnMetrics.AUTHENTICATION_TIMER)
+                .tag(WebAuthnMetrics.STAGE_TAG, "user-load")
+                .tag(WebAuthnMetrics.OUTCOME_TAG, WebAuthnMetrics.OUTCOME_SUCCESS)
+                .timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get(WebAuthnMetrics.AUTHENTICATION_TIMER)
+                .tag(WebAuthnMetrics.STAGE_TAG, "authenticator-match")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void registerGauge_test() {
+        AtomicInteger size = new AtomicInteger(3);
+        target.registerGauge(WebAuthnMetrics.CHALLENGE_STORE_SIZE_GAUGE, size, AtomicInteger::get, WebAuthnMetrics.REPOSITORY_TAG, "dummy");
+        size.set(5);
+
+        assertThat(meterRegistry.get(WebAuthnMetrics.CHALLENGE_STORE_SIZE_GAUGE)
+                .tag(WebAuthnMetrics.REPOSITORY_TAG, "dummy")
+                .gauge().value()).isEqualTo(5);
+    }
+
+    @Test
+    public void registerFunctionCounter_test() {
+        AtomicLong count = new AtomicLong(3);
+        target.registerFunctionCounter(WebAuthnMetrics.ENTROPY_POOL_REFILLS_COUNTER, count, AtomicLong::get);
+        count.set(5);
+
+        assertThat(meterRegistry.get(WebAuthnMetrics.ENTROPY_POOL_REFILLS_COUNTER).functionCounter().count()).isEqualTo(5);
+    }
+
+    @Test
+    public void registerEntropyPoolMeters_test() {
+        EntropyPool entropyPool = new EntropyPool(16, 4);
+        try {
+            WebAuthnConfigurerUtil.registerEntropyPoolMeters(target, entropyPool);
+            for (int i = 0; i < 10; i++) {
+                entropyPool.nextBytes();
+            }
+
+            double pool = meterRegistry.get(WebAuthnMetrics.ENTROPY_POOL_BLOCKS_COUNTER)
+                    .tag(WebAuthnMetrics.SOURCE_TAG, "pool").functionCounter().count();
+            double direct = meterRegistry.get(WebAuthnMetrics.ENTROPY_POOL_BLOCKS_COUNTER)
+                    .tag(WebAuthnMetrics.SOURCE_TAG, "direct").functionCounter().count();
+            assertThat(pool + direct).isEqualTo(10);
+            assertThat(meterRegistry.get(WebAuthnMetrics.ENTROPY_POOL_AVAILABLE_GAUGE).gauge().value()).isBetween(0.0, 4.0);
+            assertThat(meterRegistry.get(WebAuthnMetrics.ENTROPY_POOL_REFILLS_COUNTER).functionCounter()).isNotNull();
+        } finally {
+            entropyPool.destroy();
+        }
+    }
+}
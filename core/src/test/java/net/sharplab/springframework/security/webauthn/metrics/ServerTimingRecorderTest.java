@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metrics;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServerTimingRecorderTest {
+
+    @Test
+    public void sample_test() {
+        assertThat(ServerTimingRecorder.sample(0).isEnabled()).isFalse();
+        assertThat(ServerTimingRecorder.sample(1).isEnabled()).isTrue();
+    }
+
+    @Test
+    public void record_test() {
+        ServerTimingRecorder target = new ServerTimingRecorder();
+
+        assertThat(ServerTimingRecorder.isRecording()).isFalse();
+        target.record(() -> {
+            assertThat(ServerTimingRecorder.isRecording()).isTrue();
+            ServerTimingRecorder.recordTime(WebAuthnMetrics.AUTHENTICATION_TIMER, TimeUnit.MICROSECONDS.toNanos(1500), WebAuthnMetrics.STAGE_TAG, "validate");
+            ServerTimingRecorder.recordTime(WebAuthnMetrics.AUTHENTICATION_TIMER, TimeUnit.MICROSECONDS.toNanos(500), WebAuthnMetrics.STAGE_TAG, "validate");
+            ServerTimingRecorder.recordTime(WebAuthnMetrics.ENDPOINT_TIMER, TimeUnit.MILLISECONDS.toNanos(3), WebAuthnMetrics.ENDPOINT_TAG, "/webauthn/options");
+            return null;
+        });
+        assertThat(ServerTimingRecorder.isRecording()).isFalse();
+
+        assertThat(target.getHeaderValue()).isEqualTo("validate;dur=2.0, endpoint;dur=3.0");
+    }
+
+    @Test
+    public void record_with_disabled_recorder_test() {
+        ServerTimingRecorder target = ServerTimingRecorder.sample(0);
+        target.record(() -> {
+            assertThat(ServerTimingRecorder.isRecording()).isFalse();
+            return null;
+        });
+    }
+
+    @Test
+    public void recordTime_without_bound_recorder_test() {
+        ServerTimingRecorder target = new ServerTimingRecorder();
+        ServerTimingRecorder.recordTime(WebAuthnMetrics.AUTHENTICATION_TIMER, 1000, WebAuthnMetrics.STAGE_TAG, "validate");
+        assertThat(target.getHeaderValue()).isEmpty();
+    }
+
+    @Test
+    public void add_beyond_capacity_test() {
+        ServerTimingRecorder target = new ServerTimingRecorder();
+        for (int i = 0; i < 10; i++) {
+            target.add("stage" + i, 1_000_000);
+        }
+        assertThat(target.getHeaderValue().split(", ")).hasSize(8);
+    }
+
+    @Test
+    public void NoOpWebAuthnMetrics_time_test() {
+        ServerTimingRecorder target = new ServerTimingRecorder();
+        target.record(() -> NoOpWebAuthnMetrics.INSTANCE.time(WebAuthnMetrics.AUTHENTICATION_TIMER, () -> null, WebAuthnMetrics.STAGE_TAG, "user-lookup"));
+        assertThat(target.getHeaderValue()).startsWith("user-lookup;dur=");
+    }
+
+    @Test
+    public void writeHeader_test() {
+        ServerTimingRecorder target = new ServerTimingRecorder();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        target.writeHeader(response);
+        assertThat(response.getHeader(ServerTimingRecorder.SERVER_TIMING_HEADER)).isNull();
+
+        target.add("validate", 1_000_000);
+        target.writeHeader(response);
+        assertThat(response.getHeader(ServerTimingRecorder.SERVER_TIMING_HEADER)).isEqualTo("validate;dur=1.0");
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WebAuthnMetricsUtilTest {
+
+    @Test
+    public void getWebAuthnMetrics_with_null_test() {
+        assertThat(WebAuthnMetricsUtil.getWebAuthnMetrics(null)).isSameAs(NoOpWebAuthnMetrics.INSTANCE);
+    }
+
+    @Test
+    public void getWebAuthnMetrics_without_beans_test() {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.refresh();
+
+        assertThat(WebAuthnMetricsUtil.getWebAuthnMetrics(applicationContext)).isSameAs(NoOpWebAuthnMetrics.INSTANCE);
+    }
+
+    @Test
+    public void getWebAuthnMetrics_with_MeterRegistry_test() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.registerBean(MeterRegistry.class, () -> meterRegistry);
+        applicationContext.refresh();
+
+        WebAuthnMetrics metrics = WebAuthnMetricsUtil.getWebAuthnMetrics(applicationContext);
+        assertThat(metrics).isInstanceOf(MicrometerWebAuthnMetrics.class);
+        assertThat(((MicrometerWebAuthnMetrics) metrics).getMeterRegistry()).isSameAs(meterRegistry);
+    }
+
+    @Test
+    public void getWebAuthnMetrics_with_WebAuthnMetrics_test() {
+        WebAuthnMetrics webAuthnMetrics = new MicrometerWebAuthnMetrics(new SimpleMeterRegistry());
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.registerBean(WebAuthnMetrics.class, () -> webAuthnMetrics);
+        applicationContext.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        applicationContext.refresh();
+
+        assertThat(WebAuthnMetricsUtil.getWebAuthnMetrics(applicationContext)).isSameAs(webAuthnMetrics);
+    }
+}
@@ -28,6 +28,7 @@ import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDe
 import org.assertj.core.util.Lists;
 import org.junit.Test;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
 import java.util.Collections;
 import java.util.List;
@@ -129,6 +130,63 @@ public class OptionsProviderImplTest {
 
     }
 
+    @Test
+    public void getCombinedOptions_test() {
+        Challenge challenge = new DefaultChallenge();
+        byte[] credentialId = new byte[]{0x01, 0x23, 0x45};
+        WebAuthnUserDetailsService userDetailsService = mock(WebAuthnUserDetailsService.class);
+        WebAuthnUserDetails userDetails = mock(WebAuthnUserDetails.class);
+        Authenticator authenticator = mock(Authenticator.class, RETURNS_DEEP_STUBS);
+        List<Authenticator> authenticators = Collections.singletonList(authenticator);
+        ChallengeRepository challengeRepository = mock(ChallengeRepository.class);
+
+        MockHttpServletRequest mockRequest = new MockHttpServletRequest();
+
+        when(userDetailsService.loadUserByUsername(any())).thenReturn(userDetails);
+        doReturn(new byte[0]).when(userDetails).getUserHandle();
+        doReturn(authenticators).when(userDetails).getAuthenticators();
+        when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(credentialId);
+        when(challengeRepository.loadOrGenerateChallenge(mockRequest)).thenReturn(challenge);
+
+        OptionsProvider optionsProvider = new OptionsProviderImpl(userDetailsService, challengeRepository);
+        optionsProvider.setRpId("example.com");
+        optionsProvider.setRpName("rpName");
+
+        CombinedOptions combinedOptions = optionsProvider.getCombinedOptions(mockRequest, "dummy", null);
+        AttestationOptions attestationOptions = combinedOptions.getAttestationOptions();
+        AssertionOptions assertionOptions = combinedOptions.getAssertionOptions();
+        assertThat(attestationOptions.getRelyingParty().getId()).isEqualTo("example.com");
+        assertThat(attestationOptions.getUser().getUsername()).isEqualTo("dummy");
+        assertThat(attestationOptions.getChallenge()).isEqualTo(challenge);
+        assertThat(attestationOptions.getCredentials()).containsExactly(Base64UrlUtil.encodeToString(credentialId));
+        assertThat(assertionOptions.getRpId()).isEqualTo("example.com");
+        assertThat(assertionOptions.getChallenge()).isEqualTo(challenge);
+        assertThat(assertionOptions.getCredentials()).containsExactly(Base64UrlUtil.encodeToString(credentialId));
+
+        verify(userDetailsService, times(1)).loadUserByUsername("dummy");
+        verify(challengeRepository, times(1)).loadOrGenerateChallenge(mockRequest);
+        verify(authenticator.getAttestedCredentialData(), times(1)).getCredentialId();
+    }
+
+    @Test
+    public void getCombinedOptions_with_unknown_user_test() {
+        WebAuthnUserDetailsService userDetailsService = mock(WebAuthnUserDetailsService.class);
+        ChallengeRepository challengeRepository = mock(ChallengeRepository.class);
+        Challenge challenge = new DefaultChallenge();
+        MockHttpServletRequest mockRequest = new MockHttpServletRequest();
+
+        when(userDetailsService.loadUserByUsername(any())).thenThrow(new UsernameNotFoundException("not found"));
+
+        OptionsProvider optionsProvider = new OptionsProviderImpl(userDetailsService, challengeRepository);
+        CombinedOptions combinedOptions = optionsProvider.getCombinedOptions(mockRequest, "unknown", challenge);
+
+        assertThat(combinedOptions.getAttestationOptions().getUser()).isNull();
+        assertThat(combinedOptions.getAttestationOptions().getCredentials()).isEmpty();
+        assertThat(combinedOptions.getAssertionOptions().getCredentials()).isEmpty();
+        assertThat(combinedOptions.getAssertionOptions().getChallenge()).isEqualTo(challenge);
+        verify(challengeRepository, times(1)).saveChallenge(challenge, mockRequest);
+    }
+
     @Test
     public void getEffectiveRpId() {
         WebAuthnUserDetailsService userDetailsService = mock(WebAuthnUserDetailsService.class);
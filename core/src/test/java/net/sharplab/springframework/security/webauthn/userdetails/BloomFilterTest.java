@@ -0,0 +1,69 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BloomFilterTest {
+
+    @Test
+    public void mightContain_has_no_false_negatives_test() {
+        BloomFilter target = new BloomFilter(1000, 0.01);
+        Random random = new Random(0);
+        byte[][] keys = new byte[1000][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new byte[16];
+            random.nextBytes(keys[i]);
+            target.put(keys[i]);
+        }
+
+        for (byte[] key : keys) {
+            assertThat(target.mightContain(key)).isTrue();
+        }
+    }
+
+    @Test
+    public void false_positive_rate_is_close_to_target_test() {
+        BloomFilter target = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            target.put(ByteBuffer.allocate(4).putInt(i).array());
+        }
+
+        int falsePositives = 0;
+        for (int i = 10000; i < 110000; i++) {
+            if (target.mightContain(ByteBuffer.allocate(4).putInt(i).array())) {
+                falsePositives++;
+            }
+        }
+
+        assertThat(falsePositives / 100000.0).isLessThan(0.02);
+        assertThat(target.getHashCount()).isEqualTo(7);
+    }
+
+    @Test
+    public void empty_filter_contains_nothing_test() {
+        BloomFilter target = new BloomFilter(1, 0.5);
+
+        assertThat(target.mightContain(new byte[0])).isFalse();
+        assertThat(target.getBitCount()).isEqualTo(Long.SIZE);
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.statement.NoneAttestationStatement;
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
+import org.junit.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+public class CachingWebAuthnUserDetailsServiceTest {
+
+    private WebAuthnUserDetailsService delegate = mock(WebAuthnUserDetailsService.class);
+    private MutableClock clock = new MutableClock();
+    private CachingWebAuthnUserDetailsService target = new CachingWebAuthnUserDetailsService(delegate, 2, 1000, clock);
+
+    @Test
+    public void loadUserByUsername_test() {
+        WebAuthnUserDetails user = mockUser("john");
+        when(delegate.loadUserByUsername("john")).thenReturn(user);
+
+        assertThat(target.loadUserByUsername("john")).isEqualTo(user);
+        assertThat(target.loadUserByUsername("john")).isEqualTo(user);
+
+        verify(delegate, times(1)).loadUserByUsername("john");
+        assertThat(target.getUsernameCacheStatistics()).isEqualTo(new CacheStatistics(1, 1, 0, 1));
+    }
+
+    @Test
+    public void loadUserByUsername_test_with_UsernameNotFoundException() {
+        when(delegate.loadUserByUsername("john")).thenThrow(new UsernameNotFoundException("not found"));
+
+        assertThatThrownBy(() -> target.loadUserByUsername("john")).isInstanceOf(UsernameNotFoundException.class);
+        assertThatThrownBy(() -> target.loadUserByUsername("john")).isInstanceOf(UsernameNotFoundException.class);
+
+        verify(delegate, times(2)).loadUserByUsername("john");
+        assertThat(target.getUsernameCacheStatistics().getSize()).isZero();
+    }
+
+    @Test
+    public void loadUserByCredentialId_test() {
+        WebAuthnUserDetails user = mockUser("john");
+        when(delegate.loadUserByCredentialId(new byte[]{0x01})).thenReturn(user);
+
+        assertThat(target.loadUserByCredentialId(new byte[]{0x01})).isEqualTo(user);
+        assertThat(target.loadUserByCredentialId(new byte[]{0x01})).isEqualTo(user);
+
+        verify(delegate, times(1)).loadUserByCredentialId(new byte[]{0x01});
+        assertThat(target.getCredentialIdCacheStatistics()).isEqualTo(new CacheStatistics(1, 1, 0, 1));
+    }
+
+    @Test
+    public void entry_expires_after_timeToLive_test() {
+        WebAuthnUserDetails user = mockUser("john");
+        when(delegate.loadUserByUsername("john")).thenReturn(user);
+
+        target.loadUserByUsername("john");
+        clock.advance(1000);
+        target.loadUserByUsername("john");
+
+        verify(delegate, times(2)).loadUserByUsername("john");
+        assertThat(target.getUsernameCacheStatistics()).isEqualTo(new CacheStatistics(0, 2, 1, 1));
+    }
+
+    @Test
+    public void least_recently_used_entry_is_evicted_when_maximumSize_is_exceeded_test() {
+        when(delegate.loadUserByUsername(anyString())).thenAnswer(invocation -> mockUser(invocation.getArgument(0)));
+
+        target.loadUserByUsername("alice");
+        target.loadUserByUsername("bob");
+        target.loadUserByUsername("alice");
+        target.loadUserByUsername("carol");
+        target.loadUserByUsername("alice");
+        target.loadUserByUsername("bob");
+
+        verify(delegate, times(1)).loadUserByUsername("alice");
+        verify(delegate, times(2)).loadUserByUsername("bob");
+        assertThat(target.getUsernameCacheStatistics().getEvictionCount()).isEqualTo(2);
+        assertThat(target.getUsernameCacheStatistics().getSize()).isEqualTo(2);
+    }
+
+    @Test
+    public void addAuthenticator_invalidates_user_entries_test() {
+        WebAuthnUserDetails user = mockUser("john");
+        when(delegate.loadUserByUsername("john")).thenReturn(user);
+        when(delegate.loadUserByCredentialId(new byte[]{0x01})).thenReturn(user);
+        target.loadUserByUsername("john");
+        target.loadUserByCredentialId(new byte[]{0x01});
+
+        Authenticator authenticator = mock(Authenticator.class);
+        target.addAuthenticator("john", authenticator);
+        target.loadUserByUsername("john");
+        target.loadUserByCredentialId(new byte[]{0x01});
+
+        verify(delegate).addAuthenticator("john", authenticator);
+        verify(delegate, times(2)).loadUserByUsername("john");
+        verify(delegate, times(2)).loadUserByCredentialId(new byte[]{0x01});
+    }
+
+    @Test
+    public void removeAuthenticator_invalidates_user_entries_test() {
+        WebAuthnUserDetails john = mockUser("john");
+        WebAuthnUserDetails jane = mockUser("jane");
+        when(delegate.loadUserByCredentialId(new byte[]{0x01})).thenReturn(john);
+        when(delegate.loadUserByCredentialId(new byte[]{0x02})).thenReturn(jane);
+        target.loadUserByCredentialId(new byte[]{0x01});
+        target.loadUserByCredentialId(new byte[]{0x02});
+
+        target.removeAuthenticator("john", new byte[]{0x01});
+        target.loadUserByCredentialId(new byte[]{0x01});
+        target.loadUserByCredentialId(new byte[]{0x02});
+
+        verify(delegate).removeAuthenticator("john", new byte[]{0x01});
+        verify(delegate, times(2)).loadUserByCredentialId(new byte[]{0x01});
+        verify(delegate, times(1)).loadUserByCredentialId(new byte[]{0x02});
+    }
+
+    @Test
+    public void evictAll_test() {
+        WebAuthnUserDetails user = mockUser("john");
+        when(delegate.loadUserByUsername("john")).thenReturn(user);
+        target.loadUserByUsername("john");
+
+        target.evictAll();
+
+        assertThat(target.getUsernameCacheStatistics().getSize()).isZero();
+        assertThat(target.getDelegate()).isEqualTo(delegate);
+    }
+
+    @Test
+    public void load_completing_after_eviction_is_not_cached_test() {
+        WebAuthnUserDetails stale = mockUser("john");
+        when(delegate.loadUserByUsername("john")).thenAnswer(invocation -> {
+            // the user is modified and evicted while the stale record is being loaded
+            target.evictUser("john");
+            return stale;
+        }).thenReturn(mockUser("john"));
+
+        assertThat(target.loadUserByUsername("john")).isSameAs(stale);
+        target.loadUserByUsername("john");
+
+        verify(delegate, times(2)).loadUserByUsername("john");
+    }
+
+    @Test
+    public void load_by_credentialId_completing_after_eviction_is_not_cached_test() {
+        WebAuthnUserDetails stale = mockUser("john");
+        when(delegate.loadUserByCredentialId(new byte[]{0x01})).thenAnswer(invocation -> {
+            target.evictUser("john");
+            return stale;
+        }).thenReturn(mockUser("john"));
+
+        target.loadUserByCredentialId(new byte[]{0x01});
+        target.loadUserByCredentialId(new byte[]{0x01});
+
+        verify(delegate, times(2)).loadUserByCredentialId(new byte[]{0x01});
+    }
+
+    @Test
+    public void erasing_credentials_does_not_affect_cached_user_test() {
+        when(delegate.loadUserByUsername("john")).thenReturn(mockUser("john"));
+
+        WebAuthnUserDetailsImpl first = (WebAuthnUserDetailsImpl) target.loadUserByUsername("john");
+        first.eraseCredentials();
+        WebAuthnUserDetailsImpl second = (WebAuthnUserDetailsImpl) target.loadUserByUsername("john");
+        second.eraseCredentials();
+
+        assertThat(target.loadUserByUsername("john").getPassword()).isEqualTo("password");
+    }
+
+    @Test
+    public void counter_update_does_not_affect_other_callers_test() {
+        when(delegate.loadUserByCredentialId(new byte[]{0x01})).thenReturn(mockUser("john"));
+        target.loadUserByCredentialId(new byte[]{0x01});
+
+        Authenticator first = target.loadUserByCredentialId(new byte[]{0x01}).getAuthenticators().iterator().next();
+        Authenticator second = target.loadUserByCredentialId(new byte[]{0x01}).getAuthenticators().iterator().next();
+        first.setCounter(10);
+
+        assertThat(first).isNotSameAs(second);
+        assertThat(second.getCounter()).isEqualTo(1);
+        assertThat(second).isInstanceOf(WebAuthnAuthenticator.class);
+        assertThat(((WebAuthnAuthenticator) second).getName()).isEqualTo("authenticator");
+    }
+
+    @Test
+    public void onCounterUpdated_raises_counter_of_cached_users_test() {
+        AttestedCredentialData attestedCredentialData = mock(AttestedCredentialData.class);
+        when(attestedCredentialData.getCredentialId()).thenReturn(new byte[]{0x01});
+        Authenticator authenticator = new WebAuthnAuthenticator("authenticator", attestedCredentialData, new NoneAttestationStatement(), 1);
+        WebAuthnUserDetails user = new WebAuthnUserDetailsImpl(new byte[]{0x01}, "john", "password",
+                Collections.singletonList(authenticator), AuthorityUtils.NO_AUTHORITIES);
+        when(delegate.loadUserByCredentialId(new byte[]{0x01})).thenReturn(user);
+        when(delegate.loadUserByUsername("john")).thenReturn(user);
+        target.loadUserByCredentialId(new byte[]{0x01});
+        target.loadUserByUsername("john");
+
+        // the counter is persisted through the authenticator service, not through the cached delegate
+        target.onCounterUpdated("john", new byte[]{0x01}, 5);
+        target.onCounterUpdated("john", new byte[]{0x01}, 3);
+
+        assertThat(target.loadUserByCredentialId(new byte[]{0x01}).getAuthenticators().iterator().next().getCounter()).isEqualTo(5);
+        assertThat(target.loadUserByUsername("john").getAuthenticators().iterator().next().getCounter()).isEqualTo(5);
+        verify(delegate, times(1)).loadUserByCredentialId(new byte[]{0x01});
+        verify(delegate, times(1)).loadUserByUsername("john");
+        assertThat(target.getCredentialIdCacheStatistics().getSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void custom_userDetailsCopier_test() {
+        WebAuthnUserDetails user = mockUser("john");
+        when(delegate.loadUserByUsername("john")).thenReturn(user);
+        target.setUserDetailsCopier(original -> original);
+
+        target.loadUserByUsername("john");
+
+        assertThat(target.loadUserByUsername("john")).isSameAs(user);
+        assertThat(target.getUserDetailsCopier().apply(user)).isSameAs(user);
+    }
+
+    @Test
+    public void evictUser_evicts_every_credentialId_entry_of_the_user_test() {
+        when(delegate.loadUserByCredentialId(new byte[]{0x01})).thenReturn(mockUser("john"));
+        when(delegate.loadUserByCredentialId(new byte[]{0x02})).thenReturn(mockUser("john"));
+        target.loadUserByCredentialId(new byte[]{0x01});
+        target.loadUserByCredentialId(new byte[]{0x02});
+
+        target.evictUser("john");
+
+        assertThat(target.getCredentialIdCacheStatistics().getSize()).isZero();
+    }
+
+    @Test
+    public void cacheStatistics_hitRate_test() {
+        assertThat(new CacheStatistics(0, 0, 0, 0).getHitRate()).isEqualTo(1.0);
+        assertThat(new CacheStatistics(3, 1, 0, 0).getHitRate()).isEqualTo(0.75);
+    }
+
+    private WebAuthnUserDetails mockUser(String username) {
+        Authenticator authenticator = new WebAuthnAuthenticator("authenticator", mock(AttestedCredentialData.class), new NoneAttestationStatement(), 1);
+        return new WebAuthnUserDetailsImpl(new byte[]{0x01}, username, "password", Collections.singletonList(authenticator),
+                AuthorityUtils.NO_AUTHORITIES);
+    }
+
+    private static class MutableClock extends Clock {
+
+        private long millis = 0;
+
+        void advance(long millis) {
+            this.millis += millis;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
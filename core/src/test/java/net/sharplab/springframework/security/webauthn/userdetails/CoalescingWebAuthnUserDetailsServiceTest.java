@@ -0,0 +1,175 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+public class CoalescingWebAuthnUserDetailsServiceTest {
+
+    private WebAuthnUserDetailsService delegate = mock(WebAuthnUserDetailsService.class);
+    private CoalescingWebAuthnUserDetailsService target = new CoalescingWebAuthnUserDetailsService(delegate);
+    private ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrent_loadUserByUsername_share_one_load_test() throws Exception {
+        WebAuthnUserDetails user = createUser("john");
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.loadUserByUsername("john")).thenAnswer(invocation -> {
+            release.await();
+            return user;
+        });
+
+        Future<WebAuthnUserDetails> first = executor.submit(() -> target.loadUserByUsername("john"));
+        Future<WebAuthnUserDetails> second = executor.submit(() -> target.loadUserByUsername("john"));
+        awaitCoalescedCount(1);
+        release.countDown();
+
+        assertLoadedAndCopied(user, first.get(1, TimeUnit.SECONDS), second.get(1, TimeUnit.SECONDS));
+        verify(delegate, times(1)).loadUserByUsername("john");
+    }
+
+    @Test
+    public void concurrent_loadUserByCredentialId_share_one_load_test() throws Exception {
+        WebAuthnUserDetails user = createUser("john");
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.loadUserByCredentialId(new byte[]{0x01})).thenAnswer(invocation -> {
+            release.await();
+            return user;
+        });
+
+        Future<WebAuthnUserDetails> first = executor.submit(() -> target.loadUserByCredentialId(new byte[]{0x01}));
+        Future<WebAuthnUserDetails> second = executor.submit(() -> target.loadUserByCredentialId(new byte[]{0x01}));
+        awaitCoalescedCount(1);
+        release.countDown();
+
+        assertLoadedAndCopied(user, first.get(1, TimeUnit.SECONDS), second.get(1, TimeUnit.SECONDS));
+        verify(delegate, times(1)).loadUserByCredentialId(new byte[]{0x01});
+    }
+
+    @Test
+    public void failure_propagates_to_all_waiters_test() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.loadUserByUsername("john")).thenAnswer(invocation -> {
+            release.await();
+            throw new UsernameNotFoundException("not found");
+        });
+
+        Future<WebAuthnUserDetails> first = executor.submit(() -> target.loadUserByUsername("john"));
+        Future<WebAuthnUserDetails> second = executor.submit(() -> target.loadUserByUsername("john"));
+        awaitCoalescedCount(1);
+        release.countDown();
+
+        assertThatThrownBy(() -> first.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(UsernameNotFoundException.class);
+        assertThatThrownBy(() -> second.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(UsernameNotFoundException.class);
+    }
+
+    @Test
+    public void completed_load_is_not_cached_test() {
+        WebAuthnUserDetails user = mock(WebAuthnUserDetails.class);
+        when(delegate.loadUserByUsername("john")).thenReturn(user);
+
+        target.loadUserByUsername("john");
+        target.loadUserByUsername("john");
+
+        verify(delegate, times(2)).loadUserByUsername("john");
+        assertThat(target.getCoalescedCount()).isZero();
+    }
+
+    @Test
+    public void modification_invalidates_loads_in_flight_test() throws Exception {
+        WebAuthnUserDetails user = mock(WebAuthnUserDetails.class);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.loadUserByUsername("john")).thenAnswer(invocation -> {
+            release.await();
+            return user;
+        });
+
+        Future<WebAuthnUserDetails> first = executor.submit(() -> target.loadUserByUsername("john"));
+        verify(delegate, timeout(1000)).loadUserByUsername("john");
+        target.removeAuthenticator("john", new byte[]{0x01});
+        Future<WebAuthnUserDetails> second = executor.submit(() -> target.loadUserByUsername("john"));
+        verify(delegate, timeout(1000).times(2)).loadUserByUsername("john");
+        release.countDown();
+
+        assertThat(first.get(1, TimeUnit.SECONDS)).isSameAs(user);
+        assertThat(second.get(1, TimeUnit.SECONDS)).isSameAs(user);
+        assertThat(target.getCoalescedCount()).isZero();
+    }
+
+    @Test
+    public void waiter_loads_user_itself_after_wait_timeout_test() throws Exception {
+        target = new CoalescingWebAuthnUserDetailsService(delegate, 50);
+        WebAuthnUserDetails stuck = createUser("john");
+        WebAuthnUserDetails loaded = createUser("john");
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger invocations = new AtomicInteger();
+        when(delegate.loadUserByUsername("john")).thenAnswer(invocation -> {
+            if (invocations.getAndIncrement() == 0) {
+                release.await();
+                return stuck;
+            }
+            return loaded;
+        });
+
+        Future<WebAuthnUserDetails> first = executor.submit(() -> target.loadUserByUsername("john"));
+        verify(delegate, timeout(1000)).loadUserByUsername("john");
+
+        assertThat(target.loadUserByUsername("john")).isSameAs(loaded);
+        assertThat(target.getTimedOutCount()).isEqualTo(1);
+        release.countDown();
+        assertThat(first.get(1, TimeUnit.SECONDS)).isSameAs(stuck);
+    }
+
+    private void assertLoadedAndCopied(WebAuthnUserDetails user, WebAuthnUserDetails first, WebAuthnUserDetails second) {
+        // the request which loaded the user receives it, the one which waited a copy
+        assertThat(first == user ^ second == user).isTrue();
+        assertThat(first).isEqualTo(user);
+        assertThat(second).isEqualTo(user);
+    }
+
+    private WebAuthnUserDetails createUser(String username) {
+        return new WebAuthnUserDetailsImpl(new byte[]{0x01}, username, "password", Collections.emptyList(), AuthorityUtils.NO_AUTHORITIES);
+    }
+
+    private void awaitCoalescedCount(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (target.getCoalescedCount() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(target.getCoalescedCount()).isEqualTo(expected);
+    }
+}
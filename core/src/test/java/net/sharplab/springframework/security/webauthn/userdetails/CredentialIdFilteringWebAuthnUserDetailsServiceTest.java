@@ -0,0 +1,153 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.RSACOSEKey;
+import com.webauthn4j.data.attestation.statement.NoneAttestationStatement;
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class CredentialIdFilteringWebAuthnUserDetailsServiceTest {
+
+    private WebAuthnUserDetailsService delegate = mock(WebAuthnUserDetailsService.class);
+    private List<byte[]> credentialIds = new ArrayList<>(Arrays.asList(new byte[]{0x01}, new byte[]{0x02}));
+    private CredentialIdFilteringWebAuthnUserDetailsService target =
+            new CredentialIdFilteringWebAuthnUserDetailsService(delegate, action -> credentialIds.forEach(action), 100, 0.001, 0);
+
+    @After
+    public void tearDown() {
+        target.destroy();
+    }
+
+    @Test
+    public void lookups_are_passed_through_until_built_test() {
+        target.loadUserByCredentialId(new byte[]{0x09});
+
+        verify(delegate).loadUserByCredentialId(new byte[]{0x09});
+        assertThat(target.getRejectedCount()).isZero();
+    }
+
+    @Test
+    public void unknown_credentialId_is_rejected_without_querying_delegate_test() {
+        target.rebuild();
+
+        assertThatThrownBy(() -> target.loadUserByCredentialId(new byte[]{0x09}))
+                .isInstanceOf(CredentialIdNotFoundException.class)
+                .satisfies(e -> assertThat(e.getStackTrace()).isEmpty());
+
+        verify(delegate, never()).loadUserByCredentialId(any());
+        assertThat(target.getRejectedCount()).isEqualTo(1);
+        assertThat(target.getCredentialCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void known_credentialId_is_loaded_from_delegate_test() {
+        WebAuthnUserDetails user = mock(WebAuthnUserDetails.class);
+        when(delegate.loadUserByCredentialId(new byte[]{0x01})).thenReturn(user);
+        target.rebuild();
+
+        assertThat(target.loadUserByCredentialId(new byte[]{0x01})).isSameAs(user);
+    }
+
+    @Test
+    public void addAuthenticator_updates_filter_test() {
+        target.rebuild();
+        Authenticator authenticator = mock(Authenticator.class, RETURNS_DEEP_STUBS);
+        when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(new byte[]{0x03});
+
+        target.addAuthenticator("john", authenticator);
+        target.loadUserByCredentialId(new byte[]{0x03});
+
+        verify(delegate).addAuthenticator("john", authenticator);
+        verify(delegate).loadUserByCredentialId(new byte[]{0x03});
+    }
+
+    @Test
+    public void user_created_directly_on_source_is_not_rejected_test() throws Exception {
+        InMemoryWebAuthnUserDetailsService store = new InMemoryWebAuthnUserDetailsService(new ObjectConverter(), 100, 4096);
+        target = new CredentialIdFilteringWebAuthnUserDetailsService(store, store, 100, 0.001, 0);
+        target.rebuild();
+
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(1024);
+        RSAPublicKey publicKey = (RSAPublicKey) keyPairGenerator.generateKeyPair().getPublic();
+        AttestedCredentialData attestedCredentialData = new AttestedCredentialData(new AAGUID(UUID.randomUUID()), new byte[]{0x03}, RSACOSEKey.create(publicKey));
+        Authenticator authenticator = new WebAuthnAuthenticator("first", attestedCredentialData, new NoneAttestationStatement(), 0);
+        store.createUser(new WebAuthnUserDetailsImpl(new byte[]{0x0A}, "john", "password", Collections.singletonList(authenticator),
+                AuthorityUtils.NO_AUTHORITIES));
+
+        assertThat(target.loadUserByCredentialId(new byte[]{0x03}).getUsername()).isEqualTo("john");
+        assertThat(target.getRejectedCount()).isZero();
+    }
+
+    @Test
+    public void credentialId_put_during_rebuild_is_kept_test() {
+        target = new CredentialIdFilteringWebAuthnUserDetailsService(delegate, action -> {
+            credentialIds.forEach(action);
+            target.putCredentialId(new byte[]{0x03});
+        }, 100, 0.001, 0);
+
+        target.rebuild();
+        target.loadUserByCredentialId(new byte[]{0x03});
+
+        verify(delegate).loadUserByCredentialId(new byte[]{0x03});
+    }
+
+    @Test
+    public void rebuild_drops_removed_credentialIds_test() {
+        target.rebuild();
+
+        target.removeAuthenticator("john", new byte[]{0x02});
+        credentialIds.remove(1);
+        target.rebuild();
+
+        verify(delegate).removeAuthenticator("john", new byte[]{0x02});
+        assertThatThrownBy(() -> target.loadUserByCredentialId(new byte[]{0x02})).isInstanceOf(CredentialIdNotFoundException.class);
+        assertThat(target.getCredentialCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void failed_rebuild_keeps_current_filter_test() {
+        target.rebuild();
+        credentialIds = null;
+
+        assertThatThrownBy(() -> target.rebuild()).isInstanceOf(NullPointerException.class);
+
+        assertThatThrownBy(() -> target.loadUserByCredentialId(new byte[]{0x09})).isInstanceOf(CredentialIdNotFoundException.class);
+        assertThat(target.getCredentialCount()).isEqualTo(2);
+    }
+}
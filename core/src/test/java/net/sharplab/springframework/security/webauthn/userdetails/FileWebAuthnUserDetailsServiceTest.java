@@ -0,0 +1,245 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.RSACOSEKey;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.data.attestation.statement.NoneAttestationStatement;
+import com.webauthn4j.data.attestation.statement.PackedAttestationStatement;
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FileWebAuthnUserDetailsServiceTest {
+
+    private static RSAPublicKey publicKey;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+    private FileWebAuthnUserDetailsService target;
+
+    @BeforeClass
+    public static void setupClass() throws NoSuchAlgorithmException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        publicKey = (RSAPublicKey) keyPairGenerator.generateKeyPair().getPublic();
+    }
+
+    @Before
+    public void setup() throws IOException {
+        directory = temporaryFolder.newFolder("log").toPath();
+        target = open(directory);
+    }
+
+    @After
+    public void tearDown() {
+        target.destroy();
+    }
+
+    @Test
+    public void modifications_survive_reopen_test() {
+        target.createUser(createUser("john", createAuthenticator("first", new byte[]{0x01}, 3)));
+        target.createUser(createUser("paul", createAuthenticator("second", new byte[]{0x02}, 0)));
+        target.addAuthenticator("john", createAuthenticator("third", new byte[]{0x03}, 0));
+        target.removeAuthenticator("john", new byte[]{0x01});
+        target.deleteUser("paul");
+        target.updateCounter(new byte[]{0x03}, 7);
+
+        target = reopen();
+
+        WebAuthnUserDetails user = target.loadUserByCredentialId(new byte[]{0x03});
+        assertThat(user.getUsername()).isEqualTo("john");
+        assertThat(user.getPassword()).isEqualTo("password");
+        assertThat(AuthorityUtils.authorityListToSet(user.getAuthorities())).containsExactlyInAnyOrder("ROLE_USER", "ROLE_ADMIN");
+        assertThat(user.getAuthenticators()).hasSize(1);
+        Authenticator authenticator = user.getAuthenticators().iterator().next();
+        assertThat(((WebAuthnAuthenticator) authenticator).getName()).isEqualTo("third");
+        assertThat(authenticator.getCounter()).isEqualTo(7);
+        assertThat(target.userExists("paul")).isFalse();
+        assertThatThrownBy(() -> target.loadUserByCredentialId(new byte[]{0x01})).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
+    @Test
+    public void reloaded_authenticator_equals_registered_one_test() {
+        AttestedCredentialData attestedCredentialData = new AttestedCredentialData(new AAGUID(UUID.randomUUID()), new byte[]{0x01}, RSACOSEKey.create(publicKey));
+        WebAuthnAuthenticator registered = new WebAuthnAuthenticator("first", attestedCredentialData,
+                new PackedAttestationStatement(COSEAlgorithmIdentifier.RS256, new byte[]{0x01, 0x02, 0x03}, null, null), 3);
+        target.createUser(createUser("john"));
+        target.addAuthenticator("john", registered);
+
+        target = reopen();
+        assertReloaded(target.loadUserByUsername("john").getAuthenticators().iterator().next(), registered);
+
+        target.compact();
+        target = reopen();
+        assertReloaded(target.loadUserByCredentialId(new byte[]{0x01}).getAuthenticators().iterator().next(), registered);
+    }
+
+    @Test
+    public void modifications_are_validated_before_being_logged_test() {
+        target.createUser(createUser("john", createAuthenticator("first", new byte[]{0x01}, 0)));
+
+        assertThatThrownBy(() -> target.createUser(createUser("paul", createAuthenticator("second", new byte[]{0x01}, 0))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> target.addAuthenticator("paul", createAuthenticator("second", new byte[]{0x02}, 0)))
+                .isInstanceOf(UsernameNotFoundException.class);
+        assertThatThrownBy(() -> target.removeAuthenticator("john", new byte[]{0x02}))
+                .isInstanceOf(CredentialIdNotFoundException.class);
+        assertThatThrownBy(() -> target.updateCounter(new byte[]{0x02}, 1))
+                .isInstanceOf(CredentialIdNotFoundException.class);
+
+        target = reopen();
+
+        assertThat(target.getUserCount()).isEqualTo(1);
+        assertThat(target.getCredentialCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void torn_tail_is_truncated_on_open_test() throws IOException {
+        target.createUser(createUser("john", createAuthenticator("first", new byte[]{0x01}, 0)));
+        target.createUser(createUser("paul", createAuthenticator("second", new byte[]{0x02}, 0)));
+        target.destroy();
+        Path segment = files(SegmentedLog.SEGMENT_SUFFIX).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        target = open(directory);
+
+        assertThat(target.userExists("john")).isTrue();
+        assertThat(target.userExists("paul")).isFalse();
+        target.createUser(createUser("paul", createAuthenticator("second", new byte[]{0x02}, 0)));
+        target = reopen();
+        assertThat(target.userExists("paul")).isTrue();
+    }
+
+    @Test
+    public void compact_replaces_segments_with_snapshot_test() throws IOException {
+        target.createUser(createUser("john", createAuthenticator("first", new byte[]{0x01}, 0)));
+        target.createUser(createUser("paul", createAuthenticator("second", new byte[]{0x02}, 0)));
+        target.deleteUser("paul");
+        target.updateCounter(new byte[]{0x01}, 5);
+
+        target.compact();
+        target.updateCounter(new byte[]{0x01}, 6);
+
+        assertThat(files(SegmentedLog.SNAPSHOT_SUFFIX)).hasSize(1);
+        assertThat(files(SegmentedLog.SEGMENT_SUFFIX)).hasSize(1);
+        target = reopen();
+        assertThat(target.getUserCount()).isEqualTo(1);
+        assertThat(target.loadUserByUsername("john").getAuthenticators().iterator().next().getCounter()).isEqualTo(6);
+    }
+
+    @Test
+    public void snapshot_bootstraps_another_node_test() throws IOException {
+        target.createUser(createUser("john", createAuthenticator("first", new byte[]{0x01}, 4)));
+        target.compact();
+        Path snapshot = files(SegmentedLog.SNAPSHOT_SUFFIX).get(0);
+        Path otherDirectory = temporaryFolder.newFolder("other").toPath();
+        Files.copy(snapshot, otherDirectory.resolve(snapshot.getFileName()));
+
+        FileWebAuthnUserDetailsService other = open(otherDirectory);
+        try {
+            assertThat(other.loadUserByCredentialId(new byte[]{0x01}).getUsername()).isEqualTo("john");
+            assertThat(other.loadUserByUsername("john").getAuthenticators().iterator().next().getCounter()).isEqualTo(4);
+        } finally {
+            other.destroy();
+        }
+    }
+
+    @Test
+    public void segments_are_rolled_at_segment_size_test() throws IOException {
+        target.destroy();
+        target = new FileWebAuthnUserDetailsService(directory, new ObjectConverter(), 100, 1024, 0);
+        for (int i = 0; i < 10; i++) {
+            target.createUser(createUser("user" + i, createAuthenticator("authenticator", new byte[]{(byte) i}, 0)));
+        }
+
+        assertThat(files(SegmentedLog.SEGMENT_SUFFIX).size()).isGreaterThan(1);
+        target = reopen();
+        assertThat(target.getUserCount()).isEqualTo(10);
+    }
+
+    @Test
+    public void directory_cannot_be_opened_twice_test() {
+        assertThatThrownBy(() -> open(directory)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static void assertReloaded(Authenticator reloaded, WebAuthnAuthenticator registered) {
+        assertThat(((WebAuthnAuthenticator) reloaded).getName()).isEqualTo(registered.getName());
+        assertThat(reloaded.getAttestedCredentialData()).isEqualTo(registered.getAttestedCredentialData());
+        assertThat(reloaded.getAttestationStatement()).isEqualToComparingFieldByFieldRecursively(registered.getAttestationStatement());
+        assertThat(reloaded.getCounter()).isEqualTo(registered.getCounter());
+    }
+
+    private FileWebAuthnUserDetailsService reopen() {
+        target.destroy();
+        return open(directory);
+    }
+
+    private static FileWebAuthnUserDetailsService open(Path directory) {
+        return new FileWebAuthnUserDetailsService(directory, new ObjectConverter(), 100, FileWebAuthnUserDetailsService.DEFAULT_SEGMENT_SIZE, 0);
+    }
+
+    private List<Path> files(String suffix) throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.toString().endsWith(suffix)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static WebAuthnUserDetails createUser(String username, Authenticator... authenticators) {
+        return new WebAuthnUserDetailsImpl(new byte[]{0x0A}, username, "password", new ArrayList<>(Arrays.asList(authenticators)), true,
+                true, true, true, true,
+                AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN"));
+    }
+
+    private static WebAuthnAuthenticator createAuthenticator(String name, byte[] credentialId, long counter) {
+        AttestedCredentialData attestedCredentialData = new AttestedCredentialData(new AAGUID(UUID.randomUUID()), credentialId, RSACOSEKey.create(publicKey));
+        return new WebAuthnAuthenticator(name, attestedCredentialData, new NoneAttestationStatement(), counter);
+    }
+}
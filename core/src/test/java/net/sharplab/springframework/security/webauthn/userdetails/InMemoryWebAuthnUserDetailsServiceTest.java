@@ -0,0 +1,266 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.RSACOSEKey;
+import com.webauthn4j.data.attestation.statement.NoneAttestationStatement;
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class InMemoryWebAuthnUserDetailsServiceTest {
+
+    private static RSAPublicKey publicKey;
+
+    private InMemoryWebAuthnUserDetailsService target = new InMemoryWebAuthnUserDetailsService(new ObjectConverter(), 100, 4096);
+
+    @BeforeClass
+    public static void setupClass() throws NoSuchAlgorithmException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        publicKey = (RSAPublicKey) keyPairGenerator.generateKeyPair().getPublic();
+    }
+
+    @Test
+    public void loadUserByUsername_test() {
+        WebAuthnAuthenticator authenticator = createAuthenticator("first", new byte[]{0x01}, 3);
+        target.createUser(createUser("john", authenticator));
+
+        WebAuthnUserDetails user = target.loadUserByUsername("john");
+
+        assertThat(user.getUsername()).isEqualTo("john");
+        assertThat(user.getPassword()).isEqualTo("password");
+        assertThat(user.getUserHandle()).isEqualTo(new byte[]{0x0A});
+        assertThat(user.isSingleFactorAuthenticationAllowed()).isTrue();
+        assertThat(user.isEnabled()).isTrue();
+        assertThat(user.isAccountNonLocked()).isFalse();
+        assertThat(AuthorityUtils.authorityListToSet(user.getAuthorities())).containsExactlyInAnyOrder("ROLE_USER", "ROLE_ADMIN");
+        Authenticator loaded = user.getAuthenticators().iterator().next();
+        assertThat(loaded).isInstanceOf(WebAuthnAuthenticator.class);
+        assertThat(((WebAuthnAuthenticator) loaded).getName()).isEqualTo("first");
+        assertThat(loaded.getAttestedCredentialData()).isEqualTo(authenticator.getAttestedCredentialData());
+        assertThat(loaded.getCounter()).isEqualTo(3);
+        assertThat(loaded.getAttestationStatement()).isInstanceOf(NoneAttestationStatement.class);
+    }
+
+    @Test
+    public void loadUserByUsername_with_unknown_username_test() {
+        assertThatThrownBy(() -> target.loadUserByUsername("unknown")).isInstanceOf(UsernameNotFoundException.class);
+    }
+
+    @Test
+    public void loadUserByCredentialId_test() {
+        target.createUser(createUser("john",
+                createAuthenticator("first", new byte[]{0x01}, 0),
+                createAuthenticator("second", new byte[]{0x02}, 0)));
+        target.createUser(createUser("jane", createAuthenticator("third", new byte[]{0x03}, 0)));
+
+        WebAuthnUserDetails user = target.loadUserByCredentialId(new byte[]{0x02});
+
+        assertThat(user.getUsername()).isEqualTo("john");
+        assertThat(credentialIds(user)).containsExactly("01", "02");
+        assertThat(target.loadUserByCredentialId(new byte[]{0x03}).getUsername()).isEqualTo("jane");
+        assertThatThrownBy(() -> target.loadUserByCredentialId(new byte[]{0x09})).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
+    @Test
+    public void resolveByCredentialId_test() {
+        target.createUser(createUser("john", createAuthenticator("first", new byte[]{0x01}, 1), createAuthenticator("second", new byte[]{0x02}, 2)));
+
+        WebAuthnUserAuthenticator userAuthenticator = target.resolveByCredentialId(new byte[]{0x02});
+
+        assertThat(userAuthenticator.getUserDetails().getUsername()).isEqualTo("john");
+        assertThat(((WebAuthnAuthenticator) userAuthenticator.getAuthenticator()).getName()).isEqualTo("second");
+        assertThat(new ArrayList<Authenticator>(userAuthenticator.getUserDetails().getAuthenticators())).contains(userAuthenticator.getAuthenticator());
+        assertThatThrownBy(() -> target.resolveByCredentialId(new byte[]{0x09})).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
+    @Test
+    public void createUser_with_existing_username_test() {
+        target.createUser(createUser("john"));
+        assertThatThrownBy(() -> target.createUser(createUser("john"))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void createUser_with_existing_credentialId_test() {
+        target.createUser(createUser("john", createAuthenticator("first", new byte[]{0x01}, 0)));
+        assertThatThrownBy(() -> target.createUser(createUser("jane", createAuthenticator("first", new byte[]{0x01}, 0))))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(target.userExists("jane")).isFalse();
+    }
+
+    @Test
+    public void addAuthenticator_and_removeAuthenticator_test() {
+        target.createUser(createUser("john", createAuthenticator("first", new byte[]{0x01}, 0)));
+
+        target.addAuthenticator("john", createAuthenticator("second", new byte[]{0x02}, 0));
+        assertThat(credentialIds(target.loadUserByCredentialId(new byte[]{0x02}))).containsExactly("01", "02");
+
+        target.removeAuthenticator("john", new byte[]{0x01});
+        assertThat(credentialIds(target.loadUserByUsername("john"))).containsExactly("02");
+        assertThat(target.getCredentialCount()).isEqualTo(1);
+        assertThatThrownBy(() -> target.loadUserByCredentialId(new byte[]{0x01})).isInstanceOf(CredentialIdNotFoundException.class);
+        assertThatThrownBy(() -> target.removeAuthenticator("john", new byte[]{0x01})).isInstanceOf(CredentialIdNotFoundException.class);
+        assertThatThrownBy(() -> target.addAuthenticator("unknown", createAuthenticator("third", new byte[]{0x03}, 0)))
+                .isInstanceOf(UsernameNotFoundException.class);
+    }
+
+    @Test
+    public void forEachCredentialId_test() {
+        target.createUser(createUser("john", createAuthenticator("first", new byte[]{0x01}, 0)));
+        target.createUser(createUser("paul", createAuthenticator("second", new byte[]{0x02}, 0)));
+        List<byte[]> credentialIds = new ArrayList<>();
+
+        target.forEachCredentialId(credentialIds::add);
+
+        assertThat(credentialIds).containsExactlyInAnyOrder(new byte[]{0x01}, new byte[]{0x02});
+    }
+
+    @Test
+    public void deleteUser_test() {
+        target.createUser(createUser("john", createAuthenticator("first", new byte[]{0x01}, 0)));
+
+        target.deleteUser("john");
+
+        assertThat(target.userExists("john")).isFalse();
+        assertThat(target.getUserCount()).isZero();
+        assertThat(target.getCredentialCount()).isZero();
+        assertThatThrownBy(() -> target.loadUserByCredentialId(new byte[]{0x01})).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
+    @Test
+    public void updateCounter_only_increases_counter_test() {
+        target.createUser(createUser("john", createAuthenticator("first", new byte[]{0x01}, 5)));
+
+        target.updateCounter(new byte[]{0x01}, 4);
+        assertThat(target.loadUserByUsername("john").getAuthenticators().iterator().next().getCounter()).isEqualTo(5);
+
+        target.updateCounter(new byte[]{0x01}, 0xFFFFFFFFL);
+        assertThat(target.loadUserByUsername("john").getAuthenticators().iterator().next().getCounter()).isEqualTo(0xFFFFFFFFL);
+
+        assertThatThrownBy(() -> target.updateCounter(new byte[]{0x09}, 1)).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
+    @Test
+    public void records_span_multiple_chunks_test() {
+        for (int i = 0; i < 50; i++) {
+            byte[] credentialId = UUID.randomUUID().toString().getBytes();
+            target.createUser(createUser("user" + i, createAuthenticator("authenticator" + i, credentialId, i)));
+        }
+
+        assertThat(target.getReservedBytes()).isGreaterThan(4096);
+        for (int i = 0; i < 50; i++) {
+            WebAuthnUserDetails user = target.loadUserByUsername("user" + i);
+            assertThat(user.getAuthenticators().iterator().next().getCounter()).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void attestationStatement_is_kept_test() {
+        WebAuthnAuthenticator withoutAttestationStatement = new WebAuthnAuthenticator("second",
+                new AttestedCredentialData(new AAGUID(UUID.randomUUID()), new byte[]{0x02}, RSACOSEKey.create(publicKey)), null, 0);
+        target.createUser(createUser("john", createAuthenticator("first", new byte[]{0x01}, 1), withoutAttestationStatement));
+
+        List<Authenticator> authenticators = new ArrayList<>(target.loadUserByUsername("john").getAuthenticators());
+        assertThat(authenticators.get(0).getAttestationStatement()).isInstanceOf(NoneAttestationStatement.class);
+        assertThat(authenticators.get(1).getAttestationStatement()).isNull();
+    }
+
+    @Test
+    public void replaced_records_are_reclaimed_test() {
+        target.createUser(createUser("john", createAuthenticator("first", new byte[]{0x01}, 1)));
+        target.updateCounter(new byte[]{0x01}, 7);
+
+        for (int i = 0; i < 1000; i++) {
+            byte[] credentialId = UUID.randomUUID().toString().getBytes();
+            target.addAuthenticator("john", createAuthenticator("temporary", credentialId, i));
+            target.removeAuthenticator("john", credentialId);
+        }
+
+        assertThat(target.getCompactionCount()).isPositive();
+        assertThat(target.getReservedBytes()).isLessThanOrEqualTo(4 * 4096);
+        WebAuthnUserDetails user = target.loadUserByCredentialId(new byte[]{0x01});
+        assertThat(credentialIds(user)).containsExactly("01");
+        assertThat(user.getAuthenticators().iterator().next().getCounter()).isEqualTo(7);
+        assertThat(target.getCredentialCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void compact_keeps_users_and_counters_test() {
+        for (int i = 0; i < 50; i++) {
+            target.createUser(createUser("user" + i, createAuthenticator("authenticator" + i, new byte[]{(byte) i}, i)));
+        }
+        for (int i = 0; i < 50; i += 2) {
+            target.deleteUser("user" + i);
+        }
+
+        target.compact();
+        target.updateCounter(new byte[]{0x01}, 100);
+
+        assertThat(target.getUserCount()).isEqualTo(25);
+        assertThat(target.userExists("user0")).isFalse();
+        assertThat(target.credentialExists(new byte[]{0x00})).isFalse();
+        assertThat(target.loadUserByCredentialId(new byte[]{0x01}).getAuthenticators().iterator().next().getCounter()).isEqualTo(100);
+        for (int i = 3; i < 50; i += 2) {
+            WebAuthnUserDetails user = target.loadUserByUsername("user" + i);
+            assertThat(AuthorityUtils.authorityListToSet(user.getAuthorities())).containsExactlyInAnyOrder("ROLE_USER", "ROLE_ADMIN");
+            assertThat(user.getAuthenticators().iterator().next().getCounter()).isEqualTo(i);
+        }
+    }
+
+    private static WebAuthnUserDetails createUser(String username, Authenticator... authenticators) {
+        return new WebAuthnUserDetailsImpl(new byte[]{0x0A}, username, "password", Arrays.asList(authenticators), true,
+                true, true, true, false,
+                AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN"));
+    }
+
+    private static WebAuthnAuthenticator createAuthenticator(String name, byte[] credentialId, long counter) {
+        AttestedCredentialData attestedCredentialData = new AttestedCredentialData(new AAGUID(UUID.randomUUID()), credentialId, RSACOSEKey.create(publicKey));
+        return new WebAuthnAuthenticator(name, attestedCredentialData, new NoneAttestationStatement(), counter);
+    }
+
+    private static List<String> credentialIds(WebAuthnUserDetails user) {
+        List<String> credentialIds = new ArrayList<>();
+        for (Authenticator authenticator : user.getAuthenticators()) {
+            StringBuilder builder = new StringBuilder();
+            for (byte b : authenticator.getAttestedCredentialData().getCredentialId()) {
+                builder.append(String.format("%02x", b));
+            }
+            credentialIds.add(builder.toString());
+        }
+        return credentialIds;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.RSACOSEKey;
+import com.webauthn4j.data.attestation.statement.NoneAttestationStatement;
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JdbcWebAuthnUserDetailsServiceTest {
+
+    private static RSAPublicKey publicKey;
+
+    private EmbeddedDatabase dataSource;
+    private JdbcWebAuthnUserDetailsService target;
+
+    @Before
+    public void setup() throws NoSuchAlgorithmException {
+        if (publicKey == null) {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            publicKey = (RSAPublicKey) keyPairGenerator.generateKeyPair().getPublic();
+        }
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("classpath:net/sharplab/springframework/security/webauthn/userdetails/webauthn-schema.ddl")
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("insert into webauthn_users values ('john', 'password', true, ?, false)", (Object) new byte[]{0x01, 0x02});
+        jdbcTemplate.update("insert into webauthn_authorities values ('john', 'ROLE_USER')");
+        jdbcTemplate.update("insert into webauthn_authorities values ('john', 'ROLE_ADMIN')");
+        target = new JdbcWebAuthnUserDetailsService(dataSource);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    public void loadUserByUsername_test() {
+        WebAuthnAuthenticator authenticator = createAuthenticator("first", new byte[]{0x01}, 1);
+        target.addAuthenticator("john", authenticator);
+
+        WebAuthnUserDetails user = target.loadUserByUsername("john");
+
+        assertThat(user.getUsername()).isEqualTo("john");
+        assertThat(user.getPassword()).isEqualTo("password");
+        assertThat(user.getUserHandle()).isEqualTo(new byte[]{0x01, 0x02});
+        assertThat(user.isSingleFactorAuthenticationAllowed()).isFalse();
+        assertThat(AuthorityUtils.authorityListToSet(user.getAuthorities())).containsExactlyInAnyOrder("ROLE_USER", "ROLE_ADMIN");
+        assertThat(new ArrayList<Authenticator>(user.getAuthenticators()))
+                .usingElementComparatorIgnoringFields("attestationStatement")
+                .containsExactly(authenticator);
+        assertThat(user.getAuthenticators().iterator().next().getAttestationStatement()).isInstanceOf(NoneAttestationStatement.class);
+    }
+
+    @Test
+    public void loadUserByUsername_without_authenticators_test() {
+        WebAuthnUserDetails user = target.loadUserByUsername("john");
+
+        assertThat(user.getAuthorities()).hasSize(2);
+        assertThat(new ArrayList<Authenticator>(user.getAuthenticators())).isEmpty();
+    }
+
+    @Test
+    public void loadUserByUsername_with_unknown_username_test() {
+        assertThatThrownBy(() -> target.loadUserByUsername("unknown")).isInstanceOf(UsernameNotFoundException.class);
+    }
+
+    @Test
+    public void loadUserByCredentialId_returns_all_authenticators_of_the_user_test() {
+        WebAuthnAuthenticator first = createAuthenticator("first", new byte[]{0x01}, 1);
+        WebAuthnAuthenticator second = createAuthenticator("second", new byte[]{0x02}, 2);
+        target.addAuthenticator("john", first);
+        target.addAuthenticator("john", second);
+
+        WebAuthnUserDetails user = target.loadUserByCredentialId(new byte[]{0x02});
+
+        assertThat(user.getUsername()).isEqualTo("john");
+        assertThat(user.getAuthorities()).hasSize(2);
+        assertThat(new ArrayList<Authenticator>(user.getAuthenticators()))
+                .usingElementComparatorIgnoringFields("attestationStatement")
+                .containsExactlyInAnyOrder(first, second);
+    }
+
+    @Test
+    public void loadUserByUsername_with_custom_authorities_query_test() {
+        target.addAuthenticator("john", createAuthenticator("first", new byte[]{0x01}, 1));
+        target.addAuthenticator("john", createAuthenticator("second", new byte[]{0x02}, 2));
+        target.addAuthenticator("john", createAuthenticator("third", new byte[]{0x03}, 3));
+        target.setAuthoritiesByUsernameQuery("select username, authority from webauthn_authorities where username = ? and authority <> 'ROLE_ADMIN'");
+
+        WebAuthnUserDetails user = target.loadUserByUsername("john");
+
+        assertThat(AuthorityUtils.authorityListToSet(user.getAuthorities())).containsExactly("ROLE_USER");
+        assertThat(user.getAuthenticators()).hasSize(3);
+    }
+
+    @Test
+    public void resolveByCredentialId_test() {
+        target.addAuthenticator("john", createAuthenticator("first", new byte[]{0x01}, 1));
+        target.addAuthenticator("john", createAuthenticator("second", new byte[]{0x02}, 2));
+
+        WebAuthnUserAuthenticator userAuthenticator = target.resolveByCredentialId(new byte[]{0x02});
+
+        assertThat(userAuthenticator.getUserDetails().getAuthorities()).hasSize(2);
+        assertThat(((WebAuthnAuthenticator) userAuthenticator.getAuthenticator()).getName()).isEqualTo("second");
+        assertThat(new ArrayList<Authenticator>(userAuthenticator.getUserDetails().getAuthenticators())).contains(userAuthenticator.getAuthenticator());
+        assertThatThrownBy(() -> target.resolveByCredentialId(new byte[]{0x09})).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
+    @Test
+    public void forEachCredentialId_test() {
+        target.addAuthenticator("john", createAuthenticator("first", new byte[]{0x01}, 1));
+        target.addAuthenticator("john", createAuthenticator("second", new byte[]{0x02}, 2));
+        List<byte[]> credentialIds = new ArrayList<>();
+
+        target.forEachCredentialId(credentialIds::add);
+
+        assertThat(credentialIds).containsExactlyInAnyOrder(new byte[]{0x01}, new byte[]{0x02});
+    }
+
+    @Test
+    public void loadUserByCredentialId_with_unknown_credentialId_test() {
+        assertThatThrownBy(() -> target.loadUserByCredentialId(new byte[]{0x09})).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
+    @Test
+    public void addAuthenticator_with_unknown_username_test() {
+        Authenticator authenticator = createAuthenticator("first", new byte[]{0x01}, 1);
+        assertThatThrownBy(() -> target.addAuthenticator("unknown", authenticator)).isInstanceOf(UsernameNotFoundException.class);
+    }
+
+    @Test
+    public void removeAuthenticator_test() {
+        WebAuthnAuthenticator first = createAuthenticator("first", new byte[]{0x01}, 1);
+        WebAuthnAuthenticator second = createAuthenticator("second", new byte[]{0x02}, 2);
+        target.addAuthenticator("john", first);
+        target.addAuthenticator("john", second);
+
+        target.removeAuthenticator("john", first);
+
+        assertThat(new ArrayList<Authenticator>(target.loadUserByUsername("john").getAuthenticators()))
+                .usingElementComparatorIgnoringFields("attestationStatement")
+                .containsExactly(second);
+        assertThatThrownBy(() -> target.removeAuthenticator("john", new byte[]{0x01})).isInstanceOf(CredentialIdNotFoundException.class);
+    }
+
+    static WebAuthnAuthenticator createAuthenticator(String name, byte[] credentialId, long counter) {
+        AttestedCredentialData attestedCredentialData = new AttestedCredentialData(AAGUID.ZERO, credentialId, RSACOSEKey.create(publicKey));
+        return new WebAuthnAuthenticator(name, attestedCredentialData, new NoneAttestationStatement(), counter);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OpenAddressingIndexTest {
+
+    // keys are stored on heap for the test, indexed by their reference
+    private final Map<Long, byte[]> records = new HashMap<>();
+    private final OpenAddressingIndex target = new OpenAddressingIndex(16, new OpenAddressingIndex.KeyAccessor() {
+        @Override
+        public boolean matches(long ref, byte[] key) {
+            return Arrays.equals(records.get(ref), key);
+        }
+
+        @Override
+        public byte[] getKey(long ref) {
+            return records.get(ref);
+        }
+    });
+
+    @Test
+    public void put_get_remove_with_growth_test() {
+        Random random = new Random(0);
+        Map<ByteBuffer, Long> expected = new HashMap<>();
+        for (long ref = 0; ref < 1000; ref++) {
+            byte[] key = new byte[1 + random.nextInt(16)];
+            random.nextBytes(key);
+            put(key, ref);
+            expected.put(ByteBuffer.wrap(key), ref);
+        }
+        // removing half of the keys leaves tombstones the remaining keys must be probed past
+        int index = 0;
+        for (ByteBuffer key : expected.keySet().toArray(new ByteBuffer[0])) {
+            if (index++ % 2 == 0) {
+                assertThat(target.remove(key.array())).isTrue();
+                expected.remove(key);
+            }
+        }
+
+        assertThat(target.size()).isEqualTo(expected.size());
+        for (Map.Entry<ByteBuffer, Long> entry : expected.entrySet()) {
+            assertThat(target.get(entry.getKey().array())).isEqualTo(entry.getValue());
+        }
+        assertThat(target.get(new byte[32])).isEqualTo(OpenAddressingIndex.NOT_FOUND);
+    }
+
+    @Test
+    public void put_replaces_existing_reference_test() {
+        put(new byte[]{0x01}, 1);
+        records.put(2L, new byte[]{0x01});
+        target.put(new byte[]{0x01}, 2);
+
+        assertThat(target.get(new byte[]{0x01})).isEqualTo(2);
+        assertThat(target.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void removed_slots_are_reused_test() {
+        for (long ref = 0; ref < 5000; ref++) {
+            byte[] key = ByteBuffer.allocate(8).putLong(ref).array();
+            put(key, ref);
+            assertThat(target.remove(key)).isTrue();
+        }
+        assertThat(target.size()).isZero();
+    }
+
+    private void put(byte[] key, long ref) {
+        records.put(ref, key);
+        target.put(key, ref);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class WebAuthnUserAuthenticatorResolverImplTest {
+
+    private WebAuthnUserDetailsService userDetailsService = mock(WebAuthnUserDetailsService.class);
+
+    private WebAuthnUserAuthenticatorResolverImpl target = new WebAuthnUserAuthenticatorResolverImpl(userDetailsService);
+
+    @Test
+    public void resolveByCredentialId_test() {
+        byte[] credentialId = new byte[]{0x01, 0x02};
+        Authenticator other = mock(Authenticator.class, RETURNS_DEEP_STUBS);
+        when(other.getAttestedCredentialData().getCredentialId()).thenReturn(new byte[]{0x03});
+        Authenticator authenticator = mock(Authenticator.class, RETURNS_DEEP_STUBS);
+        when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(new byte[]{0x01, 0x02});
+        WebAuthnUserDetails user = mock(WebAuthnUserDetails.class);
+        doReturn(Arrays.asList(other, authenticator)).when(user).getAuthenticators();
+        when(userDetailsService.loadUserByCredentialId(credentialId)).thenReturn(user);
+
+        WebAuthnUserAuthenticator userAuthenticator = target.resolveByCredentialId(credentialId);
+
+        assertThat(userAuthenticator.getUserDetails()).isEqualTo(user);
+        assertThat(userAuthenticator.getAuthenticator()).isEqualTo(authenticator);
+    }
+
+    @Test(expected = CredentialIdNotFoundException.class)
+    public void resolveByCredentialId_test_with_user_without_requested_authenticator() {
+        byte[] credentialId = new byte[]{0x01, 0x02};
+        WebAuthnUserDetails user = mock(WebAuthnUserDetails.class);
+        when(userDetailsService.loadUserByCredentialId(credentialId)).thenReturn(user);
+
+        target.resolveByCredentialId(credentialId);
+    }
+
+    @Test(expected = CredentialIdNotFoundException.class)
+    public void resolveByCredentialId_test_with_null_from_userDetailsService() {
+        byte[] credentialId = new byte[]{0x01, 0x02};
+        when(userDetailsService.loadUserByCredentialId(credentialId)).thenReturn(null);
+
+        target.resolveByCredentialId(credentialId);
+    }
+
+    @Test(expected = CredentialIdNotFoundException.class)
+    public void resolveByCredentialId_test_with_CredentialIdNotFoundException() {
+        byte[] credentialId = new byte[]{0x01, 0x02};
+        when(userDetailsService.loadUserByCredentialId(credentialId)).thenThrow(CredentialIdNotFoundException.class);
+
+        target.resolveByCredentialId(credentialId);
+    }
+
+    @Test
+    public void getUserDetailsService_test() {
+        assertThat(target.getUserDetailsService()).isEqualTo(userDetailsService);
+    }
+}
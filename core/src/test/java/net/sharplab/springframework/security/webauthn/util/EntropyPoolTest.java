@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for EntropyPool
+ */
+public class EntropyPoolTest {
+
+    private EntropyPool target;
+
+    @After
+    public void tearDown() {
+        if (target != null) {
+            target.destroy();
+        }
+    }
+
+    @Test
+    public void nextBytes_test() throws Exception {
+        target = new EntropyPool(32, 100);
+        awaitFilled(target);
+
+        assertThat(target.getCapacity()).isEqualTo(128);
+        assertThat(target.nextBytes()).hasSize(32);
+        assertThat(target.getServedCount()).isEqualTo(1);
+        assertThat(target.getDepletionCount()).isZero();
+    }
+
+    @Test
+    public void depleted_pool_falls_back_to_direct_generation_test() {
+        target = new EntropyPool(16, 4);
+        target.destroy();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(target.nextBytes()).hasSize(16);
+        }
+        assertThat(target.getServedCount() + target.getDepletionCount()).isEqualTo(10);
+        assertThat(target.getDepletionCount()).isGreaterThanOrEqualTo(6);
+    }
+
+    @Test
+    public void blocks_are_never_handed_out_twice_test() throws Exception {
+        target = new EntropyPool(16, 64);
+        awaitFilled(target);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        Set<ByteBuffer> blocks = Collections.synchronizedSet(new HashSet<>());
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executorService.submit(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    blocks.add(ByteBuffer.wrap(target.nextBytes()));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+
+        assertThat(blocks).hasSize(8000);
+        assertThat(target.getServedCount() + target.getDepletionCount()).isEqualTo(8000);
+        assertThat(target.getRefillCount()).isPositive();
+    }
+
+    private void awaitFilled(EntropyPool entropyPool) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (entropyPool.getAvailableCount() < entropyPool.getCapacity() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
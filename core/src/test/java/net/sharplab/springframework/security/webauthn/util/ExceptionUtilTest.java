@@ -18,6 +18,7 @@ package net.sharplab.springframework.security.webauthn.util;
 
 import com.webauthn4j.util.exception.WebAuthnException;
 import net.sharplab.springframework.security.webauthn.exception.*;
+import net.sharplab.springframework.security.webauthn.metrics.NoOpWebAuthnMetrics;
 import org.junit.Test;
 import org.springframework.security.authentication.AuthenticationServiceException;
 
@@ -62,6 +63,35 @@ public class ExceptionUtilTest {
         }
     }
 
+    @Test
+    public void wrapWithAuthenticationException_with_subclass_of_registered_exception_test() {
+        WebAuthnException exception = new com.webauthn4j.validator.exception.BadChallengeException("dummy") {
+        };
+        assertThat(ExceptionUtil.wrapWithAuthenticationException(exception)).isInstanceOf(BadChallengeException.class);
+    }
+
+    @Test
+    public void wrapWithAuthenticationException_without_stack_trace_test() {
+        WebAuthnException exception = new com.webauthn4j.validator.exception.BadSignatureException("dummy");
+
+        RuntimeException stackless = ExceptionUtil.wrapWithAuthenticationException(exception, NoOpWebAuthnMetrics.INSTANCE, false);
+        RuntimeException withStackTrace = ExceptionUtil.wrapWithAuthenticationException(exception, NoOpWebAuthnMetrics.INSTANCE, true);
+
+        assertThat(stackless).isInstanceOf(BadSignatureException.class).hasCause(exception);
+        assertThat(stackless.getStackTrace()).isEmpty();
+        assertThat(withStackTrace.getStackTrace()).isNotEmpty();
+    }
+
+    @Test
+    public void wrapWithAuthenticationException_without_stack_trace_for_DataConversionException_test() {
+        WebAuthnException exception = new com.webauthn4j.converter.exception.DataConversionException("dummy");
+
+        RuntimeException stackless = ExceptionUtil.wrapWithAuthenticationException(exception, NoOpWebAuthnMetrics.INSTANCE, false);
+
+        assertThat(stackless).isInstanceOf(DataConversionException.class);
+        assertThat(stackless.getStackTrace()).isEmpty();
+    }
+
     static class UnknownValidationException extends com.webauthn4j.validator.exception.ValidationException {
 
         UnknownValidationException(String message) {
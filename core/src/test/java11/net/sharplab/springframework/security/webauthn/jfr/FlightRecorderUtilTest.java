@@ -0,0 +1,114 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FlightRecorderUtilTest {
+
+    private static final String STAGE_EVENT = "net.sharplab.springframework.security.webauthn.Stage";
+    private static final String ENDPOINT_EVENT = "net.sharplab.springframework.security.webauthn.Endpoint";
+
+    private Recording recording;
+    private Path recordingFile;
+
+    @Before
+    public void setup() throws IOException {
+        recordingFile = Files.createTempFile("webauthn", ".jfr");
+        recording = new Recording();
+        recording.enable(STAGE_EVENT).withoutThreshold();
+        recording.enable(ENDPOINT_EVENT).withoutThreshold();
+        recording.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        recording.close();
+        Files.deleteIfExists(recordingFile);
+    }
+
+    @Test
+    public void recordStage_test() throws IOException {
+        byte[] credentialId = new byte[]{0x01, 0x23, 0x45};
+
+        String result = FlightRecorderUtil.recordStage(FlightRecorderUtil.REGISTRATION, "attestation-validation", credentialId,
+                () -> "value", value -> "packed");
+
+        assertThat(result).isEqualTo("value");
+        List<RecordedEvent> events = stopAndReadEvents(STAGE_EVENT);
+        assertThat(events).hasSize(1);
+        RecordedEvent event = events.get(0);
+        assertThat(event.getString("ceremony")).isEqualTo(FlightRecorderUtil.REGISTRATION);
+        assertThat(event.getString("stage")).isEqualTo("attestation-validation");
+        assertThat(event.getString("credentialIdHash")).isEqualTo(FlightRecorderUtil.hashCredentialId(credentialId));
+        assertThat(event.getString("format")).isEqualTo("packed");
+        assertThat(event.getString("result")).isEqualTo("success");
+    }
+
+    @Test
+    public void recordStage_with_exception_test() throws IOException {
+        assertThatThrownBy(() -> FlightRecorderUtil.recordStage(FlightRecorderUtil.AUTHENTICATION, "signature-validation", null, () -> {
+            throw new BadCredentialsException("dummy");
+        }, value -> "packed")).isInstanceOf(BadCredentialsException.class);
+
+        List<RecordedEvent> events = stopAndReadEvents(STAGE_EVENT);
+        assertThat(events).hasSize(1);
+        RecordedEvent event = events.get(0);
+        assertThat(event.getString("credentialIdHash")).isNull();
+        assertThat(event.getString("format")).isNull();
+        assertThat(event.getString("result")).isEqualTo("BadCredentialsException");
+    }
+
+    @Test
+    public void recordEndpoint_test() throws IOException {
+        FlightRecorderUtil.recordEndpoint("/webauthn/options", () -> "value");
+
+        List<RecordedEvent> events = stopAndReadEvents(ENDPOINT_EVENT);
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getString("endpoint")).isEqualTo("/webauthn/options");
+        assertThat(events.get(0).getString("result")).isEqualTo("success");
+    }
+
+    @Test
+    public void hashCredentialId_test() {
+        assertThat(FlightRecorderUtil.hashCredentialId(null)).isNull();
+        assertThat(FlightRecorderUtil.hashCredentialId(new byte[]{0x01})).hasSize(11);
+    }
+
+    private List<RecordedEvent> stopAndReadEvents(String eventName) throws IOException {
+        recording.stop();
+        recording.dump(recordingFile);
+        return RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getEventType().getName().equals(eventName))
+                .collect(Collectors.toList());
+    }
+}
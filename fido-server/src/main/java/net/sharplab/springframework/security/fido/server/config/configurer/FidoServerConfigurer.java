@@ -19,10 +19,15 @@ package net.sharplab.springframework.security.fido.server.config.configurer;
 import com.webauthn4j.converter.util.ObjectConverter;
 import net.sharplab.springframework.security.fido.server.endpoint.*;
 import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidator;
+import net.sharplab.springframework.security.webauthn.challenge.AbstractChallengeRepository;
+import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
 import net.sharplab.springframework.security.webauthn.config.configurers.WebAuthnConfigurerUtil;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetrics;
 import net.sharplab.springframework.security.webauthn.options.OptionsProvider;
+import net.sharplab.springframework.security.webauthn.options.OptionsProviderImpl;
 import net.sharplab.springframework.security.webauthn.server.ServerPropertyProvider;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
+import net.sharplab.springframework.security.webauthn.util.EntropyPool;
 import org.springframework.context.ApplicationContext;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.web.HttpSecurityBuilder;
@@ -47,6 +52,11 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
     // ================================================================================================
     private OptionsProvider optionsProvider;
     private ObjectConverter objectConverter;
+    private ChallengeRepository challengeRepository;
+    private EntropyPool entropyPool;
+    private ServerEndpointExecutor serverEndpointExecutor;
+    private WebAuthnMetrics metrics;
+    private Double serverTimingSamplingRate;
 
     public static FidoServerConfigurer<HttpSecurity> fidoServer() {
         return new FidoServerConfigurer<>();
@@ -55,14 +65,34 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
     @Override
     public void configure(H http) throws Exception {
         super.configure(http);
+        if (challengeRepository == null) {
+            challengeRepository = WebAuthnConfigurerUtil.getChallengeRepository(http);
+        }
         if (optionsProvider == null) {
-            optionsProvider = WebAuthnConfigurerUtil.getOptionsProvider(http);
+            optionsProvider = WebAuthnConfigurerUtil.getOptionsProvider(http, challengeRepository);
         }
         http.setSharedObject(OptionsProvider.class, optionsProvider);
         if (objectConverter == null) {
             objectConverter = WebAuthnConfigurerUtil.getObjectConverter(http);
         }
         http.setSharedObject(ObjectConverter.class, objectConverter);
+        if (entropyPool == null) {
+            entropyPool = WebAuthnConfigurerUtil.getEntropyPool(http);
+        }
+        if (metrics == null) {
+            metrics = WebAuthnConfigurerUtil.getWebAuthnMetrics(http);
+        }
+        if (optionsProvider instanceof OptionsProviderImpl) {
+            ((OptionsProviderImpl) optionsProvider).setMetrics(metrics);
+        }
+        if (entropyPool != null) {
+            if (challengeRepository instanceof AbstractChallengeRepository
+                    && ((AbstractChallengeRepository) challengeRepository).getEntropyPool() == null) {
+                ((AbstractChallengeRepository) challengeRepository).setEntropyPool(entropyPool);
+            }
+            WebAuthnConfigurerUtil.registerEntropyPoolMeters(metrics, entropyPool);
+        }
+        WebAuthnConfigurerUtil.configureChallengeRepositoryResponseFilter(http, challengeRepository);
 
         fidoServerAttestationOptionsEndpointConfig.configure(http);
         fidoServerAttestationResultEndpointConfig.configure(http);
@@ -98,6 +128,71 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
         return this;
     }
 
+    /**
+     * Sets the {@link ChallengeRepository} the endpoints generate, save and load challenges with, unless an
+     * {@link OptionsProvider} or a {@link ServerPropertyProvider} is given. By default, the {@link ChallengeRepository}
+     * bean is used if defined.
+     *
+     * @param challengeRepository the {@link ChallengeRepository}
+     * @return the {@link FidoServerConfigurer} for additional customization
+     */
+    public FidoServerConfigurer<H> challengeRepository(ChallengeRepository challengeRepository) {
+        Assert.notNull(challengeRepository, "challengeRepository must not be null");
+        this.challengeRepository = challengeRepository;
+        return this;
+    }
+
+    /**
+     * Sets the {@link EntropyPool} user handles are drawn from. It is also set to the {@link ChallengeRepository}
+     * if it extends {@link AbstractChallengeRepository} and has no pool yet.
+     *
+     * @param entropyPool the {@link EntropyPool}
+     * @return the {@link FidoServerConfigurer} for additional customization
+     */
+    public FidoServerConfigurer<H> entropyPool(EntropyPool entropyPool) {
+        Assert.notNull(entropyPool, "entropyPool must not be null");
+        this.entropyPool = entropyPool;
+        return this;
+    }
+
+    /**
+     * Processes attestation and assertion result requests asynchronously on the given {@link ServerEndpointExecutor},
+     * so that attestation and signature verification do not hold container threads.
+     *
+     * @param serverEndpointExecutor the executor to process result requests
+     * @return the {@link FidoServerConfigurer} for additional customization
+     */
+    public FidoServerConfigurer<H> serverEndpointExecutor(ServerEndpointExecutor serverEndpointExecutor) {
+        Assert.notNull(serverEndpointExecutor, "serverEndpointExecutor must not be null");
+        this.serverEndpointExecutor = serverEndpointExecutor;
+        return this;
+    }
+
+    /**
+     * Specifies the {@link WebAuthnMetrics} the endpoints record to.
+     *
+     * @param metrics the {@link WebAuthnMetrics}
+     * @return the {@link FidoServerConfigurer} for additional customization
+     */
+    public FidoServerConfigurer<H> metrics(WebAuthnMetrics metrics) {
+        Assert.notNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Reports the stage durations of the given fraction of endpoint requests in a <code>Server-Timing</code> response
+     * header.
+     *
+     * @param serverTimingSamplingRate the fraction between 0.0 and 1.0
+     * @return the {@link FidoServerConfigurer} for additional customization
+     */
+    public FidoServerConfigurer<H> serverTimingSamplingRate(double serverTimingSamplingRate) {
+        Assert.isTrue(serverTimingSamplingRate >= 0 && serverTimingSamplingRate <= 1, "serverTimingSamplingRate must be between 0.0 and 1.0");
+        this.serverTimingSamplingRate = serverTimingSamplingRate;
+        return this;
+    }
+
     public class FidoServerAttestationOptionsEndpointConfig extends AbstractServerEndpointConfig<FidoServerAttestationOptionsEndpointFilter> {
 
         FidoServerAttestationOptionsEndpointConfig() {
@@ -106,7 +201,9 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
 
         @Override
         protected FidoServerAttestationOptionsEndpointFilter createInstance() {
-            return new FidoServerAttestationOptionsEndpointFilter(objectConverter, optionsProvider);
+            FidoServerAttestationOptionsEndpointFilter filter = new FidoServerAttestationOptionsEndpointFilter(objectConverter, optionsProvider, challengeRepository);
+            filter.setEntropyPool(entropyPool);
+            return filter;
         }
     }
 
@@ -178,6 +275,7 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
         protected FidoServerAttestationResultEndpointFilter createInstance() {
             FidoServerAttestationResultEndpointFilter filter = new FidoServerAttestationResultEndpointFilter(objectConverter, webAuthnUserDetailsService, webAuthnRegistrationRequestValidator);
             filter.setUsernameNotFoundHandler(usernameNotFoundHandler);
+            filter.setServerEndpointExecutor(serverEndpointExecutor);
             return filter;
         }
 
@@ -222,7 +320,7 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
 
         @Override
         protected FidoServerAssertionOptionsEndpointFilter createInstance() {
-            return new FidoServerAssertionOptionsEndpointFilter(objectConverter, optionsProvider);
+            return new FidoServerAssertionOptionsEndpointFilter(objectConverter, optionsProvider, challengeRepository);
         }
     }
 
@@ -248,7 +346,7 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
             FidoServerAssertionResultEndpointFilter serverEndpointFilter;
 
             if (serverPropertyProvider == null) {
-                serverPropertyProvider = WebAuthnConfigurerUtil.getServerPropertyProvider(http);
+                serverPropertyProvider = WebAuthnConfigurerUtil.getServerPropertyProvider(http, challengeRepository);
             }
             http.setSharedObject(ServerPropertyProvider.class, serverPropertyProvider);
 
@@ -259,6 +357,11 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
                 if (filterProcessingUrl != null) {
                     serverEndpointFilter.setFilterProcessesUrl(filterProcessingUrl);
                 }
+                serverEndpointFilter.setServerEndpointExecutor(serverEndpointExecutor);
+                serverEndpointFilter.setMetrics(metrics);
+                if (serverTimingSamplingRate != null) {
+                    serverEndpointFilter.setServerTimingSamplingRate(serverTimingSamplingRate);
+                }
             } else {
                 serverEndpointFilter = applicationContext.getBean(FidoServerAssertionResultEndpointFilter.class);
             }
@@ -346,6 +449,10 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
                 if (filterProcessingUrl != null) {
                     serverEndpointFilter.setFilterProcessesUrl(filterProcessingUrl);
                 }
+                serverEndpointFilter.setMetrics(metrics);
+                if (serverTimingSamplingRate != null) {
+                    serverEndpointFilter.setServerTimingSamplingRate(serverTimingSamplingRate);
+                }
             } else {
                 serverEndpointFilter = applicationContext.getBean(filterClass);
             }
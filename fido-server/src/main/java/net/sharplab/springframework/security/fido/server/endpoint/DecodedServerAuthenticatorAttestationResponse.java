@@ -0,0 +1,59 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.fido.server.endpoint;
+
+import java.util.Arrays;
+
+/**
+ * {@link ServerAuthenticatorAttestationResponse} counterpart whose members are already Base64url-decoded
+ */
+public class DecodedServerAuthenticatorAttestationResponse implements ServerAuthenticatorResponse {
+
+    private byte[] clientDataJSON;
+    private byte[] attestationObject;
+
+    public DecodedServerAuthenticatorAttestationResponse(byte[] clientDataJSON, byte[] attestationObject) {
+        this.clientDataJSON = clientDataJSON;
+        this.attestationObject = attestationObject;
+    }
+
+    public byte[] getClientDataJSON() {
+        return clientDataJSON;
+    }
+
+    public byte[] getAttestationObject() {
+        return attestationObject;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DecodedServerAuthenticatorAttestationResponse that = (DecodedServerAuthenticatorAttestationResponse) o;
+        return Arrays.equals(clientDataJSON, that.clientDataJSON) &&
+                Arrays.equals(attestationObject, that.attestationObject);
+    }
+
+    @Override
+    public int hashCode() {
+
+        int result = Arrays.hashCode(clientDataJSON);
+        result = 31 * result + Arrays.hashCode(attestationObject);
+        return result;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.fido.server.endpoint;
+
+import com.webauthn4j.data.PublicKeyCredentialType;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * {@link ServerPublicKeyCredential} counterpart whose binary members are already Base64url-decoded
+ *
+ * @param <T> authenticator response type
+ */
+public class DecodedServerPublicKeyCredential<T extends ServerAuthenticatorResponse> {
+
+    private byte[] id;
+    private byte[] rawId;
+    private PublicKeyCredentialType type;
+    private T response;
+    private String clientExtensionResults;
+
+    public DecodedServerPublicKeyCredential(
+            byte[] id, byte[] rawId, PublicKeyCredentialType type, T response,
+            String clientExtensionResults) {
+        this.id = id;
+        this.rawId = rawId;
+        this.type = type;
+        this.response = response;
+        this.clientExtensionResults = clientExtensionResults;
+    }
+
+    public byte[] getId() {
+        return id;
+    }
+
+    public byte[] getRawId() {
+        return rawId;
+    }
+
+    public PublicKeyCredentialType getType() {
+        return type;
+    }
+
+    public T getResponse() {
+        return response;
+    }
+
+    public String getClientExtensionResults() {
+        return clientExtensionResults;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DecodedServerPublicKeyCredential<?> that = (DecodedServerPublicKeyCredential<?>) o;
+        return Arrays.equals(id, that.id) &&
+                Arrays.equals(rawId, that.rawId) &&
+                type == that.type &&
+                Objects.equals(response, that.response) &&
+                Objects.equals(clientExtensionResults, that.clientExtensionResults);
+    }
+
+    @Override
+    public int hashCode() {
+
+        int result = Objects.hash(type, response, clientExtensionResults);
+        result = 31 * result + Arrays.hashCode(id);
+        result = 31 * result + Arrays.hashCode(rawId);
+        return result;
+    }
+}
@@ -18,9 +18,10 @@ package net.sharplab.springframework.security.fido.server.endpoint;
 
 import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.data.client.challenge.Challenge;
-import com.webauthn4j.data.client.challenge.DefaultChallenge;
 import com.webauthn4j.data.extension.client.AuthenticationExtensionsClientInputs;
 import com.webauthn4j.util.Base64UrlUtil;
+import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
+import net.sharplab.springframework.security.webauthn.challenge.HttpSessionChallengeRepository;
 import net.sharplab.springframework.security.webauthn.options.AssertionOptions;
 import net.sharplab.springframework.security.webauthn.options.OptionsProvider;
 import org.springframework.util.Assert;
@@ -47,10 +48,24 @@ public class FidoServerAssertionOptionsEndpointFilter extends ServerEndpointFilt
     // ================================================================================================
 
     private OptionsProvider optionsProvider;
+    private ChallengeRepository challengeRepository;
 
     public FidoServerAssertionOptionsEndpointFilter(ObjectConverter objectConverter, OptionsProvider optionsProvider) {
+        this(objectConverter, optionsProvider, new HttpSessionChallengeRepository());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param objectConverter     the {@link ObjectConverter}
+     * @param optionsProvider     the {@link OptionsProvider}
+     * @param challengeRepository the {@link ChallengeRepository} to generate challenges with
+     */
+    public FidoServerAssertionOptionsEndpointFilter(ObjectConverter objectConverter, OptionsProvider optionsProvider,
+                                                    ChallengeRepository challengeRepository) {
         super(FILTER_URL, objectConverter);
         this.optionsProvider = optionsProvider;
+        this.challengeRepository = challengeRepository;
         checkConfig();
     }
 
@@ -63,6 +78,7 @@ public class FidoServerAssertionOptionsEndpointFilter extends ServerEndpointFilt
     @SuppressWarnings("squid:S2177")
     private void checkConfig() {
         Assert.notNull(optionsProvider, "optionsProvider must not be null");
+        Assert.notNull(challengeRepository, "challengeRepository must not be null");
     }
 
 
@@ -77,7 +93,8 @@ public class FidoServerAssertionOptionsEndpointFilter extends ServerEndpointFilt
         ServerPublicKeyCredentialGetOptionsRequest serverRequest =
                 objectConverter.getJsonConverter().readValue(inputStream, ServerPublicKeyCredentialGetOptionsRequest.class);
         String username = serverRequest.getUsername();
-        Challenge challenge = serverEndpointFilterUtil.encodeUserVerification(new DefaultChallenge(), serverRequest.getUserVerification());
+        checkNotTimedOut();
+        Challenge challenge = serverEndpointFilterUtil.encodeUserVerification(challengeRepository.generateChallenge(), serverRequest.getUserVerification());
         AssertionOptions options = optionsProvider.getAssertionOptions(request, username, challenge);
         List<ServerPublicKeyCredentialDescriptor> credentials = options.getCredentials().stream().map(ServerPublicKeyCredentialDescriptor::new).collect(Collectors.toList());
         AuthenticationExtensionsClientInputs authenticationExtensionsClientInputs;
@@ -96,4 +113,8 @@ public class FidoServerAssertionOptionsEndpointFilter extends ServerEndpointFilt
                 authenticationExtensionsClientInputs);
     }
 
+    public ChallengeRepository getChallengeRepository() {
+        return challengeRepository;
+    }
+
 }
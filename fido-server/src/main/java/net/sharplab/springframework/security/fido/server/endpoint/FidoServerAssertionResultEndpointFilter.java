@@ -16,25 +16,33 @@
 
 package net.sharplab.springframework.security.fido.server.endpoint;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.webauthn4j.converter.CollectedClientDataConverter;
-import com.webauthn4j.converter.util.JsonConverter;
 import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.data.UserVerificationRequirement;
 import com.webauthn4j.data.client.CollectedClientData;
 import com.webauthn4j.server.ServerProperty;
-import com.webauthn4j.util.Base64UrlUtil;
 import net.sharplab.springframework.security.fido.server.validator.ServerPublicKeyCredentialValidator;
 import net.sharplab.springframework.security.webauthn.WebAuthnAssertionAuthenticationToken;
+import net.sharplab.springframework.security.webauthn.jfr.FlightRecorderUtil;
+import net.sharplab.springframework.security.webauthn.metrics.NoOpWebAuthnMetrics;
+import net.sharplab.springframework.security.webauthn.metrics.ServerTimingRecorder;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetrics;
 import net.sharplab.springframework.security.webauthn.request.WebAuthnAuthenticationRequest;
 import net.sharplab.springframework.security.webauthn.server.ServerPropertyProvider;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.authentication.AbstractAuthenticationProcessingFilter;
+import org.springframework.security.web.authentication.session.NullAuthenticatedSessionStrategy;
+import org.springframework.security.web.authentication.session.SessionAuthenticationStrategy;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.util.Assert;
 
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
@@ -42,6 +50,8 @@ import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 
 public class FidoServerAssertionResultEndpointFilter extends AbstractAuthenticationProcessingFilter {
 
@@ -50,14 +60,15 @@ public class FidoServerAssertionResultEndpointFilter extends AbstractAuthenticat
      */
     public static final String FILTER_URL = "/webauthn/assertion/result";
 
-    private JsonConverter jsonConverter;
     private ServerPropertyProvider serverPropertyProvider;
-    private ServerPublicKeyCredentialValidator<ServerAuthenticatorAssertionResponse> serverPublicKeyCredentialValidator;
-    private TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse>> credentialTypeRef
-            = new TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse>>() {
-    };
+    private ServerPublicKeyCredentialValidator<DecodedServerAuthenticatorAssertionResponse> serverPublicKeyCredentialValidator;
+    private ServerPublicKeyCredentialReader serverPublicKeyCredentialReader;
     private CollectedClientDataConverter collectedClientDataConverter;
     private ServerEndpointFilterUtil serverEndpointFilterUtil;
+    private ServerEndpointExecutor serverEndpointExecutor;
+    private WebAuthnMetrics metrics = NoOpWebAuthnMetrics.INSTANCE;
+    private double serverTimingSamplingRate = 0;
+    private SessionAuthenticationStrategy sessionAuthenticationStrategy = new NullAuthenticatedSessionStrategy();
 
     private List<String> expectedAuthenticationExtensionIds = Collections.emptyList();
 
@@ -67,9 +78,9 @@ public class FidoServerAssertionResultEndpointFilter extends AbstractAuthenticat
             RequestMatcher requiresAuthenticationRequestMatcher) {
         super(requiresAuthenticationRequestMatcher);
 
-        this.jsonConverter = objectConverter.getJsonConverter();
         this.serverPropertyProvider = serverPropertyProvider;
         this.serverPublicKeyCredentialValidator = new ServerPublicKeyCredentialValidator<>();
+        this.serverPublicKeyCredentialReader = new ServerPublicKeyCredentialReader();
 
         this.setAuthenticationSuccessHandler(new FidoServerAssertionResultEndpointSuccessHandler(objectConverter));
         this.setAuthenticationFailureHandler(new FidoServerAssertionResultEndpointFailureHandler(objectConverter));
@@ -99,30 +110,94 @@ public class FidoServerAssertionResultEndpointFilter extends AbstractAuthenticat
         Assert.notNull(serverPropertyProvider, "serverPropertyProvider must not be null");
     }
 
+    /**
+     * Processes the request on the {@link ServerEndpointExecutor} if it is configured and the request supports async
+     * processing, or on the container thread otherwise.
+     */
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+
+        if (serverEndpointExecutor == null || !request.isAsyncSupported() || !requiresAuthentication(request, response)) {
+            super.doFilter(req, res, chain);
+            return;
+        }
+
+        ServerTimingRecorder serverTimingRecorder = ServerTimingRecorder.sample(serverTimingSamplingRate);
+        serverEndpointExecutor.execute(request, response,
+                responded -> serverTimingRecorder.record(() -> doAttemptAuthentication(request, responded)),
+                new ServerEndpointExecutor.Completion<Authentication>() {
+                    // only called when the worker claimed the response
+                    @Override
+                    public void onSuccess(Authentication authResult) throws IOException, ServletException {
+                        if (authResult == null) {
+                            return;
+                        }
+                        try {
+                            sessionAuthenticationStrategy.onAuthentication(authResult, request, response);
+                        } catch (AuthenticationException e) {
+                            unsuccessfulAuthentication(request, response, e);
+                            return;
+                        }
+                        serverTimingRecorder.writeHeader(response);
+                        successfulAuthentication(request, response, chain, authResult);
+                    }
+
+                    @Override
+                    public void onFailure(RuntimeException e) throws IOException, ServletException {
+                        if (e instanceof AuthenticationException) {
+                            unsuccessfulAuthentication(request, response, (AuthenticationException) e);
+                        } else {
+                            logger.error("An internal error occurred while trying to authenticate the user.", e);
+                            serverEndpointFilterUtil.writeErrorResponse(response, e);
+                        }
+                    }
+                },
+                serverEndpointFilterUtil);
+    }
+
     @Override
     public Authentication attemptAuthentication(HttpServletRequest request, HttpServletResponse response) {
+        ServerTimingRecorder serverTimingRecorder = ServerTimingRecorder.sample(serverTimingSamplingRate);
+        Authentication authentication = serverTimingRecorder.record(() -> doAttemptAuthentication(request, () -> false));
+        // not reported on failure, as the stages reached would tell whether the credentialId exists
+        serverTimingRecorder.writeHeader(response);
+        return authentication;
+    }
+
+    /**
+     * Authenticates the request. When processed asynchronously, it stops before loading the challenge and before
+     * authenticating, which updates the counter, once the request has been answered by the timeout.
+     */
+    private Authentication doAttemptAuthentication(HttpServletRequest request, BooleanSupplier responded) {
         InputStream inputStream;
         try {
             inputStream = request.getInputStream();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
-        ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse> credential =
-                jsonConverter.readValue(inputStream, credentialTypeRef);
+        DecodedServerPublicKeyCredential<DecodedServerAuthenticatorAssertionResponse> credential =
+                metrics.time(WebAuthnMetrics.PROCESSING_FILTER_TIMER,
+                        () -> FlightRecorderUtil.recordStage(FlightRecorderUtil.AUTHENTICATION, "body-parse",
+                                () -> serverPublicKeyCredentialReader.readAssertionCredential(inputStream)),
+                        WebAuthnMetrics.STAGE_TAG, "decode");
         serverPublicKeyCredentialValidator.validate(credential);
 
-        ServerAuthenticatorAssertionResponse assertionResponse = credential.getResponse();
+        DecodedServerAuthenticatorAssertionResponse assertionResponse = credential.getResponse();
+        checkNotTimedOut(responded);
 
-        ServerProperty serverProperty = serverPropertyProvider.provide(request);
+        ServerProperty serverProperty = metrics.time(WebAuthnMetrics.PROCESSING_FILTER_TIMER,
+                () -> serverPropertyProvider.provide(request), WebAuthnMetrics.STAGE_TAG, "server-property");
 
         CollectedClientData collectedClientData = collectedClientDataConverter.convert(assertionResponse.getClientDataJSON());
         UserVerificationRequirement userVerificationRequirement = serverEndpointFilterUtil.decodeUserVerification(collectedClientData.getChallenge());
 
         WebAuthnAuthenticationRequest webAuthnAuthenticationRequest = new WebAuthnAuthenticationRequest(
-                Base64UrlUtil.decode(credential.getRawId()),
-                Base64UrlUtil.decode(assertionResponse.getClientDataJSON()),
-                Base64UrlUtil.decode(assertionResponse.getAuthenticatorData()),
-                Base64UrlUtil.decode(assertionResponse.getSignature()),
+                credential.getRawId(),
+                assertionResponse.getClientDataJSON(),
+                assertionResponse.getAuthenticatorData(),
+                assertionResponse.getSignature(),
                 credential.getClientExtensionResults(),
                 serverProperty,
                 userVerificationRequirement == UserVerificationRequirement.REQUIRED,
@@ -132,14 +207,74 @@ public class FidoServerAssertionResultEndpointFilter extends AbstractAuthenticat
 
         WebAuthnAssertionAuthenticationToken authRequest = new WebAuthnAssertionAuthenticationToken(webAuthnAuthenticationRequest);
         setDetails(request, authRequest);
+        checkNotTimedOut(responded);
         return this.getAuthenticationManager().authenticate(authRequest);
     }
 
+    private void checkNotTimedOut(BooleanSupplier responded) {
+        if (responded.getAsBoolean()) {
+            throw new CancellationException("Request is already answered by the timeout");
+        }
+    }
+
     protected void setDetails(HttpServletRequest request, WebAuthnAssertionAuthenticationToken authRequest) {
         authRequest.setDetails(this.authenticationDetailsSource.buildDetails(request));
     }
 
 
+    public ServerPublicKeyCredentialReader getServerPublicKeyCredentialReader() {
+        return serverPublicKeyCredentialReader;
+    }
+
+    public void setServerPublicKeyCredentialReader(ServerPublicKeyCredentialReader serverPublicKeyCredentialReader) {
+        Assert.notNull(serverPublicKeyCredentialReader, "serverPublicKeyCredentialReader must not be null");
+        this.serverPublicKeyCredentialReader = serverPublicKeyCredentialReader;
+    }
+
+    @Override
+    public void setSessionAuthenticationStrategy(SessionAuthenticationStrategy sessionStrategy) {
+        super.setSessionAuthenticationStrategy(sessionStrategy);
+        this.sessionAuthenticationStrategy = sessionStrategy;
+    }
+
+    public ServerEndpointExecutor getServerEndpointExecutor() {
+        return serverEndpointExecutor;
+    }
+
+    /**
+     * Sets the {@link ServerEndpointExecutor} to process requests asynchronously.
+     * Requests are processed on the container thread if it is <code>null</code>, which is the default.
+     *
+     * @param serverEndpointExecutor the executor to process requests
+     */
+    public void setServerEndpointExecutor(ServerEndpointExecutor serverEndpointExecutor) {
+        this.serverEndpointExecutor = serverEndpointExecutor;
+    }
+
+    public WebAuthnMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(WebAuthnMetrics metrics) {
+        Assert.notNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+    }
+
+    public double getServerTimingSamplingRate() {
+        return serverTimingSamplingRate;
+    }
+
+    /**
+     * Sets the fraction of requests whose stage durations are reported in a <code>Server-Timing</code> response header.
+     * Defaults to <code>0.0</code>, which disables the header. The header is only added to successful responses.
+     *
+     * @param serverTimingSamplingRate the fraction between 0.0 and 1.0
+     */
+    public void setServerTimingSamplingRate(double serverTimingSamplingRate) {
+        Assert.isTrue(serverTimingSamplingRate >= 0 && serverTimingSamplingRate <= 1, "serverTimingSamplingRate must be between 0.0 and 1.0");
+        this.serverTimingSamplingRate = serverTimingSamplingRate;
+    }
+
     public List<String> getExpectedAuthenticationExtensionIds() {
         return expectedAuthenticationExtensionIds;
     }
@@ -18,11 +18,13 @@ package net.sharplab.springframework.security.fido.server.endpoint;
 
 import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.data.client.challenge.Challenge;
-import com.webauthn4j.data.client.challenge.DefaultChallenge;
 import com.webauthn4j.data.extension.client.AuthenticationExtensionsClientInputs;
 import com.webauthn4j.util.Base64UrlUtil;
+import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
+import net.sharplab.springframework.security.webauthn.challenge.HttpSessionChallengeRepository;
 import net.sharplab.springframework.security.webauthn.options.AttestationOptions;
 import net.sharplab.springframework.security.webauthn.options.OptionsProvider;
+import net.sharplab.springframework.security.webauthn.util.EntropyPool;
 import org.springframework.util.Assert;
 
 import javax.servlet.http.HttpServletRequest;
@@ -49,10 +51,25 @@ public class FidoServerAttestationOptionsEndpointFilter extends ServerEndpointFi
     // ================================================================================================
 
     private OptionsProvider optionsProvider;
+    private ChallengeRepository challengeRepository;
+    private EntropyPool entropyPool = null;
 
     public FidoServerAttestationOptionsEndpointFilter(ObjectConverter objectConverter, OptionsProvider optionsProvider) {
+        this(objectConverter, optionsProvider, new HttpSessionChallengeRepository());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param objectConverter     the {@link ObjectConverter}
+     * @param optionsProvider     the {@link OptionsProvider}
+     * @param challengeRepository the {@link ChallengeRepository} to generate challenges with
+     */
+    public FidoServerAttestationOptionsEndpointFilter(ObjectConverter objectConverter, OptionsProvider optionsProvider,
+                                                      ChallengeRepository challengeRepository) {
         super(FILTER_URL, objectConverter);
         this.optionsProvider = optionsProvider;
+        this.challengeRepository = challengeRepository;
         checkConfig();
     }
 
@@ -65,6 +82,7 @@ public class FidoServerAttestationOptionsEndpointFilter extends ServerEndpointFi
     @SuppressWarnings("squid:S2177")
     private void checkConfig() {
         Assert.notNull(optionsProvider, "optionsProvider must not be null");
+        Assert.notNull(challengeRepository, "challengeRepository must not be null");
     }
 
     @Override
@@ -79,7 +97,8 @@ public class FidoServerAttestationOptionsEndpointFilter extends ServerEndpointFi
                 .readValue(inputStream, ServerPublicKeyCredentialCreationOptionsRequest.class);
         String username = serverRequest.getUsername();
         String displayName = serverRequest.getDisplayName();
-        Challenge challenge = serverEndpointFilterUtil.encodeUsername(new DefaultChallenge(), username);
+        checkNotTimedOut();
+        Challenge challenge = serverEndpointFilterUtil.encodeUsername(challengeRepository.generateChallenge(), username);
         AttestationOptions attestationOptions = optionsProvider.getAttestationOptions(request, username, challenge);
         String userHandle;
         if (attestationOptions.getUser() == null) {
@@ -111,10 +130,30 @@ public class FidoServerAttestationOptionsEndpointFilter extends ServerEndpointFi
 
 
     private byte[] generateUserHandle() {
+        if (entropyPool != null) {
+            return entropyPool.nextBytes();
+        }
         UUID uuid = UUID.randomUUID();
         long hi = uuid.getMostSignificantBits();
         long lo = uuid.getLeastSignificantBits();
         return ByteBuffer.allocate(16).putLong(hi).putLong(lo).array();
     }
 
+    public ChallengeRepository getChallengeRepository() {
+        return challengeRepository;
+    }
+
+    public EntropyPool getEntropyPool() {
+        return entropyPool;
+    }
+
+    /**
+     * Sets the {@link EntropyPool} to draw user handles from. Challenges are generated by the {@link ChallengeRepository}.
+     *
+     * @param entropyPool entropy pool, or null to generate them directly
+     */
+    public void setEntropyPool(EntropyPool entropyPool) {
+        this.entropyPool = entropyPool;
+    }
+
 }
@@ -16,15 +16,14 @@
 
 package net.sharplab.springframework.security.fido.server.endpoint;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.webauthn4j.converter.AttestationObjectConverter;
-import com.webauthn4j.converter.CollectedClientDataConverter;
 import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.data.attestation.AttestationObject;
 import com.webauthn4j.data.client.CollectedClientData;
 import net.sharplab.springframework.security.fido.server.validator.ServerPublicKeyCredentialValidator;
+import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidationResponse;
 import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidator;
 import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
+import net.sharplab.springframework.security.webauthn.jfr.FlightRecorderUtil;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.util.Assert;
@@ -44,24 +43,19 @@ public class FidoServerAttestationResultEndpointFilter extends ServerEndpointFil
     public static final String FILTER_URL = "/webauthn/attestation/result";
 
     private WebAuthnUserDetailsService webAuthnUserDetailsService;
-    private AttestationObjectConverter attestationObjectConverter;
-    private CollectedClientDataConverter collectedClientDataConverter;
     private WebAuthnRegistrationRequestValidator webAuthnRegistrationRequestValidator;
-    private ServerPublicKeyCredentialValidator<ServerAuthenticatorAttestationResponse> serverPublicKeyCredentialValidator;
+    private ServerPublicKeyCredentialValidator<DecodedServerAuthenticatorAttestationResponse> serverPublicKeyCredentialValidator;
+    private ServerPublicKeyCredentialReader serverPublicKeyCredentialReader;
 
     private UsernameNotFoundHandler usernameNotFoundHandler = new DefaultUsernameNotFoundHandler();
-    private TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAttestationResponse>> credentialTypeRef
-            = new TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAttestationResponse>>() {
-    };
 
     public FidoServerAttestationResultEndpointFilter(
             ObjectConverter objectConverter,
             WebAuthnUserDetailsService webAuthnUserDetailsService,
             WebAuthnRegistrationRequestValidator webAuthnRegistrationRequestValidator) {
         super(FILTER_URL, objectConverter);
-        this.attestationObjectConverter = new AttestationObjectConverter(objectConverter);
-        this.collectedClientDataConverter = new CollectedClientDataConverter(objectConverter);
         this.serverPublicKeyCredentialValidator = new ServerPublicKeyCredentialValidator<>();
+        this.serverPublicKeyCredentialReader = new ServerPublicKeyCredentialReader();
 
         this.webAuthnUserDetailsService = webAuthnUserDetailsService;
         this.webAuthnRegistrationRequestValidator = webAuthnRegistrationRequestValidator;
@@ -88,19 +82,22 @@ public class FidoServerAttestationResultEndpointFilter extends ServerEndpointFil
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
-        ServerPublicKeyCredential<ServerAuthenticatorAttestationResponse> credential =
-                this.objectConverter.getJsonConverter().readValue(inputStream, credentialTypeRef);
+        DecodedServerPublicKeyCredential<DecodedServerAuthenticatorAttestationResponse> credential =
+                FlightRecorderUtil.recordStage(FlightRecorderUtil.REGISTRATION, "body-parse",
+                        () -> serverPublicKeyCredentialReader.readAttestationCredential(inputStream));
         serverPublicKeyCredentialValidator.validate(credential);
-        ServerAuthenticatorAttestationResponse response = credential.getResponse();
-        CollectedClientData collectedClientData = collectedClientDataConverter.convert(response.getClientDataJSON());
-        AttestationObject attestationObject = attestationObjectConverter.convert(response.getAttestationObject());
+        checkNotTimedOut();
+        DecodedServerAuthenticatorAttestationResponse response = credential.getResponse();
         Set<String> transports = Collections.emptySet();
-        webAuthnRegistrationRequestValidator.validate(
-                request,
-                response.getClientDataJSON(),
-                response.getAttestationObject(),
-                transports,
-                credential.getClientExtensionResults());
+        WebAuthnRegistrationRequestValidationResponse registrationRequestValidationResponse =
+                webAuthnRegistrationRequestValidator.validate(
+                        request,
+                        response.getClientDataJSON(),
+                        response.getAttestationObject(),
+                        transports,
+                        credential.getClientExtensionResults());
+        CollectedClientData collectedClientData = registrationRequestValidationResponse.getCollectedClientData();
+        AttestationObject attestationObject = registrationRequestValidationResponse.getAttestationObject();
 
         WebAuthnAuthenticator webAuthnAuthenticator =
                 new WebAuthnAuthenticator(
@@ -109,6 +106,7 @@ public class FidoServerAttestationResultEndpointFilter extends ServerEndpointFil
                         attestationObject.getAttestationStatement(),
                         attestationObject.getAuthenticatorData().getSignCount());
         String loginUsername = serverEndpointFilterUtil.decodeUsername(collectedClientData.getChallenge());
+        checkNotTimedOut();
         try {
             webAuthnUserDetailsService.loadUserByUsername(loginUsername);
         } catch (UsernameNotFoundException e) {
@@ -118,6 +116,15 @@ public class FidoServerAttestationResultEndpointFilter extends ServerEndpointFil
         return new AttestationResultSuccessResponse();
     }
 
+    public ServerPublicKeyCredentialReader getServerPublicKeyCredentialReader() {
+        return serverPublicKeyCredentialReader;
+    }
+
+    public void setServerPublicKeyCredentialReader(ServerPublicKeyCredentialReader serverPublicKeyCredentialReader) {
+        Assert.notNull(serverPublicKeyCredentialReader, "serverPublicKeyCredentialReader must not be null");
+        this.serverPublicKeyCredentialReader = serverPublicKeyCredentialReader;
+    }
+
     public UsernameNotFoundHandler getUsernameNotFoundHandler() {
         return usernameNotFoundHandler;
     }
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.fido.server.endpoint;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.Assert;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A bounded executor which runs the work of FIDO server endpoints, such as attestation and signature verification and
+ * the user store I/O, off the container thread.
+ * <p>
+ * An endpoint filter configured with a {@link ServerEndpointExecutor} starts an {@link AsyncContext}, hands the request
+ * to a fixed size pool and returns the container thread. When all the threads are busy and the queue is full, or when
+ * the request is not processed within the timeout, the request is answered with <code>503 Service Unavailable</code>
+ * instead of piling up. Requests which do not support async processing are processed on the container thread as before.
+ * <p>
+ * The {@link SecurityContext} of the container thread is copied to the worker thread, so that an authentication
+ * established by the endpoint is saved when the response is committed.
+ */
+public class ServerEndpointExecutor implements DisposableBean {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 100;
+    public static final long DEFAULT_TIMEOUT = 10000L;
+
+    //~ Instance fields
+    // ================================================================================================
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final ThreadPoolExecutor executor;
+    private final long timeout;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor with the default queue capacity and timeout
+     *
+     * @param poolSize number of threads processing requests
+     */
+    public ServerEndpointExecutor(int poolSize) {
+        this(poolSize, DEFAULT_QUEUE_CAPACITY, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param poolSize      number of threads processing requests
+     * @param queueCapacity maximum number of requests waiting for a thread
+     * @param timeout       time in milliseconds a request may wait and be processed before it is answered with
+     *                      <code>503 Service Unavailable</code>
+     */
+    public ServerEndpointExecutor(int poolSize, int queueCapacity, long timeout) {
+        Assert.isTrue(poolSize > 0, "poolSize must be positive");
+        Assert.isTrue(queueCapacity > 0, "queueCapacity must be positive");
+        Assert.isTrue(timeout > 0, "timeout must be positive");
+
+        this.timeout = timeout;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("webauthn-endpoint-");
+        threadFactory.setDaemon(true);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Processes the request asynchronously. Exactly one of the result callbacks of the {@link Completion} or the
+     * <code>503 Service Unavailable</code> response is written, and the {@link AsyncContext} is completed afterwards.
+     * The worker and the timeout claim the response with the same flag, and only the one claiming it touches the
+     * response. The task is skipped if the request times out while queued, and is given the flag to stop before work
+     * with side effects once the request has timed out.
+     *
+     * @param request                  request
+     * @param response                 response
+     * @param task                     the work to run on the executor
+     * @param completion               writes the response for the result of the task
+     * @param serverEndpointFilterUtil writes the <code>503 Service Unavailable</code> response
+     * @param <T>                      result type of the task
+     */
+    <T> void execute(HttpServletRequest request, HttpServletResponse response, Task<T> task,
+                     Completion<T> completion, ServerEndpointFilterUtil serverEndpointFilterUtil) {
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(timeout);
+        AtomicBoolean responded = new AtomicBoolean(false);
+        TaskHolder taskHolder = new TaskHolder();
+        asyncContext.addListener(new TimeoutListener(response, responded, taskHolder, serverEndpointFilterUtil));
+
+        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        securityContext.setAuthentication(SecurityContextHolder.getContext().getAuthentication());
+        try {
+            taskHolder.future = executor.submit(() -> run(asyncContext, response, securityContext, responded, task, completion));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Request is rejected as the endpoint executor is saturated", e);
+            if (responded.compareAndSet(false, true)) {
+                writeServiceUnavailableResponse(response, serverEndpointFilterUtil);
+                asyncContext.complete();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting for a thread
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of threads processing a request
+     *
+     * @return the number of active threads
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Stops accepting requests and waits for the requests in process
+     */
+    @Override
+    public void destroy() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                logger.warn("Endpoint executor did not terminate in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> void run(AsyncContext asyncContext, HttpServletResponse response, SecurityContext securityContext,
+                         AtomicBoolean responded, Task<T> task, Completion<T> completion) {
+        if (responded.get()) {
+            // answered by the timeout while queued, the request must not be touched anymore
+            return;
+        }
+        SecurityContextHolder.setContext(securityContext);
+        try {
+            T result;
+            try {
+                result = task.run(responded::get);
+            } catch (RuntimeException e) {
+                if (responded.compareAndSet(false, true)) {
+                    complete(asyncContext, response, () -> completion.onFailure(e));
+                }
+                return;
+            }
+            if (responded.compareAndSet(false, true)) {
+                complete(asyncContext, response, () -> completion.onSuccess(result));
+            }
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private void complete(AsyncContext asyncContext, HttpServletResponse response, ResponseWriter responseWriter) {
+        try {
+            responseWriter.write();
+            response.flushBuffer();
+        } catch (IOException | ServletException | RuntimeException e) {
+            logger.debug("Failed to write the response", e);
+        } finally {
+            asyncContext.complete();
+        }
+    }
+
+    private void writeServiceUnavailableResponse(HttpServletResponse response, ServerEndpointFilterUtil serverEndpointFilterUtil) {
+        try {
+            serverEndpointFilterUtil.writeServiceUnavailableResponse(response);
+        } catch (IOException e) {
+            logger.debug("Failed to write the response", e);
+        }
+    }
+
+    /**
+     * Work of an asynchronously processed request
+     *
+     * @param <T> result type of the task
+     */
+    interface Task<T> {
+
+        /**
+         * Runs the work
+         *
+         * @param responded returns <code>true</code> once the response is claimed by the timeout, after which the
+         *                  request and the response must not be touched
+         * @return the result
+         */
+        T run(BooleanSupplier responded);
+    }
+
+    /**
+     * Writes the response for the result of an asynchronously processed request
+     *
+     * @param <T> result type of the task
+     */
+    interface Completion<T> {
+
+        @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+        void onSuccess(T result) throws IOException, ServletException;
+
+        @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+        void onFailure(RuntimeException e) throws IOException, ServletException;
+    }
+
+    private interface ResponseWriter {
+        void write() throws IOException, ServletException;
+    }
+
+    private static class TaskHolder {
+        private volatile Future<?> future;
+    }
+
+    private class TimeoutListener implements AsyncListener {
+
+        private final HttpServletResponse response;
+        private final AtomicBoolean responded;
+        private final TaskHolder taskHolder;
+        private final ServerEndpointFilterUtil serverEndpointFilterUtil;
+
+        TimeoutListener(HttpServletResponse response, AtomicBoolean responded, TaskHolder taskHolder, ServerEndpointFilterUtil serverEndpointFilterUtil) {
+            this.response = response;
+            this.responded = responded;
+            this.taskHolder = taskHolder;
+            this.serverEndpointFilterUtil = serverEndpointFilterUtil;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // when the worker has already started writing the response, it completes the AsyncContext
+            if (responded.compareAndSet(false, true)) {
+                logger.debug("Request is not processed within the timeout");
+                cancelTask();
+                writeServiceUnavailableResponse(response, serverEndpointFilterUtil);
+                event.getAsyncContext().complete();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            // nop
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            cancelTask();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // nop
+        }
+
+        private void cancelTask() {
+            Future<?> future = taskHolder.future;
+            // a running task is not interrupted, as it stops by itself at its next check of the responded flag
+            if (future != null && future.cancel(false)) {
+                // frees the queue slot at once; a no-op if a worker has already taken the task
+                executor.remove((Runnable) future);
+            }
+        }
+    }
+}
@@ -18,6 +18,10 @@ package net.sharplab.springframework.security.fido.server.endpoint;
 
 import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.util.exception.WebAuthnException;
+import net.sharplab.springframework.security.webauthn.jfr.FlightRecorderUtil;
+import net.sharplab.springframework.security.webauthn.metrics.NoOpWebAuthnMetrics;
+import net.sharplab.springframework.security.webauthn.metrics.ServerTimingRecorder;
+import net.sharplab.springframework.security.webauthn.metrics.WebAuthnMetrics;
 import net.sharplab.springframework.security.webauthn.util.ExceptionUtil;
 import org.springframework.context.support.MessageSourceAccessor;
 import org.springframework.http.HttpMethod;
@@ -34,9 +38,16 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 
 public abstract class ServerEndpointFilterBase extends GenericFilterBean {
 
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final ThreadLocal<BooleanSupplier> RESPONDED = new ThreadLocal<>();
+
     //~ Instance fields
     // ================================================================================================
     protected MessageSourceAccessor messages = SpringSecurityMessageSource.getAccessor();
@@ -46,6 +57,9 @@ public abstract class ServerEndpointFilterBase extends GenericFilterBean {
      * Url this filter should get activated on.
      */
     private String filterProcessesUrl;
+    private ServerEndpointExecutor serverEndpointExecutor;
+    private WebAuthnMetrics metrics = NoOpWebAuthnMetrics.INSTANCE;
+    private double serverTimingSamplingRate = 0;
 
 
     public ServerEndpointFilterBase(
@@ -85,18 +99,68 @@ public abstract class ServerEndpointFilterBase extends GenericFilterBean {
                 return;
             }
 
-            try {
-                ServerResponse serverResponse = processRequest(httpServletRequest);
-                serverEndpointFilterUtil.writeResponse(httpServletResponse, serverResponse);
-            } catch (WebAuthnException e) {
-                throw ExceptionUtil.wrapWithAuthenticationException(e);
+            ServerTimingRecorder serverTimingRecorder = ServerTimingRecorder.sample(serverTimingSamplingRate);
+            if (serverEndpointExecutor != null && httpServletRequest.isAsyncSupported()) {
+                serverEndpointExecutor.execute(httpServletRequest, httpServletResponse,
+                        responded -> processRequestAsync(httpServletRequest, serverTimingRecorder, responded),
+                        new ServerEndpointExecutor.Completion<ServerResponse>() {
+                            // only called when the worker claimed the response
+                            @Override
+                            public void onSuccess(ServerResponse serverResponse) throws IOException {
+                                serverTimingRecorder.writeHeader(httpServletResponse);
+                                serverEndpointFilterUtil.writeResponse(httpServletResponse, serverResponse);
+                            }
+
+                            @Override
+                            public void onFailure(RuntimeException e) throws IOException {
+                                writeErrorResponse(httpServletResponse, e);
+                            }
+                        },
+                        serverEndpointFilterUtil);
+                return;
             }
+
+            ServerResponse serverResponse = timedProcessRequest(httpServletRequest, serverTimingRecorder);
+            serverTimingRecorder.writeHeader(httpServletResponse);
+            serverEndpointFilterUtil.writeResponse(httpServletResponse, serverResponse);
         } catch (RuntimeException e) {
-            logger.debug("RuntimeException is thrown", e);
-            serverEndpointFilterUtil.writeErrorResponse(fi.getResponse(), e);
+            writeErrorResponse(fi.getResponse(), e);
+        }
+    }
+
+    private ServerResponse processRequestAsync(HttpServletRequest request, ServerTimingRecorder serverTimingRecorder, BooleanSupplier responded) {
+        RESPONDED.set(responded);
+        try {
+            return timedProcessRequest(request, serverTimingRecorder);
+        } finally {
+            RESPONDED.remove();
+        }
+    }
+
+    private ServerResponse timedProcessRequest(HttpServletRequest request, ServerTimingRecorder serverTimingRecorder) {
+        return serverTimingRecorder.record(() -> metrics.time(WebAuthnMetrics.ENDPOINT_TIMER,
+                () -> FlightRecorderUtil.recordEndpoint(filterProcessesUrl, () -> processRequest(request)),
+                WebAuthnMetrics.ENDPOINT_TAG, filterProcessesUrl));
+    }
+
+    /**
+     * Throws {@link CancellationException} if the request, processed asynchronously, has already been answered by the
+     * timeout of the {@link ServerEndpointExecutor}. Endpoints call it before touching the request and before work with
+     * side effects, such as saving a challenge or an authenticator.
+     */
+    protected void checkNotTimedOut() {
+        BooleanSupplier responded = RESPONDED.get();
+        if (responded != null && responded.getAsBoolean()) {
+            throw new CancellationException("Request is already answered by the timeout");
         }
     }
 
+    private void writeErrorResponse(HttpServletResponse httpServletResponse, RuntimeException e) throws IOException {
+        RuntimeException exception = e instanceof WebAuthnException ? ExceptionUtil.wrapWithAuthenticationException((WebAuthnException) e, metrics) : e;
+        logger.debug("RuntimeException is thrown", exception);
+        serverEndpointFilterUtil.writeErrorResponse(httpServletResponse, exception);
+    }
+
     protected abstract ServerResponse processRequest(HttpServletRequest request);
 
     /**
@@ -118,4 +182,42 @@ public abstract class ServerEndpointFilterBase extends GenericFilterBean {
         this.filterProcessesUrl = filterProcessesUrl;
     }
 
+    public ServerEndpointExecutor getServerEndpointExecutor() {
+        return serverEndpointExecutor;
+    }
+
+    /**
+     * Sets the {@link ServerEndpointExecutor} to process requests asynchronously.
+     * Requests are processed on the container thread if it is <code>null</code>, which is the default.
+     *
+     * @param serverEndpointExecutor the executor to process requests
+     */
+    public void setServerEndpointExecutor(ServerEndpointExecutor serverEndpointExecutor) {
+        this.serverEndpointExecutor = serverEndpointExecutor;
+    }
+
+    public WebAuthnMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(WebAuthnMetrics metrics) {
+        Assert.notNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+    }
+
+    public double getServerTimingSamplingRate() {
+        return serverTimingSamplingRate;
+    }
+
+    /**
+     * Sets the fraction of requests whose stage durations are reported in a <code>Server-Timing</code> response header.
+     * Defaults to <code>0.0</code>, which disables the header. The header is only added to successful responses.
+     *
+     * @param serverTimingSamplingRate the fraction between 0.0 and 1.0
+     */
+    public void setServerTimingSamplingRate(double serverTimingSamplingRate) {
+        Assert.isTrue(serverTimingSamplingRate >= 0 && serverTimingSamplingRate <= 1, "serverTimingSamplingRate must be between 0.0 and 1.0");
+        this.serverTimingSamplingRate = serverTimingSamplingRate;
+    }
+
 }
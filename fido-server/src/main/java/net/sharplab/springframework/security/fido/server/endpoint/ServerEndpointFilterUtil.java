@@ -22,6 +22,7 @@ import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.data.UserVerificationRequirement;
 import com.webauthn4j.data.client.challenge.Challenge;
 import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import net.sharplab.springframework.security.webauthn.endpoint.JsonResponseWriter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.security.authentication.InsufficientAuthenticationException;
@@ -34,37 +35,47 @@ class ServerEndpointFilterUtil {
 
     protected final Log logger = LogFactory.getLog(getClass());
 
-    private JsonConverter jsonConverter;
     private CborConverter cborConverter;
+    private JsonResponseWriter jsonResponseWriter;
+    private byte[] anonymousAccessErrorResponse;
+    private byte[] authenticationFailedErrorResponse;
+    private byte[] internalErrorResponse;
+    private byte[] serviceUnavailableErrorResponse;
 
     ServerEndpointFilterUtil(ObjectConverter objectConverter) {
-        this.jsonConverter = objectConverter.getJsonConverter();
+        JsonConverter jsonConverter = objectConverter.getJsonConverter();
         this.cborConverter = objectConverter.getCborConverter();
+        this.jsonResponseWriter = new JsonResponseWriter(jsonConverter);
+        this.anonymousAccessErrorResponse = jsonResponseWriter.preSerialize(new ErrorResponse("Anonymous access is prohibited"));
+        this.authenticationFailedErrorResponse = jsonResponseWriter.preSerialize(new ErrorResponse("Authentication failed"));
+        this.internalErrorResponse = jsonResponseWriter.preSerialize(new ErrorResponse("The server encountered an internal error"));
+        this.serviceUnavailableErrorResponse = jsonResponseWriter.preSerialize(new ErrorResponse("The server is too busy to process the request"));
     }
 
     void writeResponse(HttpServletResponse httpServletResponse, ServerResponse response) throws IOException {
-        String responseText = jsonConverter.writeValueAsString(response);
-        httpServletResponse.setContentType("application/json");
-        httpServletResponse.getWriter().print(responseText);
+        jsonResponseWriter.write(httpServletResponse, response);
     }
 
     void writeErrorResponse(HttpServletResponse httpServletResponse, RuntimeException e) throws IOException {
-        ErrorResponse errorResponse;
+        byte[] errorResponse;
         int statusCode;
         if (e instanceof InsufficientAuthenticationException) {
-            errorResponse = new ErrorResponse("Anonymous access is prohibited");
+            errorResponse = anonymousAccessErrorResponse;
             statusCode = HttpServletResponse.SC_FORBIDDEN;
         } else if (e instanceof AuthenticationException || e instanceof IllegalArgumentException) {
-            errorResponse = new ErrorResponse("Authentication failed");
+            errorResponse = authenticationFailedErrorResponse;
             statusCode = HttpServletResponse.SC_FORBIDDEN;
         } else {
-            errorResponse = new ErrorResponse("The server encountered an internal error");
+            errorResponse = internalErrorResponse;
             statusCode = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
         }
-        String errorResponseText = jsonConverter.writeValueAsString(errorResponse);
-        httpServletResponse.setContentType("application/json");
-        httpServletResponse.getWriter().print(errorResponseText);
         httpServletResponse.setStatus(statusCode);
+        jsonResponseWriter.write(httpServletResponse, errorResponse);
+    }
+
+    void writeServiceUnavailableResponse(HttpServletResponse httpServletResponse) throws IOException {
+        httpServletResponse.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        jsonResponseWriter.write(httpServletResponse, serviceUnavailableErrorResponse);
     }
 
     Challenge encodeUsername(Challenge challenge, String username) {
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.fido.server.endpoint;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.webauthn4j.data.PublicKeyCredentialType;
+import net.sharplab.springframework.security.webauthn.exception.ConstraintViolationException;
+import net.sharplab.springframework.security.webauthn.exception.DataConversionException;
+import org.springframework.util.Assert;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Streaming reader for the credential posted to the FIDO server result endpoints.
+ * <p>
+ * Base64url members are decoded straight from the parser's character buffer into byte arrays,
+ * so no intermediate {@link String} is created for them. Each member has an upper bound on its
+ * decoded length, which is checked before the member is decoded, and the whole credential has an
+ * upper bound on its size, which is checked while it is read, so that an oversized member is
+ * rejected without being buffered in full. Base64url members must be canonical: unused trailing
+ * bits must be zero.
+ */
+public class ServerPublicKeyCredentialReader {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final byte[] BASE64URL_TABLE = new byte[128];
+
+    static {
+        Arrays.fill(BASE64URL_TABLE, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64URL_TABLE[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    // ~ Instance fields
+    // ================================================================================================
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    private int maxCredentialLength = 256 * 1024;
+    private int maxCredentialIdLength = 1023;
+    private int maxClientDataJSONLength = 16 * 1024;
+    private int maxAttestationObjectLength = 64 * 1024;
+    private int maxAuthenticatorDataLength = 16 * 1024;
+    private int maxSignatureLength = 2048;
+    private int maxUserHandleLength = 64;
+    private int maxClientExtensionResultsLength = 16 * 1024;
+
+    // ~ Methods
+    // ========================================================================================================
+
+    public DecodedServerPublicKeyCredential<DecodedServerAuthenticatorAttestationResponse> readAttestationCredential(InputStream inputStream) {
+        return read(inputStream, this::readAttestationResponse);
+    }
+
+    public DecodedServerPublicKeyCredential<DecodedServerAuthenticatorAssertionResponse> readAssertionCredential(InputStream inputStream) {
+        return read(inputStream, this::readAssertionResponse);
+    }
+
+    private <T extends ServerAuthenticatorResponse> DecodedServerPublicKeyCredential<T> read(InputStream inputStream, ResponseReader<T> responseReader) {
+        Assert.notNull(inputStream, "inputStream must not be null");
+        try (JsonParser parser = jsonFactory.createParser(new LimitedInputStream(inputStream, maxCredentialLength))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new DataConversionException("credential must be a JSON object");
+            }
+            byte[] id = null;
+            byte[] rawId = null;
+            PublicKeyCredentialType type = null;
+            T response = null;
+            String clientExtensionResults = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                switch (fieldName) {
+                    case "id":
+                        id = readBase64url(parser, fieldName, maxCredentialIdLength);
+                        break;
+                    case "rawId":
+                        rawId = readBase64url(parser, fieldName, maxCredentialIdLength);
+                        break;
+                    case "type":
+                        type = readType(parser);
+                        break;
+                    case "response":
+                        response = readResponse(parser, responseReader);
+                        break;
+                    case "clientExtensionResults":
+                        clientExtensionResults = readString(parser, fieldName, maxClientExtensionResultsLength);
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+            return new DecodedServerPublicKeyCredential<>(id, rawId, type, response, clientExtensionResults);
+        } catch (JsonProcessingException e) {
+            throw new DataConversionException("credential cannot be parsed", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T readResponse(JsonParser parser, ResponseReader<T> responseReader) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new DataConversionException("response must be a JSON object");
+        }
+        return responseReader.read(parser);
+    }
+
+    private DecodedServerAuthenticatorAttestationResponse readAttestationResponse(JsonParser parser) throws IOException {
+        byte[] clientDataJSON = null;
+        byte[] attestationObject = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            switch (fieldName) {
+                case "clientDataJSON":
+                    clientDataJSON = readBase64url(parser, fieldName, maxClientDataJSONLength);
+                    break;
+                case "attestationObject":
+                    attestationObject = readBase64url(parser, fieldName, maxAttestationObjectLength);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return new DecodedServerAuthenticatorAttestationResponse(clientDataJSON, attestationObject);
+    }
+
+    private DecodedServerAuthenticatorAssertionResponse readAssertionResponse(JsonParser parser) throws IOException {
+        byte[] clientDataJSON = null;
+        byte[] authenticatorData = null;
+        byte[] signature = null;
+        byte[] userHandle = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            switch (fieldName) {
+                case "clientDataJSON":
+                    clientDataJSON = readBase64url(parser, fieldName, maxClientDataJSONLength);
+                    break;
+                case "authenticatorData":
+                    authenticatorData = readBase64url(parser, fieldName, maxAuthenticatorDataLength);
+                    break;
+                case "signature":
+                    signature = readBase64url(parser, fieldName, maxSignatureLength);
+                    break;
+                case "userHandle":
+                    userHandle = readBase64url(parser, fieldName, maxUserHandleLength);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return new DecodedServerAuthenticatorAssertionResponse(clientDataJSON, authenticatorData, signature, userHandle);
+    }
+
+    private PublicKeyCredentialType readType(JsonParser parser) throws IOException {
+        String value = readString(parser, "type", 64);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return PublicKeyCredentialType.create(value);
+        } catch (IllegalArgumentException e) {
+            throw new DataConversionException("type is not a valid PublicKeyCredentialType", e);
+        }
+    }
+
+    private String readString(JsonParser parser, String fieldName, int maxLength) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+            throw new DataConversionException(fieldName + " must be a string");
+        }
+        if (parser.getTextLength() > maxLength) {
+            throw new ConstraintViolationException(fieldName + " must not exceed " + maxLength + " characters");
+        }
+        return parser.getText();
+    }
+
+    private byte[] readBase64url(JsonParser parser, String fieldName, int maxLength) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+            throw new DataConversionException(fieldName + " must be a base64url string");
+        }
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        // trailing padding is tolerated, as java.util.Base64's URL decoder does
+        for (int i = 0; i < 2 && length > 0 && chars[offset + length - 1] == '='; i++) {
+            length--;
+        }
+        if (length % 4 == 1) {
+            throw new DataConversionException(fieldName + " cannot be parsed as base64url");
+        }
+        long decodedLength = length * 3L / 4;
+        if (decodedLength > maxLength) {
+            throw new ConstraintViolationException(fieldName + " must not exceed " + maxLength + " bytes");
+        }
+        return decodeBase64url(chars, offset, length, (int) decodedLength, fieldName);
+    }
+
+    private byte[] decodeBase64url(char[] chars, int offset, int length, int decodedLength, String fieldName) {
+        byte[] decoded = new byte[decodedLength];
+        int bits = 0;
+        int bitCount = 0;
+        int position = 0;
+        for (int i = offset; i < offset + length; i++) {
+            char c = chars[i];
+            int value = c < 128 ? BASE64URL_TABLE[c] : -1;
+            if (value < 0) {
+                throw new DataConversionException(fieldName + " cannot be parsed as base64url");
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                decoded[position++] = (byte) (bits >> bitCount);
+                bits &= (1 << bitCount) - 1;
+            }
+        }
+        // the bits left over the last byte must be zero, so that each byte array has a single encoding
+        if (bits != 0) {
+            throw new DataConversionException(fieldName + " is not a canonical base64url string");
+        }
+        return decoded;
+    }
+
+    public int getMaxCredentialLength() {
+        return maxCredentialLength;
+    }
+
+    /**
+     * Sets the upper bound on the size in bytes of the whole credential, unknown members included
+     *
+     * @param maxCredentialLength maximum number of bytes read from the input stream
+     */
+    public void setMaxCredentialLength(int maxCredentialLength) {
+        Assert.isTrue(maxCredentialLength > 0, "maxCredentialLength must be positive");
+        this.maxCredentialLength = maxCredentialLength;
+    }
+
+    public int getMaxCredentialIdLength() {
+        return maxCredentialIdLength;
+    }
+
+    public void setMaxCredentialIdLength(int maxCredentialIdLength) {
+        Assert.isTrue(maxCredentialIdLength > 0, "maxCredentialIdLength must be positive");
+        this.maxCredentialIdLength = maxCredentialIdLength;
+    }
+
+    public int getMaxClientDataJSONLength() {
+        return maxClientDataJSONLength;
+    }
+
+    public void setMaxClientDataJSONLength(int maxClientDataJSONLength) {
+        Assert.isTrue(maxClientDataJSONLength > 0, "maxClientDataJSONLength must be positive");
+        this.maxClientDataJSONLength = maxClientDataJSONLength;
+    }
+
+    public int getMaxAttestationObjectLength() {
+        return maxAttestationObjectLength;
+    }
+
+    public void setMaxAttestationObjectLength(int maxAttestationObjectLength) {
+        Assert.isTrue(maxAttestationObjectLength > 0, "maxAttestationObjectLength must be positive");
+        this.maxAttestationObjectLength = maxAttestationObjectLength;
+    }
+
+    public int getMaxAuthenticatorDataLength() {
+        return maxAuthenticatorDataLength;
+    }
+
+    public void setMaxAuthenticatorDataLength(int maxAuthenticatorDataLength) {
+        Assert.isTrue(maxAuthenticatorDataLength > 0, "maxAuthenticatorDataLength must be positive");
+        this.maxAuthenticatorDataLength = maxAuthenticatorDataLength;
+    }
+
+    public int getMaxSignatureLength() {
+        return maxSignatureLength;
+    }
+
+    public void setMaxSignatureLength(int maxSignatureLength) {
+        Assert.isTrue(maxSignatureLength > 0, "maxSignatureLength must be positive");
+        this.maxSignatureLength = maxSignatureLength;
+    }
+
+    public int getMaxUserHandleLength() {
+        return maxUserHandleLength;
+    }
+
+    public void setMaxUserHandleLength(int maxUserHandleLength) {
+        Assert.isTrue(maxUserHandleLength > 0, "maxUserHandleLength must be positive");
+        this.maxUserHandleLength = maxUserHandleLength;
+    }
+
+    public int getMaxClientExtensionResultsLength() {
+        return maxClientExtensionResultsLength;
+    }
+
+    public void setMaxClientExtensionResultsLength(int maxClientExtensionResultsLength) {
+        Assert.isTrue(maxClientExtensionResultsLength > 0, "maxClientExtensionResultsLength must be positive");
+        this.maxClientExtensionResultsLength = maxClientExtensionResultsLength;
+    }
+
+    /**
+     * Fails the read once more than the given number of bytes have been consumed
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private final int maxLength;
+        private long remaining;
+
+        LimitedInputStream(InputStream inputStream, int maxLength) {
+            super(inputStream);
+            this.maxLength = maxLength;
+            this.remaining = maxLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                consume(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            // reads one byte over the limit, so that a credential of exactly the maximum length is accepted
+            int count = super.read(buffer, offset, (int) Math.min(length, remaining + 1));
+            if (count > 0) {
+                consume(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = super.skip(Math.min(n, remaining + 1));
+            consume(count);
+            return count;
+        }
+
+        private void consume(long count) {
+            remaining -= count;
+            if (remaining < 0) {
+                throw new ConstraintViolationException("credential must not exceed " + maxLength + " bytes");
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+}
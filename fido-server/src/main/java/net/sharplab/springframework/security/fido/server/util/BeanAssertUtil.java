@@ -16,6 +16,7 @@
 
 package net.sharplab.springframework.security.fido.server.util;
 
+import net.sharplab.springframework.security.fido.server.endpoint.DecodedServerPublicKeyCredential;
 import net.sharplab.springframework.security.fido.server.endpoint.ServerPublicKeyCredential;
 import net.sharplab.springframework.security.webauthn.exception.ConstraintViolationException;
 
@@ -42,4 +43,23 @@ public class BeanAssertUtil {
             throw new ConstraintViolationException("response must not be null");
         }
     }
+
+    public static void validate(DecodedServerPublicKeyCredential decodedServerPublicKeyCredential) {
+
+        if (decodedServerPublicKeyCredential == null) {
+            throw new ConstraintViolationException("serverPublicKeyCredential must not be null");
+        }
+        if (decodedServerPublicKeyCredential.getId() == null) {
+            throw new ConstraintViolationException("id must not be null");
+        }
+        if (decodedServerPublicKeyCredential.getRawId() == null) {
+            throw new ConstraintViolationException("rawId must not be null");
+        }
+        if (decodedServerPublicKeyCredential.getType() == null) {
+            throw new ConstraintViolationException("type must not be null");
+        }
+        if (decodedServerPublicKeyCredential.getResponse() == null) {
+            throw new ConstraintViolationException("response must not be null");
+        }
+    }
 }
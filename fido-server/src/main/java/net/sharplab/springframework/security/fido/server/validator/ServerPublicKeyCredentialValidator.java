@@ -17,11 +17,14 @@
 package net.sharplab.springframework.security.fido.server.validator;
 
 import com.webauthn4j.util.Base64UrlUtil;
+import net.sharplab.springframework.security.fido.server.endpoint.DecodedServerPublicKeyCredential;
 import net.sharplab.springframework.security.fido.server.endpoint.ServerAuthenticatorResponse;
 import net.sharplab.springframework.security.fido.server.endpoint.ServerPublicKeyCredential;
 import net.sharplab.springframework.security.fido.server.util.BeanAssertUtil;
 import net.sharplab.springframework.security.webauthn.exception.BadCredentialIdException;
 
+import java.util.Arrays;
+
 public class ServerPublicKeyCredentialValidator<T extends ServerAuthenticatorResponse> {
 
     public void validate(ServerPublicKeyCredential<T> serverPublicKeyCredential) {
@@ -38,4 +41,13 @@ public class ServerPublicKeyCredentialValidator<T extends ServerAuthenticatorRes
             throw new BadCredentialIdException("id cannot be parsed as base64url", e);
         }
     }
+
+    public void validate(DecodedServerPublicKeyCredential<T> decodedServerPublicKeyCredential) {
+
+        BeanAssertUtil.validate(decodedServerPublicKeyCredential);
+
+        if (!Arrays.equals(decodedServerPublicKeyCredential.getId(), decodedServerPublicKeyCredential.getRawId())) {
+            throw new BadCredentialIdException("id and rawId doesn't match");
+        }
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.fido.server.config.configurer;
+
+import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidator;
+import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
+import net.sharplab.springframework.security.webauthn.challenge.ChallengeSealingKey;
+import net.sharplab.springframework.security.webauthn.challenge.InMemoryChallengeStore;
+import net.sharplab.springframework.security.webauthn.challenge.SealedChallengeRepository;
+import net.sharplab.springframework.security.webauthn.challenge.StoredChallengeRepository;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
+import org.junit.Test;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+import static net.sharplab.springframework.security.fido.server.config.configurer.FidoServerConfigurer.fidoServer;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.cookie;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class FidoServerConfigurerSpringTest {
+
+    @Test
+    public void attestationOptions_with_SealedChallengeRepository_test() throws Exception {
+        perform(SealedChallengeRepositoryConfig.class, "/webauthn/attestation/options", "WEBAUTHN-CHALLENGE");
+    }
+
+    @Test
+    public void assertionOptions_with_SealedChallengeRepository_test() throws Exception {
+        perform(SealedChallengeRepositoryConfig.class, "/webauthn/assertion/options", "WEBAUTHN-CHALLENGE");
+    }
+
+    @Test
+    public void attestationOptions_with_StoredChallengeRepository_test() throws Exception {
+        perform(StoredChallengeRepositoryConfig.class, "/webauthn/attestation/options", "WEBAUTHN-CHALLENGE-HANDLE");
+    }
+
+    @Test
+    public void assertionOptions_with_StoredChallengeRepository_test() throws Exception {
+        perform(StoredChallengeRepositoryConfig.class, "/webauthn/assertion/options", "WEBAUTHN-CHALLENGE-HANDLE");
+    }
+
+    @Test
+    public void attestationOptions_with_configured_SealedChallengeRepository_test() throws Exception {
+        perform(ConfiguredSealedChallengeRepositoryConfig.class, "/webauthn/attestation/options", "WEBAUTHN-CHALLENGE");
+    }
+
+    @Test
+    public void assertionOptions_with_configured_SealedChallengeRepository_test() throws Exception {
+        perform(ConfiguredSealedChallengeRepositoryConfig.class, "/webauthn/assertion/options", "WEBAUTHN-CHALLENGE");
+    }
+
+    private void perform(Class<?> config, String url, String cookieName) throws Exception {
+        try (AnnotationConfigWebApplicationContext context = new AnnotationConfigWebApplicationContext()) {
+            context.setServletContext(new MockServletContext());
+            context.register(config);
+            context.refresh();
+            MockMvc mvc = MockMvcBuilders.standaloneSetup()
+                    .addFilter(context.getBean(FilterChainProxy.class))
+                    .build();
+
+            mvc
+                    .perform(post(url).contentType(MediaType.APPLICATION_JSON).content("{\"username\":\"john\",\"displayName\":\"john\"}"))
+                    .andExpect(status().isOk())
+                    .andExpect(cookie().exists(cookieName));
+        }
+    }
+
+    @EnableWebSecurity
+    static class SealedChallengeRepositoryConfig extends FidoServerConfig {
+
+        @Bean
+        public ChallengeRepository challengeRepository() {
+            return new SealedChallengeRepository(new ChallengeSealingKey("key", new byte[32]));
+        }
+    }
+
+    @EnableWebSecurity
+    static class StoredChallengeRepositoryConfig extends FidoServerConfig {
+
+        @Bean
+        public ChallengeRepository challengeRepository() {
+            return new StoredChallengeRepository(new InMemoryChallengeStore());
+        }
+    }
+
+    @EnableWebSecurity
+    static class ConfiguredSealedChallengeRepositoryConfig extends FidoServerConfig {
+
+        @Override
+        protected void configureFidoServer(FidoServerConfigurer<HttpSecurity> fidoServer) {
+            fidoServer.challengeRepository(new SealedChallengeRepository(new ChallengeSealingKey("key", new byte[32])));
+        }
+    }
+
+    @Configuration
+    abstract static class FidoServerConfig extends WebSecurityConfigurerAdapter {
+
+        private WebAuthnUserDetailsService webAuthnUserDetailsService = mock(WebAuthnUserDetailsService.class);
+
+        @Bean
+        public WebAuthnUserDetailsService webAuthnUserDetailsService() {
+            return webAuthnUserDetailsService;
+        }
+
+        @Override
+        protected void configure(HttpSecurity http) throws Exception {
+            FidoServerConfigurer<HttpSecurity> fidoServer = http.apply(fidoServer());
+            configureFidoServer(fidoServer);
+            fidoServer
+                    .fidoServerAttestationResultEndpointConfig()
+                    .webAuthnUserDetailsService(webAuthnUserDetailsService)
+                    .webAuthnRegistrationRequestValidator(mock(WebAuthnRegistrationRequestValidator.class));
+            http.authorizeRequests().anyRequest().permitAll();
+            http.csrf().disable();
+        }
+
+        protected void configureFidoServer(FidoServerConfigurer<HttpSecurity> fidoServer) {
+            // nop
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.fido.server.endpoint;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServerEndpointExecutorTest {
+
+    private ServerEndpointFilterUtil serverEndpointFilterUtil = new ServerEndpointFilterUtil(new ObjectConverter());
+    private ServerEndpointExecutor target = new ServerEndpointExecutor(1, 1, 1000L);
+
+    @After
+    public void tearDown() {
+        target.destroy();
+    }
+
+    @Test
+    public void execute_test() {
+        MockHttpServletRequest request = createRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        target.execute(request, response, responded -> new AttestationResultSuccessResponse(), new ResponseWritingCompletion(response), serverEndpointFilterUtil);
+        target.destroy();
+
+        assertThat(request.isAsyncStarted()).isFalse();
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+        assertThat(response.getContentAsByteArray()).isNotEmpty();
+    }
+
+    @Test
+    public void execute_with_failing_task_test() {
+        MockHttpServletRequest request = createRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        target.execute(request, response, responded -> {
+            throw new IllegalStateException();
+        }, new ResponseWritingCompletion(response), serverEndpointFilterUtil);
+        target.destroy();
+
+        assertThat(request.isAsyncStarted()).isFalse();
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    }
+
+    @Test
+    public void execute_with_saturated_executor_test() throws IOException {
+        CountDownLatch latch = new CountDownLatch(1);
+        // occupy the only thread and the only queue slot
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            target.execute(createRequest(), response, responded -> await(latch), new ResponseWritingCompletion(response), serverEndpointFilterUtil);
+        }
+
+        MockHttpServletRequest request = createRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        target.execute(request, response, responded -> new AttestationResultSuccessResponse(), new ResponseWritingCompletion(response), serverEndpointFilterUtil);
+        latch.countDown();
+
+        assertThat(request.isAsyncStarted()).isFalse();
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        assertThat(response.getContentAsString()).isEqualTo("{\"status\":\"failed\",\"errorMessage\":\"The server is too busy to process the request\"}");
+    }
+
+    @Test
+    public void execute_with_timeout_test() throws IOException {
+        CountDownLatch latch = new CountDownLatch(1);
+        MockHttpServletRequest request = createRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        target.execute(request, response, responded -> await(latch), new ResponseWritingCompletion(response), serverEndpointFilterUtil);
+
+        MockAsyncContext asyncContext = (MockAsyncContext) request.getAsyncContext();
+        assertThat(asyncContext.getTimeout()).isEqualTo(1000L);
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext, request, response));
+        }
+        latch.countDown();
+        target.destroy();
+
+        assertThat(request.isAsyncStarted()).isFalse();
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        assertThat(response.getContentAsString()).isEqualTo("{\"status\":\"failed\",\"errorMessage\":\"The server is too busy to process the request\"}");
+    }
+
+    @Test
+    public void task_sees_timeout_and_worker_does_not_write_response_test() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch timedOut = new CountDownLatch(1);
+        AtomicBoolean respondedSeenByTask = new AtomicBoolean();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        AtomicBoolean completionCalled = new AtomicBoolean();
+        MockHttpServletRequest request = createRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        target.execute(request, response, responded -> {
+            started.countDown();
+            await(timedOut);
+            respondedSeenByTask.set(responded.getAsBoolean());
+            interrupted.set(Thread.currentThread().isInterrupted());
+            return new AttestationResultSuccessResponse();
+        }, new ServerEndpointExecutor.Completion<ServerResponse>() {
+            @Override
+            public void onSuccess(ServerResponse result) {
+                completionCalled.set(true);
+            }
+
+            @Override
+            public void onFailure(RuntimeException e) {
+                completionCalled.set(true);
+            }
+        }, serverEndpointFilterUtil);
+
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+        fireTimeout(request, response);
+        timedOut.countDown();
+        target.destroy();
+
+        assertThat(respondedSeenByTask).isTrue();
+        assertThat(interrupted).isFalse();
+        assertThat(completionCalled).isFalse();
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    public void task_timed_out_while_queued_is_skipped_test() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        MockHttpServletResponse busyResponse = new MockHttpServletResponse();
+        target.execute(createRequest(), busyResponse, responded -> await(latch), new ResponseWritingCompletion(busyResponse), serverEndpointFilterUtil);
+        AtomicBoolean taskRun = new AtomicBoolean();
+        MockHttpServletRequest request = createRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        target.execute(request, response, responded -> {
+            taskRun.set(true);
+            return new AttestationResultSuccessResponse();
+        }, new ResponseWritingCompletion(response), serverEndpointFilterUtil);
+
+        fireTimeout(request, response);
+        assertThat(target.getQueueDepth()).isZero();
+        latch.countDown();
+        target.destroy();
+
+        assertThat(taskRun).isFalse();
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    private void fireTimeout(MockHttpServletRequest request, MockHttpServletResponse response) throws IOException {
+        MockAsyncContext asyncContext = (MockAsyncContext) request.getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext, request, response));
+        }
+    }
+
+    private MockHttpServletRequest createRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/webauthn/attestation/result");
+        request.setAsyncSupported(true);
+        return request;
+    }
+
+    private ServerResponse await(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new AttestationResultSuccessResponse();
+    }
+
+    private class ResponseWritingCompletion implements ServerEndpointExecutor.Completion<ServerResponse> {
+
+        private final HttpServletResponse response;
+
+        ResponseWritingCompletion(HttpServletResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void onSuccess(ServerResponse result) throws IOException {
+            serverEndpointFilterUtil.writeResponse(response, result);
+        }
+
+        @Override
+        public void onFailure(RuntimeException e) throws IOException {
+            serverEndpointFilterUtil.writeErrorResponse(response, e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.fido.server.endpoint;
+
+import com.webauthn4j.data.PublicKeyCredentialType;
+import net.sharplab.springframework.security.webauthn.exception.ConstraintViolationException;
+import net.sharplab.springframework.security.webauthn.exception.DataConversionException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for ServerPublicKeyCredentialReader
+ */
+public class ServerPublicKeyCredentialReaderTest {
+
+    private ServerPublicKeyCredentialReader target = new ServerPublicKeyCredentialReader();
+
+    @Test
+    public void readAttestationCredential_test() {
+        InputStream inputStream = toInputStream("{\"id\":\"AQID\",\"rawId\":\"AQID\",\"type\":\"public-key\"," +
+                "\"response\":{\"clientDataJSON\":\"BAUG\",\"attestationObject\":\"BwgJCg\",\"unknown\":{\"a\":[1,2]}}," +
+                "\"clientExtensionResults\":\"{}\"}");
+
+        DecodedServerPublicKeyCredential<DecodedServerAuthenticatorAttestationResponse> credential =
+                target.readAttestationCredential(inputStream);
+
+        assertThat(credential.getId()).containsExactly(0x01, 0x02, 0x03);
+        assertThat(credential.getRawId()).containsExactly(0x01, 0x02, 0x03);
+        assertThat(credential.getType()).isEqualTo(PublicKeyCredentialType.PUBLIC_KEY);
+        assertThat(credential.getResponse().getClientDataJSON()).containsExactly(0x04, 0x05, 0x06);
+        assertThat(credential.getResponse().getAttestationObject()).containsExactly(0x07, 0x08, 0x09, 0x0A);
+        assertThat(credential.getClientExtensionResults()).isEqualTo("{}");
+    }
+
+    @Test
+    public void readAssertionCredential_test() {
+        InputStream inputStream = toInputStream("{\"id\":\"AQID\",\"rawId\":\"AQID\",\"type\":\"public-key\"," +
+                "\"response\":{\"clientDataJSON\":\"BAUG\",\"authenticatorData\":\"-_8\",\"signature\":\"AA==\",\"userHandle\":\"\"}}");
+
+        DecodedServerPublicKeyCredential<DecodedServerAuthenticatorAssertionResponse> credential =
+                target.readAssertionCredential(inputStream);
+
+        assertThat(credential.getResponse().getClientDataJSON()).containsExactly(0x04, 0x05, 0x06);
+        assertThat(credential.getResponse().getAuthenticatorData()).containsExactly(0xFB, 0xFF);
+        assertThat(credential.getResponse().getSignature()).containsExactly(0x00);
+        assertThat(credential.getResponse().getUserHandle()).isEmpty();
+        assertThat(credential.getClientExtensionResults()).isNull();
+    }
+
+    @Test(expected = ConstraintViolationException.class)
+    public void readAssertionCredential_with_too_long_field_test() {
+        target.setMaxSignatureLength(2);
+        InputStream inputStream = toInputStream("{\"id\":\"AQID\",\"rawId\":\"AQID\",\"type\":\"public-key\"," +
+                "\"response\":{\"clientDataJSON\":\"BAUG\",\"authenticatorData\":\"BAUG\",\"signature\":\"AQID\"}}");
+
+        target.readAssertionCredential(inputStream);
+    }
+
+    @Test(expected = DataConversionException.class)
+    public void readAttestationCredential_with_invalid_base64url_test() {
+        InputStream inputStream = toInputStream("{\"id\":\"AQ+D\",\"rawId\":\"AQ+D\",\"type\":\"public-key\"}");
+
+        target.readAttestationCredential(inputStream);
+    }
+
+    @Test(expected = DataConversionException.class)
+    public void readAttestationCredential_with_non_canonical_base64url_test() {
+        // "AQJ" decodes to the same bytes as "AQI", but with a non-zero trailing bit
+        InputStream inputStream = toInputStream("{\"id\":\"AQJ\",\"rawId\":\"AQI\",\"type\":\"public-key\"}");
+
+        target.readAttestationCredential(inputStream);
+    }
+
+    @Test(expected = ConstraintViolationException.class)
+    public void readAttestationCredential_with_too_long_credential_test() {
+        target.setMaxCredentialLength(1024);
+        StringBuilder unknown = new StringBuilder();
+        for (int i = 0; i < 2048; i++) {
+            unknown.append('A');
+        }
+        InputStream inputStream = toInputStream("{\"id\":\"AQID\",\"unknown\":\"" + unknown + "\"}");
+
+        target.readAttestationCredential(inputStream);
+    }
+
+    @Test
+    public void readAttestationCredential_with_credential_of_maximum_length_test() {
+        String value = "{\"id\":\"AQID\",\"rawId\":\"AQID\"}";
+        target.setMaxCredentialLength(value.length());
+
+        assertThat(target.readAttestationCredential(toInputStream(value)).getId()).containsExactly(0x01, 0x02, 0x03);
+    }
+
+    @Test(expected = DataConversionException.class)
+    public void readAttestationCredential_with_malformed_json_test() {
+        target.readAttestationCredential(toInputStream("{\"id\":"));
+    }
+
+    private InputStream toInputStream(String value) {
+        return new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive;
+
+import com.webauthn4j.WebAuthnManager;
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.data.AuthenticationParameters;
+import com.webauthn4j.data.AuthenticationRequest;
+import com.webauthn4j.util.exception.WebAuthnException;
+import net.sharplab.springframework.security.webauthn.SpringSecurityWebAuthnMessageSource;
+import net.sharplab.springframework.security.webauthn.WebAuthnAssertionAuthenticationToken;
+import net.sharplab.springframework.security.webauthn.WebAuthnAuthenticationProvider;
+import net.sharplab.springframework.security.webauthn.WebAuthnAuthenticationToken;
+import net.sharplab.springframework.security.webauthn.authenticator.AuthenticatorUsageUpdatePolicy;
+import net.sharplab.springframework.security.webauthn.authenticator.AuthenticatorUsageUpdatePolicyImpl;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import net.sharplab.springframework.security.webauthn.reactive.authenticator.ReactiveWebAuthnAuthenticatorService;
+import net.sharplab.springframework.security.webauthn.reactive.userdetails.ReactiveWebAuthnUserDetailsService;
+import net.sharplab.springframework.security.webauthn.request.WebAuthnAuthenticationRequest;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetails;
+import net.sharplab.springframework.security.webauthn.util.ExceptionUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.support.MessageSourceAccessor;
+import org.springframework.security.authentication.*;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.authority.mapping.GrantedAuthoritiesMapper;
+import org.springframework.security.core.authority.mapping.NullAuthoritiesMapper;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsChecker;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Reactive counterpart of {@link WebAuthnAuthenticationProvider}, which authenticates
+ * {@link WebAuthnAssertionAuthenticationToken}.
+ * <p>
+ * The user and the counter are looked up and persisted through the reactive services, and the assertion is
+ * verified in memory, so that no step blocks the calling thread.
+ */
+public class ReactiveWebAuthnAuthenticationManager implements ReactiveAuthenticationManager {
+
+    //~ Instance fields
+    // ================================================================================================
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    protected MessageSourceAccessor messages = SpringSecurityWebAuthnMessageSource.getAccessor();
+    private ReactiveWebAuthnUserDetailsService userDetailsService;
+    private ReactiveWebAuthnAuthenticatorService authenticatorService;
+    private WebAuthnManager webAuthnManager;
+    private boolean forcePrincipalAsString = false;
+    private boolean hideCredentialIdNotFoundExceptions = true;
+    private UserDetailsChecker preAuthenticationChecks = new DefaultPreAuthenticationChecks();
+    private UserDetailsChecker postAuthenticationChecks = new DefaultPostAuthenticationChecks();
+    private GrantedAuthoritiesMapper authoritiesMapper = new NullAuthoritiesMapper();
+    private AuthenticatorUsageUpdatePolicy usageUpdatePolicy = new AuthenticatorUsageUpdatePolicyImpl();
+
+    // ~ Constructor
+    // ========================================================================================================
+
+    public ReactiveWebAuthnAuthenticationManager(
+            ReactiveWebAuthnUserDetailsService userDetailsService,
+            ReactiveWebAuthnAuthenticatorService authenticatorService,
+            WebAuthnManager webAuthnManager) {
+
+        Assert.notNull(userDetailsService, "userDetailsService must not be null");
+        Assert.notNull(authenticatorService, "authenticatorService must not be null");
+        Assert.notNull(webAuthnManager, "webAuthnManager must not be null");
+
+        this.userDetailsService = userDetailsService;
+        this.authenticatorService = authenticatorService;
+        this.webAuthnManager = webAuthnManager;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Authentications other than {@link WebAuthnAssertionAuthenticationToken} are not supported, and complete empty
+     * so that they can be handled by another {@link ReactiveAuthenticationManager}.
+     */
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        if (!(authentication instanceof WebAuthnAssertionAuthenticationToken)) {
+            return Mono.empty();
+        }
+
+        WebAuthnAssertionAuthenticationToken authenticationToken = (WebAuthnAssertionAuthenticationToken) authentication;
+
+        WebAuthnAuthenticationRequest credentials = authenticationToken.getCredentials();
+        if (credentials == null) {
+            logger.debug("Authentication failed: no credentials provided");
+
+            return Mono.error(new BadCredentialsException(messages.getMessage(
+                    "WebAuthnAuthenticationProvider.badCredentials",
+                    "Bad credentials")));
+        }
+
+        byte[] credentialId = credentials.getCredentialId();
+
+        return retrieveUser(credentialId)
+                .flatMap(user -> isUserVerificationRequired(user, credentials).flatMap(userVerificationRequired -> {
+                    Authenticator authenticator = findAuthenticator(user, credentialId);
+                    long previousCounter = authenticator.getCounter();
+
+                    preAuthenticationChecks.check(user);
+                    doAuthenticate(credentials, authenticator, userVerificationRequired);
+                    postAuthenticationChecks.check(user);
+
+                    Authentication result = createSuccessAuthentication(authenticationToken, user);
+                    Instant usedAt = Instant.now();
+                    if (usageUpdatePolicy.isUpdateRequired(credentialId, previousCounter, authenticator.getCounter(), usedAt)) {
+                        return authenticatorService.updateCounter(credentialId, authenticator.getCounter(), usedAt).thenReturn(result);
+                    }
+                    return Mono.just(result);
+                }));
+    }
+
+    void doAuthenticate(WebAuthnAuthenticationRequest credentials, Authenticator authenticator, boolean userVerificationRequired) {
+
+        AuthenticationRequest authenticationRequest = new AuthenticationRequest(
+                credentials.getCredentialId(),
+                credentials.getAuthenticatorData(),
+                credentials.getClientDataJSON(),
+                credentials.getClientExtensionsJSON(),
+                credentials.getSignature()
+        );
+        AuthenticationParameters authenticationParameters = new AuthenticationParameters(
+                credentials.getServerProperty(),
+                authenticator,
+                userVerificationRequired,
+                credentials.isUserPresenceRequired(),
+                credentials.getExpectedAuthenticationExtensionIds()
+        );
+
+        try {
+            webAuthnManager.validate(authenticationRequest, authenticationParameters);
+        } catch (WebAuthnException e) {
+            throw ExceptionUtil.wrapWithAuthenticationException(e);
+        }
+    }
+
+    private Authentication createSuccessAuthentication(WebAuthnAssertionAuthenticationToken authenticationToken, WebAuthnUserDetails user) {
+        Serializable principalToReturn = user;
+
+        if (forcePrincipalAsString) {
+            principalToReturn = user.getUsername();
+        }
+
+        WebAuthnAuthenticationToken result = new WebAuthnAuthenticationToken(
+                principalToReturn, authenticationToken.getCredentials(),
+                authoritiesMapper.mapAuthorities(user.getAuthorities()));
+        result.setDetails(authenticationToken.getDetails());
+        return result;
+    }
+
+    Mono<WebAuthnUserDetails> retrieveUser(byte[] credentialId) {
+        return userDetailsService.findByCredentialId(credentialId)
+                .switchIfEmpty(Mono.defer(() -> Mono.error(new CredentialIdNotFoundException("credentialId not found"))))
+                .onErrorMap(CredentialIdNotFoundException.class, notFound -> {
+                    if (hideCredentialIdNotFoundExceptions) {
+                        return new BadCredentialsException(messages.getMessage(
+                                "WebAuthnAuthenticationProvider.badCredentials",
+                                "Bad credentials"));
+                    }
+                    return notFound;
+                })
+                .onErrorMap(e -> !(e instanceof AuthenticationException),
+                        repositoryProblem -> new InternalAuthenticationServiceException(repositoryProblem.getMessage(), repositoryProblem));
+    }
+
+    private Authenticator findAuthenticator(WebAuthnUserDetails user, byte[] credentialId) {
+        for (Authenticator authenticator : user.getAuthenticators()) {
+            if (Arrays.equals(authenticator.getAttestedCredentialData().getCredentialId(), credentialId)) {
+                return authenticator;
+            }
+        }
+        throw new InternalAuthenticationServiceException(
+                "ReactiveWebAuthnUserDetailsService returned a user without the requested authenticator, which is an interface contract violation");
+    }
+
+    Mono<Boolean> isUserVerificationRequired(WebAuthnUserDetails user, WebAuthnAuthenticationRequest credentials) {
+        // If current authentication is authenticated and username matches, return false
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .filter(currentAuthentication -> currentAuthentication.isAuthenticated() && Objects.equals(currentAuthentication.getName(), user.getUsername()))
+                .map(currentAuthentication -> false)
+                .defaultIfEmpty(credentials.isUserVerificationRequired());
+    }
+
+    public boolean isForcePrincipalAsString() {
+        return forcePrincipalAsString;
+    }
+
+    public void setForcePrincipalAsString(boolean forcePrincipalAsString) {
+        this.forcePrincipalAsString = forcePrincipalAsString;
+    }
+
+    public boolean isHideCredentialIdNotFoundExceptions() {
+        return hideCredentialIdNotFoundExceptions;
+    }
+
+    /**
+     * By default the <code>ReactiveWebAuthnAuthenticationManager</code> signals a
+     * <code>BadCredentialsException</code> if a credentialId is not found or the credential is
+     * incorrect. Setting this property to <code>false</code> will cause
+     * <code>CredentialIdNotFoundException</code>s to be signalled instead for the former.
+     *
+     * @param hideCredentialIdNotFoundExceptions set to <code>false</code> if you wish
+     *                                           <code>CredentialIdNotFoundException</code>s to be signalled
+     */
+    public void setHideCredentialIdNotFoundExceptions(boolean hideCredentialIdNotFoundExceptions) {
+        this.hideCredentialIdNotFoundExceptions = hideCredentialIdNotFoundExceptions;
+    }
+
+    public void setPreAuthenticationChecks(UserDetailsChecker preAuthenticationChecks) {
+        this.preAuthenticationChecks = preAuthenticationChecks;
+    }
+
+    public void setPostAuthenticationChecks(UserDetailsChecker postAuthenticationChecks) {
+        this.postAuthenticationChecks = postAuthenticationChecks;
+    }
+
+    public void setAuthoritiesMapper(GrantedAuthoritiesMapper authoritiesMapper) {
+        Assert.notNull(authoritiesMapper, "authoritiesMapper must not be null");
+        this.authoritiesMapper = authoritiesMapper;
+    }
+
+    public void setUsageUpdatePolicy(AuthenticatorUsageUpdatePolicy usageUpdatePolicy) {
+        Assert.notNull(usageUpdatePolicy, "usageUpdatePolicy must not be null");
+        this.usageUpdatePolicy = usageUpdatePolicy;
+    }
+
+    private class DefaultPreAuthenticationChecks implements UserDetailsChecker {
+        @Override
+        public void check(UserDetails user) {
+            if (!user.isAccountNonLocked()) {
+                logger.debug("User account is locked");
+
+                throw new LockedException(messages.getMessage(
+                        "WebAuthnAuthenticationProvider.locked",
+                        "User account is locked"));
+            }
+
+            if (!user.isEnabled()) {
+                logger.debug("User account is disabled");
+
+                throw new DisabledException(messages.getMessage(
+                        "WebAuthnAuthenticationProvider.disabled",
+                        "User is disabled"));
+            }
+
+            if (!user.isAccountNonExpired()) {
+                logger.debug("User account is expired");
+
+                throw new AccountExpiredException(messages.getMessage(
+                        "WebAuthnAuthenticationProvider.expired",
+                        "User account has expired"));
+            }
+        }
+    }
+
+    private class DefaultPostAuthenticationChecks implements UserDetailsChecker {
+        @Override
+        public void check(UserDetails user) {
+            if (!user.isCredentialsNonExpired()) {
+                logger.debug("User account credentials have expired");
+
+                throw new CredentialsExpiredException(messages.getMessage(
+                        "WebAuthnAuthenticationProvider.credentialsExpired",
+                        "User credentials have expired"));
+            }
+        }
+    }
+}
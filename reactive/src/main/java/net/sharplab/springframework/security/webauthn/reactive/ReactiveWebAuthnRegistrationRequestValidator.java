@@ -0,0 +1,123 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive;
+
+import com.webauthn4j.WebAuthnManager;
+import com.webauthn4j.data.RegistrationData;
+import com.webauthn4j.data.RegistrationParameters;
+import com.webauthn4j.data.RegistrationRequest;
+import com.webauthn4j.server.ServerProperty;
+import com.webauthn4j.util.exception.WebAuthnException;
+import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidationResponse;
+import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidator;
+import net.sharplab.springframework.security.webauthn.reactive.server.ReactiveServerPropertyProvider;
+import net.sharplab.springframework.security.webauthn.util.ExceptionUtil;
+import org.springframework.util.Assert;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reactive counterpart of {@link WebAuthnRegistrationRequestValidator}
+ */
+public class ReactiveWebAuthnRegistrationRequestValidator {
+
+    // ~ Instance fields
+    // ================================================================================================
+    private WebAuthnManager webAuthnManager;
+    private ReactiveServerPropertyProvider serverPropertyProvider;
+
+    private List<String> expectedRegistrationExtensionIds;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param webAuthnManager        validator for {@link WebAuthnManager}
+     * @param serverPropertyProvider provider for {@link ServerProperty}
+     */
+    public ReactiveWebAuthnRegistrationRequestValidator(WebAuthnManager webAuthnManager, ReactiveServerPropertyProvider serverPropertyProvider) {
+
+        Assert.notNull(webAuthnManager, "webAuthnManager must not be null");
+        Assert.notNull(serverPropertyProvider, "serverPropertyProvider must not be null");
+
+        this.webAuthnManager = webAuthnManager;
+        this.serverPropertyProvider = serverPropertyProvider;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Validates a registration request whose clientDataJSON and attestationObject are already Base64url-decoded.
+     *
+     * @param exchange             exchange
+     * @param clientDataJSON       decoded clientDataJSON
+     * @param attestationObject    decoded attestationObject
+     * @param transports           transports
+     * @param clientExtensionsJSON clientExtensionsJSON
+     * @return {@link Mono} emitting the validation response
+     */
+    public Mono<WebAuthnRegistrationRequestValidationResponse> validate(ServerWebExchange exchange,
+                                                                        byte[] clientDataJSON,
+                                                                        byte[] attestationObject,
+                                                                        Set<String> transports,
+                                                                        String clientExtensionsJSON
+    ) {
+        Assert.notNull(exchange, "exchange must not be null");
+        Assert.notNull(clientDataJSON, "clientDataJSON must not be null");
+        Assert.notNull(attestationObject, "attestationObject must not be null");
+        if (transports != null) {
+            transports.forEach(transport -> Assert.hasText(transport, "each transport must have text"));
+        }
+
+        RegistrationRequest webAuthnRegistrationRequest =
+                new RegistrationRequest(attestationObject, clientDataJSON, clientExtensionsJSON, transports);
+
+        return serverPropertyProvider.provide(exchange).map(serverProperty -> {
+            RegistrationParameters webAuthnRegistrationParameters = new RegistrationParameters(
+                    serverProperty,
+                    false,
+                    false,
+                    expectedRegistrationExtensionIds
+            );
+            try {
+                RegistrationData response = webAuthnManager.validate(webAuthnRegistrationRequest, webAuthnRegistrationParameters);
+                return new WebAuthnRegistrationRequestValidationResponse(
+                        response.getCollectedClientData(),
+                        response.getAttestationObject(),
+                        response.getClientExtensions());
+            } catch (WebAuthnException e) {
+                throw ExceptionUtil.wrapWithAuthenticationException(e);
+            }
+        });
+    }
+
+    public List<String> getExpectedRegistrationExtensionIds() {
+        return expectedRegistrationExtensionIds;
+    }
+
+    public void setExpectedRegistrationExtensionIds(List<String> expectedRegistrationExtensionIds) {
+        Assert.notNull(expectedRegistrationExtensionIds, "expectedRegistrationExtensionIds must not be null");
+        this.expectedRegistrationExtensionIds = expectedRegistrationExtensionIds;
+    }
+}
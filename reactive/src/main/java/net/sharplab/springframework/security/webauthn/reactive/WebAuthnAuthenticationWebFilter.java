@@ -0,0 +1,60 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive;
+
+import net.sharplab.springframework.security.webauthn.WebAuthnProcessingFilter;
+import net.sharplab.springframework.security.webauthn.reactive.server.ReactiveServerPropertyProvider;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
+import org.springframework.security.web.server.context.WebSessionServerSecurityContextRepository;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
+
+/**
+ * Reactive counterpart of {@link WebAuthnProcessingFilter}, which processes a WebAuthn authentication form submission
+ * with {@link WebAuthnServerAuthenticationConverter}.
+ * <p>
+ * This filter by default responds to <code>POST</code> requests to the URL {@code /login}, and stores the
+ * authenticated security context to the {@link org.springframework.web.server.WebSession}.
+ */
+public class WebAuthnAuthenticationWebFilter extends AuthenticationWebFilter {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    /**
+     * Default url this filter should get activated on.
+     */
+    public static final String FILTER_URL = "/login";
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public WebAuthnAuthenticationWebFilter(ReactiveAuthenticationManager authenticationManager,
+                                           ReactiveServerPropertyProvider serverPropertyProvider) {
+        this(authenticationManager, new WebAuthnServerAuthenticationConverter(serverPropertyProvider));
+    }
+
+    public WebAuthnAuthenticationWebFilter(ReactiveAuthenticationManager authenticationManager,
+                                           WebAuthnServerAuthenticationConverter authenticationConverter) {
+        super(authenticationManager);
+        setAuthenticationConverter(authenticationConverter);
+        setRequiresAuthenticationMatcher(ServerWebExchangeMatchers.pathMatchers(HttpMethod.POST, FILTER_URL));
+        setSecurityContextRepository(new WebSessionServerSecurityContextRepository());
+    }
+}
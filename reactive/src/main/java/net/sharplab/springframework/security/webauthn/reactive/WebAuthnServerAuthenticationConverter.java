@@ -0,0 +1,194 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive;
+
+import net.sharplab.springframework.security.webauthn.WebAuthnAssertionAuthenticationToken;
+import net.sharplab.springframework.security.webauthn.WebAuthnProcessingFilter;
+import net.sharplab.springframework.security.webauthn.exception.DataConversionException;
+import net.sharplab.springframework.security.webauthn.reactive.server.ReactiveServerPropertyProvider;
+import net.sharplab.springframework.security.webauthn.request.WebAuthnAuthenticationRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.util.Assert;
+import org.springframework.util.Base64Utils;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import static net.sharplab.springframework.security.webauthn.WebAuthnProcessingFilter.*;
+
+/**
+ * Converts a WebAuthn authentication form submission to {@link WebAuthnAssertionAuthenticationToken}, as
+ * {@link WebAuthnProcessingFilter} does for Servlet. If credentialId is not found in the form data,
+ * {@link UsernamePasswordAuthenticationToken} is returned for supporting username/password authentication.
+ * Missing or malformed base64url fields are signaled as {@link DataConversionException}.
+ */
+public class WebAuthnServerAuthenticationConverter implements Function<ServerWebExchange, Mono<Authentication>> {
+
+    //~ Instance fields
+    // ================================================================================================
+    private String usernameParameter = SPRING_SECURITY_FORM_USERNAME_KEY;
+    private String passwordParameter = SPRING_SECURITY_FORM_PASSWORD_KEY;
+    private String credentialIdParameter = SPRING_SECURITY_FORM_CREDENTIAL_ID_KEY;
+    private String clientDataJSONParameter = SPRING_SECURITY_FORM_CLIENT_DATA_JSON_KEY;
+    private String authenticatorDataParameter = SPRING_SECURITY_FORM_AUTHENTICATOR_DATA_KEY;
+    private String signatureParameter = SPRING_SECURITY_FORM_SIGNATURE_KEY;
+    private String clientExtensionsJSONParameter = SPRING_SECURITY_FORM_CLIENT_EXTENSIONS_JSON_KEY;
+
+    private ReactiveServerPropertyProvider serverPropertyProvider;
+
+    private List<String> expectedAuthenticationExtensionIds = Collections.emptyList();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public WebAuthnServerAuthenticationConverter(ReactiveServerPropertyProvider serverPropertyProvider) {
+        Assert.notNull(serverPropertyProvider, "serverPropertyProvider must not be null");
+        this.serverPropertyProvider = serverPropertyProvider;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public Mono<Authentication> apply(ServerWebExchange exchange) {
+        return exchange.getFormData().flatMap(formData -> convert(exchange, formData));
+    }
+
+    private Mono<Authentication> convert(ServerWebExchange exchange, MultiValueMap<String, String> formData) {
+        String credentialId = formData.getFirst(credentialIdParameter);
+        if (StringUtils.isEmpty(credentialId)) {
+            String username = formData.getFirst(usernameParameter);
+            String password = formData.getFirst(passwordParameter);
+            return Mono.just(new UsernamePasswordAuthenticationToken(username, password));
+        }
+
+        byte[] rawId;
+        byte[] rawClientData;
+        byte[] rawAuthenticatorData;
+        byte[] signatureBytes;
+        try {
+            rawId = decode(credentialIdParameter, credentialId);
+            rawClientData = decode(clientDataJSONParameter, formData.getFirst(clientDataJSONParameter));
+            rawAuthenticatorData = decode(authenticatorDataParameter, formData.getFirst(authenticatorDataParameter));
+            signatureBytes = decode(signatureParameter, formData.getFirst(signatureParameter));
+        } catch (DataConversionException e) {
+            return Mono.error(e);
+        }
+        String clientExtensionsJSON = formData.getFirst(clientExtensionsJSONParameter);
+
+        return serverPropertyProvider.provide(exchange).map(serverProperty -> {
+            WebAuthnAuthenticationRequest webAuthnAuthenticationRequest = new WebAuthnAuthenticationRequest(
+                    rawId,
+                    rawClientData,
+                    rawAuthenticatorData,
+                    signatureBytes,
+                    clientExtensionsJSON,
+                    serverProperty,
+                    true,
+                    expectedAuthenticationExtensionIds
+            );
+            return new WebAuthnAssertionAuthenticationToken(webAuthnAuthenticationRequest);
+        });
+    }
+
+    private static byte[] decode(String parameter, String value) {
+        if (value == null) {
+            throw new DataConversionException(parameter + " is missing");
+        }
+        try {
+            return Base64Utils.decodeFromUrlSafeString(value);
+        } catch (IllegalArgumentException e) {
+            throw new DataConversionException(parameter + " is not valid base64url", e);
+        }
+    }
+
+    public String getUsernameParameter() {
+        return usernameParameter;
+    }
+
+    public void setUsernameParameter(String usernameParameter) {
+        this.usernameParameter = usernameParameter;
+    }
+
+    public String getPasswordParameter() {
+        return passwordParameter;
+    }
+
+    public void setPasswordParameter(String passwordParameter) {
+        this.passwordParameter = passwordParameter;
+    }
+
+    public String getCredentialIdParameter() {
+        return credentialIdParameter;
+    }
+
+    public void setCredentialIdParameter(String credentialIdParameter) {
+        this.credentialIdParameter = credentialIdParameter;
+    }
+
+    public String getClientDataJSONParameter() {
+        return clientDataJSONParameter;
+    }
+
+    public void setClientDataJSONParameter(String clientDataJSONParameter) {
+        this.clientDataJSONParameter = clientDataJSONParameter;
+    }
+
+    public String getAuthenticatorDataParameter() {
+        return authenticatorDataParameter;
+    }
+
+    public void setAuthenticatorDataParameter(String authenticatorDataParameter) {
+        this.authenticatorDataParameter = authenticatorDataParameter;
+    }
+
+    public String getSignatureParameter() {
+        return signatureParameter;
+    }
+
+    public void setSignatureParameter(String signatureParameter) {
+        this.signatureParameter = signatureParameter;
+    }
+
+    public String getClientExtensionsJSONParameter() {
+        return clientExtensionsJSONParameter;
+    }
+
+    public void setClientExtensionsJSONParameter(String clientExtensionsJSONParameter) {
+        this.clientExtensionsJSONParameter = clientExtensionsJSONParameter;
+    }
+
+    public List<String> getExpectedAuthenticationExtensionIds() {
+        return expectedAuthenticationExtensionIds;
+    }
+
+    /**
+     * Sets expected authentication extensionId list
+     *
+     * @param expectedAuthenticationExtensionIds list of expected authentication extensionId
+     */
+    public void setExpectedAuthenticationExtensionIds(List<String> expectedAuthenticationExtensionIds) {
+        this.expectedAuthenticationExtensionIds = expectedAuthenticationExtensionIds;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive.authenticator;
+
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticatorService;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+/**
+ * Reactive counterpart of {@link WebAuthnAuthenticatorService}
+ */
+public interface ReactiveWebAuthnAuthenticatorService {
+
+    /**
+     * Updates Authenticator counter and last used time.
+     *
+     * @param credentialId credentialId
+     * @param counter      counter
+     * @param lastUsedAt   last used time, or <code>null</code> if it is not to be updated
+     * @return {@link Mono} completing when the counter is updated, or signalling
+     * {@link net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException}
+     * if the authenticator could not be found
+     */
+    Mono<Void> updateCounter(byte[] credentialId, long counter, Instant lastUsedAt);
+
+}
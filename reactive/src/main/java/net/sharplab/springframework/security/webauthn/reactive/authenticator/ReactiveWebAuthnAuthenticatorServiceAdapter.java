@@ -0,0 +1,67 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive.authenticator;
+
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticatorService;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+
+/**
+ * A {@link ReactiveWebAuthnAuthenticatorService} adapting a blocking {@link WebAuthnAuthenticatorService}.
+ * Calls to the delegate are subscribed on a {@link Scheduler} intended for blocking tasks.
+ */
+public class ReactiveWebAuthnAuthenticatorServiceAdapter implements ReactiveWebAuthnAuthenticatorService {
+
+    //~ Instance fields
+    // ================================================================================================
+    private WebAuthnAuthenticatorService delegate;
+    private Scheduler scheduler = Schedulers.elastic();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public ReactiveWebAuthnAuthenticatorServiceAdapter(WebAuthnAuthenticatorService delegate) {
+        Assert.notNull(delegate, "delegate must not be null");
+        this.delegate = delegate;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<Void> updateCounter(byte[] credentialId, long counter, Instant lastUsedAt) {
+        return Mono.<Void>fromRunnable(() -> delegate.updateCounter(credentialId, counter, lastUsedAt))
+                .subscribeOn(scheduler);
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    public void setScheduler(Scheduler scheduler) {
+        Assert.notNull(scheduler, "scheduler must not be null");
+        this.scheduler = scheduler;
+    }
+}
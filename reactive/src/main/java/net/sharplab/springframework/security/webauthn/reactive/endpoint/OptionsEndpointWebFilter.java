@@ -0,0 +1,184 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive.endpoint;
+
+import com.webauthn4j.converter.util.JsonConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import net.sharplab.springframework.security.webauthn.endpoint.ErrorResponse;
+import net.sharplab.springframework.security.webauthn.endpoint.OptionsEndpointFilter;
+import net.sharplab.springframework.security.webauthn.endpoint.OptionsResponse;
+import net.sharplab.springframework.security.webauthn.endpoint.WebAuthnPublicKeyCredentialDescriptor;
+import net.sharplab.springframework.security.webauthn.options.AssertionOptions;
+import net.sharplab.springframework.security.webauthn.options.AttestationOptions;
+import net.sharplab.springframework.security.webauthn.options.CombinedOptions;
+import net.sharplab.springframework.security.webauthn.reactive.options.ReactiveOptionsProvider;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.authentication.MFATokenEvaluator;
+import org.springframework.security.authentication.MFATokenEvaluatorImpl;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
+import org.springframework.util.Assert;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Reactive counterpart of {@link OptionsEndpointFilter}, which provides WebAuthn option parameters to clients.
+ */
+public class OptionsEndpointWebFilter implements WebFilter {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    /**
+     * Default name of path which will validate this filter.
+     */
+    public static final String FILTER_URL = OptionsEndpointFilter.FILTER_URL;
+
+    //~ Instance fields
+    // ================================================================================================
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private ServerWebExchangeMatcher requiresMatcher = ServerWebExchangeMatchers.pathMatchers(FILTER_URL);
+    private JsonConverter jsonConverter;
+    private AuthenticationTrustResolver trustResolver;
+    private MFATokenEvaluator mfaTokenEvaluator;
+    private ReactiveOptionsProvider optionsProvider;
+
+    private byte[] anonymousAccessErrorResponse;
+    private byte[] internalErrorResponse;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public OptionsEndpointWebFilter(ReactiveOptionsProvider optionsProvider, ObjectConverter objectConverter) {
+        Assert.notNull(optionsProvider, "optionsProvider must not be null");
+        Assert.notNull(objectConverter, "objectConverter must not be null");
+        this.optionsProvider = optionsProvider;
+        this.jsonConverter = objectConverter.getJsonConverter();
+        this.anonymousAccessErrorResponse = jsonConverter.writeValueAsBytes(new ErrorResponse("Anonymous access is prohibited"));
+        this.internalErrorResponse = jsonConverter.writeValueAsBytes(new ErrorResponse("The server encountered an internal error"));
+        this.trustResolver = new AuthenticationTrustResolverImpl();
+        this.mfaTokenEvaluator = new MFATokenEvaluatorImpl();
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return requiresMatcher.matches(exchange)
+                .filter(ServerWebExchangeMatcher.MatchResult::isMatch)
+                .switchIfEmpty(Mono.defer(() -> chain.filter(exchange).then(Mono.empty())))
+                .flatMap(matchResult -> processRequest(exchange)
+                        .flatMap(optionsResponse -> writeResponse(exchange, HttpStatus.OK, jsonConverter.writeValueAsBytes(optionsResponse)))
+                        .onErrorResume(RuntimeException.class, e -> {
+                            logger.debug(e);
+                            return writeErrorResponse(exchange, e);
+                        }));
+    }
+
+    Mono<OptionsResponse> processRequest(ServerWebExchange exchange) {
+        return getLoginUsername()
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(loginUsername -> optionsProvider.getCombinedOptions(exchange, loginUsername.orElse(null), null))
+                .map(this::createOptionsResponse);
+    }
+
+    private OptionsResponse createOptionsResponse(CombinedOptions combinedOptions) {
+        AttestationOptions attestationOptions = combinedOptions.getAttestationOptions();
+        AssertionOptions assertionOptions = combinedOptions.getAssertionOptions();
+        List<WebAuthnPublicKeyCredentialDescriptor> credentials =
+                attestationOptions.getCredentials().stream().map(WebAuthnPublicKeyCredentialDescriptor::new).collect(Collectors.toList());
+        return new OptionsResponse(
+                attestationOptions.getRelyingParty(),
+                attestationOptions.getUser(),
+                attestationOptions.getChallenge(),
+                attestationOptions.getPubKeyCredParams(),
+                attestationOptions.getRegistrationTimeout(),
+                assertionOptions.getAuthenticationTimeout(),
+                credentials,
+                attestationOptions.getRegistrationExtensions(),
+                assertionOptions.getAuthenticationExtensions(),
+                assertionOptions.getParameters()
+        );
+    }
+
+    Mono<String> getLoginUsername() {
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .filter(authentication -> !trustResolver.isAnonymous(authentication) || mfaTokenEvaluator.isMultiFactorAuthentication(authentication))
+                .map(Authentication::getName);
+    }
+
+    private Mono<Void> writeErrorResponse(ServerWebExchange exchange, RuntimeException e) {
+        if (e instanceof InsufficientAuthenticationException) {
+            return writeResponse(exchange, HttpStatus.FORBIDDEN, anonymousAccessErrorResponse);
+        } else {
+            return writeResponse(exchange, HttpStatus.INTERNAL_SERVER_ERROR, internalErrorResponse);
+        }
+    }
+
+    private Mono<Void> writeResponse(ServerWebExchange exchange, HttpStatus status, byte[] body) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(status);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        response.getHeaders().setContentLength(body.length);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(body)));
+    }
+
+    public AuthenticationTrustResolver getTrustResolver() {
+        return trustResolver;
+    }
+
+    public void setTrustResolver(AuthenticationTrustResolver trustResolver) {
+        Assert.notNull(trustResolver, "trustResolver must not be null");
+        this.trustResolver = trustResolver;
+    }
+
+    public MFATokenEvaluator getMFATokenEvaluator() {
+        return mfaTokenEvaluator;
+    }
+
+    public void setMFATokenEvaluator(MFATokenEvaluator mfaTokenEvaluator) {
+        Assert.notNull(mfaTokenEvaluator, "mfaTokenEvaluator must not be null");
+        this.mfaTokenEvaluator = mfaTokenEvaluator;
+    }
+
+    public void setFilterProcessesUrl(String filterProcessesUrl) {
+        Assert.hasText(filterProcessesUrl, "filterProcessesUrl must not be empty or null");
+        this.requiresMatcher = ServerWebExchangeMatchers.pathMatchers(filterProcessesUrl);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive.options;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import net.sharplab.springframework.security.webauthn.options.AssertionOptions;
+import net.sharplab.springframework.security.webauthn.options.AttestationOptions;
+import net.sharplab.springframework.security.webauthn.options.CombinedOptions;
+import net.sharplab.springframework.security.webauthn.options.OptionsProvider;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive counterpart of {@link OptionsProvider}, which provides {@link AttestationOptions} and
+ * {@link AssertionOptions} for {@link ServerWebExchange}
+ */
+public interface ReactiveOptionsProvider {
+
+    /**
+     * provides {@link AttestationOptions}. If <code>username</code> is <code>null</code>, <code>user</code>, <code>credentials</code> are not populated.
+     *
+     * @param exchange  exchange
+     * @param username  username
+     * @param challenge if null, new challenge is generated. Otherwise, specified challenge is used.
+     * @return {@link Mono} emitting the {@link AttestationOptions}
+     */
+    Mono<AttestationOptions> getAttestationOptions(ServerWebExchange exchange, String username, Challenge challenge);
+
+    /**
+     * provides {@link AssertionOptions}. If <code>username</code> is <code>null</code>, <code>credentials</code> are not populated.
+     *
+     * @param exchange  exchange
+     * @param username  username
+     * @param challenge if null, new challenge is generated. Otherwise, specified challenge is used.
+     * @return {@link Mono} emitting the {@link AssertionOptions}
+     */
+    Mono<AssertionOptions> getAssertionOptions(ServerWebExchange exchange, String username, Challenge challenge);
+
+    /**
+     * provides {@link AttestationOptions} and {@link AssertionOptions} together, looking up the user and resolving
+     * the challenge only once.
+     *
+     * @param exchange  exchange
+     * @param username  username
+     * @param challenge if null, new challenge is generated. Otherwise, specified challenge is used.
+     * @return {@link Mono} emitting the {@link CombinedOptions}
+     */
+    Mono<CombinedOptions> getCombinedOptions(ServerWebExchange exchange, String username, Challenge challenge);
+
+    /**
+     * returns effective rpId based on request origin and configured <code>rpId</code>.
+     *
+     * @param exchange exchange
+     * @return effective rpId
+     */
+    String getEffectiveRpId(ServerWebExchange exchange);
+
+}
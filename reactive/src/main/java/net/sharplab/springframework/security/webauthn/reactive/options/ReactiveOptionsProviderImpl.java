@@ -0,0 +1,317 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive.options;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.data.PublicKeyCredentialParameters;
+import com.webauthn4j.data.PublicKeyCredentialRpEntity;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.extension.client.AuthenticationExtensionClientInput;
+import com.webauthn4j.data.extension.client.AuthenticationExtensionsClientInputs;
+import com.webauthn4j.data.extension.client.RegistrationExtensionClientInput;
+import com.webauthn4j.util.Base64UrlUtil;
+import net.sharplab.springframework.security.webauthn.endpoint.Parameters;
+import net.sharplab.springframework.security.webauthn.endpoint.WebAuthnPublicKeyCredentialUserEntity;
+import net.sharplab.springframework.security.webauthn.options.AssertionOptions;
+import net.sharplab.springframework.security.webauthn.options.AttestationOptions;
+import net.sharplab.springframework.security.webauthn.options.CombinedOptions;
+import net.sharplab.springframework.security.webauthn.reactive.challenge.ServerChallengeRepository;
+import net.sharplab.springframework.security.webauthn.reactive.userdetails.ReactiveWebAuthnUserDetailsService;
+import net.sharplab.springframework.security.webauthn.reactive.util.ServerWebExchangeUtil;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetails;
+import org.springframework.util.Assert;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static net.sharplab.springframework.security.webauthn.WebAuthnProcessingFilter.*;
+
+/**
+ * A {@link ReactiveOptionsProvider} implementation
+ */
+public class ReactiveOptionsProviderImpl implements ReactiveOptionsProvider {
+
+    //~ Instance fields
+    // ================================================================================================
+    private String rpId = null;
+    private String rpName = null;
+    private String rpIcon = null;
+    private List<PublicKeyCredentialParameters> pubKeyCredParams = new ArrayList<>();
+    private Long registrationTimeout = null;
+    private Long authenticationTimeout = null;
+    private AuthenticationExtensionsClientInputs<RegistrationExtensionClientInput> registrationExtensions = new AuthenticationExtensionsClientInputs<>();
+    private AuthenticationExtensionsClientInputs<AuthenticationExtensionClientInput> authenticationExtensions = new AuthenticationExtensionsClientInputs<>();
+
+    private String usernameParameter = SPRING_SECURITY_FORM_USERNAME_KEY;
+    private String passwordParameter = SPRING_SECURITY_FORM_PASSWORD_KEY;
+    private String credentialIdParameter = SPRING_SECURITY_FORM_CREDENTIAL_ID_KEY;
+    private String clientDataJSONParameter = SPRING_SECURITY_FORM_CLIENT_DATA_JSON_KEY;
+    private String authenticatorDataParameter = SPRING_SECURITY_FORM_AUTHENTICATOR_DATA_KEY;
+    private String signatureParameter = SPRING_SECURITY_FORM_SIGNATURE_KEY;
+    private String clientExtensionsJSONParameter = SPRING_SECURITY_FORM_CLIENT_EXTENSIONS_JSON_KEY;
+
+    private ReactiveWebAuthnUserDetailsService userDetailsService;
+    private ServerChallengeRepository challengeRepository;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public ReactiveOptionsProviderImpl(ReactiveWebAuthnUserDetailsService userDetailsService, ServerChallengeRepository challengeRepository) {
+
+        Assert.notNull(userDetailsService, "userDetailsService must not be null");
+        Assert.notNull(challengeRepository, "challengeRepository must not be null");
+
+        this.userDetailsService = userDetailsService;
+        this.challengeRepository = challengeRepository;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<AttestationOptions> getAttestationOptions(ServerWebExchange exchange, String username, Challenge challenge) {
+        return getCombinedOptions(exchange, username, challenge).map(CombinedOptions::getAttestationOptions);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<AssertionOptions> getAssertionOptions(ServerWebExchange exchange, String username, Challenge challenge) {
+        return getCombinedOptions(exchange, username, challenge).map(CombinedOptions::getAssertionOptions);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<CombinedOptions> getCombinedOptions(ServerWebExchange exchange, String username, Challenge challenge) {
+        Mono<Optional<WebAuthnUserDetails>> userDetailsMono = loadUserDetails(username)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty());
+        return userDetailsMono.flatMap(userDetails ->
+                resolveChallenge(exchange, challenge).map(resolvedChallenge -> {
+                    List<String> credentials = encodeCredentials(userDetails.orElse(null));
+                    return new CombinedOptions(
+                            createAttestationOptions(exchange, username, userDetails.orElse(null), resolvedChallenge, credentials),
+                            createAssertionOptions(exchange, resolvedChallenge, credentials));
+                }));
+    }
+
+    private AttestationOptions createAttestationOptions(ServerWebExchange exchange, String username, WebAuthnUserDetails userDetails,
+                                                        Challenge challenge, List<String> credentials) {
+        WebAuthnPublicKeyCredentialUserEntity user;
+        if (userDetails == null) {
+            user = null;
+        } else {
+            String userHandle = Base64UrlUtil.encodeToString(userDetails.getUserHandle());
+            user = new WebAuthnPublicKeyCredentialUserEntity(userHandle, username);
+        }
+        PublicKeyCredentialRpEntity relyingParty = new PublicKeyCredentialRpEntity(getEffectiveRpId(exchange), rpName, rpIcon);
+
+        return new AttestationOptions(relyingParty, user, challenge, pubKeyCredParams, registrationTimeout,
+                credentials, registrationExtensions);
+    }
+
+    private AssertionOptions createAssertionOptions(ServerWebExchange exchange, Challenge challenge, List<String> credentials) {
+        String effectiveRpId = getEffectiveRpId(exchange);
+        Parameters parameters
+                = new Parameters(usernameParameter, passwordParameter,
+                credentialIdParameter, clientDataJSONParameter, authenticatorDataParameter, signatureParameter, clientExtensionsJSONParameter);
+
+        return new AssertionOptions(challenge, authenticationTimeout, effectiveRpId, credentials, authenticationExtensions, parameters);
+    }
+
+    private Mono<WebAuthnUserDetails> loadUserDetails(String username) {
+        if (username == null) {
+            return Mono.empty();
+        }
+        return userDetailsService.findByUsername(username);
+    }
+
+    private List<String> encodeCredentials(WebAuthnUserDetails userDetails) {
+        Collection<? extends Authenticator> authenticators = userDetails == null ? Collections.emptyList() : userDetails.getAuthenticators();
+        List<String> credentials = new ArrayList<>(authenticators.size());
+        for (Authenticator authenticator : authenticators) {
+            String credentialId = Base64UrlUtil.encodeToString(authenticator.getAttestedCredentialData().getCredentialId());
+            credentials.add(credentialId);
+        }
+        return credentials;
+    }
+
+    private Mono<Challenge> resolveChallenge(ServerWebExchange exchange, Challenge challenge) {
+        if (challenge == null) {
+            return challengeRepository.loadOrGenerateChallenge(exchange);
+        } else {
+            return challengeRepository.saveChallenge(challenge, exchange).thenReturn(challenge);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getEffectiveRpId(ServerWebExchange exchange) {
+        if (this.rpId != null) {
+            return this.rpId;
+        }
+        return ServerWebExchangeUtil.getOrigin(exchange).getHost();
+    }
+
+    public String getRpId() {
+        return rpId;
+    }
+
+    public void setRpId(String rpId) {
+        this.rpId = rpId;
+    }
+
+    public String getRpName() {
+        return rpName;
+    }
+
+    public void setRpName(String rpName) {
+        Assert.hasText(rpName, "rpName parameter must not be empty or null");
+        this.rpName = rpName;
+    }
+
+    public String getRpIcon() {
+        return rpIcon;
+    }
+
+    public void setRpIcon(String rpIcon) {
+        Assert.hasText(rpIcon, "rpIcon parameter must not be empty or null");
+        this.rpIcon = rpIcon;
+    }
+
+    public List<PublicKeyCredentialParameters> getPubKeyCredParams() {
+        return pubKeyCredParams;
+    }
+
+    public void setPubKeyCredParams(List<PublicKeyCredentialParameters> pubKeyCredParams) {
+        this.pubKeyCredParams = pubKeyCredParams;
+    }
+
+    public Long getRegistrationTimeout() {
+        return registrationTimeout;
+    }
+
+    public void setRegistrationTimeout(Long registrationTimeout) {
+        Assert.notNull(registrationTimeout, "registrationTimeout must not be null.");
+        Assert.isTrue(registrationTimeout >= 0, "registrationTimeout must be within unsigned long.");
+        this.registrationTimeout = registrationTimeout;
+    }
+
+    public Long getAuthenticationTimeout() {
+        return authenticationTimeout;
+    }
+
+    public void setAuthenticationTimeout(Long authenticationTimeout) {
+        Assert.notNull(authenticationTimeout, "authenticationTimeout must not be null.");
+        Assert.isTrue(authenticationTimeout >= 0, "authenticationTimeout must be within unsigned long.");
+        this.authenticationTimeout = authenticationTimeout;
+    }
+
+    public AuthenticationExtensionsClientInputs<RegistrationExtensionClientInput> getRegistrationExtensions() {
+        return registrationExtensions;
+    }
+
+    public void setRegistrationExtensions(AuthenticationExtensionsClientInputs<RegistrationExtensionClientInput> registrationExtensions) {
+        this.registrationExtensions = registrationExtensions;
+    }
+
+    public AuthenticationExtensionsClientInputs<AuthenticationExtensionClientInput> getAuthenticationExtensions() {
+        return authenticationExtensions;
+    }
+
+    public void setAuthenticationExtensions(AuthenticationExtensionsClientInputs<AuthenticationExtensionClientInput> authenticationExtensions) {
+        this.authenticationExtensions = authenticationExtensions;
+    }
+
+    public String getUsernameParameter() {
+        return usernameParameter;
+    }
+
+    public void setUsernameParameter(String usernameParameter) {
+        Assert.hasText(usernameParameter, "usernameParameter must not be empty or null");
+        this.usernameParameter = usernameParameter;
+    }
+
+    public String getPasswordParameter() {
+        return passwordParameter;
+    }
+
+    public void setPasswordParameter(String passwordParameter) {
+        Assert.hasText(passwordParameter, "passwordParameter must not be empty or null");
+        this.passwordParameter = passwordParameter;
+    }
+
+    public String getCredentialIdParameter() {
+        return credentialIdParameter;
+    }
+
+    public void setCredentialIdParameter(String credentialIdParameter) {
+        Assert.hasText(credentialIdParameter, "credentialIdParameter must not be empty or null");
+        this.credentialIdParameter = credentialIdParameter;
+    }
+
+    public String getClientDataJSONParameter() {
+        return clientDataJSONParameter;
+    }
+
+    public void setClientDataJSONParameter(String clientDataJSONParameter) {
+        Assert.hasText(clientDataJSONParameter, "clientDataJSONParameter must not be empty or null");
+        this.clientDataJSONParameter = clientDataJSONParameter;
+    }
+
+    public String getAuthenticatorDataParameter() {
+        return authenticatorDataParameter;
+    }
+
+    public void setAuthenticatorDataParameter(String authenticatorDataParameter) {
+        Assert.hasText(authenticatorDataParameter, "authenticatorDataParameter must not be empty or null");
+        this.authenticatorDataParameter = authenticatorDataParameter;
+    }
+
+    public String getSignatureParameter() {
+        return signatureParameter;
+    }
+
+    public void setSignatureParameter(String signatureParameter) {
+        Assert.hasText(signatureParameter, "signatureParameter must not be empty or null");
+        this.signatureParameter = signatureParameter;
+    }
+
+    public String getClientExtensionsJSONParameter() {
+        return clientExtensionsJSONParameter;
+    }
+
+    public void setClientExtensionsJSONParameter(String clientExtensionsJSONParameter) {
+        Assert.hasText(clientExtensionsJSONParameter, "clientExtensionsJSONParameter must not be empty or null");
+        this.clientExtensionsJSONParameter = clientExtensionsJSONParameter;
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetails;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive counterpart of {@link WebAuthnUserDetailsService}.
+ * Like {@link org.springframework.security.core.userdetails.ReactiveUserDetailsService}, lookups complete empty
+ * instead of signalling an error when the user could not be found.
+ */
+public interface ReactiveWebAuthnUserDetailsService {
+
+    /**
+     * Locates a user based on the username.
+     *
+     * @param username the username identifying the user whose data is required
+     * @return {@link Mono} emitting the {@link WebAuthnUserDetails}, or completing empty if the user could not be found
+     */
+    Mono<WebAuthnUserDetails> findByUsername(String username);
+
+    /**
+     * Locates a user based on the credentialId.
+     *
+     * @param credentialId credentialId
+     * @return {@link Mono} emitting the {@link WebAuthnUserDetails}, which must return the authenticator in
+     * getAuthenticators result, or completing empty if the authenticator could not be found
+     */
+    Mono<WebAuthnUserDetails> findByCredentialId(byte[] credentialId);
+
+    /**
+     * Adds {@link Authenticator} to the user record
+     *
+     * @param username      the username identifying the user
+     * @param authenticator the authenticator to be added
+     * @return {@link Mono} completing when the authenticator is added
+     */
+    Mono<Void> addAuthenticator(String username, Authenticator authenticator);
+
+    /**
+     * Removes {@link Authenticator} from the user record
+     *
+     * @param username     the username identifying the user
+     * @param credentialId the credentialId identifying the authenticator
+     * @return {@link Mono} completing when the authenticator is removed
+     */
+    Mono<Void> removeAuthenticator(String username, byte[] credentialId);
+}
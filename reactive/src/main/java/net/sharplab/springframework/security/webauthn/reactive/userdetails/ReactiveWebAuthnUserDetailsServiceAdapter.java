@@ -0,0 +1,99 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetails;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * A {@link ReactiveWebAuthnUserDetailsService} adapting a blocking {@link WebAuthnUserDetailsService}.
+ * Calls to the delegate are subscribed on a {@link Scheduler} intended for blocking tasks, so that they never
+ * run on event-loop threads.
+ */
+public class ReactiveWebAuthnUserDetailsServiceAdapter implements ReactiveWebAuthnUserDetailsService {
+
+    //~ Instance fields
+    // ================================================================================================
+    private WebAuthnUserDetailsService delegate;
+    private Scheduler scheduler = Schedulers.elastic();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public ReactiveWebAuthnUserDetailsServiceAdapter(WebAuthnUserDetailsService delegate) {
+        Assert.notNull(delegate, "delegate must not be null");
+        this.delegate = delegate;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<WebAuthnUserDetails> findByUsername(String username) {
+        return Mono.fromCallable(() -> delegate.loadUserByUsername(username))
+                .onErrorResume(UsernameNotFoundException.class, e -> Mono.empty())
+                .subscribeOn(scheduler);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<WebAuthnUserDetails> findByCredentialId(byte[] credentialId) {
+        return Mono.fromCallable(() -> delegate.loadUserByCredentialId(credentialId))
+                .onErrorResume(CredentialIdNotFoundException.class, e -> Mono.empty())
+                .subscribeOn(scheduler);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<Void> addAuthenticator(String username, Authenticator authenticator) {
+        return Mono.<Void>fromRunnable(() -> delegate.addAuthenticator(username, authenticator))
+                .subscribeOn(scheduler);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<Void> removeAuthenticator(String username, byte[] credentialId) {
+        return Mono.<Void>fromRunnable(() -> delegate.removeAuthenticator(username, credentialId))
+                .subscribeOn(scheduler);
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    public void setScheduler(Scheduler scheduler) {
+        Assert.notNull(scheduler, "scheduler must not be null");
+        this.scheduler = scheduler;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive.util;
+
+import com.webauthn4j.data.client.Origin;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.net.URI;
+
+/**
+ * Internal utility to handle {@link ServerWebExchange}
+ */
+public class ServerWebExchangeUtil {
+
+    private ServerWebExchangeUtil() {
+    }
+
+    /**
+     * Returns {@link Origin} corresponding {@link ServerWebExchange} request url
+     *
+     * @param exchange server web exchange
+     * @return the {@link Origin}
+     */
+    public static Origin getOrigin(ServerWebExchange exchange) {
+        URI uri = exchange.getRequest().getURI();
+        String scheme = uri.getScheme();
+        int port = uri.getPort();
+        if (port == -1) {
+            port = "https".equals(scheme) ? 443 : 80;
+        }
+        return new Origin(scheme, uri.getHost(), port);
+    }
+}
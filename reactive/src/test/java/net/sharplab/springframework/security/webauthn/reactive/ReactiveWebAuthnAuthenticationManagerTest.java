@@ -0,0 +1,131 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive;
+
+import com.webauthn4j.WebAuthnManager;
+import com.webauthn4j.data.AuthenticationParameters;
+import com.webauthn4j.data.AuthenticationRequest;
+import net.sharplab.springframework.security.webauthn.WebAuthnAssertionAuthenticationToken;
+import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import net.sharplab.springframework.security.webauthn.reactive.authenticator.ReactiveWebAuthnAuthenticatorService;
+import net.sharplab.springframework.security.webauthn.reactive.userdetails.ReactiveWebAuthnUserDetailsService;
+import net.sharplab.springframework.security.webauthn.request.WebAuthnAuthenticationRequest;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsImpl;
+import org.junit.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.DisabledException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test for ReactiveWebAuthnAuthenticationManager
+ */
+public class ReactiveWebAuthnAuthenticationManagerTest {
+
+    private ReactiveWebAuthnUserDetailsService userDetailsService = mock(ReactiveWebAuthnUserDetailsService.class);
+
+    private ReactiveWebAuthnAuthenticatorService authenticatorService = mock(ReactiveWebAuthnAuthenticatorService.class);
+
+    private WebAuthnManager webAuthnManager = mock(WebAuthnManager.class);
+
+    private ReactiveWebAuthnAuthenticationManager target
+            = new ReactiveWebAuthnAuthenticationManager(userDetailsService, authenticatorService, webAuthnManager);
+
+    @Test
+    public void authenticate_with_unsupported_authenticationToken_test() {
+        Authentication token = new UsernamePasswordAuthenticationToken("username", "password");
+
+        StepVerifier.create(target.authenticate(token))
+                .verifyComplete();
+    }
+
+    @Test
+    public void authenticate_test() {
+        byte[] credentialId = new byte[32];
+        GrantedAuthority grantedAuthority = new SimpleGrantedAuthority("ROLE_ADMIN");
+        WebAuthnAuthenticator authenticator = mock(WebAuthnAuthenticator.class, RETURNS_DEEP_STUBS);
+        when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(credentialId);
+        when(authenticator.getCounter()).thenReturn(1L, 2L);
+        WebAuthnUserDetailsImpl user = new WebAuthnUserDetailsImpl(
+                new byte[0],
+                "dummy",
+                "dummy",
+                Collections.singletonList(authenticator),
+                Collections.singletonList(grantedAuthority));
+        WebAuthnAuthenticationRequest credential = mock(WebAuthnAuthenticationRequest.class);
+        when(credential.getCredentialId()).thenReturn(credentialId);
+        when(userDetailsService.findByCredentialId(credentialId)).thenReturn(Mono.just(user));
+        when(authenticatorService.updateCounter(eq(credentialId), anyLong(), any())).thenReturn(Mono.empty());
+
+        Authentication authenticatedToken = target.authenticate(new WebAuthnAssertionAuthenticationToken(credential)).block();
+
+        verify(webAuthnManager).validate(any(AuthenticationRequest.class), any(AuthenticationParameters.class));
+        verify(authenticatorService).updateCounter(eq(credentialId), eq(2L), any());
+        assertThat(authenticatedToken.getPrincipal()).isEqualTo(user);
+        assertThat(authenticatedToken.getCredentials()).isEqualTo(credential);
+        assertThat(authenticatedToken.getAuthorities().toArray()).containsExactly(grantedAuthority);
+    }
+
+    @Test
+    public void authenticate_with_unknown_credentialId_test() {
+        byte[] credentialId = new byte[32];
+        WebAuthnAuthenticationRequest credential = mock(WebAuthnAuthenticationRequest.class);
+        when(credential.getCredentialId()).thenReturn(credentialId);
+        when(userDetailsService.findByCredentialId(credentialId)).thenReturn(Mono.empty());
+
+        StepVerifier.create(target.authenticate(new WebAuthnAssertionAuthenticationToken(credential)))
+                .expectError(BadCredentialsException.class)
+                .verify();
+
+        target.setHideCredentialIdNotFoundExceptions(false);
+        StepVerifier.create(target.authenticate(new WebAuthnAssertionAuthenticationToken(credential)))
+                .expectError(CredentialIdNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    public void authenticate_with_disabled_user_test() {
+        byte[] credentialId = new byte[32];
+        WebAuthnAuthenticator authenticator = mock(WebAuthnAuthenticator.class, RETURNS_DEEP_STUBS);
+        when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(credentialId);
+        WebAuthnUserDetailsImpl user = new WebAuthnUserDetailsImpl(
+                new byte[0], "dummy", "dummy", Collections.singletonList(authenticator),
+                false, false, true, true, true, Collections.emptyList());
+        WebAuthnAuthenticationRequest credential = mock(WebAuthnAuthenticationRequest.class);
+        when(credential.getCredentialId()).thenReturn(credentialId);
+        when(userDetailsService.findByCredentialId(credentialId)).thenReturn(Mono.just(user));
+
+        StepVerifier.create(target.authenticate(new WebAuthnAssertionAuthenticationToken(credential)))
+                .expectError(DisabledException.class)
+                .verify();
+        verifyZeroInteractions(webAuthnManager);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive;
+
+import com.webauthn4j.server.ServerProperty;
+import net.sharplab.springframework.security.webauthn.WebAuthnAssertionAuthenticationToken;
+import net.sharplab.springframework.security.webauthn.exception.DataConversionException;
+import net.sharplab.springframework.security.webauthn.reactive.server.ReactiveServerPropertyProvider;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test for WebAuthnServerAuthenticationConverter
+ */
+public class WebAuthnServerAuthenticationConverterTest {
+
+    private ReactiveServerPropertyProvider serverPropertyProvider = mock(ReactiveServerPropertyProvider.class);
+
+    private WebAuthnServerAuthenticationConverter target = new WebAuthnServerAuthenticationConverter(serverPropertyProvider);
+
+    @Test
+    public void apply_test() {
+        when(serverPropertyProvider.provide(any())).thenReturn(Mono.just(mock(ServerProperty.class)));
+
+        StepVerifier.create(target.apply(exchange("credentialId=AQ&clientDataJSON=Ag&authenticatorData=Aw&signature=BA")))
+                .assertNext(authentication -> {
+                    assertThat(authentication).isInstanceOf(WebAuthnAssertionAuthenticationToken.class);
+                    assertThat(((WebAuthnAssertionAuthenticationToken) authentication).getCredentials().getCredentialId()).isEqualTo(new byte[]{0x01});
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    public void apply_without_credentialId_test() {
+        StepVerifier.create(target.apply(exchange("username=john&password=secret")))
+                .assertNext(authentication -> assertThat(authentication).isInstanceOf(UsernamePasswordAuthenticationToken.class))
+                .verifyComplete();
+    }
+
+    @Test
+    public void apply_with_missing_field_test() {
+        StepVerifier.create(target.apply(exchange("credentialId=AQ&clientDataJSON=Ag&authenticatorData=Aw")))
+                .expectError(DataConversionException.class)
+                .verify();
+    }
+
+    @Test
+    public void apply_with_malformed_field_test() {
+        StepVerifier.create(target.apply(exchange("credentialId=AQ&clientDataJSON=Ag&authenticatorData=%21%21&signature=BA")))
+                .expectError(DataConversionException.class)
+                .verify();
+    }
+
+    private MockServerWebExchange exchange(String formData) {
+        return MockServerWebExchange.from(MockServerHttpRequest.post("/login")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .body(formData));
+    }
+}
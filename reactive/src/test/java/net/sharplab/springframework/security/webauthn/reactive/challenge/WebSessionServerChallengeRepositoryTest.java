@@ -0,0 +1,80 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import org.junit.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for WebSessionServerChallengeRepository
+ */
+public class WebSessionServerChallengeRepositoryTest {
+
+    private WebSessionServerChallengeRepository target = new WebSessionServerChallengeRepository();
+
+    private MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/"));
+
+    @Test
+    public void generateChallenge_test() {
+        Challenge challenge = target.generateChallenge();
+        assertThat(challenge).isNotNull();
+        assertThat(challenge.getValue()).hasSize(16);
+    }
+
+    @Test
+    public void saveChallenge_and_loadChallenge_test() {
+        Challenge challenge = target.generateChallenge();
+
+        target.saveChallenge(challenge, exchange).block();
+
+        assertThat(target.loadChallenge(exchange).block()).isEqualTo(challenge);
+    }
+
+    @Test
+    public void saveChallenge_with_null_removes_challenge_test() {
+        target.saveChallenge(new DefaultChallenge(), exchange).block();
+
+        target.saveChallenge(null, exchange).block();
+
+        assertThat(target.loadChallenge(exchange).block()).isNull();
+    }
+
+    @Test
+    public void loadOrGenerateChallenge_test() {
+        Challenge generated = target.loadOrGenerateChallenge(exchange).block();
+        Challenge loaded = target.loadOrGenerateChallenge(exchange).block();
+
+        assertThat(generated).isNotNull();
+        assertThat(loaded).isEqualTo(generated);
+    }
+
+    @Test
+    public void setSessionAttributeName_test() {
+        Challenge challenge = target.generateChallenge();
+        target.setSessionAttributeName("challenge");
+
+        target.saveChallenge(challenge, exchange).block();
+
+        assertThat(exchange.getSession().block().<Challenge>getAttribute("challenge")).isEqualTo(challenge);
+    }
+}
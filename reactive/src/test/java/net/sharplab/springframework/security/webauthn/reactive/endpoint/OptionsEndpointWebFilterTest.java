@@ -0,0 +1,93 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.reactive.endpoint;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.util.Base64UrlUtil;
+import net.sharplab.springframework.security.webauthn.reactive.challenge.WebSessionServerChallengeRepository;
+import net.sharplab.springframework.security.webauthn.reactive.options.ReactiveOptionsProvider;
+import net.sharplab.springframework.security.webauthn.reactive.options.ReactiveOptionsProviderImpl;
+import net.sharplab.springframework.security.webauthn.reactive.userdetails.ReactiveWebAuthnUserDetailsService;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test for OptionsEndpointWebFilter
+ */
+public class OptionsEndpointWebFilterTest {
+
+    private ReactiveWebAuthnUserDetailsService userDetailsService = mock(ReactiveWebAuthnUserDetailsService.class);
+    private WebSessionServerChallengeRepository challengeRepository = new WebSessionServerChallengeRepository();
+    private ReactiveOptionsProviderImpl optionsProvider = new ReactiveOptionsProviderImpl(userDetailsService, challengeRepository);
+    private OptionsEndpointWebFilter target = new OptionsEndpointWebFilter(optionsProvider, new ObjectConverter());
+
+    @Test
+    public void filter_test() {
+        optionsProvider.setRpName("example");
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("https://example.com/webauthn/options"));
+        WebFilterChain chain = mock(WebFilterChain.class);
+
+        target.filter(exchange, chain).block();
+
+        Challenge challenge = challengeRepository.loadChallenge(exchange).block();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(exchange.getResponse().getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        assertThat(exchange.getResponse().getBodyAsString().block())
+                .contains("\"relyingParty\":{\"id\":\"example.com\",\"name\":\"example\"}")
+                .contains("\"challenge\":\"" + Base64UrlUtil.encodeToString(challenge.getValue()) + "\"");
+        verifyZeroInteractions(chain, userDetailsService);
+    }
+
+    @Test
+    public void filter_with_unmatched_path_test() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("https://example.com/other"));
+        WebFilterChain chain = mock(WebFilterChain.class);
+        when(chain.filter(exchange)).thenReturn(Mono.empty());
+
+        target.filter(exchange, chain).block();
+
+        verify(chain).filter(exchange);
+        assertThat(exchange.getResponse().getStatusCode()).isNull();
+    }
+
+    @Test
+    public void filter_with_error_test() {
+        ReactiveOptionsProvider failingOptionsProvider = mock(ReactiveOptionsProvider.class);
+        when(failingOptionsProvider.getCombinedOptions(any(), isNull(), isNull()))
+                .thenReturn(Mono.error(new InsufficientAuthenticationException("not privileged")));
+        OptionsEndpointWebFilter failingTarget = new OptionsEndpointWebFilter(failingOptionsProvider, new ObjectConverter());
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("https://example.com/webauthn/options"));
+
+        failingTarget.filter(exchange, mock(WebFilterChain.class)).block();
+
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("{\"errorMessage\":\"Anonymous access is prohibited\"}");
+    }
+}
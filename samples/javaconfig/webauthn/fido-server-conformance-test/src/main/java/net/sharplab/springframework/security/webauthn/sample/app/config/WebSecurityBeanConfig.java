@@ -41,6 +41,7 @@ import com.webauthn4j.validator.attestation.trustworthiness.self.DefaultSelfAtte
 import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidator;
 import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
 import net.sharplab.springframework.security.webauthn.challenge.HttpSessionChallengeRepository;
+import net.sharplab.springframework.security.webauthn.jfr.FlightRecordingCertPathTrustworthinessValidator;
 import net.sharplab.springframework.security.webauthn.metadata.JsonFileResourceMetadataStatementsProvider;
 import net.sharplab.springframework.security.webauthn.metadata.RestTemplateAdaptorHttpClient;
 import net.sharplab.springframework.security.webauthn.options.OptionsProvider;
@@ -150,7 +151,7 @@ public class WebSecurityBeanConfig {
     public CertPathTrustworthinessValidator certPathTrustworthinessValidator(TrustAnchorsResolver trustAnchorsResolver){
         TrustAnchorCertPathTrustworthinessValidator trustAnchorCertPathTrustworthinessValidator = new TrustAnchorCertPathTrustworthinessValidator(trustAnchorsResolver);
         trustAnchorCertPathTrustworthinessValidator.setFullChainProhibited(true);
-        return trustAnchorCertPathTrustworthinessValidator;
+        return new FlightRecordingCertPathTrustworthinessValidator(trustAnchorCertPathTrustworthinessValidator);
     }
 
     @Bean
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.sample.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.util.Base64UrlUtil;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Authenticates with the authenticator registered during set up through the assertion endpoints on every iteration
+ */
+public class FidoServerAuthenticationScenario implements Scenario {
+
+    private final List<String> usernames;
+    private String username;
+    private EmulatedAuthenticator authenticator;
+
+    /**
+     * Constructor
+     *
+     * @param usernames the registered usernames, shared with {@link FidoServerCredentialStuffingScenario} as the leaked list
+     */
+    public FidoServerAuthenticationScenario(List<String> usernames) {
+        this.usernames = usernames;
+    }
+
+    @Override
+    public void setUp(LoadTestClient client) {
+        username = "user-" + UUID.randomUUID();
+        authenticator = FidoServerRegistrationScenario.register(client, username);
+        usernames.add(username);
+    }
+
+    @Override
+    public void run(LoadTestClient client) {
+        client.clearCookies();
+        JsonNode options = requestOptions(client, username);
+        EmulatedAuthenticator.Assertion assertion = authenticator.getAssertion(new DefaultChallenge(options.get("challenge").asText()));
+        postResult(client, assertion).expectStatus(200);
+    }
+
+    static JsonNode requestOptions(LoadTestClient client, String username) {
+        Map<String, Object> optionsRequest = new HashMap<>();
+        optionsRequest.put("username", username);
+        optionsRequest.put("userVerification", "preferred");
+        return client.postJson("assertion/options", "/webauthn/assertion/options", optionsRequest).expectStatus(200).getJson();
+    }
+
+    static LoadTestClient.Response postResult(LoadTestClient client, EmulatedAuthenticator.Assertion assertion) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("clientDataJSON", Base64UrlUtil.encodeToString(assertion.getClientDataJSON()));
+        response.put("authenticatorData", Base64UrlUtil.encodeToString(assertion.getAuthenticatorData()));
+        response.put("signature", Base64UrlUtil.encodeToString(assertion.getSignature()));
+        return client.postJson("assertion/result", "/webauthn/assertion/result",
+                FidoServerRegistrationScenario.createCredential(assertion.getCredentialId(), response));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.sample.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.util.Base64UrlUtil;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replays forged assertions against the assertion endpoints, as a credential stuffing bot does.
+ * <p>
+ * Half of the attempts target registered users and claim the credential ids the assertion options disclose for them,
+ * so that the server has to verify the signature; the other half claim random credential ids for unknown users.
+ */
+public class FidoServerCredentialStuffingScenario implements Scenario {
+
+    private final List<String> usernames;
+    private EmulatedAuthenticator attacker;
+
+    /**
+     * Constructor
+     *
+     * @param usernames the leaked usernames
+     */
+    public FidoServerCredentialStuffingScenario(List<String> usernames) {
+        this.usernames = usernames;
+    }
+
+    @Override
+    public void run(LoadTestClient client) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean targetRegisteredUser = random.nextBoolean() && !usernames.isEmpty();
+        String username = targetRegisteredUser ? usernames.get(random.nextInt(usernames.size())) : "unknown-" + UUID.randomUUID();
+        JsonNode options = FidoServerAuthenticationScenario.requestOptions(client, username);
+        if (attacker == null) {
+            attacker = new EmulatedAuthenticator(options.get("rpId").asText(), new Origin(client.getBaseUrl()));
+        }
+
+        JsonNode allowCredentials = options.get("allowCredentials");
+        byte[] credentialId;
+        if (allowCredentials != null && allowCredentials.size() > 0) {
+            credentialId = Base64UrlUtil.decode(allowCredentials.get(0).get("id").asText());
+        } else {
+            credentialId = EmulatedAuthenticator.randomBytes(32);
+        }
+        EmulatedAuthenticator.Assertion assertion = attacker.forgeAssertion(new DefaultChallenge(options.get("challenge").asText()), credentialId);
+        int status = FidoServerAuthenticationScenario.postResult(client, assertion).getStatus();
+        if (status == 200) {
+            throw new IllegalStateException("Forged assertion was accepted");
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.sample.loadtest;
+
+import net.sharplab.springframework.security.webauthn.sample.SampleWebApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Starts the FIDO server conformance test sample on a random port and drives its FIDO server endpoints with emulated authenticators.
+ * <p>
+ * Three runs are reported: registration alone, authentication alone, and authentication while attackers replay
+ * forged assertions, which shows how much the legitimate authentication latency degrades under credential stuffing.
+ * Run with <code>./gradlew :samples:javaconfig:webauthn:fido-server-conformance-test:loadTest</code>; the knobs are the
+ * <code>loadtest.users</code>, <code>loadtest.attackers</code>, <code>loadtest.warmUp</code> and
+ * <code>loadtest.duration</code> (seconds) system properties.
+ */
+public class FidoServerLoadTestRunner {
+
+    public static void main(String[] args) {
+        int users = Integer.getInteger("loadtest.users", 16);
+        int attackers = Integer.getInteger("loadtest.attackers", 64);
+        Duration warmUp = Duration.ofSeconds(Long.getLong("loadtest.warmUp", 10));
+        Duration duration = Duration.ofSeconds(Long.getLong("loadtest.duration", 30));
+
+        try (ConfigurableApplicationContext context = SpringApplication.run(SampleWebApplication.class, "--server.port=0", "--logging.level.root=WARN")) {
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            LoadDriver loadDriver = new LoadDriver(baseUrl, warmUp, duration);
+            List<String> usernames = new CopyOnWriteArrayList<>();
+
+            loadDriver.run(new Workload("registration", users, FidoServerRegistrationScenario::new))
+                    .print("Registration", System.out);
+            loadDriver.run(new Workload("authentication", users, () -> new FidoServerAuthenticationScenario(usernames)))
+                    .print("Authentication", System.out);
+            loadDriver.run(
+                    new Workload("authentication", users, () -> new FidoServerAuthenticationScenario(usernames)),
+                    new Workload("stuffing", attackers, () -> new FidoServerCredentialStuffingScenario(usernames)))
+                    .print("Authentication under credential stuffing (stuffing errors are rejected attempts)", System.out);
+        }
+    }
+}
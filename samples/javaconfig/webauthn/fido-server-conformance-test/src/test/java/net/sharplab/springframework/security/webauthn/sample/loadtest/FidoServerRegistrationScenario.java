@@ -0,0 +1,73 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.sample.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.util.Base64UrlUtil;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Registers a new user with a new authenticator through the attestation endpoints on every iteration
+ */
+public class FidoServerRegistrationScenario implements Scenario {
+
+    @Override
+    public void run(LoadTestClient client) {
+        client.clearCookies();
+        register(client, "user-" + UUID.randomUUID());
+    }
+
+    /**
+     * Registers a user with a new {@link EmulatedAuthenticator}
+     *
+     * @param client   the client of the virtual user
+     * @param username the username
+     * @return the registered authenticator
+     */
+    static EmulatedAuthenticator register(LoadTestClient client, String username) {
+        Map<String, Object> optionsRequest = new HashMap<>();
+        optionsRequest.put("username", username);
+        optionsRequest.put("displayName", username);
+        optionsRequest.put("attestation", "none");
+        JsonNode options = client.postJson("attestation/options", "/webauthn/attestation/options", optionsRequest).expectStatus(200).getJson();
+
+        EmulatedAuthenticator authenticator = new EmulatedAuthenticator(options.get("rp").get("id").asText(), new Origin(client.getBaseUrl()));
+        EmulatedAuthenticator.Attestation attestation = authenticator.makeCredential(new DefaultChallenge(options.get("challenge").asText()));
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("clientDataJSON", Base64UrlUtil.encodeToString(attestation.getClientDataJSON()));
+        response.put("attestationObject", Base64UrlUtil.encodeToString(attestation.getAttestationObject()));
+        client.postJson("attestation/result", "/webauthn/attestation/result", createCredential(attestation.getCredentialId(), response)).expectStatus(200);
+        return authenticator;
+    }
+
+    static Map<String, Object> createCredential(byte[] credentialId, Map<String, Object> response) {
+        String id = Base64UrlUtil.encodeToString(credentialId);
+        Map<String, Object> credential = new HashMap<>();
+        credential.put("id", id);
+        credential.put("rawId", id);
+        credential.put("type", "public-key");
+        credential.put("response", response);
+        credential.put("clientExtensionResults", "{}");
+        return credential;
+    }
+}
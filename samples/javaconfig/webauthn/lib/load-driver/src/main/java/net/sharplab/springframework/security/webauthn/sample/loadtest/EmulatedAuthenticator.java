@@ -0,0 +1,257 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.sample.loadtest;
+
+import com.webauthn4j.converter.AttestationObjectConverter;
+import com.webauthn4j.converter.AuthenticatorDataConverter;
+import com.webauthn4j.converter.CollectedClientDataConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.AttestationObject;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.AuthenticatorData;
+import com.webauthn4j.data.attestation.authenticator.EC2COSEKey;
+import com.webauthn4j.data.attestation.statement.NoneAttestationStatement;
+import com.webauthn4j.data.client.ClientDataType;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.extension.authenticator.RegistrationExtensionAuthenticatorOutput;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Software authenticator which holds a single ES256 credential and produces
+ * <code>none</code> attestations and signed assertions for it, so that load can be generated without real devices.
+ * <p>
+ * The signature counter is incremented on every assertion, as a hardware authenticator would do.
+ */
+public class EmulatedAuthenticator {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+    private static final ObjectConverter objectConverter = new ObjectConverter();
+    private static final CollectedClientDataConverter collectedClientDataConverter = new CollectedClientDataConverter(objectConverter);
+    private static final AuthenticatorDataConverter authenticatorDataConverter = new AuthenticatorDataConverter(objectConverter);
+    private static final AttestationObjectConverter attestationObjectConverter = new AttestationObjectConverter(objectConverter);
+
+    //~ Instance fields
+    // ================================================================================================
+    private final String rpId;
+    private final Origin origin;
+    private final KeyPair keyPair;
+    private final byte[] credentialId;
+    private final AtomicLong counter = new AtomicLong();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public EmulatedAuthenticator(String rpId, Origin origin) {
+        this.rpId = rpId;
+        this.origin = origin;
+        this.keyPair = generateKeyPair();
+        this.credentialId = randomBytes(32);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Creates a registration response for the credential held by this authenticator
+     *
+     * @param challenge the challenge issued by the relying party
+     * @return the registration response
+     */
+    public Attestation makeCredential(Challenge challenge) {
+        byte[] clientDataJSON = collectedClientDataConverter.convertToBytes(new CollectedClientData(ClientDataType.CREATE, challenge, origin, null));
+        AttestedCredentialData attestedCredentialData = new AttestedCredentialData(AAGUID.ZERO, credentialId, createCOSEKey());
+        byte flags = (byte) (AuthenticatorData.BIT_UP | AuthenticatorData.BIT_UV | AuthenticatorData.BIT_AT);
+        AuthenticatorData<RegistrationExtensionAuthenticatorOutput> authenticatorData = new AuthenticatorData<>(sha256(rpId.getBytes(StandardCharsets.UTF_8)), flags, counter.get(), attestedCredentialData);
+        AttestationObject attestationObject = new AttestationObject(authenticatorData, new NoneAttestationStatement());
+        return new Attestation(credentialId, clientDataJSON, attestationObjectConverter.convertToBytes(attestationObject));
+    }
+
+    /**
+     * Creates an authentication response signed by the credential held by this authenticator
+     *
+     * @param challenge the challenge issued by the relying party
+     * @return the authentication response
+     */
+    public Assertion getAssertion(Challenge challenge) {
+        return createAssertion(challenge, credentialId);
+    }
+
+    /**
+     * Creates an authentication response which claims the given credential id but is signed by this authenticator's key,
+     * which is what a credential stuffing attacker replaying leaked or guessed credential ids is able to produce.
+     *
+     * @param challenge    the challenge issued by the relying party
+     * @param credentialId the credential id to claim
+     * @return the forged authentication response
+     */
+    public Assertion forgeAssertion(Challenge challenge, byte[] credentialId) {
+        return createAssertion(challenge, credentialId);
+    }
+
+    public byte[] getCredentialId() {
+        return credentialId;
+    }
+
+    public long getCounter() {
+        return counter.get();
+    }
+
+    private Assertion createAssertion(Challenge challenge, byte[] credentialId) {
+        byte[] clientDataJSON = collectedClientDataConverter.convertToBytes(new CollectedClientData(ClientDataType.GET, challenge, origin, null));
+        byte flags = (byte) (AuthenticatorData.BIT_UP | AuthenticatorData.BIT_UV);
+        byte[] authenticatorData = authenticatorDataConverter.convert(
+                new AuthenticatorData<>(sha256(rpId.getBytes(StandardCharsets.UTF_8)), flags, counter.incrementAndGet()));
+        byte[] signedData = ByteBuffer.allocate(authenticatorData.length + 32)
+                .put(authenticatorData)
+                .put(sha256(clientDataJSON))
+                .array();
+        return new Assertion(credentialId, clientDataJSON, authenticatorData, sign(signedData));
+    }
+
+    private EC2COSEKey createCOSEKey() {
+        ECPublicKey publicKey = (ECPublicKey) keyPair.getPublic();
+        byte[] uncompressed = ByteBuffer.allocate(65)
+                .put((byte) 0x04)
+                .put(toUnsignedBytes(publicKey.getW().getAffineX(), 32))
+                .put(toUnsignedBytes(publicKey.getW().getAffineY(), 32))
+                .array();
+        return EC2COSEKey.createFromUncompressedECCKey(uncompressed);
+    }
+
+    public static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        secureRandom.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+            keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"), secureRandom);
+            return keyPairGenerator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] sign(byte[] data) {
+        try {
+            Signature signature = Signature.getInstance("SHA256withECDSA");
+            signature.initSign(keyPair.getPrivate());
+            signature.update(data);
+            return signature.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] toUnsignedBytes(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        byte[] result = new byte[length];
+        int copyLength = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copyLength, result, length - copyLength, copyLength);
+        return result;
+    }
+
+    /**
+     * Registration response produced by {@link EmulatedAuthenticator}
+     */
+    public static class Attestation {
+
+        private final byte[] credentialId;
+        private final byte[] clientDataJSON;
+        private final byte[] attestationObject;
+
+        Attestation(byte[] credentialId, byte[] clientDataJSON, byte[] attestationObject) {
+            this.credentialId = credentialId;
+            this.clientDataJSON = clientDataJSON;
+            this.attestationObject = attestationObject;
+        }
+
+        public byte[] getCredentialId() {
+            return credentialId;
+        }
+
+        public byte[] getClientDataJSON() {
+            return clientDataJSON;
+        }
+
+        public byte[] getAttestationObject() {
+            return attestationObject;
+        }
+    }
+
+    /**
+     * Authentication response produced by {@link EmulatedAuthenticator}
+     */
+    public static class Assertion {
+
+        private final byte[] credentialId;
+        private final byte[] clientDataJSON;
+        private final byte[] authenticatorData;
+        private final byte[] signature;
+
+        Assertion(byte[] credentialId, byte[] clientDataJSON, byte[] authenticatorData, byte[] signature) {
+            this.credentialId = credentialId;
+            this.clientDataJSON = clientDataJSON;
+            this.authenticatorData = authenticatorData;
+            this.signature = signature;
+        }
+
+        public byte[] getCredentialId() {
+            return credentialId;
+        }
+
+        public byte[] getClientDataJSON() {
+            return clientDataJSON;
+        }
+
+        public byte[] getAuthenticatorData() {
+            return authenticatorData;
+        }
+
+        public byte[] getSignature() {
+            return signature;
+        }
+    }
+}
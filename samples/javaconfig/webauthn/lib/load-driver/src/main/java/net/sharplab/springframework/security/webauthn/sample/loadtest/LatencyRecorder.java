@@ -0,0 +1,104 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.sample.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records request latencies per endpoint into HdrHistograms.
+ * <p>
+ * Recording is wait-free, so that the recorder itself does not distort the latency distribution it captures.
+ * {@link #snapshot()} returns and resets everything recorded since the previous snapshot, which lets the
+ * driver discard the warm-up phase.
+ */
+public class LatencyRecorder {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final long HIGHEST_TRACKABLE_VALUE = TimeUnit.MINUTES.toNanos(1);
+    private static final int NUMBER_OF_SIGNIFICANT_VALUE_DIGITS = 3;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final ConcurrentMap<String, EndpointRecorder> endpointRecorders = new ConcurrentHashMap<>();
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Records a request
+     *
+     * @param endpoint     the name of the endpoint
+     * @param latencyNanos the latency of the request in nanoseconds
+     * @param success      <code>false</code> when the request failed or returned an unexpected status
+     */
+    public void record(String endpoint, long latencyNanos, boolean success) {
+        EndpointRecorder endpointRecorder = endpointRecorders.computeIfAbsent(endpoint, key -> new EndpointRecorder());
+        endpointRecorder.recorder.recordValue(Math.min(latencyNanos, HIGHEST_TRACKABLE_VALUE));
+        if (!success) {
+            endpointRecorder.errors.increment();
+        }
+    }
+
+    /**
+     * Returns the latencies recorded since the previous call, sorted by endpoint name, and starts a new interval
+     *
+     * @return the recorded latencies per endpoint
+     */
+    public Map<String, Interval> snapshot() {
+        Map<String, Interval> intervals = new TreeMap<>();
+        endpointRecorders.forEach((endpoint, endpointRecorder) ->
+                intervals.put(endpoint, new Interval(endpointRecorder.recorder.getIntervalHistogram(), endpointRecorder.errors.sumThenReset())));
+        return intervals;
+    }
+
+    private static class EndpointRecorder {
+        private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_VALUE, NUMBER_OF_SIGNIFICANT_VALUE_DIGITS);
+        private final LongAdder errors = new LongAdder();
+    }
+
+    /**
+     * Latencies of a single endpoint recorded during an interval
+     */
+    public static class Interval {
+
+        private final Histogram histogram;
+        private final long errors;
+
+        Interval(Histogram histogram, long errors) {
+            this.histogram = histogram;
+            this.errors = errors;
+        }
+
+        public Histogram getHistogram() {
+            return histogram;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.sample.loadtest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Closed-loop load driver: every virtual user runs its {@link Scenario} back to back on its own thread
+ * for the configured duration, and the latencies of all requests are reported per endpoint.
+ * <p>
+ * Since a virtual user waits for each response before sending the next request, the offered load drops when the
+ * server slows down; compare throughput alongside the percentiles when reading the report.
+ * Besides the requests, every scenario iteration is recorded as the <code>workload/iteration</code> endpoint,
+ * and an iteration that throws is counted as an error there.
+ */
+public class LoadDriver {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    static final String ITERATION_ENDPOINT = "iteration";
+
+    //~ Instance fields
+    // ================================================================================================
+    private final String baseUrl;
+    private final Duration warmUp;
+    private final Duration duration;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param baseUrl  the base url of the application under test, e.g. <code>http://localhost:8080</code>
+     * @param warmUp   the time to run the workloads before recording starts
+     * @param duration the time to record
+     */
+    public LoadDriver(String baseUrl, Duration warmUp, Duration duration) {
+        this.baseUrl = baseUrl;
+        this.warmUp = warmUp;
+        this.duration = duration;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Runs the workloads concurrently
+     *
+     * @param workloads the workloads
+     * @return the latencies recorded after the warm-up
+     */
+    public LoadReport run(Workload... workloads) {
+        LatencyRecorder latencyRecorder = new LatencyRecorder();
+        int users = 0;
+        for (Workload workload : workloads) {
+            users += workload.getUsers();
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(users, runnable -> {
+            Thread thread = new Thread(runnable, "load-driver-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicBoolean running = new AtomicBoolean(true);
+        try {
+            List<Future<Runnable>> virtualUsers = new ArrayList<>();
+            for (Workload workload : workloads) {
+                for (int i = 0; i < workload.getUsers(); i++) {
+                    virtualUsers.add(executorService.submit(() -> createVirtualUser(workload, latencyRecorder, running)));
+                }
+            }
+            List<Runnable> loops = new ArrayList<>();
+            for (Future<Runnable> virtualUser : virtualUsers) {
+                loops.add(virtualUser.get());
+            }
+            latencyRecorder.snapshot(); // discard the set up requests
+            loops.forEach(executorService::execute);
+
+            TimeUnit.MILLISECONDS.sleep(warmUp.toMillis());
+            latencyRecorder.snapshot(); // discard the warm-up
+            long start = System.nanoTime();
+            TimeUnit.MILLISECONDS.sleep(duration.toMillis());
+            return new LoadReport(latencyRecorder.snapshot(), Duration.ofNanos(System.nanoTime() - start));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to set up a virtual user", e.getCause());
+        } finally {
+            running.set(false);
+            executorService.shutdown();
+            awaitTermination(executorService);
+        }
+    }
+
+    private Runnable createVirtualUser(Workload workload, LatencyRecorder latencyRecorder, AtomicBoolean running) {
+        LoadTestClient client = new LoadTestClient(baseUrl, latencyRecorder, workload.getName());
+        Scenario scenario = workload.getScenarioFactory().get();
+        scenario.setUp(client);
+        String iterationEndpoint = workload.getName() + "/" + ITERATION_ENDPOINT;
+        return () -> {
+            while (running.get()) {
+                long start = System.nanoTime();
+                boolean success = false;
+                try {
+                    scenario.run(client);
+                    success = true;
+                } catch (RuntimeException e) {
+                    client.clearCookies();
+                } finally {
+                    latencyRecorder.record(iterationEndpoint, System.nanoTime() - start, success);
+                }
+            }
+        };
+    }
+
+    private static void awaitTermination(ExecutorService executorService) {
+        try {
+            if (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
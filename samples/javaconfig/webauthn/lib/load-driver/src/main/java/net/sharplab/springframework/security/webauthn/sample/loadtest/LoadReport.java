@@ -0,0 +1,91 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.sample.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Latency distribution and throughput per endpoint, as recorded by {@link LoadDriver}
+ */
+public class LoadReport {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final String HEADER_FORMAT = "%-44s %9s %7s %9s %9s %9s %9s %9s %9s%n";
+    private static final String ROW_FORMAT = "%-44s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n";
+
+    //~ Instance fields
+    // ================================================================================================
+    private final Map<String, LatencyRecorder.Interval> intervals;
+    private final Duration elapsed;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    LoadReport(Map<String, LatencyRecorder.Interval> intervals, Duration elapsed) {
+        this.intervals = intervals;
+        this.elapsed = elapsed;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Returns the latencies recorded per <code>workload/endpoint</code>
+     *
+     * @return the latencies recorded per endpoint
+     */
+    public Map<String, LatencyRecorder.Interval> getIntervals() {
+        return intervals;
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Prints the report as a table with latencies in milliseconds
+     *
+     * @param title the title of the report
+     * @param out   the stream to print to
+     */
+    public void print(String title, PrintStream out) {
+        double seconds = elapsed.toNanos() / 1_000_000_000.0;
+        out.println();
+        out.printf("%s (%.1f s)%n", title, seconds);
+        out.printf(HEADER_FORMAT, "endpoint", "count", "errors", "req/s", "p50", "p90", "p99", "p99.9", "max");
+        intervals.forEach((endpoint, interval) -> {
+            Histogram histogram = interval.getHistogram();
+            out.printf(ROW_FORMAT,
+                    endpoint,
+                    histogram.getTotalCount(),
+                    interval.getErrors(),
+                    histogram.getTotalCount() / seconds,
+                    histogram.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                    histogram.getValueAtPercentile(90) / NANOS_PER_MILLI,
+                    histogram.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                    histogram.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+                    histogram.getMaxValue() / NANOS_PER_MILLI);
+        });
+    }
+}
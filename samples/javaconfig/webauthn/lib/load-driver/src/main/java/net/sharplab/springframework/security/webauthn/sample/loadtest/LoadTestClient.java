@@ -0,0 +1,226 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.sample.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpCookie;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Minimal HTTP client which plays a single browser against the sample application.
+ * <p>
+ * It keeps its own cookie jar, so that each virtual user has its own session, and echoes the
+ * <code>XSRF-TOKEN</code> cookie as the <code>X-XSRF-TOKEN</code> header as the SPA does.
+ * Every request is timed and recorded to the {@link LatencyRecorder} as <code>workload/endpoint</code>,
+ * and counted as an error when it fails or its status is 400 or above.
+ * Redirects are not followed, so that a redirect is recorded as the response it is.
+ */
+public class LoadTestClient {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final String CSRF_COOKIE_NAME = "XSRF-TOKEN";
+    private static final String CSRF_HEADER_NAME = "X-XSRF-TOKEN";
+
+    //~ Instance fields
+    // ================================================================================================
+    private final String baseUrl;
+    private final LatencyRecorder latencyRecorder;
+    private final String workloadName;
+    private final Map<String, String> cookies = new ConcurrentHashMap<>();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public LoadTestClient(String baseUrl, LatencyRecorder latencyRecorder, String workloadName) {
+        this.baseUrl = baseUrl;
+        this.latencyRecorder = latencyRecorder;
+        this.workloadName = workloadName;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    public Response get(String endpoint, String path) {
+        return execute(endpoint, "GET", path, null, null);
+    }
+
+    public Response postJson(String endpoint, String path, Object body) {
+        try {
+            return execute(endpoint, "POST", path, "application/json", objectMapper.writeValueAsBytes(body));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Response postForm(String endpoint, String path, Map<String, String> parameters) {
+        String body = parameters.entrySet().stream()
+                .map(entry -> encode(entry.getKey()) + "=" + encode(entry.getValue()))
+                .collect(Collectors.joining("&"));
+        return execute(endpoint, "POST", path, "application/x-www-form-urlencoded", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Forgets the session and the CSRF token, as a browser closing all its windows would do
+     */
+    public void clearCookies() {
+        cookies.clear();
+    }
+
+    private Response execute(String endpoint, String method, String path, String contentType, byte[] body) {
+        long start = System.nanoTime();
+        int status = 0;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            connection.setRequestMethod(method);
+            connection.setInstanceFollowRedirects(false);
+            connection.setUseCaches(false);
+            connection.setRequestProperty("Accept", "application/json");
+            if (!cookies.isEmpty()) {
+                connection.setRequestProperty("Cookie", cookies.entrySet().stream()
+                        .map(entry -> entry.getKey() + "=" + entry.getValue())
+                        .collect(Collectors.joining("; ")));
+            }
+            String csrfToken = cookies.get(CSRF_COOKIE_NAME);
+            if (csrfToken != null) {
+                connection.setRequestProperty(CSRF_HEADER_NAME, csrfToken);
+            }
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", contentType);
+                connection.setFixedLengthStreamingMode(body.length);
+                try (OutputStream outputStream = connection.getOutputStream()) {
+                    outputStream.write(body);
+                }
+            }
+            status = connection.getResponseCode();
+            byte[] responseBody = readFully(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+            connection.getHeaderFields().forEach((name, values) -> {
+                if ("Set-Cookie".equalsIgnoreCase(name)) {
+                    storeCookies(values);
+                }
+            });
+            return new Response(status, responseBody);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            latencyRecorder.record(workloadName + "/" + endpoint, System.nanoTime() - start, status >= 200 && status < 400);
+        }
+    }
+
+    private void storeCookies(List<String> setCookieHeaders) {
+        for (String setCookieHeader : setCookieHeaders) {
+            for (HttpCookie cookie : HttpCookie.parse(setCookieHeader)) {
+                if (cookie.getMaxAge() == 0) {
+                    cookies.remove(cookie.getName());
+                } else {
+                    cookies.put(cookie.getName(), cookie.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the stream to its end, which lets {@link HttpURLConnection} return the connection to its keep-alive cache
+     */
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return new byte[0];
+        }
+        try (InputStream in = inputStream) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * HTTP response received by {@link LoadTestClient}
+     */
+    public static class Response {
+
+        private final int status;
+        private final byte[] body;
+
+        Response(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public JsonNode getJson() {
+            try {
+                return objectMapper.readTree(body);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Fails the current scenario iteration unless the status is the expected one
+         *
+         * @param expectedStatus the expected status
+         * @return this response
+         */
+        public Response expectStatus(int expectedStatus) {
+            if (status != expectedStatus) {
+                throw new IllegalStateException("Expected status " + expectedStatus + " but was " + status + ": " + new String(body, StandardCharsets.UTF_8));
+            }
+            return this;
+        }
+    }
+}
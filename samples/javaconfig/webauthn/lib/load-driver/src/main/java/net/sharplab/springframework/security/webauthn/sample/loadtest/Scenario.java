@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.sample.loadtest;
+
+/**
+ * Behaviour of a single virtual user.
+ * <p>
+ * {@link LoadDriver} creates one instance per virtual user thread, so implementations may keep per-user state
+ * such as a registered {@link EmulatedAuthenticator} without synchronization.
+ */
+public interface Scenario {
+
+    /**
+     * Prepares the virtual user, e.g. registers its account. Not measured.
+     *
+     * @param client the client of the virtual user
+     */
+    default void setUp(LoadTestClient client) {
+        // nop
+    }
+
+    /**
+     * Runs one iteration of the scenario
+     *
+     * @param client the client of the virtual user
+     */
+    void run(LoadTestClient client);
+}
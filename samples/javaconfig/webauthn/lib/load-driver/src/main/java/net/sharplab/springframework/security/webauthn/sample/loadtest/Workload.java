@@ -0,0 +1,65 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.sample.loadtest;
+
+import java.util.function.Supplier;
+
+/**
+ * A group of virtual users running the same {@link Scenario}
+ */
+public class Workload {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final String name;
+    private final int users;
+    private final Supplier<Scenario> scenarioFactory;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param name            the name under which the endpoints of this workload are reported
+     * @param users           the number of concurrent virtual users
+     * @param scenarioFactory creates the scenario of each virtual user
+     */
+    public Workload(String name, int users, Supplier<Scenario> scenarioFactory) {
+        if (users < 1) {
+            throw new IllegalArgumentException("users must be positive");
+        }
+        this.name = name;
+        this.users = users;
+        this.scenarioFactory = scenarioFactory;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    public String getName() {
+        return name;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public Supplier<Scenario> getScenarioFactory() {
+        return scenarioFactory;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.sample.loadtest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replays leaked usernames with wrong passwords against the password login, as a credential stuffing bot does.
+ * <p>
+ * Half of the attempts target registered users, whose password hash is verified, and half target unknown users.
+ * The CSRF token is kept across attempts like a bot reusing its session would do.
+ */
+public class SpaCredentialStuffingScenario implements Scenario {
+
+    private final List<String> usernames;
+
+    /**
+     * Constructor
+     *
+     * @param usernames the leaked usernames
+     */
+    public SpaCredentialStuffingScenario(List<String> usernames) {
+        this.usernames = usernames;
+    }
+
+    @Override
+    public void setUp(LoadTestClient client) {
+        client.get("status", "/api/auth/status");
+    }
+
+    @Override
+    public void run(LoadTestClient client) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String username;
+        if (random.nextBoolean() && !usernames.isEmpty()) {
+            username = usernames.get(random.nextInt(usernames.size()));
+        } else {
+            username = "unknown-" + UUID.randomUUID() + "@example.com";
+        }
+        Map<String, String> form = new HashMap<>();
+        form.put("username", username);
+        form.put("password", "leaked-" + random.nextInt());
+        client.postForm("login", "/login", form).expectStatus(401);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.sample.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.util.Base64UrlUtil;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Logs in with the authenticator registered during set up on every iteration, as the SPA login page does
+ */
+public class SpaLoginScenario implements Scenario {
+
+    private final List<String> usernames;
+    private EmulatedAuthenticator authenticator;
+
+    /**
+     * Constructor
+     *
+     * @param usernames the registered usernames, shared with {@link SpaCredentialStuffingScenario} as the leaked list
+     */
+    public SpaLoginScenario(List<String> usernames) {
+        this.usernames = usernames;
+    }
+
+    @Override
+    public void setUp(LoadTestClient client) {
+        String username = "user-" + UUID.randomUUID() + "@example.com";
+        authenticator = SpaRegistrationScenario.register(client, username);
+        usernames.add(username);
+    }
+
+    @Override
+    public void run(LoadTestClient client) {
+        client.clearCookies();
+        JsonNode options = client.get("options", "/webauthn/options").expectStatus(200).getJson();
+        JsonNode parameters = options.get("parameters");
+        EmulatedAuthenticator.Assertion assertion = authenticator.getAssertion(new DefaultChallenge(options.get("challenge").asText()));
+
+        Map<String, String> form = new HashMap<>();
+        form.put(parameters.get("credentialId").asText(), Base64UrlUtil.encodeToString(assertion.getCredentialId()));
+        form.put(parameters.get("clientDataJSON").asText(), Base64UrlUtil.encodeToString(assertion.getClientDataJSON()));
+        form.put(parameters.get("authenticatorData").asText(), Base64UrlUtil.encodeToString(assertion.getAuthenticatorData()));
+        form.put(parameters.get("signature").asText(), Base64UrlUtil.encodeToString(assertion.getSignature()));
+        form.put(parameters.get("clientExtensionsJSON").asText(), "{}");
+        client.postForm("login", "/login", form).expectStatus(200);
+    }
+}
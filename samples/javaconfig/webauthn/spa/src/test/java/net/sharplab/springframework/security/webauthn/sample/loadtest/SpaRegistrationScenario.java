@@ -0,0 +1,72 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.sample.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.util.Base64UrlUtil;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Signs up a new user with a new authenticator on every iteration, as the SPA sign up page does
+ */
+public class SpaRegistrationScenario implements Scenario {
+
+    static final String PASSWORD = "password";
+
+    @Override
+    public void run(LoadTestClient client) {
+        client.clearCookies();
+        register(client, "user-" + UUID.randomUUID() + "@example.com");
+    }
+
+    /**
+     * Registers a user with a new {@link EmulatedAuthenticator}
+     *
+     * @param client   the client of the virtual user
+     * @param username the username, i.e. the email address
+     * @return the registered authenticator
+     */
+    static EmulatedAuthenticator register(LoadTestClient client, String username) {
+        JsonNode options = client.get("options", "/webauthn/options").expectStatus(200).getJson();
+        EmulatedAuthenticator authenticator = new EmulatedAuthenticator(
+                options.get("relyingParty").get("id").asText(), new Origin(client.getBaseUrl()));
+        EmulatedAuthenticator.Attestation attestation = authenticator.makeCredential(new DefaultChallenge(options.get("challenge").asText()));
+
+        Map<String, Object> authenticatorForm = new HashMap<>();
+        authenticatorForm.put("name", "authenticator");
+        authenticatorForm.put("clientData", Base64UrlUtil.encodeToString(attestation.getClientDataJSON()));
+        authenticatorForm.put("attestationObject", Base64UrlUtil.encodeToString(attestation.getAttestationObject()));
+        authenticatorForm.put("clientExtensionsJSON", "{}");
+
+        Map<String, Object> profileCreateForm = new HashMap<>();
+        profileCreateForm.put("userHandle", Base64UrlUtil.encodeToString(EmulatedAuthenticator.randomBytes(16)));
+        profileCreateForm.put("firstName", "Load");
+        profileCreateForm.put("lastName", "Test");
+        profileCreateForm.put("emailAddress", username);
+        profileCreateForm.put("password", PASSWORD);
+        profileCreateForm.put("authenticators", Collections.singletonList(authenticatorForm));
+        profileCreateForm.put("singleFactorAuthenticationAllowed", true);
+        client.postJson("profile", "/api/profile", profileCreateForm).expectStatus(200);
+        return authenticator;
+    }
+}